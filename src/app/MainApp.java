@@ -1070,16 +1070,6 @@ public class MainApp {
     private static boolean saveOTPToDatabase(Connection conn, String email, String otpCode) {
         try {
 
-            PreparedStatement createTable = conn.prepareStatement(
-                "CREATE TABLE IF NOT EXISTS password_reset_otp (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "email TEXT NOT NULL, " +
-                "otp_code TEXT NOT NULL, " +
-                "created_at INTEGER NOT NULL, " +
-                "expires_at INTEGER NOT NULL)"
-            );
-            createTable.execute();
-
             PreparedStatement clearOld = conn.prepareStatement("DELETE FROM password_reset_otp WHERE email = ?");
             clearOld.setString(1, email);
             clearOld.execute();
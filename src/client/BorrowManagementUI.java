@@ -600,12 +600,6 @@ public class BorrowManagementUI extends JFrame {
 
         try (Connection conn = DriverManager.getConnection("jdbc:sqlite:C:/data/library.db?busy_timeout=30000")) {
 
-            try {
-                conn.createStatement().execute("ALTER TABLE borrows ADD COLUMN expected_return_date TEXT");
-            } catch (Exception e) {
-
-            }
-
             String sql = "SELECT br.id, bk.title as book_title, u.username, u.phone, br.borrow_date, br.return_date, " +
                         "COALESCE((SELECT brq.expected_return_date FROM borrow_requests brq " +
                         "           WHERE brq.user_id = br.user_id AND brq.book_id = br.book_id " +
@@ -1329,9 +1323,8 @@ public class BorrowManagementUI extends JFrame {
             chartData.append("================================================\n\n");
 
             PreparedStatement ps = conn.prepareStatement(
-                "SELECT strftime('%Y-%m', borrow_date) as month, COUNT(*) as count " +
-                "FROM borrows WHERE borrow_date >= date('now', '-6 months') " +
-                "GROUP BY strftime('%Y-%m', borrow_date) ORDER BY month DESC");
+                "SELECT month, borrows as count FROM borrow_monthly_stats " +
+                "WHERE month >= strftime('%Y-%m', 'now', '-6 months') ORDER BY month DESC");
 
             ResultSet rs = ps.executeQuery();
             while (rs.next()) {
@@ -515,12 +515,6 @@ public class BorrowRequestManagerUI extends JPanel {
                 int bookId = rs.getInt("book_id");
                 String expectedReturnDate = rs.getString("expected_return_date");
 
-                try {
-                    conn.createStatement().execute("ALTER TABLE borrows ADD COLUMN expected_return_date TEXT");
-                } catch (Exception e) {
-
-                }
-
                 String insertBorrowQuery = "INSERT INTO borrows (user_id, book_id, borrow_date, expected_return_date) " +
                     "VALUES (?, ?, ?, ?)";
 
@@ -29,6 +29,8 @@ public class ClientUI extends JFrame implements DarkModeManager.DarkModeListener
     private int itemsPerPage = 18;
     private int totalItems = 0;
     private int totalPages = 0;
+    private int loadedPage = 0;
+    private String currentPageCursor, nextPageCursor, prevPageCursor, lastPageCursor;
     private JPanel booksGridPanel;
     private JLabel lblPageInfo;
     private JButton btnPrevPage, btnNextPage, btnFirstPage, btnLastPage;
@@ -75,8 +77,6 @@ public class ClientUI extends JFrame implements DarkModeManager.DarkModeListener
 
         initializeDarkMode();
 
-        initializeBorrowRequestsTable();
-
         createMainInterface();
 
         setDefaultAvatar();
@@ -1062,7 +1062,7 @@ public class ClientUI extends JFrame implements DarkModeManager.DarkModeListener
             searchDebounceTimer.stop();
         }
 
-        searchDebounceTimer = new Timer(300, e -> {
+        searchDebounceTimer = new Timer(80, e -> {
             showSearchSuggestions(keyword);
         });
         searchDebounceTimer.setRepeats(false);
@@ -1072,15 +1072,22 @@ public class ClientUI extends JFrame implements DarkModeManager.DarkModeListener
     private void showSearchSuggestions(String keyword) {
         suggestPopup.removeAll();
 
-        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:C:/data/library.db?busy_timeout=30000")) {
-            PreparedStatement ps = conn.prepareStatement(
-                "SELECT DISTINCT title FROM books WHERE title LIKE ? LIMIT 8");
-            ps.setString(1, "%" + keyword + "%");
-            ResultSet rs = ps.executeQuery();
+        try {
+            if (socket == null || socket.isClosed() || out == null || in == null) {
+                suggestPopup.setVisible(false);
+                return;
+            }
+
+            // Served from the server's in-memory index, no database round trip
+            String resp = sendCommand("SUGGEST|" + keyword.replace('|', ' ') + "|8");
+            if (!resp.startsWith("SUGGEST_RESULT|")) {
+                suggestPopup.setVisible(false);
+                return;
+            }
 
             boolean hasSuggestions = false;
-            while (rs.next()) {
-                String title = rs.getString("title");
+            for (String title : resp.substring("SUGGEST_RESULT|".length()).split(";")) {
+                if (title.isEmpty()) continue;
                 JMenuItem item = new JMenuItem(title);
                 item.addActionListener(ev -> {
                     txtSearch.setText(title);
@@ -1135,13 +1142,16 @@ public class ClientUI extends JFrame implements DarkModeManager.DarkModeListener
 
     private void connectToServer() {
         try {
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
+            // Not while another thread is mid-exchange in sendCommand
+            synchronized (this) {
+                if (socket != null && !socket.isClosed()) {
+                    socket.close();
+                }
+                socket = new Socket("localhost", 12345);
+                out = new PrintWriter(socket.getOutputStream(), true);
+                in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                in.readLine();
             }
-            socket = new Socket("localhost", 12345);
-            out = new PrintWriter(socket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            in.readLine();
         } catch (Exception ex) {
             JOptionPane.showMessageDialog(this,
                 "Không thể kết nối đến server: " + ex.getMessage(),
@@ -1636,18 +1646,8 @@ public class ClientUI extends JFrame implements DarkModeManager.DarkModeListener
         java.util.List<JPanel> bookPanels = new java.util.ArrayList<>();
 
         try {
-            if (dbManager != null) {
-                dbManager.executeWithConnection(conn -> {
-                    loadBooksFromDatabase(conn, bookPanels);
-                    return null;
-                });
-            } else {
-
-                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:C:/data/library.db?busy_timeout=30000")) {
-                    loadBooksFromDatabase(conn, bookPanels);
-                }
-            }
-        } catch (SQLException e) {
+            loadBooksFromServer(bookPanels);
+        } catch (IOException | IllegalArgumentException e) {
             SwingUtilities.invokeLater(() -> {
                 JOptionPane.showMessageDialog(this,
                     "Lỗi tải sách: " + e.getMessage(),
@@ -1667,24 +1667,36 @@ public class ClientUI extends JFrame implements DarkModeManager.DarkModeListener
         });
     }
 
-    private void loadBooksFromDatabase(Connection conn, java.util.List<JPanel> bookPanels) throws SQLException {
-        try {
-            Statement stmt = conn.createStatement();
-            stmt.execute("ALTER TABLE books ADD COLUMN status TEXT DEFAULT 'approved'");
-
-            stmt.execute("UPDATE books SET status = 'approved' WHERE status IS NULL OR status = 'pending'");
-        } catch (SQLException e) {
-
-            try {
-                Statement updateStmt = conn.createStatement();
-                updateStmt.execute("UPDATE books SET status = 'approved' WHERE status IS NULL OR status = 'pending'");
-            } catch (SQLException ex) {
-
-            }
+    /**
+     * Send one command and read its single-line reply. Every request on the
+     * socket goes through here, so exchanges from the EDT, the suggestion timer
+     * and the loader threads cannot interleave.
+     */
+    private synchronized String sendCommand(String command) throws IOException {
+        if (socket == null || socket.isClosed() || out == null || in == null) {
+            throw new IOException("Chưa kết nối đến server");
+        }
+        out.println(command);
+        String resp = in.readLine();
+        if (resp == null) {
+            throw new IOException("Server đã đóng kết nối");
         }
+        return resp;
+    }
 
-        StringBuilder baseQuery = new StringBuilder("SELECT COUNT(*) FROM books WHERE 1=1");
+    /**
+     * One page of BROWSE_BOOKS, parsed; status is "error" when the server refused it
+     */
+    private java.util.Map<String, Object> browseBooks(String search, String author, String publisher,
+                                                      String category, String cursor) throws IOException {
+        String command = "BROWSE_BOOKS|" + search.replace('|', ' ') + "|" + author.replace('|', ' ') + "|"
+                + publisher.replace('|', ' ') + "|" + category.replace('|', ' ') + "|"
+                + (cursor == null ? "" : cursor) + "|" + itemsPerPage;
+        return JsonReader.parseObject(sendCommand(command));
+    }
 
+    @SuppressWarnings("unchecked")
+    private void loadBooksFromServer(java.util.List<JPanel> bookPanels) throws IOException {
         String searchText = txtSearch.getText().trim();
         if ("Nhập tên sách hoặc tác giả...".equals(searchText)) searchText = "";
 
@@ -1695,107 +1707,64 @@ public class ClientUI extends JFrame implements DarkModeManager.DarkModeListener
         if ("Nhập nhà xuất bản...".equals(publisherText)) publisherText = "";
 
         String categoryText = cbCategory.getSelectedItem().toString();
-
-        if (!searchText.isEmpty()) {
-            baseQuery.append(" AND (title LIKE ? OR author LIKE ? OR publisher LIKE ?)");
-        }
-        if (!authorText.isEmpty()) {
-            baseQuery.append(" AND author LIKE ?");
-        }
-        if (!publisherText.isEmpty()) {
-            baseQuery.append(" AND publisher LIKE ?");
-        }
-        if (!"Tất cả".equals(categoryText)) {
-            baseQuery.append(" AND category = ?");
-        }
-
-        PreparedStatement countPs = conn.prepareStatement(baseQuery.toString());
-        int paramIndex = 1;
-
-        if (!searchText.isEmpty()) {
-            String searchPattern = "%" + searchText + "%";
-            countPs.setString(paramIndex++, searchPattern);
-            countPs.setString(paramIndex++, searchPattern);
-            countPs.setString(paramIndex++, searchPattern);
-        }
-        if (!authorText.isEmpty()) {
-            countPs.setString(paramIndex++, "%" + authorText + "%");
-        }
-        if (!publisherText.isEmpty()) {
-            countPs.setString(paramIndex++, "%" + publisherText + "%");
-        }
-        if (!"Tất cả".equals(categoryText)) {
-            countPs.setString(paramIndex++, categoryText);
-        }
-
-        ResultSet countRs = countPs.executeQuery();
-        totalItems = countRs.getInt(1);
-        totalPages = (int) Math.ceil((double) totalItems / itemsPerPage);
-        countRs.close();
-        countPs.close();
-
-        if (currentPage > totalPages && totalPages > 0) {
-            currentPage = totalPages;
-        } else if (currentPage < 1) {
+        if ("Tất cả".equals(categoryText)) categoryText = "";
+
+        // Pages are reached by cursor from the page on screen; anything else restarts at page 1
+        String cursor = null;
+        if (currentPage == loadedPage) {
+            cursor = currentPageCursor;
+        } else if (currentPage == loadedPage + 1) {
+            cursor = nextPageCursor;
+        } else if (currentPage == loadedPage - 1) {
+            cursor = prevPageCursor;
+        } else if (currentPage == totalPages) {
+            cursor = lastPageCursor;
+        }
+        if (cursor == null) {
             currentPage = 1;
         }
 
-        StringBuilder dataQuery = new StringBuilder("SELECT id, title, author, publisher, year, category, quantity, cover_image, status FROM books WHERE 1=1");
-
-        if (!searchText.isEmpty()) {
-            dataQuery.append(" AND (title LIKE ? OR author LIKE ? OR publisher LIKE ?)");
-        }
-        if (!authorText.isEmpty()) {
-            dataQuery.append(" AND author LIKE ?");
-        }
-        if (!publisherText.isEmpty()) {
-            dataQuery.append(" AND publisher LIKE ?");
-        }
-        if (!"Tất cả".equals(categoryText)) {
-            dataQuery.append(" AND category = ?");
-        }
-
-        dataQuery.append(" ORDER BY id LIMIT ? OFFSET ?");
-
-        PreparedStatement dataPs = conn.prepareStatement(dataQuery.toString());
-        paramIndex = 1;
-
-        if (!searchText.isEmpty()) {
-            String searchPattern = "%" + searchText + "%";
-            dataPs.setString(paramIndex++, searchPattern);
-            dataPs.setString(paramIndex++, searchPattern);
-            dataPs.setString(paramIndex++, searchPattern);
-        }
-        if (!authorText.isEmpty()) {
-            dataPs.setString(paramIndex++, "%" + authorText + "%");
-        }
-        if (!publisherText.isEmpty()) {
-            dataPs.setString(paramIndex++, "%" + publisherText + "%");
+        java.util.Map<String, Object> resp = browseBooks(searchText, authorText, publisherText, categoryText, cursor);
+        if (!"success".equals(resp.get("status")) && cursor != null) {
+            // Filters changed since the cursor was issued
+            currentPage = 1;
+            cursor = null;
+            resp = browseBooks(searchText, authorText, publisherText, categoryText, null);
         }
-        if (!"Tất cả".equals(categoryText)) {
-            dataPs.setString(paramIndex++, categoryText);
+        if (!"success".equals(resp.get("status"))) {
+            throw new IOException(String.valueOf(resp.get("message")));
         }
+        java.util.Map<String, Object> page = (java.util.Map<String, Object>) resp.get("data");
+        java.util.List<java.util.Map<String, Object>> books = (java.util.List<java.util.Map<String, Object>>) page.get("books");
+        String nextCursor = (String) page.get("next_cursor");
 
-        dataPs.setInt(paramIndex++, itemsPerPage);
-        dataPs.setInt(paramIndex++, (currentPage - 1) * itemsPerPage);
-
-        ResultSet rs = dataPs.executeQuery();
-
-        while (rs.next()) {
-            String bookId = rs.getString("id");
-            String title = rs.getString("title");
-            String author = rs.getString("author");
-            String category = rs.getString("category");
-            int quantity = rs.getInt("quantity");
-            String coverImage = rs.getString("cover_image");
-            String status = rs.getString("status");
+        totalItems = ((Number) page.get("total")).intValue();
+        totalPages = (int) Math.ceil((double) totalItems / itemsPerPage);
+        // The total may be a cached estimate; the cursors say where the data really ends
+        if (nextCursor == null) {
+            totalPages = books.isEmpty() && currentPage == 1 ? 0 : currentPage;
+        } else if (totalPages <= currentPage) {
+            totalPages = currentPage + 1;
+        }
+
+        loadedPage = currentPage;
+        currentPageCursor = cursor;
+        nextPageCursor = nextCursor;
+        prevPageCursor = (String) page.get("prev_cursor");
+        lastPageCursor = (String) page.get("last_cursor");
+
+        for (java.util.Map<String, Object> book : books) {
+            String bookId = String.valueOf(book.get("id"));
+            String title = (String) book.get("title");
+            String author = (String) book.get("author");
+            String category = (String) book.get("category");
+            int quantity = ((Number) book.get("quantity")).intValue();
+            String coverImage = (String) book.get("cover_image");
+            String status = (String) book.get("status");
 
             JPanel bookPanel = createBookPanelWithStatus(bookId, title, author, category, quantity, coverImage, status);
             bookPanels.add(bookPanel);
         }
-
-        rs.close();
-        dataPs.close();
     }
 
     private JPanel createBookPanelWithStatus(String bookId, String title, String author, String category, int quantity, String coverImage, String status) {
@@ -2033,8 +2002,7 @@ public class ClientUI extends JFrame implements DarkModeManager.DarkModeListener
                 connectToServer();
             }
 
-            out.println("LIST_FAVORITES|" + userId);
-            String resp = in.readLine();
+            String resp = sendCommand("LIST_FAVORITES|" + userId);
 
             if (resp != null && resp.startsWith("FAVORITES_LIST|")) {
                 String data = resp.substring("FAVORITES_LIST|".length());
@@ -2239,8 +2207,7 @@ public class ClientUI extends JFrame implements DarkModeManager.DarkModeListener
                 connectToServer();
             }
 
-            out.println("LIST_ACTIVITIES|" + userId);
-            String resp = in.readLine();
+            String resp = sendCommand("LIST_ACTIVITIES|" + userId);
 
             if (resp != null && resp.startsWith("ACTIVITIES_LIST|")) {
                 String data = resp.substring("ACTIVITIES_LIST|".length());
@@ -2910,66 +2877,6 @@ public class ClientUI extends JFrame implements DarkModeManager.DarkModeListener
         }
     }
 
-    private void initializeBorrowRequestsTable() {
-        Connection conn = null;
-        java.sql.Statement stmt = null;
-        try {
-
-            conn = DriverManager.getConnection("jdbc:sqlite:C:/data/library.db?busy_timeout=30000");
-
-            stmt = conn.createStatement();
-
-            stmt.execute("PRAGMA journal_mode=WAL");
-            stmt.execute("PRAGMA synchronous=NORMAL");
-            stmt.execute("PRAGMA busy_timeout=30000");
-
-            String createBorrowRequestsTable = "CREATE TABLE IF NOT EXISTS borrow_requests (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "user_id INTEGER NOT NULL, " +
-                "book_id INTEGER NOT NULL, " +
-                "request_date TEXT NOT NULL, " +
-                "status TEXT DEFAULT 'PENDING', " +
-                "admin_notes TEXT, " +
-                "approved_date TEXT, " +
-                "FOREIGN KEY (user_id) REFERENCES users(id), " +
-                "FOREIGN KEY (book_id) REFERENCES books(id)" +
-                ")";
-
-            stmt.execute(createBorrowRequestsTable);
-
-            String createNotificationsTable = "CREATE TABLE IF NOT EXISTS notifications (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                "user_id INTEGER NOT NULL, " +
-                "type TEXT NOT NULL, " +
-                "title TEXT NOT NULL, " +
-                "content TEXT NOT NULL, " +
-                "created_at TEXT NOT NULL, " +
-                "is_read INTEGER DEFAULT 0, " +
-                "FOREIGN KEY (user_id) REFERENCES users(id)" +
-                ")";
-
-            stmt.execute(createNotificationsTable);
-
-        } catch (Exception e) {
-            System.err.println("Error initializing database tables: " + e.getMessage());
-        } finally {
-            if (stmt != null) {
-                try {
-                    stmt.close();
-                } catch (Exception e) {
-                    System.err.println("Error closing statement: " + e.getMessage());
-                }
-            }
-            if (conn != null) {
-                try {
-                    conn.close();
-                } catch (Exception e) {
-                    System.err.println("Error closing connection: " + e.getMessage());
-                }
-            }
-        }
-    }
-
     private static UserProfileUI openUserProfileUI = null;
 
     private void showUserProfile() {
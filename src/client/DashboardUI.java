@@ -5,7 +5,7 @@ import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.sql.*;
-import java.time.LocalDate;
+import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -283,22 +283,17 @@ public class DashboardUI extends JPanel {
     private int[] getMonthlyBorrowData() {
         try (Connection conn = DriverManager.getConnection("jdbc:sqlite:C:/data/library.db")) {
             int[] data = new int[6];
-            LocalDate currentDate = LocalDate.now();
-
-            for (int i = 5; i >= 0; i--) {
-                LocalDate monthStart = currentDate.minusMonths(i).withDayOfMonth(1);
-                LocalDate monthEnd = monthStart.plusMonths(1).minusDays(1);
-
-                PreparedStatement ps = conn.prepareStatement(
-                    "SELECT COUNT(*) FROM borrows WHERE borrow_date >= ? AND borrow_date <= ?"
-                );
-                ps.setString(1, monthStart.toString());
-                ps.setString(2, monthEnd.toString());
-                ResultSet rs = ps.executeQuery();
-
-                if (rs.next()) {
-                    data[5-i] = rs.getInt(1);
-                }
+            YearMonth current = YearMonth.now();
+            // Read from the monthly rollup the server's triggers keep current
+            PreparedStatement ps = conn.prepareStatement(
+                "SELECT month, borrows FROM borrow_monthly_stats WHERE month >= ? AND month <= ?"
+            );
+            ps.setString(1, current.minusMonths(5).toString());
+            ps.setString(2, current.toString());
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                int index = 5 - (int) YearMonth.parse(rs.getString("month")).until(current, java.time.temporal.ChronoUnit.MONTHS);
+                data[index] = rs.getInt("borrows");
             }
             return data;
         } catch (Exception e) {
@@ -458,18 +453,16 @@ public class DashboardUI extends JPanel {
                     lblUsersValue.setText(String.valueOf(rs.getInt(1)));
                 }
 
-                ps = conn.prepareStatement("SELECT COUNT(*) FROM borrows WHERE return_date IS NULL OR return_date = ''");
+                ps = conn.prepareStatement("SELECT COALESCE(SUM(active_loans), 0) FROM book_stats");
                 rs = ps.executeQuery();
                 if (rs.next()) {
                     lblBorrowsValue.setText(String.valueOf(rs.getInt(1)));
                 }
 
-                String today = LocalDate.now().toString();
                 ps = conn.prepareStatement(
-                    "SELECT COUNT(*) FROM borrows WHERE (return_date IS NULL OR return_date = '') " +
-                    "AND julianday(?) - julianday(borrow_date) > 30"
+                    "SELECT COUNT(*) FROM borrows WHERE (return_date IS NULL OR return_date = '' OR return_date = 'null') " +
+                    "AND borrow_date < date('now', '-30 days')"
                 );
-                ps.setString(1, today);
                 rs = ps.executeQuery();
                 if (rs.next()) {
                     lblOverdueValue.setText(String.valueOf(rs.getInt(1)));
@@ -492,9 +485,9 @@ public class DashboardUI extends JPanel {
         contentPanel.removeAll();
         try (Connection conn = DriverManager.getConnection("jdbc:sqlite:C:/data/library.db")) {
             PreparedStatement ps = conn.prepareStatement(
-                "SELECT b.title, b.author, COUNT(*) as borrow_count " +
-                "FROM borrows br JOIN books b ON br.book_id = b.id " +
-                "GROUP BY b.id ORDER BY borrow_count DESC LIMIT 5"
+                "SELECT b.title, b.author, s.total_borrows as borrow_count " +
+                "FROM book_stats s JOIN books b ON s.book_id = b.id " +
+                "WHERE s.total_borrows > 0 ORDER BY s.total_borrows DESC LIMIT 5"
             );
             ResultSet rs = ps.executeQuery();
             int rank = 1;
@@ -518,10 +511,10 @@ public class DashboardUI extends JPanel {
         contentPanel.removeAll();
         try (Connection conn = DriverManager.getConnection("jdbc:sqlite:C:/data/library.db")) {
             PreparedStatement ps = conn.prepareStatement(
-                "SELECT u.username, COUNT(*) as activity_count " +
-                "FROM users u JOIN borrows b ON u.id = b.user_id " +
-                "WHERE u.role != 'admin' " +
-                "GROUP BY u.id ORDER BY activity_count DESC LIMIT 5"
+                "SELECT u.username, s.total_borrows as activity_count " +
+                "FROM user_borrow_stats s JOIN users u ON u.id = s.user_id " +
+                "WHERE u.role != 'admin' AND s.total_borrows > 0 " +
+                "ORDER BY s.total_borrows DESC LIMIT 5"
             );
             ResultSet rs = ps.executeQuery();
             int rank = 1;
@@ -548,8 +541,8 @@ public class DashboardUI extends JPanel {
             List<Color> colors = new ArrayList<>();
 
             PreparedStatement ps = conn.prepareStatement(
-                "SELECT COUNT(*) FROM borrows WHERE (return_date IS NULL OR return_date = '') " +
-                "AND julianday('now') - julianday(borrow_date) > 30"
+                "SELECT COUNT(*) FROM borrows WHERE (return_date IS NULL OR return_date = '' OR return_date = 'null') " +
+                "AND borrow_date < date('now', '-30 days')"
             );
             ResultSet rs = ps.executeQuery();
             if (rs.next() && rs.getInt(1) > 0) {
@@ -564,7 +557,7 @@ public class DashboardUI extends JPanel {
                 colors.add(PRIMARY_BLUE);
             }
 
-            ps = conn.prepareStatement("SELECT COUNT(*) FROM books WHERE quantity < 3");
+            ps = conn.prepareStatement("SELECT COUNT(*) FROM book_stats WHERE available_copies < 3");
             rs = ps.executeQuery();
             if (rs.next() && rs.getInt(1) > 0) {
                 notifications.add(rs.getInt(1) + " sách sắp hết trong kho");
@@ -794,7 +787,7 @@ public class DashboardUI extends JPanel {
         Map<String, Integer> categoryData = new HashMap<>();
         try (Connection conn = DriverManager.getConnection("jdbc:sqlite:C:/data/library.db")) {
             PreparedStatement ps = conn.prepareStatement(
-                "SELECT category, COUNT(*) as count FROM books GROUP BY category ORDER BY count DESC LIMIT 10"
+                "SELECT category, books as count FROM category_stats WHERE books > 0 ORDER BY books DESC LIMIT 10"
             );
             ResultSet rs = ps.executeQuery();
 
@@ -322,13 +322,6 @@ public class UserDetailUI extends JFrame {
     private void loadUserData() {
         try (Connection conn = DriverManager.getConnection("jdbc:sqlite:C:/data/library.db")) {
 
-            try {
-                Statement stmt = conn.createStatement();
-                stmt.execute("ALTER TABLE users ADD COLUMN status TEXT DEFAULT 'active'");
-            } catch (SQLException e) {
-
-            }
-
             PreparedStatement ps = conn.prepareStatement(
                 "SELECT username, email, phone, avatar, status FROM users WHERE id = ?");
             ps.setString(1, userId);
@@ -458,13 +451,6 @@ public class UserDetailUI extends JFrame {
     private void lockUserAccount(String username) {
         try (Connection conn = DriverManager.getConnection("jdbc:sqlite:C:/data/library.db")) {
 
-            try {
-                Statement stmt = conn.createStatement();
-                stmt.execute("ALTER TABLE users ADD COLUMN status TEXT DEFAULT 'active'");
-            } catch (SQLException e) {
-
-            }
-
             PreparedStatement ps = conn.prepareStatement("UPDATE users SET status='locked' WHERE id=?");
             ps.setString(1, userId);
             int rows = ps.executeUpdate();
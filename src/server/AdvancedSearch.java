@@ -5,38 +5,107 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 /**
  * Advanced search functionality with indexing and full-text capabilities
  */
 public class AdvancedSearch {
     
+    /**
+     * BM25 ranking over books_fts columns (title, author, publisher, description)
+     */
+    public static final String BM25_ORDER = "bm25(books_fts, 10.0, 5.0, 2.0, 1.0)";
+    
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    
+    // Book search responses; invalidated by the catalog change counter (schema v13)
+    private static final QueryCache cache = QueryCache.fromConfig();
+    
+    /**
+     * Build an FTS5 MATCH expression from free text: every word becomes a quoted
+     * prefix term and all terms must match. Optionally restricted to columns.
+     * Returns null when the text contains no searchable words.
+     */
+    public static String buildMatchQuery(String text, String... columns) {
+        if (text == null) return null;
+        
+        // unicode61 removes the other Vietnamese diacritics; đ has no decomposition
+        String folded = text.replace('đ', 'd').replace('Đ', 'D');
+        StringBuilder terms = new StringBuilder();
+        for (String token : NON_WORD.split(folded)) {
+            if (token.isEmpty()) continue;
+            if (terms.length() > 0) terms.append(' ');
+            terms.append('"').append(token).append("\"*");
+        }
+        if (terms.length() == 0) return null;
+        
+        if (columns.length == 0) {
+            return terms.toString();
+        }
+        return "{" + String.join(" ", columns) + "} : (" + terms + ")";
+    }
+    
+    /**
+     * Cache key part for free text: FTS matching ignores case, diacritics and
+     * punctuation, so queries differing only in those share an entry
+     */
+    static String normalizeQuery(String text) {
+        if (text == null) return "";
+        StringBuilder key = new StringBuilder();
+        for (String token : NON_WORD.split(CatalogIndex.fold(text))) {
+            if (token.isEmpty()) continue;
+            if (key.length() > 0) key.append(' ');
+            key.append(token);
+        }
+        return key.toString();
+    }
+    
+    /**
+     * Cache key part for a LIKE filter: trimmed, and lowercased for ASCII only
+     * since that is all SQLite's LIKE folds
+     */
+    static String normalizeFilter(String text) {
+        if (text == null) return "";
+        char[] chars = text.trim().toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'A' && chars[i] <= 'Z') chars[i] += 'a' - 'A';
+        }
+        return new String(chars);
+    }
+    
     /**
      * Perform comprehensive book search with multiple criteria
      */
     public static String searchBooks(String query, String category, String author, String publisher, 
                                    Integer yearFrom, Integer yearTo, boolean availableOnly, int limit) {
+        String key = "SEARCH|" + normalizeQuery(query) + "|" + normalizeFilter(category) + "|" +
+                     normalizeFilter(author) + "|" + normalizeFilter(publisher) + "|" + yearFrom + "|" +
+                     yearTo + "|" + availableOnly + "|" + Math.max(limit, 0);
         try (Connection conn = DatabasePool.getInstance().getConnection()) {
+            // Read before the query, so the results are at least this new
+            long version = ChangeCounters.read(conn, ChangeCounters.CATALOG);
+            String cached = cache.get(key, version);
+            if (cached != null) return cached;
+            
             StringBuilder sql = new StringBuilder();
             List<Object> params = new ArrayList<>();
             
-            sql.append("SELECT DISTINCT b.id, b.title, b.author, b.publisher, b.year, b.quantity, ");
-            sql.append("(b.quantity - COALESCE(borrowed.count, 0)) as available ");
+            sql.append("SELECT b.id, b.title, b.author, b.publisher, b.year, b.quantity, ");
+            sql.append("COALESCE(s.available_copies, b.quantity) as available ");
             sql.append("FROM books b ");
-            sql.append("LEFT JOIN (SELECT book_id, COUNT(*) as count FROM borrows WHERE return_date IS NULL GROUP BY book_id) borrowed ");
-            sql.append("ON b.id = borrowed.book_id ");
-            sql.append("WHERE 1=1 ");
             
-            // Full-text search across multiple fields
-            if (query != null && !query.trim().isEmpty()) {
-                sql.append("AND (b.title LIKE ? OR b.author LIKE ? OR b.publisher LIKE ? OR b.description LIKE ?) ");
-                String searchTerm = "%" + query.trim() + "%";
-                params.add(searchTerm);
-                params.add(searchTerm);
-                params.add(searchTerm);
-                params.add(searchTerm);
+            // Full-text search across multiple fields through the FTS5 index
+            String matchQuery = buildMatchQuery(query);
+            if (matchQuery != null) {
+                sql.append("JOIN books_fts ON books_fts.rowid = b.id AND books_fts MATCH ? ");
+                params.add(matchQuery);
             }
             
+            // Availability comes from the maintained book_stats row, not a scan of open loans
+            sql.append("LEFT JOIN book_stats s ON s.book_id = b.id ");
+            sql.append("WHERE 1=1 ");
+            
             // Category filter (assuming categories table exists)
             if (category != null && !category.trim().isEmpty()) {
                 sql.append("AND EXISTS (SELECT 1 FROM book_categories bc JOIN categories c ON bc.category_id = c.id ");
@@ -68,22 +137,14 @@ public class AdvancedSearch {
             
             // Available books only
             if (availableOnly) {
-                sql.append("AND (b.quantity - COALESCE(borrowed.count, 0)) > 0 ");
+                sql.append("AND s.available_copies > 0 ");
             }
             
             // Ordering and limit
             sql.append("ORDER BY ");
-            if (query != null && !query.trim().isEmpty()) {
-                // Relevance scoring for text search
-                sql.append("CASE ");
-                sql.append("WHEN b.title LIKE ? THEN 1 ");
-                sql.append("WHEN b.author LIKE ? THEN 2 ");
-                sql.append("WHEN b.publisher LIKE ? THEN 3 ");
-                sql.append("ELSE 4 END, ");
-                String exactTerm = "%" + query.trim() + "%";
-                params.add(exactTerm);
-                params.add(exactTerm);
-                params.add(exactTerm);
+            if (matchQuery != null) {
+                // BM25 relevance, title weighted over author over publisher over description
+                sql.append(BM25_ORDER).append(", ");
             }
             sql.append("b.title ASC ");
             
@@ -113,7 +174,9 @@ public class AdvancedSearch {
             }
             
             MetricsCollector.recordDatabaseOperation(true);
-            return ResponseFormatter.success("SEARCH", ResponseFormatter.formatArray(books.toArray(new String[0])));
+            String response = ResponseFormatter.success("SEARCH", ResponseFormatter.formatArray(books.toArray(new String[0])));
+            cache.put(key, response, version);
+            return response;
             
         } catch (Exception e) {
             System.err.println("[ERROR] Advanced search failed: " + e.getMessage());
@@ -190,13 +253,17 @@ public class AdvancedSearch {
      * Get popular books based on borrow history
      */
     public static String getPopularBooks(int limit) {
+        String key = "POPULAR_BOOKS|" + limit;
         try (Connection conn = DatabasePool.getInstance().getConnection()) {
+            long version = ChangeCounters.read(conn, ChangeCounters.CATALOG);
+            String cached = cache.get(key, version);
+            if (cached != null) return cached;
+            
             String sql = "SELECT b.id, b.title, b.author, b.publisher, b.year, b.quantity, " +
-                        "COUNT(br.book_id) as borrow_count " +
-                        "FROM books b " +
-                        "LEFT JOIN borrows br ON b.id = br.book_id " +
-                        "GROUP BY b.id, b.title, b.author, b.publisher, b.year, b.quantity " +
-                        "ORDER BY borrow_count DESC, b.title ASC " +
+                        "s.total_borrows as borrow_count " +
+                        "FROM book_stats s " +
+                        "JOIN books b ON b.id = s.book_id " +
+                        "ORDER BY s.total_borrows DESC, b.title ASC " +
                         "LIMIT ?";
             
             PreparedStatement ps = conn.prepareStatement(sql);
@@ -216,7 +283,9 @@ public class AdvancedSearch {
             }
             
             MetricsCollector.recordDatabaseOperation(true);
-            return ResponseFormatter.success("POPULAR_BOOKS", ResponseFormatter.formatArray(books.toArray(new String[0])));
+            String response = ResponseFormatter.success("POPULAR_BOOKS", ResponseFormatter.formatArray(books.toArray(new String[0])));
+            cache.put(key, response, version);
+            return response;
             
         } catch (Exception e) {
             System.err.println("[ERROR] Popular books search failed: " + e.getMessage());
@@ -229,7 +298,12 @@ public class AdvancedSearch {
      * Get recently added books
      */
     public static String getRecentBooks(int limit) {
+        String key = "RECENT_BOOKS|" + limit;
         try (Connection conn = DatabasePool.getInstance().getConnection()) {
+            long version = ChangeCounters.read(conn, ChangeCounters.CATALOG);
+            String cached = cache.get(key, version);
+            if (cached != null) return cached;
+            
             String sql = "SELECT id, title, author, publisher, year, quantity " +
                         "FROM books " +
                         "ORDER BY id DESC " + // Assuming higher ID means more recent
@@ -252,7 +326,9 @@ public class AdvancedSearch {
             }
             
             MetricsCollector.recordDatabaseOperation(true);
-            return ResponseFormatter.success("RECENT_BOOKS", ResponseFormatter.formatArray(books.toArray(new String[0])));
+            String response = ResponseFormatter.success("RECENT_BOOKS", ResponseFormatter.formatArray(books.toArray(new String[0])));
+            cache.put(key, response, version);
+            return response;
             
         } catch (Exception e) {
             System.err.println("[ERROR] Recent books search failed: " + e.getMessage());
@@ -0,0 +1,324 @@
+package server;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keyset pagination over the catalog for the book grid.
+ * A page is fetched by seeking past the last id of the previous one, so deep
+ * pages cost the same as the first. Cursors are opaque tokens bound to the
+ * filters they were issued for. Totals come from a per-filter count cache
+ * that is refreshed in the background once it goes stale.
+ */
+public class BookBrowser {
+    static final String COLUMNS =
+            "b.id, b.title, b.author, b.publisher, b.year, b.category, b.quantity, b.cover_image, b.status";
+    private static final long COUNT_TTL_MS = ConfigManager.getInt("browse.count.ttl.seconds") * 1000L;
+    private static final int MAX_CACHED_COUNTS = 256;
+
+    private static final char AFTER = 'a';
+    private static final char BEFORE = 'b';
+    private static final char END = 'e';
+
+    private static final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
+    private static final ExecutorService countRefresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "browse-count-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Grid filters; blank values and the "all" category are ignored
+     */
+    public static class Criteria {
+        private final String search;
+        private final String author;
+        private final String publisher;
+        private final String category;
+
+        public Criteria(String search, String author, String publisher, String category) {
+            this.search = clean(search);
+            this.author = clean(author);
+            this.publisher = clean(publisher);
+            this.category = clean(category);
+        }
+
+        private static String clean(String value) {
+            return value == null ? "" : value.trim();
+        }
+
+        String matchQuery() {
+            List<String> groups = new ArrayList<>();
+            String text = AdvancedSearch.buildMatchQuery(search, "title", "author", "publisher");
+            if (text != null) groups.add(text);
+            String byAuthor = AdvancedSearch.buildMatchQuery(author, "author");
+            if (byAuthor != null) groups.add(byAuthor);
+            String byPublisher = AdvancedSearch.buildMatchQuery(publisher, "publisher");
+            if (byPublisher != null) groups.add(byPublisher);
+            return groups.isEmpty() ? null : String.join(" AND ", groups);
+        }
+
+        String key() {
+            return search + '\u0001' + author + '\u0001' + publisher + '\u0001' + category;
+        }
+    }
+
+    /**
+     * One page of results with the cursors that lead away from it
+     */
+    public static class Page {
+        private final List<Map<String, Object>> books;
+        private final String nextCursor;
+        private final String prevCursor;
+        private final String lastCursor;
+        private final int total;
+        private final boolean totalExact;
+
+        Page(List<Map<String, Object>> books, String nextCursor, String prevCursor, String lastCursor,
+             int total, boolean totalExact) {
+            this.books = books;
+            this.nextCursor = nextCursor;
+            this.prevCursor = prevCursor;
+            this.lastCursor = lastCursor;
+            this.total = total;
+            this.totalExact = totalExact;
+        }
+
+        public List<Map<String, Object>> getBooks() { return books; }
+        public String getNextCursor() { return nextCursor; }
+        public String getPrevCursor() { return prevCursor; }
+        public String getLastCursor() { return lastCursor; }
+        public int getTotal() { return total; }
+        public boolean isTotalExact() { return totalExact; }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("books", books);
+            map.put("next_cursor", nextCursor);
+            map.put("prev_cursor", prevCursor);
+            map.put("last_cursor", lastCursor);
+            map.put("total", total);
+            map.put("total_exact", totalExact);
+            return map;
+        }
+    }
+
+    private static class CachedCount {
+        final int count;
+        final long computedAt;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        CachedCount(int count) {
+            this.count = count;
+            this.computedAt = System.currentTimeMillis();
+        }
+
+        boolean isStale() {
+            return System.currentTimeMillis() - computedAt > COUNT_TTL_MS;
+        }
+    }
+
+    /**
+     * Fetch the page addressed by cursor; a null or empty cursor means the first page.
+     * Throws IllegalArgumentException when the cursor is malformed or was issued
+     * for different filters.
+     */
+    public static Page browse(Connection conn, Criteria criteria, String cursor, int limit) throws SQLException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit");
+        }
+        String fingerprint = Integer.toHexString(criteria.key().hashCode());
+        char direction = AFTER;
+        int boundary = 0;
+        boolean first = cursor == null || cursor.isEmpty();
+        if (!first) {
+            String[] token = decode(cursor);
+            if (!token[2].equals(fingerprint)) {
+                throw new IllegalArgumentException("Cursor does not match the current filters");
+            }
+            direction = token[0].charAt(0);
+            boundary = Integer.parseInt(token[1]);
+        }
+
+        int total;
+        boolean totalExact;
+        String key = criteria.key();
+        CachedCount cached = counts.get(key);
+        if (cached == null) {
+            total = count(conn, criteria);
+            totalExact = true;
+        } else {
+            total = cached.count;
+            totalExact = !cached.isStale();
+            if (!totalExact) {
+                refreshCountAsync(criteria, cached);
+            }
+        }
+
+        int fetch;
+        if (direction == END) {
+            int tail = total % limit == 0 ? limit : total % limit;
+            fetch = tail + 1;
+        } else {
+            fetch = limit + 1;
+        }
+
+        List<Map<String, Object>> rows = fetch(conn, criteria, direction, first ? null : boundary, fetch);
+        boolean more = rows.size() == fetch;
+        if (more) {
+            rows.remove(rows.size() - 1);
+        }
+        if (direction != AFTER) {
+            Collections.reverse(rows);
+        }
+
+        String next = null;
+        String prev = null;
+        if (!rows.isEmpty()) {
+            int firstId = (Integer) rows.get(0).get("id");
+            int lastId = (Integer) rows.get(rows.size() - 1).get("id");
+            if (direction == AFTER) {
+                if (more) next = encode(AFTER, lastId, fingerprint);
+                if (!first) prev = encode(BEFORE, firstId, fingerprint);
+            } else {
+                if (direction == BEFORE) next = encode(AFTER, lastId, fingerprint);
+                if (more) prev = encode(BEFORE, firstId, fingerprint);
+            }
+        }
+        String last = total > limit ? encode(END, 0, fingerprint) : null;
+        return new Page(rows, next, prev, last, total, totalExact);
+    }
+
+    private static List<Map<String, Object>> fetch(Connection conn, Criteria criteria, char direction,
+                                                   Integer boundary, int fetch) throws SQLException {
+        // With a text filter the FTS index drives the walk in rowid order, so only
+        // the matches on this page are read instead of the whole match set
+        String matchQuery = criteria.matchQuery();
+        String key = matchQuery != null ? "books_fts.rowid" : "b.id";
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS);
+        List<Object> params = new ArrayList<>();
+        if (matchQuery != null) {
+            // CROSS JOIN pins the join order; otherwise a category filter makes books the outer loop
+            sql.append(" FROM books_fts CROSS JOIN books b ON b.id = books_fts.rowid WHERE books_fts MATCH ?");
+            params.add(matchQuery);
+        } else {
+            sql.append(" FROM books b WHERE 1=1");
+        }
+        if (!criteria.category.isEmpty()) {
+            sql.append(" AND b.category = ?");
+            params.add(criteria.category);
+        }
+        if (boundary != null && direction != END) {
+            sql.append(" AND ").append(key).append(direction == AFTER ? " > ?" : " < ?");
+            params.add(boundary);
+        }
+        sql.append(" ORDER BY ").append(key).append(direction == AFTER ? "" : " DESC").append(" LIMIT ?");
+        params.add(fetch);
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Map<String, Object> book = new LinkedHashMap<>();
+                    book.put("id", rs.getInt("id"));
+                    book.put("title", rs.getString("title"));
+                    book.put("author", rs.getString("author"));
+                    book.put("publisher", rs.getString("publisher"));
+                    book.put("year", rs.getString("year"));
+                    book.put("category", rs.getString("category"));
+                    book.put("quantity", rs.getInt("quantity"));
+                    book.put("cover_image", rs.getString("cover_image"));
+                    book.put("status", rs.getString("status"));
+                    rows.add(book);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void appendFilters(StringBuilder sql, List<Object> params, Criteria criteria) {
+        String matchQuery = criteria.matchQuery();
+        if (matchQuery != null) {
+            sql.append(" AND id IN (SELECT rowid FROM books_fts WHERE books_fts MATCH ?)");
+            params.add(matchQuery);
+        }
+        if (!criteria.category.isEmpty()) {
+            sql.append(" AND category = ?");
+            params.add(criteria.category);
+        }
+    }
+
+    private static int count(Connection conn, Criteria criteria) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM books WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+        appendFilters(sql, params, criteria);
+        int total;
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            for (int i = 0; i < params.size(); i++) {
+                ps.setObject(i + 1, params.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                total = rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+        if (counts.size() >= MAX_CACHED_COUNTS) {
+            counts.clear();
+        }
+        counts.put(criteria.key(), new CachedCount(total));
+        return total;
+    }
+
+    private static void refreshCountAsync(Criteria criteria, CachedCount stale) {
+        if (!stale.refreshing.compareAndSet(false, true)) return;
+        countRefresher.execute(() -> {
+            try (Connection conn = DatabasePool.getInstance().getConnection()) {
+                count(conn, criteria);
+            } catch (Exception e) {
+                stale.refreshing.set(false);
+                System.err.println("[BROWSE] Count refresh failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Drop every cached total, e.g. after a bulk import
+     */
+    public static void invalidateCounts() {
+        counts.clear();
+    }
+
+    private static String encode(char direction, int id, String fingerprint) {
+        String raw = direction + ":" + id + ":" + fingerprint;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] token = raw.split(":", -1);
+            if (token.length != 3 || token[0].length() != 1 || "abe".indexOf(token[0].charAt(0)) < 0) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            Integer.parseInt(token[1]);
+            return token;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
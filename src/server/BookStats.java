@@ -0,0 +1,90 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-book aggregates kept in the book_stats table.
+ * Triggers on books, borrows and ratings (schema v8) update a row in the same
+ * transaction as the change, whichever client made it. The reconciler
+ * recomputes every row from the source tables and repairs any drift.
+ */
+public class BookStats {
+
+    /**
+     * A loan is open until return_date is set; the desktop client writes '' (older
+     * versions the text 'null') for "not returned"
+     */
+    static final String OPEN_LOAN = "(return_date IS NULL OR return_date = '' OR return_date = 'null')";
+
+    private static final String EXPECTED =
+            "SELECT b.id AS book_id, " +
+            "COALESCE(b.quantity, 0) AS available_copies, " +
+            "(SELECT COUNT(*) FROM borrows WHERE book_id = b.id AND " + OPEN_LOAN + ") AS active_loans, " +
+            "(SELECT COUNT(*) FROM borrows WHERE book_id = b.id) AS total_borrows, " +
+            "(SELECT COALESCE(SUM(rating), 0) FROM ratings WHERE book_id = b.id) AS rating_sum, " +
+            "(SELECT COUNT(rating) FROM ratings WHERE book_id = b.id) AS rating_count " +
+            "FROM books b";
+
+    private static ScheduledExecutorService reconcileService;
+
+    /**
+     * Recompute every book's row and rewrite the ones that differ.
+     * Returns the number of rows inserted, corrected or removed.
+     */
+    public static int reconcile(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            int fixed = stmt.executeUpdate(
+                    "INSERT OR REPLACE INTO book_stats(book_id, available_copies, active_loans, " +
+                    "total_borrows, rating_sum, rating_count) " +
+                    "SELECT e.* FROM (" + EXPECTED + ") e LEFT JOIN book_stats s ON s.book_id = e.book_id " +
+                    "WHERE s.book_id IS NULL OR s.available_copies IS NOT e.available_copies " +
+                    "OR s.active_loans IS NOT e.active_loans OR s.total_borrows IS NOT e.total_borrows " +
+                    "OR s.rating_sum IS NOT e.rating_sum OR s.rating_count IS NOT e.rating_count");
+            fixed += stmt.executeUpdate(
+                    "DELETE FROM book_stats WHERE book_id NOT IN (SELECT id FROM books)");
+            return fixed;
+        }
+    }
+
+    /**
+     * Reconcile using a pooled connection, logging any drift found.
+     * The dashboard rollups are rebuilt from history by the same job.
+     */
+    public static void reconcile() {
+        try (Connection conn = DatabasePool.getInstance().getConnection()) {
+            int fixed = reconcile(conn);
+            if (fixed > 0) {
+                System.out.println("[STATS] Reconciled " + fixed + " drifted book_stats rows");
+            }
+            DashboardStats.rebuild(conn);
+        } catch (Exception e) {
+            System.err.println("[STATS] Statistics reconciliation failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Run the reconciler in the background at a fixed interval
+     */
+    public static synchronized void startReconciler(long intervalMinutes) {
+        if (reconcileService != null || intervalMinutes <= 0) return;
+        reconcileService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "book-stats-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        // Runs as background work so a full-table pass never crowds out requests
+        reconcileService.scheduleWithFixedDelay(() -> {
+            try {
+                RequestScheduler.getInstance().execute(RequestScheduler.WorkClass.BACKGROUND, "book-stats", 1,
+                        BookStats::reconcile);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,562 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over the book catalog.
+ * Serves SEARCH and /api/search without a database round trip. Handlers that
+ * change books update it in place; a periodic reload picks up writes made
+ * directly against the database by the desktop client.
+ */
+public class CatalogIndex {
+    private static final float TITLE_BOOST = 3.0f;
+    private static final float AUTHOR_BOOST = 2.0f;
+    private static final float PUBLISHER_BOOST = 1.0f;
+    private static final float PREFIX_WEIGHT = 0.5f;
+    private static final int MAX_PREFIX_EXPANSIONS = 128;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final char[] FOLD_TABLE = buildFoldTable();
+
+    private static final CatalogIndex instance = new CatalogIndex();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private TreeMap<String, Postings> terms = new TreeMap<>();
+    private TreeMap<Integer, BookEntry> books = new TreeMap<>();
+    private volatile boolean loaded = false;
+    private ScheduledExecutorService refreshService;
+
+    private CatalogIndex() {
+        // Private constructor for singleton
+    }
+
+    public static CatalogIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * Catalog fields needed to answer a search without touching the database
+     */
+    public static class BookEntry {
+        private final int id;
+        private final String title;
+        private final String author;
+        private final String publisher;
+        private final String year;
+        private volatile int quantity;
+        private final String[] terms;
+        private final float[] termWeights;
+
+        BookEntry(int id, String title, String author, String publisher, String year, int quantity) {
+            this.id = id;
+            this.title = title;
+            this.author = author;
+            this.publisher = publisher;
+            this.year = year;
+            this.quantity = quantity;
+
+            // Field-boosted term frequencies
+            Map<String, Float> weights = new LinkedHashMap<>();
+            addField(weights, title, TITLE_BOOST);
+            addField(weights, author, AUTHOR_BOOST);
+            addField(weights, publisher, PUBLISHER_BOOST);
+            this.terms = new String[weights.size()];
+            this.termWeights = new float[weights.size()];
+            int i = 0;
+            for (Map.Entry<String, Float> entry : weights.entrySet()) {
+                terms[i] = entry.getKey();
+                termWeights[i++] = entry.getValue();
+            }
+        }
+
+        private static void addField(Map<String, Float> weights, String text, float boost) {
+            for (String token : tokenize(text)) {
+                weights.merge(token, boost, Float::sum);
+            }
+        }
+
+        public int getId() { return id; }
+        public String getTitle() { return title; }
+        public String getAuthor() { return author; }
+        public String getPublisher() { return publisher; }
+        public String getYear() { return year; }
+        public int getQuantity() { return quantity; }
+    }
+
+    /**
+     * Posting list: book ids in ascending order with a parallel weight array
+     */
+    private static final class Postings {
+        int[] docs = new int[4];
+        float[] weights = new float[4];
+        int size;
+
+        void put(int doc, float weight) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos >= 0) {
+                weights[pos] = weight;
+                return;
+            }
+            pos = -pos - 1;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            System.arraycopy(docs, pos, docs, pos + 1, size - pos);
+            System.arraycopy(weights, pos, weights, pos + 1, size - pos);
+            docs[pos] = doc;
+            weights[pos] = weight;
+            size++;
+        }
+
+        void remove(int doc) {
+            int pos = Arrays.binarySearch(docs, 0, size, doc);
+            if (pos < 0) return;
+            System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+            System.arraycopy(weights, pos + 1, weights, pos, size - pos - 1);
+            size--;
+        }
+    }
+
+    /**
+     * Scored candidate set, sorted by book id
+     */
+    private static final class Hits {
+        static final Hits EMPTY = new Hits(new int[0], new float[0], 0);
+
+        final int[] docs;
+        final float[] scores;
+        final int size;
+
+        Hits(int[] docs, float[] scores, int size) {
+            this.docs = docs;
+            this.scores = scores;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Lowercase, strip diacritics (including đ) and split into words
+     */
+    public static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) return Collections.emptyList();
+
+        String folded = fold(text);
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < folded.length(); i++) {
+            if (Character.isLetterOrDigit(folded.charAt(i))) {
+                if (start < 0) start = i;
+            } else if (start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) tokens.add(folded.substring(start));
+        return tokens;
+    }
+
+    /**
+     * Diacritic-folded lowercase form used for both indexing and queries
+     */
+    public static String fold(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            char c = chars[i];
+            chars[i] = c < FOLD_TABLE.length ? FOLD_TABLE[c] : Character.toLowerCase(c);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Folded form of every character up to the end of Latin Extended Additional
+     * (which holds the precomposed Vietnamese vowels), computed once
+     */
+    private static char[] buildFoldTable() {
+        char[] table = new char[0x1F00];
+        for (int c = 0; c < table.length; c++) {
+            String decomposed = Normalizer.normalize(String.valueOf((char) c), Normalizer.Form.NFD);
+            String stripped = MARKS.matcher(decomposed).replaceAll("");
+            char base = stripped.length() == 1 ? stripped.charAt(0) : (char) c;
+            table[c] = Character.toLowerCase(base);
+        }
+        // đ/Đ have no canonical decomposition
+        table['đ'] = 'd';
+        table['Đ'] = 'd';
+        return table;
+    }
+
+    /**
+     * Load the whole catalog from the database
+     */
+    public void reload() {
+        try (Connection conn = DatabasePool.getInstance().getConnection()) {
+            reload(conn);
+        } catch (Exception e) {
+            System.err.println("[SEARCH] Failed to load catalog index: " + e.getMessage());
+        }
+    }
+
+    public void reload(Connection conn) throws Exception {
+        long start = System.currentTimeMillis();
+        TreeMap<Integer, BookEntry> newBooks = new TreeMap<>();
+        TreeMap<String, Postings> newTerms = new TreeMap<>();
+
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id, title, author, publisher, year, quantity FROM books ORDER BY id")) {
+            while (rs.next()) {
+                BookEntry book = new BookEntry(rs.getInt("id"), rs.getString("title"), rs.getString("author"),
+                        rs.getString("publisher"), rs.getString("year"), rs.getInt("quantity"));
+                newBooks.put(book.id, book);
+                // Rows arrive in id order, so posting lists only ever grow at the end
+                for (int i = 0; i < book.terms.length; i++) {
+                    newTerms.computeIfAbsent(book.terms[i], k -> new Postings()).put(book.id, book.termWeights[i]);
+                }
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            books = newBooks;
+            terms = newTerms;
+            loaded = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        System.out.println("[SEARCH] Catalog index loaded: " + newBooks.size() + " books, "
+                + newTerms.size() + " terms in " + (System.currentTimeMillis() - start) + "ms");
+
+        SuggestIndex.getInstance().reload(conn);
+    }
+
+    /**
+     * Reload periodically so edits made outside the server become searchable
+     */
+    public synchronized void startAutoRefresh(long intervalSeconds) {
+        if (refreshService != null || intervalSeconds <= 0) return;
+        refreshService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-index-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refreshService.scheduleWithFixedDelay(this::reload, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return books.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Snapshot of every indexed book in id order
+     */
+    public List<BookEntry> books() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(books.values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexed entry for a book id, or null when unknown
+     */
+    public BookEntry get(int id) {
+        lock.readLock().lock();
+        try {
+            return books.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Index a new book or re-index an edited one
+     */
+    public void addOrUpdate(int id, String title, String author, String publisher, String year, int quantity) {
+        BookEntry book = new BookEntry(id, title, author, publisher, year, quantity);
+        lock.writeLock().lock();
+        try {
+            removeTerms(books.get(id));
+            books.put(id, book);
+            for (int i = 0; i < book.terms.length; i++) {
+                terms.computeIfAbsent(book.terms[i], k -> new Postings()).put(id, book.termWeights[i]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        SuggestIndex.getInstance().refresh();
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            removeTerms(books.remove(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        SuggestIndex.getInstance().refresh();
+    }
+
+    /**
+     * Apply a stock change (borrow, return) without re-indexing text
+     */
+    public void adjustQuantity(int id, int delta) {
+        lock.readLock().lock();
+        try {
+            BookEntry book = books.get(id);
+            if (book != null) {
+                synchronized (book) {
+                    book.quantity += delta;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeTerms(BookEntry book) {
+        if (book == null) return;
+        for (String term : book.terms) {
+            Postings postings = terms.get(term);
+            if (postings == null) continue;
+            postings.remove(book.id);
+            if (postings.size == 0) {
+                terms.remove(term);
+            }
+        }
+    }
+
+    /**
+     * Search the catalog. Words are ANDed; the keyword OR separates alternatives.
+     * Every word matches whole index terms and, at reduced weight, terms it is a
+     * prefix of. An empty query lists books in id order.
+     */
+    public List<BookEntry> search(String query, int limit) {
+        List<List<String>> clauses = parseQuery(query);
+
+        lock.readLock().lock();
+        try {
+            if (clauses.isEmpty()) {
+                List<BookEntry> all = new ArrayList<>(Math.min(limit, books.size()));
+                for (BookEntry book : books.values()) {
+                    if (all.size() >= limit) break;
+                    all.add(book);
+                }
+                return all;
+            }
+
+            Hits result = Hits.EMPTY;
+            for (List<String> clause : clauses) {
+                result = merge(result, matchAll(clause), true);
+            }
+            return topK(result, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<List<String>> parseQuery(String query) {
+        List<List<String>> clauses = new ArrayList<>();
+        if (query == null) return clauses;
+
+        List<String> current = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            if ("OR".equals(word)) {
+                if (!current.isEmpty()) clauses.add(current);
+                current = new ArrayList<>();
+            } else {
+                current.addAll(tokenize(word));
+            }
+        }
+        if (!current.isEmpty()) clauses.add(current);
+        return clauses;
+    }
+
+    /**
+     * Intersect the hits of every term, rarest first
+     */
+    private Hits matchAll(List<String> clause) {
+        List<Hits> perTerm = new ArrayList<>(clause.size());
+        for (String term : new LinkedHashSet<>(clause)) {
+            Hits hits = matchTerm(term);
+            if (hits.size == 0) return Hits.EMPTY;
+            perTerm.add(hits);
+        }
+        perTerm.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        Hits result = perTerm.get(0);
+        for (int i = 1; i < perTerm.size() && result.size > 0; i++) {
+            result = intersect(result, perTerm.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Union of the exact term and its prefix expansions, best weight per book
+     */
+    private Hits matchTerm(String term) {
+        SortedMap<String, Postings> expansions = terms.subMap(term, term + Character.MAX_VALUE);
+        List<Hits> lists = new ArrayList<>();
+        int n = books.size();
+        for (Map.Entry<String, Postings> entry : expansions.entrySet()) {
+            if (lists.size() >= MAX_PREFIX_EXPANSIONS) break;
+            Postings postings = entry.getValue();
+            float idf = (float) Math.log(1.0 + (double) n / postings.size);
+            float factor = entry.getKey().length() == term.length() ? idf : idf * PREFIX_WEIGHT;
+
+            float[] scores = new float[postings.size];
+            for (int i = 0; i < postings.size; i++) {
+                scores[i] = postings.weights[i] * factor;
+            }
+            lists.add(new Hits(postings.docs, scores, postings.size));
+        }
+        return unionAll(lists, 0, lists.size());
+    }
+
+    private static Hits unionAll(List<Hits> lists, int from, int to) {
+        if (to - from == 0) return Hits.EMPTY;
+        if (to - from == 1) return lists.get(from);
+        int mid = (from + to) >>> 1;
+        return merge(unionAll(lists, from, mid), unionAll(lists, mid, to), false);
+    }
+
+    /**
+     * Merge two sorted hit lists; scores of common books are summed or maxed
+     */
+    private static Hits merge(Hits a, Hits b, boolean sum) {
+        if (a.size == 0) return b;
+        if (b.size == 0) return a;
+        int[] docs = new int[a.size + b.size];
+        float[] scores = new float[a.size + b.size];
+        int i = 0, j = 0, k = 0;
+        while (i < a.size && j < b.size) {
+            int da = a.docs[i], db = b.docs[j];
+            if (da < db) {
+                docs[k] = da;
+                scores[k++] = a.scores[i++];
+            } else if (db < da) {
+                docs[k] = db;
+                scores[k++] = b.scores[j++];
+            } else {
+                docs[k] = da;
+                scores[k++] = sum ? a.scores[i] + b.scores[j] : Math.max(a.scores[i], b.scores[j]);
+                i++;
+                j++;
+            }
+        }
+        while (i < a.size) {
+            docs[k] = a.docs[i];
+            scores[k++] = a.scores[i++];
+        }
+        while (j < b.size) {
+            docs[k] = b.docs[j];
+            scores[k++] = b.scores[j++];
+        }
+        return new Hits(docs, scores, k);
+    }
+
+    private static Hits intersect(Hits a, Hits b) {
+        int[] docs = new int[Math.min(a.size, b.size)];
+        float[] scores = new float[docs.length];
+        int i = 0, j = 0, k = 0;
+        while (i < a.size && j < b.size) {
+            int da = a.docs[i], db = b.docs[j];
+            if (da < db) {
+                i++;
+            } else if (db < da) {
+                j++;
+            } else {
+                docs[k] = da;
+                scores[k++] = a.scores[i++] + b.scores[j++];
+            }
+        }
+        return new Hits(docs, scores, k);
+    }
+
+    /**
+     * Highest scoring books, ties broken by id. Bounded min-heap of hit
+     * positions, so only candidates that beat the current k-th are touched.
+     */
+    private List<BookEntry> topK(Hits hits, int limit) {
+        if (hits.size == 0 || limit <= 0) return Collections.emptyList();
+
+        int[] heap = new int[Math.min(limit, hits.size)];
+        int size = 0;
+        for (int i = 0; i < hits.size; i++) {
+            if (size < heap.length) {
+                heap[size] = i;
+                siftUp(hits, heap, size++);
+            } else if (ranksAbove(hits, i, heap[0])) {
+                heap[0] = i;
+                siftDown(hits, heap, size);
+            }
+        }
+
+        BookEntry[] ranked = new BookEntry[size];
+        while (size > 0) {
+            ranked[size - 1] = books.get(hits.docs[heap[0]]);
+            heap[0] = heap[--size];
+            siftDown(hits, heap, size);
+        }
+        return Arrays.asList(ranked);
+    }
+
+    private static boolean ranksAbove(Hits hits, int x, int y) {
+        float sx = hits.scores[x], sy = hits.scores[y];
+        return sx != sy ? sx > sy : hits.docs[x] < hits.docs[y];
+    }
+
+    private static void siftUp(Hits hits, int[] heap, int pos) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!ranksAbove(hits, heap[parent], heap[pos])) break;
+            int tmp = heap[parent];
+            heap[parent] = heap[pos];
+            heap[pos] = tmp;
+            pos = parent;
+        }
+    }
+
+    private static void siftDown(Hits hits, int[] heap, int size) {
+        int pos = 0;
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) break;
+            if (child + 1 < size && ranksAbove(hits, heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!ranksAbove(hits, heap[pos], heap[child])) break;
+            int tmp = heap[pos];
+            heap[pos] = heap[child];
+            heap[child] = tmp;
+            pos = child;
+        }
+    }
+}
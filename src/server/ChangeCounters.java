@@ -0,0 +1,35 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Rows of the change_counters table. Each counter is bumped by triggers on the
+ * tables it covers, so writes made straight to the database by the desktop
+ * client are seen as well as the server's own.
+ */
+public final class ChangeCounters {
+    // Rows the recommendation models train on (schema v12)
+    public static final String RECOMMENDATIONS = "recommendations";
+    // Books and their stock and borrow counts, as read by catalog searches (schema v13)
+    public static final String CATALOG = "catalog";
+
+    private ChangeCounters() {
+    }
+
+    /**
+     * Current value of the named counter, or -1 when the database does not have it
+     */
+    public static long read(Connection conn, String name) {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT value FROM change_counters WHERE name = ?")) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        } catch (SQLException e) {
+            return -1;
+        }
+    }
+}
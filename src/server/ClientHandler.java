@@ -9,6 +9,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.RejectedExecutionException;
 
 import dao.UserDAO;
 
@@ -18,10 +22,13 @@ public class ClientHandler implements Runnable {
     private PrintWriter out;
     private SessionManager.ClientSession session;
     private String clientIdentifier;
+    private String clientAddress;
 
     public ClientHandler(Socket socket) {
         this.socket = socket;
         this.clientIdentifier = socket.getRemoteSocketAddress().toString();
+        // Rate limits follow the host, not the connection, so reconnecting does not reset them
+        this.clientAddress = socket.getInetAddress().getHostAddress();
         this.session = SessionManager.createSession(clientIdentifier);
         System.out.println("[INFO] New client handler created for: " + clientIdentifier);
     }
@@ -56,49 +63,40 @@ public class ClientHandler implements Runnable {
                 String[] parts = request.split("\\|", -1);
                 String cmd = parts[0];
 
-                switch (cmd) {
-                    case "LOGIN":
-                        handleLogin(parts);
-                        break;
-                    case "REGISTER":
-                        handleRegister(parts);
-                        break;
-                    case "SEARCH":
-                        handleSearch(parts);
-                        break;
-                    case "BORROW":
-                        handleBorrow(parts);
-                        break;
-                    case "RETURN":
-                        handleReturn(parts);
-                        break;
-                    case "ADD_BOOK":
-                        handleAddBook(parts);
-                        break;
-                    case "DELETE_BOOK":
-                        handleDeleteBook(parts);
-                        break;
-                    case "LIST_BORROWS":
-                        handleListBorrows();
-                        break;
-                    case "FAVORITE":
-                        handleFavorite(parts);
-                        break;
-                    case "LIST_ACTIVITIES":
-                        handleListActivities(parts);
-                        break;
-                    case "LIST_FAVORITES":
-                        handleListFavorites(parts);
-                        break;
-                    case "LIST_BORROWED":
-                        handleListBorrowed(parts);
-                        break;
-                    case "EXIT":
-                        out.println("BYE");
-                        socket.close();
-                        return;
-                    default:
-                        out.println("ERROR|Unknown command");
+                long retryAfterMs = RateLimiter.getInstance().tryAcquire(RateLimiter.Channel.TCP, clientAddress, session.getUserId(), cmd);
+                if (retryAfterMs > 0) {
+                    java.util.Map<String, Object> details = new java.util.HashMap<>();
+                    details.put("retryAfterMs", retryAfterMs);
+                    out.println(ResponseFormatter.error(cmd, I18nManager.getMessage("rate.limit.exceeded"), details));
+                    System.err.println("[SECURITY] Rate limit exceeded for " + clientIdentifier + " on " + cmd);
+                    continue;
+                }
+
+                if ("EXIT".equals(cmd)) {
+                    out.println("BYE");
+                    socket.close();
+                    return;
+                }
+
+                // Sign-ins beyond what the credential pool can take are turned away
+                // before they queue for a worker
+                RequestScheduler.WorkClass workClass = RequestScheduler.classify(cmd);
+                if (workClass == RequestScheduler.WorkClass.AUTH && credentialBacklogFull()) {
+                    MetricsCollector.recordCredentialRejection();
+                    out.println("LOGIN".equals(cmd)
+                            ? ResponseFormatter.error("LOGIN", "Server busy, please try again")
+                            : "REGISTER_FAIL|Server busy, please try again");
+                    continue;
+                }
+
+                // Commands run on the shared workers, queued fairly by kind and by user
+                Object flowKey = session.getUserId() > 0 ? (Object) session.getUserId() : clientAddress;
+                try {
+                    RequestScheduler.getInstance().execute(workClass, flowKey,
+                            RateLimiter.getCost(cmd), () -> dispatch(cmd, parts));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
             }
 
@@ -122,6 +120,76 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    /**
+     * Whether the sign-ins hashing, queued for hashing and waiting for a worker
+     * already fill the credential pool
+     */
+    private static boolean credentialBacklogFull() {
+        int waiting = RequestScheduler.getInstance().getQueued(RequestScheduler.WorkClass.AUTH);
+        return CredentialService.pending() + waiting >= CredentialService.getCapacity();
+    }
+
+    /**
+     * Run one command; called on a scheduler worker while the connection thread waits
+     */
+    private void dispatch(String cmd, String[] parts) {
+        switch (cmd) {
+            case "LOGIN":
+                handleLogin(parts);
+                break;
+            case "REGISTER":
+                handleRegister(parts);
+                break;
+            case "SEARCH":
+                handleSearch(parts);
+                break;
+            case "SUGGEST":
+                handleSuggest(parts);
+                break;
+            case "BROWSE_BOOKS":
+                handleBrowseBooks(parts);
+                break;
+            case "FACETS":
+                handleFacets(parts);
+                break;
+            case "TRENDING":
+                handleTrending(parts);
+                break;
+            case "BORROW":
+                handleBorrow(parts);
+                break;
+            case "RETURN":
+                handleReturn(parts);
+                break;
+            case "ADD_BOOK":
+                handleAddBook(parts);
+                break;
+            case "DELETE_BOOK":
+                handleDeleteBook(parts);
+                break;
+            case "LIST_BORROWS":
+                handleListBorrows();
+                break;
+            case "FAVORITE":
+                handleFavorite(parts);
+                break;
+            case "LIST_ACTIVITIES":
+                handleListActivities(parts);
+                break;
+            case "LIST_FAVORITES":
+                handleListFavorites(parts);
+                break;
+            case "LIST_BORROWED":
+                handleListBorrowed(parts);
+                break;
+            case "DASHBOARD_STATS":
+                handleDashboardStats();
+                break;
+            default:
+                out.println("ERROR|Unknown command");
+        }
+    }
+
     private Connection getConnection() throws Exception {
         return DatabasePool.getInstance().getConnection();
     }
@@ -142,6 +210,7 @@ public class ClientHandler implements Runnable {
         // Hard-coded admin for backward compatibility
         if ("admin".equals(username) && "admin".equals(password)) {
             session.authenticate(username, "admin");
+            session.setUserId(1);
             
             java.util.Map<String, Object> userData = new java.util.HashMap<>();
             userData.put("id", 1);
@@ -154,51 +223,60 @@ public class ClientHandler implements Runnable {
             return;
         }
 
-        try (Connection conn = getConnection()) {
-            // Add status column if not exists
-            try {
-                Statement stmt = conn.createStatement();
-                stmt.execute("ALTER TABLE users ADD COLUMN status TEXT DEFAULT 'active'");
-            } catch (SQLException e) {
-                // Column already exists
-            }
-
-            PreparedStatement ps = conn.prepareStatement(
-                "SELECT id, role, status, password FROM users WHERE username=?");
-            ps.setString(1, username);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                String dbPassword = rs.getString("password");
-                if (!PasswordUtil.verifyPassword(password, dbPassword)) {
+        try {
+            int id;
+            String role;
+            String status;
+            String dbPassword;
+            // Read the row and hand the connection back before the slow hash check
+            try (Connection conn = getConnection()) {
+                PreparedStatement ps = conn.prepareStatement(
+                    "SELECT id, role, status, password FROM users WHERE username=?");
+                ps.setString(1, username);
+                ResultSet rs = ps.executeQuery();
+                if (!rs.next()) {
                     out.println(ResponseFormatter.error("LOGIN", "Invalid credentials"));
-                    System.err.println("[SECURITY] Failed login attempt for user: " + username + " from: " + clientIdentifier);
-                    return;
-                }
-                
-                int id = rs.getInt("id");
-                String role = rs.getString("role");
-                String status = rs.getString("status");
-
-                if ("locked".equals(status)) {
-                    out.println(ResponseFormatter.error("LOGIN", "Tài khoản của bạn đã bị khóa, vui lòng đến thư viện hoặc liên hệ số 1900 2004 để biết chi tiết"));
-                    System.err.println("[SECURITY] Locked account login attempt: " + username + " from: " + clientIdentifier);
+                    System.err.println("[SECURITY] Failed login attempt for unknown user: " + username + " from: " + clientIdentifier);
                     return;
                 }
+                id = rs.getInt("id");
+                role = rs.getString("role");
+                status = rs.getString("status");
+                dbPassword = rs.getString("password");
+            }
 
-                session.authenticate(username, role);
-                
-                java.util.Map<String, Object> userData = new java.util.HashMap<>();
-                userData.put("id", id);
-                userData.put("username", username);
-                userData.put("role", role);
-                userData.put("sessionId", clientIdentifier);
-                
-                out.println(ResponseFormatter.success("LOGIN", userData));
-                System.out.println("[INFO] User login successful: " + username + " (" + role + ") from: " + clientIdentifier);
-            } else {
+            CredentialService.Verification verification = CredentialService.verify(password, dbPassword);
+            if (verification.isBusy()) {
+                out.println(ResponseFormatter.error("LOGIN", "Server busy, please try again"));
+                System.err.println("[SECURITY] Login rejected, credential queue full: " + username + " from: " + clientIdentifier);
+                return;
+            }
+            if (!verification.isValid()) {
                 out.println(ResponseFormatter.error("LOGIN", "Invalid credentials"));
-                System.err.println("[SECURITY] Failed login attempt for unknown user: " + username + " from: " + clientIdentifier);
+                System.err.println("[SECURITY] Failed login attempt for user: " + username + " from: " + clientIdentifier);
+                return;
             }
+            if (verification.getUpgradedHash() != null) {
+                CredentialService.saveUpgradedHash(id, dbPassword, verification.getUpgradedHash());
+            }
+
+            if ("locked".equals(status)) {
+                out.println(ResponseFormatter.error("LOGIN", "Tài khoản của bạn đã bị khóa, vui lòng đến thư viện hoặc liên hệ số 1900 2004 để biết chi tiết"));
+                System.err.println("[SECURITY] Locked account login attempt: " + username + " from: " + clientIdentifier);
+                return;
+            }
+
+            session.authenticate(username, role);
+            session.setUserId(id);
+            
+            java.util.Map<String, Object> userData = new java.util.HashMap<>();
+            userData.put("id", id);
+            userData.put("username", username);
+            userData.put("role", role);
+            userData.put("sessionId", clientIdentifier);
+            
+            out.println(ResponseFormatter.success("LOGIN", userData));
+            System.out.println("[INFO] User login successful: " + username + " (" + role + ") from: " + clientIdentifier);
         } catch (Exception e) {
             out.println(ResponseFormatter.error("LOGIN", e.getMessage()));
             System.err.println("[ERROR] Login error for user " + username + ": " + e.getMessage());
@@ -233,10 +311,9 @@ public class ClientHandler implements Runnable {
             return;
         }
         
-        // Hash password before storing
-        String hashedPassword = PasswordUtil.hashPassword(password);
-        
         try {
+            // Hash password before storing
+            String hashedPassword = CredentialService.hash(password);
             UserDAO dao = new UserDAO();
             int result = dao.createUser(username, hashedPassword, role, phone, email, avatar);
             if (result > 0) {
@@ -246,6 +323,9 @@ public class ClientHandler implements Runnable {
                 out.println("REGISTER_FAIL|Could not create user");
                 System.err.println("[ERROR] Failed to create user: " + username);
             }
+        } catch (RejectedExecutionException e) {
+            out.println("REGISTER_FAIL|Server busy, please try again");
+            System.err.println("[SECURITY] Registration rejected, credential queue full: " + username);
         } catch (Exception e) {
             out.println("REGISTER_FAIL|" + e.getMessage());
             System.err.println("[ERROR] Registration error for user " + username + ": " + e.getMessage());
@@ -255,12 +335,39 @@ public class ClientHandler implements Runnable {
     private void handleSearch(String[] parts) {
         String keyword = parts.length > 1 ? InputValidator.validateSearchKeyword(parts[1]) : "";
         
+        CatalogIndex index = CatalogIndex.getInstance();
+        if (index.isLoaded()) {
+            long start = System.nanoTime();
+            StringBuilder sb = new StringBuilder("SEARCH_RESULT|");
+            List<CatalogIndex.BookEntry> results = index.search(keyword, 100);
+            for (CatalogIndex.BookEntry book : results) {
+                sb.append(book.getId()).append(",")
+                  .append(book.getTitle()).append(",")
+                  .append(book.getAuthor()).append(",")
+                  .append(book.getPublisher()).append(",")
+                  .append(book.getYear()).append(",")
+                  .append(book.getQuantity()).append(";");
+            }
+            out.println(sb.toString());
+            System.out.println("[INFO] Search performed: \"" + keyword + "\" returned " + results.size()
+                    + " results in " + (System.nanoTime() - start) / 1000 + "us");
+            return;
+        }
+        
+        // Index not available (load failed): fall back to the FTS table
         try (Connection conn = getConnection()) {
-            PreparedStatement ps = conn.prepareStatement(
-                "SELECT id, title, author, publisher, year, quantity FROM books WHERE title LIKE ? OR author LIKE ? LIMIT 100");
-            String k = "%" + keyword + "%";
-            ps.setString(1, k);
-            ps.setString(2, k);
+            String matchQuery = AdvancedSearch.buildMatchQuery(keyword, "title", "author");
+            PreparedStatement ps;
+            if (matchQuery != null) {
+                ps = conn.prepareStatement(
+                    "SELECT b.id, b.title, b.author, b.publisher, b.year, b.quantity FROM books_fts " +
+                    "JOIN books b ON b.id = books_fts.rowid WHERE books_fts MATCH ? " +
+                    "ORDER BY " + AdvancedSearch.BM25_ORDER + " LIMIT 100");
+                ps.setString(1, matchQuery);
+            } else {
+                ps = conn.prepareStatement(
+                    "SELECT id, title, author, publisher, year, quantity FROM books LIMIT 100");
+            }
             ResultSet rs = ps.executeQuery();
             StringBuilder sb = new StringBuilder("SEARCH_RESULT|");
             int count = 0;
@@ -281,6 +388,123 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    private void handleSuggest(String[] parts) {
+        String prefix = parts.length > 1 ? InputValidator.validateSearchKeyword(parts[1]) : "";
+        int limit = 8;
+        if (parts.length > 2) {
+            try {
+                limit = Integer.parseInt(parts[2]);
+            } catch (NumberFormatException e) {
+                out.println("SUGGEST_FAIL|Invalid limit");
+                return;
+            }
+        }
+        
+        StringBuilder sb = new StringBuilder("SUGGEST_RESULT|");
+        for (SuggestIndex.Suggestion suggestion : SuggestIndex.getInstance().suggest(prefix, limit)) {
+            sb.append(suggestion.getText()).append(";");
+        }
+        out.println(sb.toString());
+    }
+
+    private void handleTrending(String[] parts) {
+        // TRENDING|window|k with window day, week or month
+        TrendingIndex.Window window = TrendingIndex.Window.parse(parts.length > 1 ? parts[1] : "week");
+        if (window == null) {
+            out.println("TRENDING_FAIL|Unknown window, use day, week or month");
+            return;
+        }
+        int limit = 10;
+        if (parts.length > 2 && !parts[2].isEmpty()) {
+            try {
+                limit = Integer.parseInt(parts[2]);
+            } catch (NumberFormatException e) {
+                out.println("TRENDING_FAIL|Invalid limit");
+                return;
+            }
+        }
+        
+        // Books deleted since their events are skipped
+        CatalogIndex index = CatalogIndex.getInstance();
+        StringBuilder sb = new StringBuilder("TRENDING_RESULT|");
+        for (TrendingIndex.Trend trend : TrendingIndex.getInstance().top(window, Math.max(0, limit) * 2)) {
+            if (limit <= 0) break;
+            CatalogIndex.BookEntry book = index.get(trend.getBookId());
+            if (book == null) continue;
+            sb.append(book.getId()).append(",")
+              .append(book.getTitle()).append(",")
+              .append(book.getAuthor()).append(",")
+              .append(String.format(Locale.ROOT, "%.3f", trend.getScore())).append(";");
+            limit--;
+        }
+        out.println(sb.toString());
+    }
+
+    private void handleBrowseBooks(String[] parts) {
+        // BROWSE_BOOKS|search|author|publisher|category|cursor|limit
+        String search = parts.length > 1 ? InputValidator.validateSearchKeyword(parts[1]) : "";
+        String author = parts.length > 2 ? InputValidator.validateSearchKeyword(parts[2]) : "";
+        String publisher = parts.length > 3 ? InputValidator.validateSearchKeyword(parts[3]) : "";
+        String category = parts.length > 4 ? parts[4] : "";
+        String cursor = parts.length > 5 ? parts[5] : "";
+        int limit = 20;
+        if (parts.length > 6 && !parts[6].isEmpty()) {
+            try {
+                limit = Integer.parseInt(parts[6]);
+            } catch (NumberFormatException e) {
+                out.println(ResponseFormatter.error("BROWSE_BOOKS", "Invalid limit"));
+                return;
+            }
+        }
+        limit = Math.max(1, Math.min(limit, ConfigManager.getInt("search.results.max.limit")));
+        
+        try (Connection conn = getConnection()) {
+            BookBrowser.Criteria criteria = new BookBrowser.Criteria(search, author, publisher, category);
+            BookBrowser.Page page = BookBrowser.browse(conn, criteria, cursor, limit);
+            out.println(ResponseFormatter.success("BROWSE_BOOKS", page.toMap()));
+        } catch (IllegalArgumentException e) {
+            out.println(ResponseFormatter.error("BROWSE_BOOKS", e.getMessage()));
+        } catch (Exception e) {
+            out.println(ResponseFormatter.error("BROWSE_BOOKS", e.getMessage()));
+            System.err.println("[ERROR] Browse error: " + e.getMessage());
+        }
+    }
+
+    private void handleFacets(String[] parts) {
+        // FACETS|search|categories|publishers|yearFrom|yearTo|availableOnly|offset|limit
+        // with several categories or publishers separated by commas
+        String search = parts.length > 1 ? InputValidator.validateSearchKeyword(parts[1]) : "";
+        List<String> categories = parts.length > 2 ? Arrays.asList(parts[2].split(",")) : null;
+        List<String> publishers = parts.length > 3 ? Arrays.asList(parts[3].split(",")) : null;
+        Integer yearFrom;
+        Integer yearTo;
+        int offset;
+        int limit;
+        try {
+            yearFrom = parts.length > 4 && !parts[4].isEmpty() ? Integer.valueOf(parts[4].trim()) : null;
+            yearTo = parts.length > 5 && !parts[5].isEmpty() ? Integer.valueOf(parts[5].trim()) : null;
+            offset = parts.length > 7 && !parts[7].isEmpty() ? Integer.parseInt(parts[7].trim()) : 0;
+            limit = parts.length > 8 && !parts[8].isEmpty() ? Integer.parseInt(parts[8].trim()) : 20;
+        } catch (NumberFormatException e) {
+            out.println(ResponseFormatter.error("FACETS", "Invalid number"));
+            return;
+        }
+        boolean availableOnly = parts.length > 6 && Boolean.parseBoolean(parts[6].trim());
+        offset = Math.max(0, offset);
+        limit = Math.max(1, Math.min(limit, ConfigManager.getInt("search.results.max.limit")));
+        
+        try (Connection conn = getConnection()) {
+            FacetIndex.Criteria criteria = new FacetIndex.Criteria(search, categories, publishers,
+                    yearFrom, yearTo, availableOnly);
+            FacetIndex.Result result = FacetIndex.getInstance().query(conn, criteria, offset, limit,
+                    ConfigManager.getInt("facets.max.values"));
+            out.println(ResponseFormatter.success("FACETS", result.toMap()));
+        } catch (Exception e) {
+            out.println(ResponseFormatter.error("FACETS", e.getMessage()));
+            System.err.println("[ERROR] Facet query error: " + e.getMessage());
+        }
+    }
+
     private void handleBorrow(String[] parts) {
         if (parts.length < 3) { out.println("BORROW_FAIL|Missing params"); return; }
         
@@ -318,10 +542,15 @@ public class ClientHandler implements Runnable {
             }
 
             PreparedStatement borrow = conn.prepareStatement(
-                "INSERT INTO borrows(user_id, book_id, borrow_date) VALUES(?,?,date('now'))");
+                "INSERT INTO borrows(user_id, book_id, borrow_date) VALUES(?,?,date('now'))",
+                Statement.RETURN_GENERATED_KEYS);
             borrow.setInt(1, userId);
             borrow.setInt(2, bookId);
             borrow.executeUpdate();
+            long borrowId;
+            try (ResultSet keys = borrow.getGeneratedKeys()) {
+                borrowId = keys.next() ? keys.getLong(1) : 0;
+            }
 
             PreparedStatement act = conn.prepareStatement(
                 "INSERT INTO activities(user_id, book_id, action, action_time) VALUES(?,?,?,datetime('now'))");
@@ -331,6 +560,11 @@ public class ClientHandler implements Runnable {
             act.executeUpdate();
 
             conn.commit();
+            CatalogIndex.getInstance().adjustQuantity(bookId, -1);
+            RecommendationEngine.borrowed(userId, bookId);
+            if (borrowId > 0) {
+                TrendingIndex.getInstance().borrowed(borrowId, bookId);
+            }
             out.println("BORROW_SUCCESS");
         } catch (Exception e) {
             out.println("BORROW_FAIL|" + e.getMessage());
@@ -359,6 +593,8 @@ public class ClientHandler implements Runnable {
                 act.setString(3, "return");
                 act.executeUpdate();
                 conn.commit();
+                CatalogIndex.getInstance().adjustQuantity(bookId, 1);
+                RecommendationEngine.returned(userId, bookId);
                 out.println("RETURN_SUCCESS");
             } else {
                 conn.rollback();
@@ -417,13 +653,20 @@ public class ClientHandler implements Runnable {
             
             try (Connection conn = getConnection()) {
                 PreparedStatement ps = conn.prepareStatement(
-                    "INSERT INTO books(title, author, publisher, year, quantity) VALUES(?,?,?,?,?)");
+                    "INSERT INTO books(title, author, publisher, year, quantity) VALUES(?,?,?,?,?)",
+                    Statement.RETURN_GENERATED_KEYS);
                 ps.setString(1, title);
                 ps.setString(2, author);
                 ps.setString(3, publisher);
                 ps.setInt(4, yearInt);
                 ps.setInt(5, quantityInt);
                 ps.executeUpdate();
+                ResultSet keys = ps.getGeneratedKeys();
+                if (keys.next()) {
+                    CatalogIndex.getInstance().addOrUpdate(keys.getInt(1), title, author, publisher,
+                            String.valueOf(yearInt), quantityInt);
+                    RecommendationEngine.bookAdded(keys.getInt(1), title, author, null, null);
+                }
                 
                 out.println("ADD_BOOK_SUCCESS");
                 System.out.println("[INFO] Book added successfully by " + session.getUsername() + ": \"" + title + "\" by " + author);
@@ -472,6 +715,7 @@ public class ClientHandler implements Runnable {
                 int affected = ps.executeUpdate();
                 
                 if (affected > 0) {
+                    CatalogIndex.getInstance().remove(bookId);
                     out.println("DELETE_BOOK_SUCCESS");
                     System.out.println("[INFO] Book deleted successfully by " + session.getUsername() + ": ID " + bookId);
                 } else {
@@ -509,29 +753,6 @@ public class ClientHandler implements Runnable {
         int userId = Integer.parseInt(parts[1]);
         int bookId = Integer.parseInt(parts[2]);
         try (Connection conn = getConnection()) {
-
-            try {
-                conn.createStatement().executeQuery("SELECT id FROM activities LIMIT 1");
-            } catch (Exception e) {
-                conn.createStatement().execute(
-                    "CREATE TABLE IF NOT EXISTS activities (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "user_id INTEGER," +
-                    "book_id INTEGER," +
-                    "action TEXT," +
-                    "action_time TEXT," +
-                    "FOREIGN KEY(user_id) REFERENCES users(id)," +
-                    "FOREIGN KEY(book_id) REFERENCES books(id))"
-                );
-            }
-
-            try {
-                conn.createStatement().executeQuery("SELECT favorite FROM books LIMIT 1");
-            } catch (Exception e) {
-                out.println("FAVORITE_FAIL|Cột favorite chưa tồn tại trong bảng books");
-                return;
-            }
-
             PreparedStatement check = conn.prepareStatement("SELECT id FROM books WHERE id=?");
             check.setInt(1, bookId);
             ResultSet rs = check.executeQuery();
@@ -553,6 +774,7 @@ public class ClientHandler implements Runnable {
             act.setInt(2, bookId);
             act.setString(3, "favorite");
             act.executeUpdate();
+            TrendingIndex.getInstance().favorited(bookId);
             out.println("FAVORITE_SUCCESS");
         } catch (Exception e) {
             out.println("FAVORITE_FAIL|" + e.getMessage());
@@ -685,6 +907,20 @@ public class ClientHandler implements Runnable {
         out.println(result);
     }
     
+    private void handleDashboardStats() {
+        if (!isAdmin()) {
+            out.println(ResponseFormatter.error("DASHBOARD_STATS", "Access denied - Admin privileges required"));
+            return;
+        }
+        
+        try (Connection conn = getConnection()) {
+            out.println(ResponseFormatter.success("DASHBOARD_STATS", DashboardStats.collect(conn)));
+        } catch (Exception e) {
+            out.println(ResponseFormatter.error("DASHBOARD_STATS", e.getMessage()));
+            System.err.println("[ERROR] Dashboard stats error: " + e.getMessage());
+        }
+    }
+    
     private void handleHealthCheck() {
         String health = MetricsCollector.getHealthStatus();
         out.println(health);
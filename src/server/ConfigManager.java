@@ -22,12 +22,37 @@ public class ConfigManager {
     private static void loadDefaultConfig() {
         defaultConfig.setProperty("server.port", "12345");
         defaultConfig.setProperty("server.thread.pool.size", "20");
+        defaultConfig.setProperty("server.max.connections", "200");
+        defaultConfig.setProperty("scheduler.read.weight", "4");
+        defaultConfig.setProperty("scheduler.read.max.concurrent", "0");
+        defaultConfig.setProperty("scheduler.write.weight", "8");
+        defaultConfig.setProperty("scheduler.write.max.concurrent", "0");
+        // 0 caps sign-ins at the credential pool's thread count
+        defaultConfig.setProperty("scheduler.auth.weight", "8");
+        defaultConfig.setProperty("scheduler.auth.max.concurrent", "0");
+        defaultConfig.setProperty("scheduler.reporting.weight", "1");
+        defaultConfig.setProperty("scheduler.reporting.max.concurrent", "2");
+        defaultConfig.setProperty("scheduler.background.weight", "1");
+        defaultConfig.setProperty("scheduler.background.max.concurrent", "1");
         defaultConfig.setProperty("database.url", "jdbc:sqlite:C:/data/library.db");
         defaultConfig.setProperty("database.pool.min", "5");
         defaultConfig.setProperty("database.pool.max", "20");
         defaultConfig.setProperty("session.timeout.minutes", "30");
+        defaultConfig.setProperty("session.store.enabled", "true");
+        defaultConfig.setProperty("session.store.file", "C:/data/sessions.store");
         defaultConfig.setProperty("rate.limit.requests.per.minute", "60");
         defaultConfig.setProperty("rate.limit.requests.per.second", "10");
+        defaultConfig.setProperty("rate.limit.tcp.requests.per.minute", "1200");
+        defaultConfig.setProperty("rate.limit.tcp.requests.per.second", "60");
+        defaultConfig.setProperty("rate.limit.cost.LOGIN", "3");
+        defaultConfig.setProperty("rate.limit.cost.REGISTER", "5");
+        defaultConfig.setProperty("rate.limit.cost.FACETS", "2");
+        defaultConfig.setProperty("rate.limit.cost.LIST_ACTIVITIES", "2");
+        defaultConfig.setProperty("rate.limit.cost.DASHBOARD_STATS", "3");
+        defaultConfig.setProperty("rate.limit.cost.LIST_BORROWS", "5");
+        defaultConfig.setProperty("rate.limit.cost.EXIT", "0");
+        // Sent on every keystroke and served from memory
+        defaultConfig.setProperty("rate.limit.cost.SUGGEST", "0");
         defaultConfig.setProperty("backup.enabled", "true");
         defaultConfig.setProperty("backup.directory", "C:/data/backups");
         defaultConfig.setProperty("backup.max.count", "30");
@@ -37,11 +62,36 @@ public class ConfigManager {
         defaultConfig.setProperty("security.password.min.length", "6");
         defaultConfig.setProperty("security.password.require.mixed.case", "true");
         defaultConfig.setProperty("security.password.require.numbers", "true");
+        defaultConfig.setProperty("security.password.pbkdf2.iterations", "210000");
+        defaultConfig.setProperty("security.password.threads", "0");
+        defaultConfig.setProperty("security.password.queue", "64");
+        defaultConfig.setProperty("security.password.timeout.ms", "5000");
         defaultConfig.setProperty("search.results.max.limit", "100");
+        defaultConfig.setProperty("search.index.refresh.seconds", "300");
+        defaultConfig.setProperty("search.cache.max.kb", "4096");
+        defaultConfig.setProperty("search.cache.ttl.seconds", "300");
+        defaultConfig.setProperty("browse.count.ttl.seconds", "30");
+        defaultConfig.setProperty("facets.max.values", "50");
+        defaultConfig.setProperty("stats.reconcile.minutes", "60");
+        defaultConfig.setProperty("trending.topk", "100");
+        defaultConfig.setProperty("trending.halflife.day.hours", "24");
+        defaultConfig.setProperty("trending.halflife.week.hours", "168");
+        defaultConfig.setProperty("trending.halflife.month.hours", "720");
+        defaultConfig.setProperty("trending.refresh.seconds", "30");
         defaultConfig.setProperty("rest.api.enabled", "true");
         defaultConfig.setProperty("server.rest.api.port", "8082");
         defaultConfig.setProperty("i18n.default.language", "en");
         defaultConfig.setProperty("recommendation.enabled", "true");
+        defaultConfig.setProperty("recommendation.similarity.topk", "50");
+        defaultConfig.setProperty("recommendation.build.threads", "0");
+        defaultConfig.setProperty("recommendation.cache.size", "20");
+        defaultConfig.setProperty("recommendation.cache.users", "10000");
+        defaultConfig.setProperty("recommendation.lsh.bands", "32");
+        defaultConfig.setProperty("recommendation.lsh.rows", "2");
+        defaultConfig.setProperty("recommendation.lsh.max.candidates", "2000");
+        defaultConfig.setProperty("recommendation.lsh.exact.max.books", "20000");
+        defaultConfig.setProperty("recommendation.feature.dimensions", "4096");
+        defaultConfig.setProperty("recommendation.snapshot.file", "C:/data/recommendation.snapshot");
     }
     
     /**
@@ -0,0 +1,305 @@
+package server;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * The one place passwords are hashed and checked, for both the TCP and REST logins.
+ *
+ * New hashes are PBKDF2-HMAC-SHA256 stored as $pbkdf2-sha256$iterations$salt$hash,
+ * with the work factor from security.password.pbkdf2.iterations. The older
+ * formats still verify: PasswordUtil's hexsalt:hexhash, PasswordHasher's
+ * base64(salt + hash), both single SHA-256 rounds, and plain text written by
+ * the desktop client. A successful login on any of those, or on fewer
+ * iterations than configured, returns an upgraded hash for the caller to store.
+ *
+ * Hashing is deliberately slow, so it runs on its own small pool with a bounded
+ * queue: a burst of logins waits there or is turned away at once instead of
+ * taking CPU and pooled connections from every other command.
+ */
+public final class CredentialService {
+    private static final String PBKDF2_PREFIX = "$pbkdf2-sha256$";
+    private static final String PBKDF2_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final int LEGACY_SALT_BYTES = 16;
+
+    private static final SecureRandom random = new SecureRandom();
+    private static final int iterations = Math.max(1000, ConfigManager.getInt("security.password.pbkdf2.iterations"));
+    private static final long timeoutMs = Math.max(1, ConfigManager.getInt("security.password.timeout.ms"));
+    private static final ThreadPoolExecutor executor = createExecutor();
+
+    private CredentialService() {
+    }
+
+    public enum Outcome { VALID, INVALID, BUSY }
+
+    /**
+     * Result of checking a password; upgradedHash is set when it was valid but
+     * stored in an older format or with a lower work factor
+     */
+    public static final class Verification {
+        private final Outcome outcome;
+        private final String upgradedHash;
+
+        Verification(Outcome outcome, String upgradedHash) {
+            this.outcome = outcome;
+            this.upgradedHash = upgradedHash;
+        }
+
+        public Outcome getOutcome() { return outcome; }
+        public boolean isValid() { return outcome == Outcome.VALID; }
+        public boolean isBusy() { return outcome == Outcome.BUSY; }
+        public String getUpgradedHash() { return upgradedHash; }
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        int threads = ConfigManager.getInt("security.password.threads");
+        if (threads <= 0) {
+            threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        }
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, ConfigManager.getInt("security.password.queue"))),
+                r -> {
+                    Thread t = new Thread(r, "credential-worker-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Check a password on the credential pool. BUSY when the queue is full or
+     * the check did not finish within security.password.timeout.ms.
+     */
+    public static Verification verify(String password, String storedHash) {
+        try {
+            return run(() -> {
+                if (!matches(password, storedHash)) return new Verification(Outcome.INVALID, null);
+                return new Verification(Outcome.VALID, needsRehash(storedHash) ? hashPassword(password) : null);
+            });
+        } catch (RejectedExecutionException e) {
+            return new Verification(Outcome.BUSY, null);
+        }
+    }
+
+    /**
+     * Hash a new password on the credential pool; throws RejectedExecutionException
+     * when the pool is saturated
+     */
+    public static String hash(String password) {
+        return run(() -> hashPassword(password));
+    }
+
+    /**
+     * Replace a user's stored hash after an upgrade, unless it changed meanwhile
+     */
+    public static void saveUpgradedHash(int userId, String previousHash, String upgradedHash) {
+        try (Connection conn = DatabasePool.getInstance().getConnection();
+             PreparedStatement ps = conn.prepareStatement("UPDATE users SET password = ? WHERE id = ? AND password = ?")) {
+            ps.setString(1, upgradedHash);
+            ps.setInt(2, userId);
+            ps.setString(3, previousHash);
+            ps.executeUpdate();
+        } catch (Exception e) {
+            System.err.println("[SECURITY] Could not upgrade password hash for user " + userId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hash in the current format on the calling thread
+     */
+    public static String hashPassword(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PBKDF2_PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" +
+               encoder.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * Check a password against a hash in any supported format, on the calling thread
+     */
+    public static boolean matches(String password, String storedHash) {
+        if (password == null || storedHash == null) return false;
+        if (storedHash.startsWith(PBKDF2_PREFIX)) {
+            String[] parts = storedHash.substring(PBKDF2_PREFIX.length()).split("\\$");
+            if (parts.length != 3) return false;
+            try {
+                int rounds = Integer.parseInt(parts[0]);
+                byte[] salt = Base64.getDecoder().decode(parts[1]);
+                byte[] expected = Base64.getDecoder().decode(parts[2]);
+                return rounds > 0 && MessageDigest.isEqual(expected, pbkdf2(password, salt, rounds));
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        byte[] legacy = legacyHash(password, storedHash, StandardCharsets.UTF_8);
+        if (legacy != null) {
+            byte[] expected = legacyExpected(storedHash);
+            if (MessageDigest.isEqual(legacy, expected)) return true;
+            // PasswordUtil encoded with the platform charset, which need not have been UTF-8
+            Charset platform = Charset.defaultCharset();
+            return isPasswordUtilHash(storedHash) && !platform.equals(StandardCharsets.UTF_8)
+                    && MessageDigest.isEqual(legacyHash(password, storedHash, platform), expected);
+        }
+        // Plain text left by the desktop client or an old database
+        return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8),
+                storedHash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Whether a hash should be replaced by one in the current format and work factor
+     */
+    public static boolean needsRehash(String storedHash) {
+        if (storedHash == null || !storedHash.startsWith(PBKDF2_PREFIX)) return true;
+        String[] parts = storedHash.substring(PBKDF2_PREFIX.length()).split("\\$");
+        try {
+            return Integer.parseInt(parts[0]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Credential tasks queued or running
+     */
+    public static int pending() {
+        return executor.getQueue().size() + executor.getActiveCount();
+    }
+
+    /**
+     * Hashing threads in the credential pool
+     */
+    public static int getThreadCount() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Credential tasks the pool takes before turning more away: its threads plus its queue
+     */
+    public static int getCapacity() {
+        return executor.getMaximumPoolSize() + executor.getQueue().size() + executor.getQueue().remainingCapacity();
+    }
+
+    public static void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static <T> T run(Callable<T> task) {
+        long queuedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    long end = System.nanoTime();
+                    MetricsCollector.recordCredentialHash(start - queuedAt, end - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            MetricsCollector.recordCredentialRejection();
+            throw e;
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            MetricsCollector.recordCredentialRejection();
+            throw new RejectedExecutionException("Credential check timed out", e);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted waiting for credential check", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Credential check failed", e.getCause());
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int rounds) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, rounds, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(PBKDF2_ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2 unavailable", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    /**
+     * SHA-256 of the password under a legacy hash's salt, or null when the
+     * stored value is in neither legacy format. PasswordHasher always used UTF-8;
+     * PasswordUtil used whatever the platform default was, so its charset is given.
+     */
+    private static byte[] legacyHash(String password, String storedHash, Charset charset) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            if (isPasswordUtilHash(storedHash)) {
+                // PasswordUtil salted with the hex text of the salt, not its bytes
+                md.update(storedHash.substring(0, storedHash.indexOf(':')).getBytes(charset));
+                return md.digest(password.getBytes(charset));
+            }
+            byte[] combined = passwordHasherBytes(storedHash);
+            if (combined != null) {
+                md.update(combined, 0, LEGACY_SALT_BYTES);
+                return md.digest(password.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    private static byte[] legacyExpected(String storedHash) {
+        if (isPasswordUtilHash(storedHash)) {
+            String hex = storedHash.substring(storedHash.indexOf(':') + 1);
+            byte[] bytes = new byte[hex.length() / 2];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+            }
+            return bytes;
+        }
+        byte[] combined = passwordHasherBytes(storedHash);
+        byte[] hash = new byte[combined.length - LEGACY_SALT_BYTES];
+        System.arraycopy(combined, LEGACY_SALT_BYTES, hash, 0, hash.length);
+        return hash;
+    }
+
+    // 32 hex digits of salt, a colon, 64 hex digits of SHA-256
+    private static boolean isPasswordUtilHash(String storedHash) {
+        return storedHash.length() == 97 && storedHash.charAt(32) == ':'
+                && storedHash.substring(0, 32).matches("[0-9a-f]+") && storedHash.substring(33).matches("[0-9a-f]+");
+    }
+
+    // 16 salt bytes followed by 32 hash bytes, base64 encoded
+    private static byte[] passwordHasherBytes(String storedHash) {
+        if (storedHash.length() != 64) return null;
+        try {
+            byte[] combined = Base64.getDecoder().decode(storedHash);
+            return combined.length == LEGACY_SALT_BYTES + 32 ? combined : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
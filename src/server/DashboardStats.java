@@ -0,0 +1,185 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dashboard numbers served from rollup tables (schema v9).
+ * borrow_daily_stats, borrow_monthly_stats, user_borrow_stats and
+ * category_stats are updated by triggers on every borrow, return and book
+ * edit; rebuild() recomputes them from history.
+ */
+public class DashboardStats {
+    static final int OVERDUE_DAYS = 30;
+    private static final int LOW_STOCK_THRESHOLD = 3;
+
+    /**
+     * Recompute every rollup from borrows and books
+     */
+    public static void rebuild(Connection conn) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DELETE FROM borrow_daily_stats");
+            stmt.execute("INSERT INTO borrow_daily_stats(day, borrows, returns) " +
+                    "SELECT day, SUM(borrowed), SUM(returned) FROM (" +
+                    "SELECT substr(borrow_date, 1, 10) AS day, 1 AS borrowed, 0 AS returned FROM borrows " +
+                    "WHERE borrow_date IS NOT NULL AND borrow_date != '' " +
+                    "UNION ALL " +
+                    "SELECT substr(return_date, 1, 10), 0, 1 FROM borrows " +
+                    "WHERE NOT " + BookStats.OPEN_LOAN + ") GROUP BY day");
+
+            stmt.execute("DELETE FROM borrow_monthly_stats");
+            stmt.execute("INSERT INTO borrow_monthly_stats(month, borrows, returns) " +
+                    "SELECT substr(day, 1, 7), SUM(borrows), SUM(returns) FROM borrow_daily_stats " +
+                    "GROUP BY substr(day, 1, 7)");
+
+            stmt.execute("DELETE FROM user_borrow_stats");
+            stmt.execute("INSERT INTO user_borrow_stats(user_id, total_borrows, active_loans) " +
+                    "SELECT user_id, COUNT(*), SUM(" + BookStats.OPEN_LOAN + ") FROM borrows " +
+                    "WHERE user_id IS NOT NULL GROUP BY user_id");
+
+            stmt.execute("DELETE FROM category_stats");
+            stmt.execute("INSERT INTO category_stats(category, books) " +
+                    "SELECT COALESCE(category, ''), COUNT(*) FROM books GROUP BY COALESCE(category, '')");
+
+            if (autoCommit) {
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            if (autoCommit) {
+                conn.rollback();
+            }
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Borrows per month for the last n months including the current one, oldest first
+     */
+    public static Map<String, Integer> monthlyBorrows(Connection conn, int months) throws SQLException {
+        Map<String, Integer> series = new LinkedHashMap<>();
+        YearMonth current = YearMonth.now();
+        for (int i = months - 1; i >= 0; i--) {
+            series.put(current.minusMonths(i).toString(), 0);
+        }
+
+        PreparedStatement ps = conn.prepareStatement(
+                "SELECT month, borrows FROM borrow_monthly_stats WHERE month >= ? AND month <= ?");
+        ps.setString(1, current.minusMonths(months - 1).toString());
+        ps.setString(2, current.toString());
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                series.put(rs.getString("month"), rs.getInt("borrows"));
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Borrows and returns per day for the last n days including today, oldest first
+     */
+    public static List<Map<String, Object>> dailyActivity(Connection conn, int days) throws SQLException {
+        Map<String, Map<String, Object>> series = new LinkedHashMap<>();
+        LocalDate today = LocalDate.now();
+        for (int i = days - 1; i >= 0; i--) {
+            Map<String, Object> day = new LinkedHashMap<>();
+            day.put("day", today.minusDays(i).toString());
+            day.put("borrows", 0);
+            day.put("returns", 0);
+            series.put(today.minusDays(i).toString(), day);
+        }
+
+        PreparedStatement ps = conn.prepareStatement(
+                "SELECT day, borrows, returns FROM borrow_daily_stats WHERE day >= ? AND day <= ?");
+        ps.setString(1, today.minusDays(days - 1).toString());
+        ps.setString(2, today.toString());
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                Map<String, Object> day = series.get(rs.getString("day"));
+                day.put("borrows", rs.getInt("borrows"));
+                day.put("returns", rs.getInt("returns"));
+            }
+        }
+        return new ArrayList<>(series.values());
+    }
+
+    /**
+     * Every number the admin dashboard shows, in one round trip
+     */
+    public static Map<String, Object> collect(Connection conn) throws SQLException {
+        Map<String, Object> stats = new LinkedHashMap<>();
+
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery(
+                    "SELECT COALESCE(SUM(available_copies), 0), COALESCE(SUM(active_loans), 0) FROM book_stats");
+            if (rs.next()) {
+                stats.put("total_copies", rs.getInt(1));
+                stats.put("active_loans", rs.getInt(2));
+            }
+
+            rs = stmt.executeQuery("SELECT COUNT(*) FROM users WHERE role != 'admin'");
+            stats.put("readers", rs.next() ? rs.getInt(1) : 0);
+
+            rs = stmt.executeQuery("SELECT COUNT(*) FROM borrows WHERE " + BookStats.OPEN_LOAN +
+                    " AND borrow_date < date('now', '-" + OVERDUE_DAYS + " days')");
+            stats.put("overdue", rs.next() ? rs.getInt(1) : 0);
+
+            rs = stmt.executeQuery("SELECT COUNT(*) FROM borrow_requests WHERE status = 'PENDING'");
+            stats.put("pending_requests", rs.next() ? rs.getInt(1) : 0);
+
+            rs = stmt.executeQuery("SELECT COUNT(*) FROM book_stats WHERE available_copies < " + LOW_STOCK_THRESHOLD);
+            stats.put("low_stock", rs.next() ? rs.getInt(1) : 0);
+
+            List<Map<String, Object>> topBooks = new ArrayList<>();
+            rs = stmt.executeQuery("SELECT b.id, b.title, b.author, s.total_borrows FROM book_stats s " +
+                    "JOIN books b ON b.id = s.book_id WHERE s.total_borrows > 0 " +
+                    "ORDER BY s.total_borrows DESC LIMIT 5");
+            while (rs.next()) {
+                Map<String, Object> book = new LinkedHashMap<>();
+                book.put("id", rs.getInt(1));
+                book.put("title", rs.getString(2));
+                book.put("author", rs.getString(3));
+                book.put("borrows", rs.getInt(4));
+                topBooks.add(book);
+            }
+            stats.put("top_books", topBooks);
+
+            List<Map<String, Object>> topUsers = new ArrayList<>();
+            rs = stmt.executeQuery("SELECT u.id, u.username, s.total_borrows FROM user_borrow_stats s " +
+                    "JOIN users u ON u.id = s.user_id WHERE u.role != 'admin' AND s.total_borrows > 0 " +
+                    "ORDER BY s.total_borrows DESC LIMIT 5");
+            while (rs.next()) {
+                Map<String, Object> user = new LinkedHashMap<>();
+                user.put("id", rs.getInt(1));
+                user.put("username", rs.getString(2));
+                user.put("borrows", rs.getInt(3));
+                topUsers.add(user);
+            }
+            stats.put("top_users", topUsers);
+
+            Map<String, Object> categories = new LinkedHashMap<>();
+            rs = stmt.executeQuery("SELECT category, books FROM category_stats WHERE category != '' AND books > 0 " +
+                    "ORDER BY books DESC LIMIT 10");
+            while (rs.next()) {
+                categories.put(rs.getString(1), rs.getInt(2));
+            }
+            stats.put("categories", categories);
+        }
+
+        stats.put("monthly_borrows", monthlyBorrows(conn, 6));
+        stats.put("daily_activity", dailyActivity(conn, 30));
+        return stats;
+    }
+}
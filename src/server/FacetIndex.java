@@ -0,0 +1,517 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory facet index over the catalog for filtered browsing with counts.
+ *
+ * Books are numbered 0..n-1 in id order and every category, publisher, year and
+ * availability state keeps a bitmap of its books. A filter is the AND of one OR
+ * per dimension, and the facet counts for the result come from a single pass
+ * over its set bits. The index is rebuilt whenever the catalog change counter
+ * moves (schema v13), so it follows direct database writes as well. Every
+ * borrow and return moves that counter, so the rebuild runs in the background
+ * and queries keep using the previous snapshot until the new one is ready.
+ */
+public class FacetIndex {
+    private static final int DECADE = 10;
+    private static final int NO_YEAR = Integer.MIN_VALUE;
+
+    private static final FacetIndex instance = new FacetIndex();
+
+    private volatile Snapshot snapshot;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final ExecutorService rebuilder = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "facet-index-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private FacetIndex() {
+        // Private constructor for singleton
+    }
+
+    public static FacetIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * Filters for a facet query; blank values and the "all" category are ignored.
+     * Category and publisher accept several values, any of which may match.
+     */
+    public static class Criteria {
+        private final String search;
+        private final List<String> categories;
+        private final List<String> publishers;
+        private final Integer yearFrom;
+        private final Integer yearTo;
+        private final boolean availableOnly;
+
+        public Criteria(String search, Collection<String> categories, Collection<String> publishers,
+                        Integer yearFrom, Integer yearTo, boolean availableOnly) {
+            this.search = search == null ? "" : search.trim();
+            this.categories = clean(categories);
+            this.publishers = clean(publishers);
+            this.yearFrom = yearFrom;
+            this.yearTo = yearTo;
+            this.availableOnly = availableOnly;
+        }
+
+        private static List<String> clean(Collection<String> values) {
+            List<String> cleaned = new ArrayList<>();
+            if (values == null) return cleaned;
+            for (String value : values) {
+                if (value == null) continue;
+                String trimmed = value.trim();
+                if (!trimmed.isEmpty() && !"all".equalsIgnoreCase(trimmed)) cleaned.add(trimmed);
+            }
+            return cleaned;
+        }
+    }
+
+    /**
+     * Book ids as a sorted array while sparse, as a bitset once that is smaller
+     */
+    private static final class Bitmap {
+        private final int[] docs;
+        private final long[] words;
+
+        private Bitmap(int[] docs, long[] words) {
+            this.docs = docs;
+            this.words = words;
+        }
+
+        /**
+         * Bitmap over a universe of n books from ascending doc numbers
+         */
+        static Bitmap of(int[] sorted, int count, int n) {
+            int wordCount = (n + 63) >>> 6;
+            if (count < wordCount * 2) {
+                return new Bitmap(Arrays.copyOf(sorted, count), null);
+            }
+            long[] words = new long[wordCount];
+            for (int i = 0; i < count; i++) words[sorted[i] >>> 6] |= 1L << sorted[i];
+            return new Bitmap(null, words);
+        }
+
+        void orInto(long[] target) {
+            if (words != null) {
+                for (int i = 0; i < words.length; i++) target[i] |= words[i];
+            } else {
+                for (int doc : docs) target[doc >>> 6] |= 1L << doc;
+            }
+        }
+
+        void andInto(long[] target) {
+            if (words != null) {
+                for (int i = 0; i < words.length; i++) target[i] &= words[i];
+            } else {
+                long[] mask = new long[target.length];
+                orInto(mask);
+                for (int i = 0; i < target.length; i++) target[i] &= mask[i];
+            }
+        }
+    }
+
+    /**
+     * One faceted field: its distinct values, each book's value and a bitmap per value
+     */
+    private static final class Dimension {
+        final String[] values;
+        final int[] valueOf;
+        final Bitmap[] bitmaps;
+        // Folded value to every stored spelling, so filters ignore case and diacritics
+        final Map<String, List<Integer>> lookup = new HashMap<>();
+
+        Dimension(String[] perBook) {
+            int n = perBook.length;
+            Map<String, Integer> ordinals = new LinkedHashMap<>();
+            valueOf = new int[n];
+            int[] counts = new int[n + 1];
+            for (int doc = 0; doc < n; doc++) {
+                String value = perBook[doc];
+                if (value == null || value.trim().isEmpty()) {
+                    valueOf[doc] = -1;
+                    continue;
+                }
+                value = value.trim();
+                Integer ordinal = ordinals.get(value);
+                if (ordinal == null) {
+                    ordinal = ordinals.size();
+                    ordinals.put(value, ordinal);
+                }
+                valueOf[doc] = ordinal;
+                counts[ordinal]++;
+            }
+
+            values = ordinals.keySet().toArray(new String[0]);
+            int[][] docs = new int[values.length][];
+            int[] filled = new int[values.length];
+            for (int v = 0; v < values.length; v++) docs[v] = new int[counts[v]];
+            for (int doc = 0; doc < n; doc++) {
+                if (valueOf[doc] >= 0) docs[valueOf[doc]][filled[valueOf[doc]]++] = doc;
+            }
+            bitmaps = new Bitmap[values.length];
+            for (int v = 0; v < values.length; v++) {
+                bitmaps[v] = Bitmap.of(docs[v], docs[v].length, n);
+                lookup.computeIfAbsent(CatalogIndex.fold(values[v]), k -> new ArrayList<>()).add(v);
+            }
+        }
+
+        /**
+         * AND the union of the named values into the result; an unknown value matches nothing
+         */
+        void filter(List<String> names, long[] result) {
+            if (names.isEmpty()) return;
+            long[] union = new long[result.length];
+            for (String name : names) {
+                List<Integer> ordinals = lookup.get(CatalogIndex.fold(name));
+                if (ordinals == null) continue;
+                for (int ordinal : ordinals) bitmaps[ordinal].orInto(union);
+            }
+            for (int i = 0; i < result.length; i++) result[i] &= union[i];
+        }
+    }
+
+    /**
+     * Immutable index for one version of the catalog
+     */
+    private static final class Snapshot {
+        final long version;
+        final int[] ids;
+        final String[] titles;
+        final String[] authors;
+        final String[] publishers;
+        final String[] years;
+        final String[] categories;
+        final int[] quantities;
+        final int[] available;
+        final int[] yearOf;
+
+        final Dimension categoryDim;
+        final Dimension publisherDim;
+        final TreeMap<Integer, Bitmap> byYear = new TreeMap<>();
+        final Bitmap availableBooks;
+
+        Snapshot(long version, List<Object[]> rows) {
+            this.version = version;
+            int n = rows.size();
+            ids = new int[n];
+            titles = new String[n];
+            authors = new String[n];
+            publishers = new String[n];
+            years = new String[n];
+            categories = new String[n];
+            quantities = new int[n];
+            available = new int[n];
+            yearOf = new int[n];
+
+            int[] availableDocs = new int[n];
+            int availableCount = 0;
+            TreeMap<Integer, List<Integer>> yearDocs = new TreeMap<>();
+            for (int doc = 0; doc < n; doc++) {
+                Object[] row = rows.get(doc);
+                ids[doc] = (Integer) row[0];
+                titles[doc] = (String) row[1];
+                authors[doc] = (String) row[2];
+                publishers[doc] = (String) row[3];
+                years[doc] = (String) row[4];
+                categories[doc] = (String) row[5];
+                quantities[doc] = (Integer) row[6];
+                available[doc] = (Integer) row[7];
+                if (available[doc] > 0) availableDocs[availableCount++] = doc;
+
+                yearOf[doc] = parseYear(years[doc]);
+                if (yearOf[doc] != NO_YEAR) {
+                    yearDocs.computeIfAbsent(yearOf[doc], k -> new ArrayList<>()).add(doc);
+                }
+            }
+            categoryDim = new Dimension(categories);
+            publisherDim = new Dimension(publishers);
+            availableBooks = Bitmap.of(availableDocs, availableCount, n);
+            for (Map.Entry<Integer, List<Integer>> entry : yearDocs.entrySet()) {
+                List<Integer> docs = entry.getValue();
+                int[] sorted = new int[docs.size()];
+                for (int i = 0; i < sorted.length; i++) sorted[i] = docs.get(i);
+                byYear.put(entry.getKey(), Bitmap.of(sorted, sorted.length, n));
+            }
+        }
+
+        int wordCount() {
+            return (ids.length + 63) >>> 6;
+        }
+
+        Map<String, Object> row(int doc) {
+            Map<String, Object> book = new LinkedHashMap<>();
+            book.put("id", ids[doc]);
+            book.put("title", titles[doc]);
+            book.put("author", authors[doc]);
+            book.put("publisher", publishers[doc]);
+            book.put("year", years[doc]);
+            book.put("category", categories[doc]);
+            book.put("quantity", quantities[doc]);
+            book.put("available", available[doc]);
+            return book;
+        }
+    }
+
+    /**
+     * Matching books for one page, with facet counts over every match
+     */
+    public static class Result {
+        private final List<Map<String, Object>> books;
+        private final int total;
+        private final int offset;
+        private final Map<String, Object> facets;
+
+        Result(List<Map<String, Object>> books, int total, int offset, Map<String, Object> facets) {
+            this.books = books;
+            this.total = total;
+            this.offset = offset;
+            this.facets = facets;
+        }
+
+        public List<Map<String, Object>> getBooks() { return books; }
+        public int getTotal() { return total; }
+        public Map<String, Object> getFacets() { return facets; }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("books", books);
+            map.put("total", total);
+            map.put("offset", offset);
+            map.put("facets", facets);
+            return map;
+        }
+    }
+
+    /**
+     * Filter the catalog and count facets. Books are listed by relevance when
+     * there is search text, otherwise in id order; facet values by count.
+     */
+    public Result query(Connection conn, Criteria criteria, int offset, int limit, int maxValues) throws SQLException {
+        Snapshot index = current(conn);
+        long[] result = new long[index.wordCount()];
+        Arrays.fill(result, -1L);
+        int tail = index.ids.length & 63;
+        if (tail != 0) result[result.length - 1] = (1L << tail) - 1;
+
+        index.categoryDim.filter(criteria.categories, result);
+        index.publisherDim.filter(criteria.publishers, result);
+        if (criteria.yearFrom != null || criteria.yearTo != null) {
+            long[] years = new long[result.length];
+            int from = criteria.yearFrom != null ? criteria.yearFrom : Integer.MIN_VALUE + 1;
+            int to = criteria.yearTo != null ? criteria.yearTo : Integer.MAX_VALUE;
+            if (from <= to) {
+                for (Bitmap bitmap : index.byYear.subMap(from, true, to, true).values()) bitmap.orInto(years);
+            }
+            for (int i = 0; i < result.length; i++) result[i] &= years[i];
+        }
+        if (criteria.availableOnly) {
+            index.availableBooks.andInto(result);
+        }
+        int[] ranked = null;
+        if (!criteria.search.isEmpty()) {
+            ranked = searchDocs(conn, index, criteria.search);
+            long[] matches = new long[result.length];
+            for (int doc : ranked) matches[doc >>> 6] |= 1L << doc;
+            for (int i = 0; i < result.length; i++) result[i] &= matches[i];
+        }
+
+        // One pass over the result: facet counts and the requested page
+        int[] categoryCounts = new int[index.categoryDim.values.length];
+        int[] publisherCounts = new int[index.publisherDim.values.length];
+        TreeMap<Integer, Integer> decadeCounts = new TreeMap<>();
+        int availableCount = 0;
+        int total = 0;
+        List<Map<String, Object>> books = new ArrayList<>();
+        for (int w = 0; w < result.length; w++) {
+            long word = result[w];
+            while (word != 0) {
+                int doc = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int category = index.categoryDim.valueOf[doc];
+                if (category >= 0) categoryCounts[category]++;
+                int publisher = index.publisherDim.valueOf[doc];
+                if (publisher >= 0) publisherCounts[publisher]++;
+                int year = index.yearOf[doc];
+                if (year != NO_YEAR) decadeCounts.merge(Math.floorDiv(year, DECADE) * DECADE, 1, Integer::sum);
+                if (index.available[doc] > 0) availableCount++;
+                if (ranked == null && total >= offset && books.size() < limit) books.add(index.row(doc));
+                total++;
+            }
+        }
+        if (ranked != null) {
+            int seen = 0;
+            for (int doc : ranked) {
+                if ((result[doc >>> 6] & (1L << doc)) == 0) continue;
+                if (seen++ < offset) continue;
+                if (books.size() >= limit) break;
+                books.add(index.row(doc));
+            }
+        }
+
+        Map<String, Object> facets = new LinkedHashMap<>();
+        facets.put("category", topValues(index.categoryDim.values, categoryCounts, maxValues));
+        facets.put("publisher", topValues(index.publisherDim.values, publisherCounts, maxValues));
+        Map<String, Object> decades = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Integer> entry : decadeCounts.descendingMap().entrySet()) {
+            decades.put(entry.getKey() + "s", entry.getValue());
+        }
+        facets.put("year", decades);
+        Map<String, Object> availability = new LinkedHashMap<>();
+        availability.put("available", availableCount);
+        availability.put("unavailable", total - availableCount);
+        facets.put("availability", availability);
+        return new Result(books, total, offset, facets);
+    }
+
+    /**
+     * Build the index now rather than on the first query
+     */
+    public void refresh() {
+        try (Connection conn = DatabasePool.getInstance().getConnection()) {
+            current(conn);
+        } catch (SQLException e) {
+            System.err.println("[SEARCH] Failed to load facet index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The latest snapshot. Only the first call loads on the caller's thread; when
+     * the change counter has moved since, a rebuild is started in the background
+     * and the previous snapshot is returned meanwhile.
+     */
+    private Snapshot current(Connection conn) throws SQLException {
+        long version = ChangeCounters.read(conn, ChangeCounters.CATALOG);
+        Snapshot index = snapshot;
+        if (index == null) {
+            synchronized (this) {
+                index = snapshot;
+                if (index == null) {
+                    index = load(conn, version);
+                    snapshot = index;
+                }
+                return index;
+            }
+        }
+        // Without a counter (-1) there is nothing to compare against, so always rebuild
+        if (version < 0 || index.version != version) rebuildAsync();
+        return index;
+    }
+
+    private void rebuildAsync() {
+        if (!rebuilding.compareAndSet(false, true)) return;
+        rebuilder.execute(() -> {
+            try (Connection conn = DatabasePool.getInstance().getConnection()) {
+                // Writes during a load leave the counter ahead of it, so go round again
+                long version;
+                do {
+                    version = ChangeCounters.read(conn, ChangeCounters.CATALOG);
+                    snapshot = load(conn, version);
+                } while (version >= 0 && ChangeCounters.read(conn, ChangeCounters.CATALOG) != version);
+            } catch (Exception e) {
+                System.err.println("[SEARCH] Facet index rebuild failed: " + e.getMessage());
+            } finally {
+                rebuilding.set(false);
+            }
+        });
+    }
+
+    private static Snapshot load(Connection conn, long version) throws SQLException {
+        long start = System.currentTimeMillis();
+        List<Object[]> rows = new ArrayList<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(
+                     "SELECT b.id, b.title, b.author, b.publisher, b.year, b.category, b.quantity, " +
+                     "COALESCE(s.available_copies, b.quantity) AS available " +
+                     "FROM books b LEFT JOIN book_stats s ON s.book_id = b.id ORDER BY b.id")) {
+            while (rs.next()) {
+                rows.add(new Object[] {rs.getInt("id"), rs.getString("title"), rs.getString("author"),
+                        rs.getString("publisher"), rs.getString("year"), rs.getString("category"),
+                        rs.getInt("quantity"), rs.getInt("available")});
+            }
+        }
+        Snapshot index = new Snapshot(version, rows);
+        System.out.println("[SEARCH] Facet index loaded: " + rows.size() + " books, " +
+                index.categoryDim.values.length + " categories, " + index.publisherDim.values.length +
+                " publishers in " + (System.currentTimeMillis() - start) + "ms");
+        return index;
+    }
+
+    /**
+     * Matching books best first, as doc numbers; from the in-memory catalog index
+     * when it is loaded, else from books_fts
+     */
+    private static int[] searchDocs(Connection conn, Snapshot index, String search) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        CatalogIndex catalog = CatalogIndex.getInstance();
+        if (catalog.isLoaded()) {
+            for (CatalogIndex.BookEntry book : catalog.search(search, Math.max(1, catalog.size()))) {
+                ids.add(book.getId());
+            }
+        } else {
+            String matchQuery = AdvancedSearch.buildMatchQuery(search);
+            if (matchQuery != null) {
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT rowid FROM books_fts WHERE books_fts MATCH ? ORDER BY " + AdvancedSearch.BM25_ORDER)) {
+                    ps.setString(1, matchQuery);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) ids.add(rs.getInt(1));
+                    }
+                }
+            }
+        }
+        int[] docs = new int[ids.size()];
+        int n = 0;
+        for (int id : ids) {
+            int doc = Arrays.binarySearch(index.ids, id);
+            // Books added since this snapshot are picked up with the next version
+            if (doc >= 0) docs[n++] = doc;
+        }
+        return Arrays.copyOf(docs, n);
+    }
+
+    private static int parseYear(String year) {
+        if (year == null) return NO_YEAR;
+        try {
+            return Integer.parseInt(year.trim());
+        } catch (NumberFormatException e) {
+            return NO_YEAR;
+        }
+    }
+
+    /**
+     * Up to max values with a non-zero count, largest first, ties by name
+     */
+    private static Map<String, Object> topValues(String[] values, int[] counts, int max) {
+        List<Integer> present = new ArrayList<>();
+        for (int v = 0; v < counts.length; v++) {
+            if (counts[v] > 0) present.add(v);
+        }
+        Collections.sort(present, (a, b) -> counts[a] != counts[b]
+                ? Integer.compare(counts[b], counts[a]) : values[a].compareTo(values[b]));
+        Map<String, Object> top = new LinkedHashMap<>();
+        for (int v : present) {
+            if (top.size() >= max) break;
+            top.put(values[v], counts[v]);
+        }
+        return top;
+    }
+}
@@ -0,0 +1,45 @@
+package server;
+
+/**
+ * Maps named features (a category, an author) to slots of a fixed-width vector
+ * by hashing, so vectors need no shared dictionary and features first seen after
+ * a build still have a slot. Distinct features may share a slot; with a handful
+ * of preferences per reader against thousands of slots that only nudges a few
+ * scores.
+ */
+public final class FeatureHasher {
+    private final int mask;
+
+    /**
+     * @param dimensions vector width, rounded up to a power of two
+     */
+    public FeatureHasher(int dimensions) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be positive");
+        }
+        int size = 1;
+        while (size < dimensions) size <<= 1;
+        this.mask = size - 1;
+    }
+
+    /**
+     * Width from recommendation.feature.dimensions
+     */
+    public static FeatureHasher fromConfig() {
+        return new FeatureHasher(ConfigManager.getInt("recommendation.feature.dimensions"));
+    }
+
+    public int dimensions() {
+        return mask + 1;
+    }
+
+    /**
+     * Slot of a feature; kind keeps e.g. a category and an author of the same
+     * name apart. -1 for a missing value.
+     */
+    public int slot(String kind, String value) {
+        if (value == null || value.isEmpty()) return -1;
+        long h = MinHashIndex.fmix(((long) kind.hashCode() << 32) ^ (value.hashCode() & 0xffffffffL));
+        return (int) h & mask;
+    }
+}
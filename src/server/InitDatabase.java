@@ -20,137 +20,8 @@ public class InitDatabase {
             Connection conn = DriverManager.getConnection(url);
             Statement stmt = conn.createStatement();
 
-        stmt.execute("CREATE TABLE IF NOT EXISTS users (" +
-            "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-            "username TEXT UNIQUE," +
-            "password TEXT," +
-            "role TEXT," +
-            "phone TEXT," +
-            "email TEXT," +
-            "avatar TEXT," +
-            "created_at TEXT DEFAULT (datetime('now'))"
-            + ")");
-
-            stmt.execute("CREATE TABLE IF NOT EXISTS books (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "title TEXT," +
-                    "author TEXT," +
-                    "publisher TEXT," +
-                    "year TEXT," +
-                    "quantity INTEGER," +
-                    "category TEXT," +
-                    "favorite INTEGER DEFAULT 0" +
-                    ")");
-
-            try {
-                stmt.execute("ALTER TABLE books ADD COLUMN cover_image TEXT DEFAULT ''");
-            } catch (Exception e) {
-            }
-
-            try {
-                stmt.execute("ALTER TABLE books ADD COLUMN description TEXT DEFAULT ''");
-            } catch (Exception e) {
-            }
-
-            try {
-                stmt.execute("ALTER TABLE books ADD COLUMN rating REAL DEFAULT 0.0");
-            } catch (Exception e) {
-            }
-
-            stmt.execute("CREATE TABLE IF NOT EXISTS ratings (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "user_id INTEGER," +
-                    "book_id INTEGER," +
-                    "rating INTEGER," +
-                    "review TEXT," +
-                    "created_at TEXT DEFAULT (datetime('now'))," +
-                    "FOREIGN KEY(user_id) REFERENCES users(id)," +
-                    "FOREIGN KEY(book_id) REFERENCES books(id)," +
-                    "UNIQUE(user_id, book_id)" +
-                    ")");
-
-            stmt.execute("CREATE TABLE IF NOT EXISTS favorites (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "user_id INTEGER," +
-                    "book_id INTEGER," +
-                    "added_date TEXT DEFAULT (datetime('now'))," +
-                    "FOREIGN KEY(user_id) REFERENCES users(id)," +
-                    "FOREIGN KEY(book_id) REFERENCES books(id)," +
-                    "UNIQUE(user_id, book_id)" +
-                    ")");
-
-            stmt.execute("CREATE TABLE IF NOT EXISTS borrows (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "user_id INTEGER," +
-                    "book_id INTEGER," +
-                    "borrow_date TEXT," +
-                    "return_date TEXT," +
-                    "FOREIGN KEY(user_id) REFERENCES users(id)," +
-                    "FOREIGN KEY(book_id) REFERENCES books(id))");
-
-            // Create borrow_records table for enterprise features
-            stmt.execute("CREATE TABLE IF NOT EXISTS borrow_records (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "user_id INTEGER," +
-                    "book_id INTEGER," +
-                    "borrow_date TEXT," +
-                    "return_date TEXT," +
-                    "status TEXT DEFAULT 'ACTIVE'," +
-                    "rating INTEGER DEFAULT 0," +
-                    "FOREIGN KEY(user_id) REFERENCES users(id)," +
-                    "FOREIGN KEY(book_id) REFERENCES books(id))");
-
-            // Sync data from borrows to borrow_records if exists
-            try {
-                stmt.execute("INSERT OR IGNORE INTO borrow_records (user_id, book_id, borrow_date, return_date) " +
-                           "SELECT user_id, book_id, borrow_date, return_date FROM borrows");
-            } catch (Exception e) {
-                // Ignore if no data to sync
-            }
-
-            stmt.execute("CREATE TABLE IF NOT EXISTS activities (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "user_id INTEGER," +
-                    "book_id INTEGER," +
-                    "action TEXT," +
-                    "action_time TEXT," +
-                    "FOREIGN KEY(user_id) REFERENCES users(id)," +
-                    "FOREIGN KEY(book_id) REFERENCES books(id))");
-
-            stmt.execute("CREATE TABLE IF NOT EXISTS borrow_requests (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "user_id INTEGER NOT NULL," +
-                    "book_id INTEGER NOT NULL," +
-                    "request_date TEXT NOT NULL," +
-                    "expected_return_date TEXT," +
-                    "notes TEXT," +
-                    "status TEXT DEFAULT 'PENDING'," +
-                    "admin_notes TEXT," +
-                    "approved_date TEXT," +
-                    "FOREIGN KEY (user_id) REFERENCES users(id)," +
-                    "FOREIGN KEY (book_id) REFERENCES books(id)" +
-                    ")");
-
-            try {
-                stmt.execute("ALTER TABLE borrow_requests ADD COLUMN expected_return_date TEXT");
-            } catch (Exception e) {
-            }
-
-            try {
-                stmt.execute("ALTER TABLE borrow_requests ADD COLUMN notes TEXT");
-            } catch (Exception e) {
-            }
-
-            stmt.execute("CREATE TABLE IF NOT EXISTS notifications (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT," +
-                    "user_id INTEGER NOT NULL," +
-                    "type TEXT NOT NULL," +
-                    "title TEXT NOT NULL," +
-                    "content TEXT NOT NULL," +
-                    "created_at TEXT NOT NULL," +
-                    "is_read INTEGER DEFAULT 0," +
-                    "FOREIGN KEY (user_id) REFERENCES users(id)" +
-                    ")");
+            // All DDL lives in SchemaMigrator; this tool only seeds sample data
+            SchemaMigrator.migrate(conn);
 
             stmt.execute("DELETE FROM users WHERE username='admin'");
             stmt.execute("INSERT INTO users(username, password, role, phone, email) " +
@@ -1,5 +1,6 @@
 package server;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -63,6 +64,8 @@ public class JsonParser {
                 json.append(value.toString());
             } else if (value == null) {
                 json.append("null");
+            } else if (value instanceof Map || value instanceof Collection) {
+                json.append(toJson(value));
             } else {
                 json.append("\"").append(escape(value.toString())).append("\"");
             }
@@ -229,6 +232,13 @@ public class JsonParser {
         
         if (obj instanceof Map) {
             return createSimple((Map<String, Object>) obj);
+        } else if (obj instanceof Collection) {
+            StringBuilder json = new StringBuilder("[");
+            for (Object item : (Collection<?>) obj) {
+                if (json.length() > 1) json.append(",");
+                json.append(toJson(item));
+            }
+            return json.append("]").toString();
         } else if (obj instanceof String) {
             return "\"" + escape((String) obj) + "\"";
         } else if (obj instanceof Number || obj instanceof Boolean) {
@@ -10,6 +10,7 @@ public class LibraryServer {
     private static final int PORT = ConfigManager.getInt("server.port");
     private static final int REST_API_PORT = ConfigManager.getInt("server.rest.api.port");
     private static final int THREAD_POOL_SIZE = ConfigManager.getInt("server.thread.pool.size");
+    private static final int MAX_CONNECTIONS = ConfigManager.getInt("server.max.connections");
     private static RestApiHandler restApiHandler;
 
     /**
@@ -44,7 +45,26 @@ public class LibraryServer {
 
         ConfigManager.printConfig();
 
-        ExecutorService executor = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+        // Bring the schema up to date before any handler can touch the database
+        try {
+            SchemaMigrator.migrate();
+        } catch (Exception e) {
+            System.err.println("[ERROR] Schema migration failed: " + e.getMessage());
+            System.exit(1);
+        }
+
+        // Build the in-memory catalog index so searches never wait on the database
+        CatalogIndex.getInstance().reload();
+        CatalogIndex.getInstance().startAutoRefresh(ConfigManager.getInt("search.index.refresh.seconds"));
+        BookStats.startReconciler(ConfigManager.getInt("stats.reconcile.minutes"));
+        FacetIndex.getInstance().refresh();
+        TrendingIndex.getInstance().reload();
+        TrendingIndex.getInstance().startAutoRefresh(ConfigManager.getInt("trending.refresh.seconds"));
+
+        // Connection threads mostly wait on their sockets; commands run on the
+        // request scheduler's THREAD_POOL_SIZE workers
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, MAX_CONNECTIONS));
+        RequestScheduler.getInstance();
 
         // Initialize backup manager if enabled
         if (ConfigManager.getBoolean("backup.enabled")) {
@@ -102,8 +122,10 @@ public class LibraryServer {
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 System.out.println("Shutting down server...");
                 executor.shutdown();
+                RequestScheduler.getInstance().shutdown();
                 DatabasePool.getInstance().shutdown();
                 SessionManager.shutdown();
+                CredentialService.shutdown();
                 if (ConfigManager.getBoolean("backup.enabled")) {
                     BackupManager.shutdown();
                 }
@@ -133,8 +155,10 @@ public class LibraryServer {
             e.printStackTrace();
         } finally {
             executor.shutdown();
+            RequestScheduler.getInstance().shutdown();
             DatabasePool.getInstance().shutdown();
             SessionManager.shutdown();
+            CredentialService.shutdown();
             BackupManager.shutdown();
         }
     }
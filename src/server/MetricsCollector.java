@@ -4,6 +4,7 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Performance metrics collection and monitoring
@@ -40,6 +41,28 @@ public class MetricsCollector {
     private static final AtomicLong dbQueries = new AtomicLong(0);
     private static final AtomicLong dbErrors = new AtomicLong(0);
     
+    // Search result cache metrics
+    private static final AtomicLong queryCacheHits = new AtomicLong(0);
+    private static final AtomicLong queryCacheMisses = new AtomicLong(0);
+    private static final AtomicLong queryCacheEntries = new AtomicLong(0);
+    private static final AtomicLong queryCacheBytes = new AtomicLong(0);
+    private static final AtomicLong queryCacheMaxBytes = new AtomicLong(0);
+    
+    // Credential hashing metrics
+    private static final AtomicLong credentialHashes = new AtomicLong(0);
+    private static final AtomicLong credentialHashNanos = new AtomicLong(0);
+    private static final AtomicLong credentialMaxHashNanos = new AtomicLong(0);
+    private static final AtomicLong credentialQueueNanos = new AtomicLong(0);
+    private static final AtomicLong credentialRejections = new AtomicLong(0);
+    
+    // Request scheduler queue wait per work class: count, total, max, and a log2 histogram of microseconds
+    private static final ConcurrentHashMap<String, AtomicLongArray> schedulerWaits = new ConcurrentHashMap<>();
+    private static final int WAIT_COUNT = 0;
+    private static final int WAIT_TOTAL_NANOS = 1;
+    private static final int WAIT_MAX_NANOS = 2;
+    private static final int WAIT_BUCKETS = 3;
+    private static final int WAIT_BUCKET_COUNT = 32;
+    
     /**
      * Record request metrics
      */
@@ -92,6 +115,84 @@ public class MetricsCollector {
         }
     }
     
+    /**
+     * Record a search result cache lookup
+     */
+    public static void recordQueryCacheLookup(boolean hit) {
+        if (hit) {
+            queryCacheHits.incrementAndGet();
+        } else {
+            queryCacheMisses.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Current search result cache occupancy
+     */
+    public static void updateQueryCacheSize(int entries, long bytes, long maxBytes) {
+        queryCacheEntries.set(entries);
+        queryCacheBytes.set(bytes);
+        queryCacheMaxBytes.set(maxBytes);
+    }
+    
+    /**
+     * Share of search result cache lookups answered from the cache, 0-1
+     */
+    public static double getQueryCacheHitRatio() {
+        long hits = queryCacheHits.get();
+        long lookups = hits + queryCacheMisses.get();
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+    
+    /**
+     * Record one password hash or check: time spent queued and time hashing
+     */
+    public static void recordCredentialHash(long queueNanos, long hashNanos) {
+        credentialHashes.incrementAndGet();
+        credentialQueueNanos.addAndGet(queueNanos);
+        credentialHashNanos.addAndGet(hashNanos);
+        credentialMaxHashNanos.accumulateAndGet(hashNanos, Math::max);
+    }
+    
+    /**
+     * Record a credential check turned away because the pool was saturated
+     */
+    public static void recordCredentialRejection() {
+        credentialRejections.incrementAndGet();
+    }
+    
+    /**
+     * Record how long a command waited in the request scheduler before a worker took it
+     */
+    public static void recordSchedulerWait(String workClass, long waitNanos) {
+        AtomicLongArray waits = schedulerWaits.computeIfAbsent(workClass,
+                k -> new AtomicLongArray(WAIT_BUCKETS + WAIT_BUCKET_COUNT));
+        waits.incrementAndGet(WAIT_COUNT);
+        waits.addAndGet(WAIT_TOTAL_NANOS, waitNanos);
+        waits.accumulateAndGet(WAIT_MAX_NANOS, waitNanos, Math::max);
+        long micros = Math.max(1, waitNanos / 1000);
+        int bucket = Math.min(WAIT_BUCKET_COUNT - 1, 63 - Long.numberOfLeadingZeros(micros));
+        waits.incrementAndGet(WAIT_BUCKETS + bucket);
+    }
+    
+    /**
+     * Approximate queue wait percentile for a work class in milliseconds: the
+     * upper edge of the histogram bucket it falls in, so never understated
+     */
+    public static double getSchedulerWaitPercentile(String workClass, double percentile) {
+        AtomicLongArray waits = schedulerWaits.get(workClass);
+        if (waits == null || waits.get(WAIT_COUNT) == 0) return 0;
+        long rank = (long) Math.ceil(waits.get(WAIT_COUNT) * percentile);
+        long seen = 0;
+        for (int bucket = 0; bucket < WAIT_BUCKET_COUNT; bucket++) {
+            seen += waits.get(WAIT_BUCKETS + bucket);
+            if (seen >= rank) {
+                return Math.min((2L << bucket) / 1000.0, waits.get(WAIT_MAX_NANOS) / 1e6);
+            }
+        }
+        return waits.get(WAIT_MAX_NANOS) / 1e6;
+    }
+    
     /**
      * Track connection count
      */
@@ -170,6 +271,45 @@ public class MetricsCollector {
         report.append("Available Connections: ").append(DatabasePool.getInstance().getAvailableConnections()).append("\n");
         report.append("Used Connections: ").append(DatabasePool.getInstance().getUsedConnections()).append("\n");
         
+        // Search result cache
+        report.append("\n=== QUERY CACHE ===\n");
+        report.append("Hit Ratio: ").append(String.format("%.2f%%", getQueryCacheHitRatio() * 100))
+              .append(" (").append(queryCacheHits.get()).append(" hits, ")
+              .append(queryCacheMisses.get()).append(" misses)\n");
+        report.append("Entries: ").append(queryCacheEntries.get()).append("\n");
+        report.append("Memory: ").append(queryCacheBytes.get() / 1024).append("KB of ")
+              .append(queryCacheMaxBytes.get() / 1024).append("KB\n");
+        
+        // Credential hashing
+        long hashes = credentialHashes.get();
+        report.append("\n=== CREDENTIALS ===\n");
+        report.append("Hashes: ").append(hashes).append("\n");
+        if (hashes > 0) {
+            report.append("Avg Hash Time: ").append(String.format("%.1fms", credentialHashNanos.get() / 1e6 / hashes)).append("\n");
+            report.append("Max Hash Time: ").append(String.format("%.1fms", credentialMaxHashNanos.get() / 1e6)).append("\n");
+            report.append("Avg Queue Wait: ").append(String.format("%.1fms", credentialQueueNanos.get() / 1e6 / hashes)).append("\n");
+        }
+        report.append("Pending: ").append(CredentialService.pending()).append("\n");
+        report.append("Rejected: ").append(credentialRejections.get()).append("\n");
+        
+        // Request scheduling
+        report.append("\n=== REQUEST SCHEDULER ===\n");
+        for (RequestScheduler.WorkClass workClass : RequestScheduler.WorkClass.values()) {
+            String key = workClass.getKey();
+            AtomicLongArray waits = schedulerWaits.get(key);
+            long served = waits != null ? waits.get(WAIT_COUNT) : 0;
+            report.append(key).append(": queued ").append(RequestScheduler.getInstance().getQueued(workClass))
+                  .append(", running ").append(RequestScheduler.getInstance().getActive(workClass))
+                  .append(", served ").append(served);
+            if (served > 0) {
+                report.append(String.format(", wait avg %.2fms p99 %.2fms max %.2fms",
+                        waits.get(WAIT_TOTAL_NANOS) / 1e6 / served,
+                        getSchedulerWaitPercentile(key, 0.99),
+                        waits.get(WAIT_MAX_NANOS) / 1e6));
+            }
+            report.append("\n");
+        }
+        
         // Session metrics
         report.append("\n=== SESSION MANAGEMENT ===\n");
         report.append("Active Sessions: ").append(SessionManager.getActiveSessionCount()).append("\n");
@@ -236,6 +376,17 @@ public class MetricsCollector {
         dbQueries.set(0);
         dbErrors.set(0);
         
+        queryCacheHits.set(0);
+        queryCacheMisses.set(0);
+        
+        credentialHashes.set(0);
+        credentialHashNanos.set(0);
+        credentialMaxHashNanos.set(0);
+        credentialQueueNanos.set(0);
+        credentialRejections.set(0);
+        
+        schedulerWaits.clear();
+        
         System.out.println("[METRICS] All metrics reset");
     }
     
@@ -0,0 +1,282 @@
+package server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Approximate book-to-book nearest neighbours with MinHash and LSH banding.
+ * Each book's feature tokens (category, author, keywords, genres) are reduced
+ * to bands x rows min-hashes; books sharing all rows of any band land in the
+ * same bucket. Only bucket mates are scored, with the same formula as
+ * ParallelSimilarity.bookScore, so results rank exactly among the candidates
+ * found. More bands (or fewer rows) raise recall at the cost of more
+ * candidates; maxCandidates caps the work per query.
+ */
+public class MinHashIndex {
+    // Token copies approximating the 0.4 / 0.3 weights of category and author
+    private static final int CATEGORY_WEIGHT = 4;
+    private static final int AUTHOR_WEIGHT = 3;
+
+    private final int bands;
+    private final int rows;
+    private final int maxCandidates;
+    private final long[] multipliers;
+    private final long[] increments;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final Map<Long, int[]>[] buckets;
+
+    /**
+     * Features of one book and the bucket keys it was filed under
+     */
+    private static final class Entry {
+        final String category;
+        final String author;
+        final int[] keywords;
+        final long[] bandKeys;
+
+        Entry(String category, String author, int[] keywords, long[] bandKeys) {
+            this.category = category;
+            this.author = author;
+            this.keywords = keywords;
+            this.bandKeys = bandKeys;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public MinHashIndex(int bands, int rows, int maxCandidates) {
+        if (bands <= 0 || rows <= 0 || maxCandidates <= 0) {
+            throw new IllegalArgumentException("bands, rows and maxCandidates must be positive");
+        }
+        this.bands = bands;
+        this.rows = rows;
+        this.maxCandidates = maxCandidates;
+        this.buckets = new Map[bands];
+        for (int b = 0; b < bands; b++) buckets[b] = new HashMap<>();
+
+        // Fixed seed: signatures are comparable across builds
+        Random random = new Random(0x5eed);
+        int hashes = bands * rows;
+        multipliers = new long[hashes];
+        increments = new long[hashes];
+        for (int i = 0; i < hashes; i++) {
+            multipliers[i] = random.nextLong() | 1;
+            increments[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Index settings from the recommendation.lsh.* configuration
+     */
+    public static MinHashIndex fromConfig() {
+        return new MinHashIndex(ConfigManager.getInt("recommendation.lsh.bands"),
+                ConfigManager.getInt("recommendation.lsh.rows"),
+                ConfigManager.getInt("recommendation.lsh.max.candidates"));
+    }
+
+    /**
+     * Insert a book, or re-file it after its features changed
+     */
+    public void add(int bookId, String category, String author, Collection<String> keywords,
+                    Collection<String> genres) {
+        category = category == null || category.isEmpty() ? null : category;
+        author = author == null || author.isEmpty() ? null : author;
+        int[] keywordHashes = new int[keywords.size()];
+        int n = 0;
+        for (String keyword : keywords) keywordHashes[n++] = keyword.hashCode();
+        Arrays.sort(keywordHashes);
+
+        long[] signature = new long[bands * rows];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        if (category != null) {
+            for (int w = 0; w < CATEGORY_WEIGHT; w++) mix(signature, token("c" + w, category));
+        }
+        if (author != null) {
+            for (int w = 0; w < AUTHOR_WEIGHT; w++) mix(signature, token("a" + w, author));
+        }
+        for (String keyword : keywords) mix(signature, token("k", keyword));
+        for (String genre : genres) mix(signature, token("g", genre));
+
+        long[] bandKeys = new long[bands];
+        boolean empty = category == null && author == null && keywords.isEmpty() && genres.isEmpty();
+        for (int b = 0; b < bands; b++) {
+            long key = b;
+            for (int r = 0; r < rows; r++) key = fmix(key * 31 + signature[b * rows + r]);
+            bandKeys[b] = key;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.remove(bookId);
+            if (previous != null) {
+                for (int b = 0; b < bands; b++) removeFromBucket(b, previous.bandKeys[b], bookId);
+            }
+            entries.put(bookId, new Entry(category, author, keywordHashes, bandKeys));
+            // A book with no features would share every bucket with the other empty ones
+            if (!empty) {
+                for (int b = 0; b < bands; b++) addToBucket(b, bandKeys[b], bookId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(int bookId) {
+        lock.readLock().lock();
+        try {
+            return entries.containsKey(bookId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Content similarity of two indexed books, 0 when either is unknown
+     */
+    public float score(int bookId, int otherId) {
+        lock.readLock().lock();
+        try {
+            Entry a = entries.get(bookId);
+            Entry b = entries.get(otherId);
+            return a == null || b == null ? 0f : score(a, b);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate top-k neighbours of a book, best first; ties keep the lower id
+     */
+    public int[] neighborIds(int bookId, int k, float minScore) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entries.get(bookId);
+            if (entry == null || k <= 0) return new int[0];
+
+            int[] topIds = new int[k];
+            float[] topScores = new float[k];
+            int size = 0;
+            TrainingData.IntIndex seen = new TrainingData.IntIndex(Math.min(maxCandidates, entries.size()) + 1);
+            int candidates = 0;
+            for (int b = 0; b < bands && candidates < maxCandidates; b++) {
+                int[] bucket = buckets[b].get(entry.bandKeys[b]);
+                if (bucket == null) continue;
+                for (int i = 1; i <= bucket[0] && candidates < maxCandidates; i++) {
+                    int other = bucket[i];
+                    if (other == bookId || seen.get(other) >= 0) continue;
+                    seen.put(other, 0);
+                    candidates++;
+
+                    float score = score(entry, entries.get(other));
+                    if (score < minScore) continue;
+                    if (size == k && (score < topScores[k - 1] || (score == topScores[k - 1] && other > topIds[k - 1]))) {
+                        continue;
+                    }
+                    int pos = size < k ? size++ : k - 1;
+                    while (pos > 0 && (topScores[pos - 1] < score
+                            || (topScores[pos - 1] == score && topIds[pos - 1] > other))) {
+                        topIds[pos] = topIds[pos - 1];
+                        topScores[pos] = topScores[pos - 1];
+                        pos--;
+                    }
+                    topIds[pos] = other;
+                    topScores[pos] = score;
+                }
+            }
+            return Arrays.copyOf(topIds, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Same category 0.4, same author 0.3, keyword Jaccard weighted 0.3
+     */
+    private static float score(Entry a, Entry b) {
+        double similarity = 0;
+        if (a.category != null && a.category.equals(b.category)) {
+            similarity += 0.4;
+        }
+        if (a.author != null && a.author.equals(b.author)) {
+            similarity += 0.3;
+        }
+        int union = a.keywords.length + b.keywords.length;
+        if (union > 0) {
+            int common = 0;
+            int i = 0, j = 0;
+            while (i < a.keywords.length && j < b.keywords.length) {
+                if (a.keywords[i] == b.keywords[j]) {
+                    common++;
+                    i++;
+                    j++;
+                } else if (a.keywords[i] < b.keywords[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            union -= common;
+            similarity += 0.3 * (double) common / union;
+        }
+        return (float) similarity;
+    }
+
+    private void mix(long[] signature, long token) {
+        for (int i = 0; i < signature.length; i++) {
+            long h = fmix(token * multipliers[i] + increments[i]);
+            if (h < signature[i]) signature[i] = h;
+        }
+    }
+
+    private static long token(String kind, String value) {
+        return fmix(((long) kind.hashCode() << 32) ^ (value.hashCode() & 0xffffffffL));
+    }
+
+    // MurmurHash3 64-bit finaliser
+    static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // Buckets are int arrays with the size in slot 0
+    private void addToBucket(int band, long key, int bookId) {
+        int[] bucket = buckets[band].get(key);
+        if (bucket == null) {
+            bucket = new int[4];
+        } else if (bucket[0] + 1 == bucket.length) {
+            bucket = Arrays.copyOf(bucket, bucket.length * 2);
+        }
+        bucket[++bucket[0]] = bookId;
+        buckets[band].put(key, bucket);
+    }
+
+    private void removeFromBucket(int band, long key, int bookId) {
+        int[] bucket = buckets[band].get(key);
+        if (bucket == null) return;
+        for (int i = 1; i <= bucket[0]; i++) {
+            if (bucket[i] == bookId) {
+                bucket[i] = bucket[bucket[0]--];
+                break;
+            }
+        }
+        if (bucket[0] == 0) buckets[band].remove(key);
+    }
+}
@@ -0,0 +1,206 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.util.TreeMap;
+
+/**
+ * Recommendation similarity matrices saved to disk so a restart can serve at
+ * once instead of recomputing them.
+ *
+ * Layout, little-endian: magic, format version, the database change counter the
+ * build started from, build time, top-K and minimum score, then the user and book
+ * SimilarityIndex sections. Loading maps the file read-only and the indexes read
+ * straight from the mapping, so pages are faulted in as rows are first used.
+ *
+ * A mapped file cannot be replaced on Windows, so each save writes a new
+ * generation, FILE.1, FILE.2 and so on, rather than overwriting the one in use.
+ * Loading takes the newest generation with a valid header and deletes the rest
+ * before mapping anything; a save also tries to delete older generations, which
+ * only fails for one still mapped.
+ */
+public final class ModelSnapshot {
+    private static final int MAGIC = 0x4C52534D; // "LRSM"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+
+    final long changeCounter;
+    final long builtAt;
+    final SimilarityIndex userSimilarity;
+    final SimilarityIndex bookSimilarity;
+
+    private ModelSnapshot(long changeCounter, long builtAt, SimilarityIndex userSimilarity,
+                          SimilarityIndex bookSimilarity) {
+        this.changeCounter = changeCounter;
+        this.builtAt = builtAt;
+        this.userSimilarity = userSimilarity;
+        this.bookSimilarity = bookSimilarity;
+    }
+
+    /**
+     * Current value of the recommendation change counter, or -1 when the
+     * database has no counter yet
+     */
+    public static long readChangeCounter(Connection conn) {
+        return ChangeCounters.read(conn, ChangeCounters.RECOMMENDATIONS);
+    }
+
+    /**
+     * Write both indexes as the next generation of the snapshot, through a
+     * temporary file moved into place so a reader never sees a partial snapshot.
+     * Returns the file written.
+     */
+    public static File save(File base, long changeCounter, int topK, float minScore,
+                            SimilarityIndex userSimilarity, SimilarityIndex bookSimilarity) throws IOException {
+        File parent = base.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        TreeMap<Long, File> existing = generations(base);
+        File file = new File(base.getPath() + "." + (existing.isEmpty() ? 1 : existing.lastKey() + 1));
+        File tmp = new File(file.getPath() + ".tmp");
+        long size = HEADER_BYTES + userSimilarity.serializedSize() + bookSimilarity.serializedSize();
+
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putLong(changeCounter);
+            header.putLong(System.currentTimeMillis());
+            header.putInt(topK);
+            header.putFloat(minScore);
+            header.putLong(size);
+            header.flip();
+            while (header.hasRemaining()) channel.write(header);
+
+            writeSection(channel, userSimilarity);
+            writeSection(channel, bookSimilarity);
+            channel.force(true);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        for (File older : existing.values()) {
+            // The generation the live model maps cannot go yet on Windows; the next start removes it
+            older.delete();
+        }
+        return file;
+    }
+
+    private static void writeSection(FileChannel channel, SimilarityIndex index) throws IOException {
+        ByteBuffer section = ByteBuffer.allocate((int) index.serializedSize()).order(ByteOrder.LITTLE_ENDIAN);
+        index.writeTo(section);
+        section.flip();
+        while (section.hasRemaining()) channel.write(section);
+    }
+
+    /**
+     * Map the newest snapshot generation written with the same top-K and minimum
+     * score, deleting every other generation first. Returns null when there is
+     * none, or it is from another format version or settings, or truncated; the
+     * caller then builds from scratch.
+     */
+    public static ModelSnapshot load(File base, int topK, float minScore) {
+        File chosen = null;
+        for (File file : generations(base).descendingMap().values()) {
+            if (chosen == null && hasValidHeader(file, topK, minScore)) {
+                chosen = file;
+            } else if (!file.delete()) {
+                System.err.println("[AI] Could not delete superseded model snapshot " + file);
+            }
+        }
+        File parent = base.getAbsoluteFile().getParentFile();
+        File[] leftovers = parent == null ? null : parent.listFiles((dir, name) ->
+                name.startsWith(base.getName() + ".") && name.endsWith(".tmp"));
+        if (leftovers != null) {
+            for (File tmp : leftovers) tmp.delete();
+        }
+        return chosen == null ? null : map(chosen);
+    }
+
+    /**
+     * Snapshot generations on disk by number; a file at the base path itself,
+     * written before generations existed, counts as generation 0
+     */
+    private static TreeMap<Long, File> generations(File base) {
+        TreeMap<Long, File> generations = new TreeMap<>();
+        if (base.isFile()) generations.put(0L, base);
+        File parent = base.getAbsoluteFile().getParentFile();
+        File[] files = parent == null ? null : parent.listFiles();
+        if (files == null) return generations;
+        String prefix = base.getName() + ".";
+        for (File file : files) {
+            String name = file.getName();
+            if (!file.isFile() || !name.startsWith(prefix)) continue;
+            String suffix = name.substring(prefix.length());
+            if (!suffix.isEmpty() && suffix.length() < 19 && suffix.chars().allMatch(Character::isDigit)) {
+                generations.put(Long.parseLong(suffix), file);
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * Header check by a plain read, so rejected generations are never mapped
+     */
+    private static boolean hasValidHeader(File file, int topK, float minScore) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) break;
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                System.err.println("[AI] Ignoring " + file + ": not a model snapshot");
+                return false;
+            }
+            int version = header.getInt();
+            header.position(24);
+            int snapshotTopK = header.getInt();
+            float snapshotMinScore = header.getFloat();
+            long size = header.getLong();
+            if (version != FORMAT_VERSION || snapshotTopK != topK || snapshotMinScore != minScore) {
+                System.out.println("[AI] Ignoring model snapshot built with other settings");
+                return false;
+            }
+            if (size != channel.size()) {
+                System.err.println("[AI] Ignoring truncated model snapshot " + file);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("[AI] Could not read model snapshot " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static ModelSnapshot map(File file) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            // Magic and version were checked by hasValidHeader
+            buffer.position(8);
+            long changeCounter = buffer.getLong();
+            long builtAt = buffer.getLong();
+            buffer.position(HEADER_BYTES);
+            SimilarityIndex userSimilarity = SimilarityIndex.readFrom(buffer);
+            SimilarityIndex bookSimilarity = SimilarityIndex.readFrom(buffer);
+            return new ModelSnapshot(changeCounter, builtAt, userSimilarity, bookSimilarity);
+
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[AI] Could not read model snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package server;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join computation of the recommendation similarity matrices.
+ * Users and books are first encoded into dense integer ids and primitive
+ * vectors. The upper triangle of the pair space is then cut into square
+ * blocks of rows that run as independent tasks. Each pair is scored once and
+ * offered to both rows under a per-row lock stripe. Top-K selection uses a
+ * total order, so the result is the same for any parallelism, including 1.
+ */
+public final class ParallelSimilarity {
+    static final int BLOCK = 128;
+    // Up to this many categories user vectors are stored dense
+    static final int DENSE_DIMENSIONS = 64;
+    private static final int LOCK_STRIPES = 1024;
+
+    private ParallelSimilarity() {}
+
+    /**
+     * Per-user category borrow counts. Small category sets use a dense
+     * users x dimensions matrix; otherwise sparse rows with sorted dimensions.
+     */
+    public static final class UserVectors {
+        final int[] start;
+        final int[] dims;
+        final int[] counts;
+        final double[] norms;
+        final int dimensions;
+        final int[] dense;
+        final Map<String, Integer> categoryIds;
+
+        UserVectors(int[] start, int[] dims, int[] counts, double[] norms, Map<String, Integer> categoryIds) {
+            this.start = start;
+            this.dims = dims;
+            this.counts = counts;
+            this.norms = norms;
+            this.dimensions = categoryIds.size();
+            this.categoryIds = categoryIds;
+            if (dimensions <= DENSE_DIMENSIONS) {
+                dense = new int[norms.length * dimensions];
+                for (int u = 0; u < norms.length; u++) {
+                    for (int i = start[u]; i < start[u + 1]; i++) {
+                        dense[u * dimensions + dims[i]] = counts[i];
+                    }
+                }
+            } else {
+                dense = null;
+            }
+        }
+    }
+
+    /**
+     * Book category, author and keyword set as dense ids; -1 when missing
+     */
+    public static final class BookVectors {
+        final int[] category;
+        final int[] author;
+        final int[] keywordStart;
+        final int[] keywords;
+
+        BookVectors(int[] category, int[] author, int[] keywordStart, int[] keywords) {
+            this.category = category;
+            this.author = author;
+            this.keywordStart = keywordStart;
+            this.keywords = keywords;
+        }
+    }
+
+    public static UserVectors encodeUsers(TrainingData data) {
+        Map<String, Integer> categoryIds = new HashMap<>();
+        int[] categoryOfBook = intern(data.categories, categoryIds);
+        int users = data.userCount();
+        int[] start = new int[users + 1];
+        int[] dims = new int[data.borrowCount()];
+        int[] counts = new int[data.borrowCount()];
+        double[] norms = new double[users];
+
+        int size = 0;
+        int[] scratch = new int[16];
+        for (int u = 0; u < users; u++) {
+            int n = 0;
+            for (int i = data.userBorrowStart[u]; i < data.userBorrowStart[u + 1]; i++) {
+                int category = categoryOfBook[data.borrowBooks[i]];
+                if (category < 0) continue;
+                if (n == scratch.length) scratch = Arrays.copyOf(scratch, n * 2);
+                scratch[n++] = category;
+            }
+            Arrays.sort(scratch, 0, n);
+            long normSq = 0;
+            for (int i = 0; i < n; ) {
+                int j = i;
+                while (j < n && scratch[j] == scratch[i]) j++;
+                dims[size] = scratch[i];
+                counts[size] = j - i;
+                normSq += (long) (j - i) * (j - i);
+                size++;
+                i = j;
+            }
+            start[u + 1] = size;
+            norms[u] = Math.sqrt(normSq);
+        }
+        return new UserVectors(start, Arrays.copyOf(dims, size), Arrays.copyOf(counts, size), norms, categoryIds);
+    }
+
+    public static BookVectors encodeBooks(String[] categories, String[] authors, Collection<String>[] keywordSets) {
+        int[] category = intern(categories, new HashMap<>());
+        int[] author = intern(authors, new HashMap<>());
+        Map<String, Integer> keywordIds = new HashMap<>();
+        int[] keywordStart = new int[keywordSets.length + 1];
+        int total = 0;
+        for (Collection<String> set : keywordSets) total += set.size();
+        int[] keywords = new int[total];
+        int size = 0;
+        for (int b = 0; b < keywordSets.length; b++) {
+            int from = size;
+            for (String keyword : keywordSets[b]) {
+                Integer id = keywordIds.get(keyword);
+                if (id == null) {
+                    id = keywordIds.size();
+                    keywordIds.put(keyword, id);
+                }
+                keywords[size++] = id;
+            }
+            Arrays.sort(keywords, from, size);
+            keywordStart[b + 1] = size;
+        }
+        return new BookVectors(category, author, keywordStart, keywords);
+    }
+
+    private static int[] intern(String[] values, Map<String, Integer> ids) {
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            String value = values[i];
+            if (value == null || value.isEmpty()) {
+                result[i] = -1;
+                continue;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = ids.size();
+                ids.put(value, id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Cosine similarity of category preferences
+     */
+    static float userScore(UserVectors v, int a, int b) {
+        if (v.norms[a] == 0 || v.norms[b] == 0) return 0f;
+        long dot = 0;
+        if (v.dense != null) {
+            int d = v.dimensions;
+            for (int i = a * d, j = b * d, end = i + d; i < end; i++, j++) {
+                dot += (long) v.dense[i] * v.dense[j];
+            }
+            return (float) (dot / (v.norms[a] * v.norms[b]));
+        }
+        int i = v.start[a], iEnd = v.start[a + 1];
+        int j = v.start[b], jEnd = v.start[b + 1];
+        while (i < iEnd && j < jEnd) {
+            int di = v.dims[i], dj = v.dims[j];
+            if (di == dj) {
+                dot += (long) v.counts[i++] * v.counts[j++];
+            } else if (di < dj) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (float) (dot / (v.norms[a] * v.norms[b]));
+    }
+
+    /**
+     * Cosine similarity of a query vector over the same dimensions against row b.
+     * queryNorm may include categories outside the vectors' dimensions.
+     */
+    static float userScore(UserVectors v, int[] query, double queryNorm, int b) {
+        if (queryNorm == 0 || v.norms[b] == 0) return 0f;
+        long dot = 0;
+        for (int i = v.start[b]; i < v.start[b + 1]; i++) {
+            dot += (long) query[v.dims[i]] * v.counts[i];
+        }
+        return (float) (dot / (queryNorm * v.norms[b]));
+    }
+
+    /**
+     * Same category 0.4, same author 0.3, keyword Jaccard weighted 0.3
+     */
+    static float bookScore(BookVectors v, int a, int b) {
+        double similarity = 0;
+        if (v.category[a] >= 0 && v.category[a] == v.category[b]) {
+            similarity += 0.4;
+        }
+        if (v.author[a] >= 0 && v.author[a] == v.author[b]) {
+            similarity += 0.3;
+        }
+        int i = v.keywordStart[a], iEnd = v.keywordStart[a + 1];
+        int j = v.keywordStart[b], jEnd = v.keywordStart[b + 1];
+        int union = (iEnd - i) + (jEnd - j);
+        if (union > 0) {
+            int common = 0;
+            while (i < iEnd && j < jEnd) {
+                int ki = v.keywords[i], kj = v.keywords[j];
+                if (ki == kj) {
+                    common++;
+                    i++;
+                    j++;
+                } else if (ki < kj) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            union -= common;
+            similarity += 0.3 * (double) common / union;
+        }
+        return (float) similarity;
+    }
+
+    public static SimilarityIndex users(int[] ids, UserVectors v, int k, float minScore, ForkJoinPool pool) {
+        return build(ids, k, minScore, pool, (a, b) -> userScore(v, a, b));
+    }
+
+    public static SimilarityIndex books(int[] ids, BookVectors v, int k, float minScore, ForkJoinPool pool) {
+        return build(ids, k, minScore, pool, (a, b) -> bookScore(v, a, b));
+    }
+
+    interface PairScorer {
+        float score(int a, int b);
+    }
+
+    static SimilarityIndex build(int[] ids, int k, float minScore, ForkJoinPool pool, PairScorer scorer) {
+        SimilarityIndex.Builder builder = new SimilarityIndex.Builder(ids, k, minScore);
+        int blocks = (ids.length + BLOCK - 1) / BLOCK;
+        int tiles = blocks * (blocks + 1) / 2;
+        if (tiles > 0) {
+            Object[] locks = new Object[LOCK_STRIPES];
+            for (int i = 0; i < locks.length; i++) locks[i] = new Object();
+            pool.invoke(new TileTask(ids.length, blocks, 0, tiles, scorer, builder, locks));
+        }
+        return builder.build();
+    }
+
+    /**
+     * A range of tiles of the upper triangle, numbered row-major.
+     * Tile t covers rows of block bi against rows of block bj (bj >= bi).
+     */
+    private static final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int rows;
+        private final int blocks;
+        private final int from;
+        private final int to;
+        private final PairScorer scorer;
+        private final SimilarityIndex.Builder builder;
+        private final Object[] locks;
+
+        TileTask(int rows, int blocks, int from, int to, PairScorer scorer,
+                 SimilarityIndex.Builder builder, Object[] locks) {
+            this.rows = rows;
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.scorer = scorer;
+            this.builder = builder;
+            this.locks = locks;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TileTask(rows, blocks, from, mid, scorer, builder, locks),
+                          new TileTask(rows, blocks, mid, to, scorer, builder, locks));
+                return;
+            }
+            int bi = 0;
+            int t = from;
+            while (t >= blocks - bi) {
+                t -= blocks - bi;
+                bi++;
+            }
+            int bj = bi + t;
+            computeTile(bi * BLOCK, Math.min(rows, (bi + 1) * BLOCK), bj * BLOCK, Math.min(rows, (bj + 1) * BLOCK));
+        }
+
+        private void computeTile(int rowFrom, int rowTo, int colFrom, int colTo) {
+            float minScore = builder.minScore();
+            int[] hitCols = new int[64];
+            float[] hitScores = new float[64];
+            for (int a = rowFrom; a < rowTo; a++) {
+                int hits = 0;
+                for (int b = Math.max(colFrom, a + 1); b < colTo; b++) {
+                    float score = scorer.score(a, b);
+                    if (score < minScore || (!builder.mayAccept(a, score) && !builder.mayAccept(b, score))) continue;
+                    if (hits == hitCols.length) {
+                        hitCols = Arrays.copyOf(hitCols, hits * 2);
+                        hitScores = Arrays.copyOf(hitScores, hits * 2);
+                    }
+                    hitCols[hits] = b;
+                    hitScores[hits] = score;
+                    hits++;
+                }
+                if (hits == 0) continue;
+                synchronized (locks[a % LOCK_STRIPES]) {
+                    for (int h = 0; h < hits; h++) {
+                        if (builder.mayAccept(a, hitScores[h])) builder.offer(a, hitCols[h], hitScores[h]);
+                    }
+                }
+                for (int h = 0; h < hits; h++) {
+                    int b = hitCols[h];
+                    if (!builder.mayAccept(b, hitScores[h])) continue;
+                    synchronized (locks[b % LOCK_STRIPES]) {
+                        builder.offer(b, a, hitScores[h]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -1,69 +1,28 @@
 package server;
 
 import java.security.MessageDigest;
-import java.security.SecureRandom;
-import java.util.Base64;
 
 /**
  * Password hashing and verification utility
+ *
+ * @deprecated use {@link CredentialService}; kept for callers outside the server
  */
+@Deprecated
 public class PasswordHasher {
     private static final String ALGORITHM = "SHA-256";
-    private static final int SALT_LENGTH = 16;
     
     /**
-     * Hash a password with salt
+     * Hash a password in the current format
      */
     public static String hashPassword(String password) {
-        try {
-            // Generate random salt
-            SecureRandom random = new SecureRandom();
-            byte[] salt = new byte[SALT_LENGTH];
-            random.nextBytes(salt);
-            
-            // Hash password with salt
-            MessageDigest md = MessageDigest.getInstance(ALGORITHM);
-            md.update(salt);
-            byte[] hashedPassword = md.digest(password.getBytes("UTF-8"));
-            
-            // Combine salt and hash
-            byte[] combined = new byte[salt.length + hashedPassword.length];
-            System.arraycopy(salt, 0, combined, 0, salt.length);
-            System.arraycopy(hashedPassword, 0, combined, salt.length, hashedPassword.length);
-            
-            return Base64.getEncoder().encodeToString(combined);
-            
-        } catch (Exception e) {
-            throw new RuntimeException("Error hashing password", e);
-        }
+        return CredentialService.hashPassword(password);
     }
     
     /**
-     * Verify a password against a hash
+     * Verify a password against a hash in any supported format
      */
     public static boolean verifyPassword(String password, String hashedPassword) {
-        try {
-            // Decode the stored hash
-            byte[] combined = Base64.getDecoder().decode(hashedPassword);
-            
-            // Extract salt and hash
-            byte[] salt = new byte[SALT_LENGTH];
-            byte[] hash = new byte[combined.length - SALT_LENGTH];
-            System.arraycopy(combined, 0, salt, 0, SALT_LENGTH);
-            System.arraycopy(combined, SALT_LENGTH, hash, 0, hash.length);
-            
-            // Hash the provided password with the extracted salt
-            MessageDigest md = MessageDigest.getInstance(ALGORITHM);
-            md.update(salt);
-            byte[] testHash = md.digest(password.getBytes("UTF-8"));
-            
-            // Compare hashes
-            return MessageDigest.isEqual(hash, testHash);
-            
-        } catch (Exception e) {
-            System.err.println("Error verifying password: " + e.getMessage());
-            return false;
-        }
+        return CredentialService.matches(password, hashedPassword);
     }
     
     /**
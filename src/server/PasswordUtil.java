@@ -1,74 +1,24 @@
 package server;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-
 /**
  * Password utility class for hashing and verification
+ *
+ * @deprecated use {@link CredentialService}; kept for callers outside the server
  */
+@Deprecated
 public class PasswordUtil {
-    private static final String ALGORITHM = "SHA-256";
-    private static final int SALT_LENGTH = 16;
-    
-    /**
-     * Generate a random salt
-     */
-    private static String generateSalt() {
-        SecureRandom random = new SecureRandom();
-        byte[] salt = new byte[SALT_LENGTH];
-        random.nextBytes(salt);
-        return bytesToHex(salt);
-    }
     
     /**
-     * Hash password with salt
+     * Hash password in the current format
      */
     public static String hashPassword(String password) {
-        try {
-            String salt = generateSalt();
-            MessageDigest md = MessageDigest.getInstance(ALGORITHM);
-            md.update(salt.getBytes());
-            byte[] hashedPassword = md.digest(password.getBytes());
-            return salt + ":" + bytesToHex(hashedPassword);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Error hashing password", e);
-        }
+        return CredentialService.hashPassword(password);
     }
     
     /**
-     * Verify password against hash
+     * Verify password against a hash in any supported format, including plaintext
      */
     public static boolean verifyPassword(String password, String hashedPassword) {
-        if (hashedPassword == null || !hashedPassword.contains(":")) {
-            // Legacy password (plaintext) - gradually migrate to hashed
-            return password.equals(hashedPassword);
-        }
-        
-        try {
-            String[] parts = hashedPassword.split(":", 2);
-            String salt = parts[0];
-            String hash = parts[1];
-            
-            MessageDigest md = MessageDigest.getInstance(ALGORITHM);
-            md.update(salt.getBytes());
-            byte[] hashedInput = md.digest(password.getBytes());
-            String hashedInputHex = bytesToHex(hashedInput);
-            
-            return hash.equals(hashedInputHex);
-        } catch (NoSuchAlgorithmException e) {
-            return false;
-        }
-    }
-    
-    /**
-     * Convert byte array to hex string
-     */
-    private static String bytesToHex(byte[] bytes) {
-        StringBuilder result = new StringBuilder();
-        for (byte b : bytes) {
-            result.append(String.format("%02x", b));
-        }
-        return result.toString();
+        return CredentialService.matches(password, hashedPassword);
     }
-}
\ No newline at end of file
+}
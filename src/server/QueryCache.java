@@ -0,0 +1,191 @@
+package server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Search responses keyed by normalised criteria, within a fixed memory budget.
+ *
+ * Every entry belongs to a version of the data it was computed from (a change
+ * counter read before running the query). Looking up with a newer version drops
+ * the whole cache, so a hit is never older than the data the caller just saw.
+ * Entries also expire after a TTL.
+ *
+ * When the budget is full a new entry only displaces the least recently used
+ * one if its key has been asked for more often (TinyLFU): frequencies come from
+ * a small count-min sketch that is halved periodically so old popularity fades.
+ */
+public class QueryCache {
+    // Rough per-entry cost of the map node, entry object and two String headers
+    private static final int ENTRY_OVERHEAD = 112;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+
+    private final long maxBytes;
+    private final long ttlMillis;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    private long version = Long.MIN_VALUE;
+
+    // Count-min sketch over requested keys
+    private final byte[] sketch;
+    private final int sketchMask;
+    private final int sampleSize;
+    private int additions;
+
+    private static final class Entry {
+        final String value;
+        final long expiresAt;
+        final int size;
+
+        Entry(String value, long expiresAt, int size) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+    }
+
+    public QueryCache(long maxBytes, long ttlMillis) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.ttlMillis = ttlMillis;
+        // About 16 counters per entry the budget holds, assuming ~2KB responses
+        int width = 64;
+        while (width < maxBytes / 128 && width < (1 << 16)) width <<= 1;
+        this.sketch = new byte[width * SKETCH_DEPTH];
+        this.sketchMask = width - 1;
+        this.sampleSize = width * 10;
+    }
+
+    /**
+     * Cache sized by search.cache.max.kb with entries living search.cache.ttl.seconds
+     */
+    public static QueryCache fromConfig() {
+        return new QueryCache(ConfigManager.getInt("search.cache.max.kb") * 1024L,
+                ConfigManager.getInt("search.cache.ttl.seconds") * 1000L);
+    }
+
+    /**
+     * Cached response for the key at the given data version, or null.
+     * A version of -1 (no counter in the database) never hits.
+     */
+    public String get(String key, long version) {
+        String value = null;
+        synchronized (this) {
+            increment(key);
+            if (version >= 0) {
+                advance(version);
+                Entry entry = entries.get(key);
+                if (entry != null) {
+                    if (entry.expiresAt > System.currentTimeMillis()) {
+                        value = entry.value;
+                    } else {
+                        remove(key);
+                    }
+                }
+            }
+        }
+        MetricsCollector.recordQueryCacheLookup(value != null);
+        return value;
+    }
+
+    /**
+     * Offer a response computed at the given data version; it is dropped when the
+     * data has moved on since, or when admission prefers the entries already held
+     */
+    public void put(String key, String value, long version) {
+        int size = ENTRY_OVERHEAD + 2 * (key.length() + value.length());
+        if (version < 0 || size > maxBytes) return;
+        synchronized (this) {
+            advance(version);
+            if (version != this.version) return;
+            // A key already held has passed admission; replacing it only makes room
+            boolean replacing = entries.containsKey(key);
+            if (replacing) remove(key);
+
+            long now = System.currentTimeMillis();
+            int frequency = frequency(key);
+            // Decide against every victim first, so a refused entry evicts nothing
+            int victims = 0;
+            long freed = 0;
+            for (Map.Entry<String, Entry> victim : entries.entrySet()) {
+                if (bytes - freed + size <= maxBytes) break;
+                if (!replacing && victim.getValue().expiresAt > now && frequency <= frequency(victim.getKey())) {
+                    publishSize();
+                    return;
+                }
+                freed += victim.getValue().size;
+                victims++;
+            }
+            Iterator<Entry> it = entries.values().iterator();
+            for (; victims > 0; victims--) {
+                bytes -= it.next().size;
+                it.remove();
+            }
+            entries.put(key, new Entry(value, now + ttlMillis, size));
+            bytes += size;
+            publishSize();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        publishSize();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long memoryBytes() {
+        return bytes;
+    }
+
+    /**
+     * Drop everything cached at an older version than the one just read
+     */
+    private void advance(long newVersion) {
+        if (newVersion > version) {
+            version = newVersion;
+            if (!entries.isEmpty()) clear();
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) bytes -= entry.size;
+    }
+
+    private void publishSize() {
+        MetricsCollector.updateQueryCacheSize(entries.size(), bytes, maxBytes);
+    }
+
+    private void increment(String key) {
+        long hash = MinHashIndex.fmix(key.hashCode());
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            int index = slot(hash, row);
+            if (sketch[index] < MAX_COUNT) sketch[index]++;
+        }
+        if (++additions >= sampleSize) {
+            // Halve every counter so frequency reflects recent traffic
+            for (int i = 0; i < sketch.length; i++) sketch[i] >>= 1;
+            additions /= 2;
+        }
+    }
+
+    private int frequency(String key) {
+        long hash = MinHashIndex.fmix(key.hashCode());
+        int min = MAX_COUNT;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            min = Math.min(min, sketch[slot(hash, row)]);
+        }
+        return min;
+    }
+
+    // Each row takes its own 16 bits of the hash
+    private int slot(long hash, int row) {
+        return row * (sketchMask + 1) + ((int) (hash >>> (row * 16)) & sketchMask);
+    }
+}
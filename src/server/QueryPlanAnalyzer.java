@@ -0,0 +1,483 @@
+package server;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Query plan analyzer and index advisor.
+ *
+ * Collects the SQL literals from the server and client sources plus the
+ * dynamically built hot queries, runs EXPLAIN QUERY PLAN against a freshly
+ * migrated and seeded database, flags full table scans and temp B-trees and
+ * suggests the index that would turn each flagged query into an index seek.
+ *
+ * Usage: java server.QueryPlanAnalyzer [sourceDir]
+ * Exits with status 1 when any hot query is not served by an index.
+ */
+public class QueryPlanAnalyzer {
+
+    /**
+     * Queries on the request paths that must be index seeks. Dynamic SQL that the
+     * source scanner cannot see is listed here in its fully expanded form, built
+     * from the same constants the server uses so it cannot drift from what ships.
+     */
+    static final String[][] HOT_QUERIES = {
+        {"ClientHandler.handleBorrow",
+            "SELECT COUNT(*) FROM borrows WHERE user_id = ? AND book_id = ? AND return_date IS NULL"},
+        {"ClientHandler.handleReturn",
+            "UPDATE borrows SET return_date=date('now') WHERE user_id=? AND book_id=? AND return_date IS NULL"},
+        {"ClientHandler.handleDeleteBook",
+            "SELECT COUNT(*) FROM borrows WHERE book_id = ? AND return_date IS NULL"},
+        {"ClientHandler.handleListActivities",
+            "SELECT a.id, a.action, a.action_time, b.title FROM activities a LEFT JOIN books b ON a.book_id=b.id WHERE a.user_id=? ORDER BY a.action_time DESC LIMIT 50"},
+        {"ClientHandler.handleListFavorites",
+            "SELECT b.id, b.title, b.author FROM books b INNER JOIN favorites f ON b.id = f.book_id WHERE f.user_id = ? ORDER BY f.added_date DESC"},
+        {"ClientHandler.handleListBorrowed",
+            "SELECT b.title, b.author, br.borrow_date, " +
+            "COALESCE((SELECT rq.expected_return_date FROM borrow_requests rq " +
+            "WHERE rq.user_id = br.user_id AND rq.book_id = br.book_id ORDER BY rq.request_date DESC LIMIT 1), datetime(br.borrow_date, '+30 days')) as due_date " +
+            "FROM borrows br INNER JOIN books b ON br.book_id = b.id WHERE br.user_id = ? AND br.return_date IS NULL"},
+        {"AdvancedSearch.searchBooks (availability)",
+            "SELECT b.id, COALESCE(s.available_copies, b.quantity) as available FROM books b " +
+            "LEFT JOIN book_stats s ON s.book_id = b.id WHERE b.id = ?"},
+        {"AdvancedSearch.getPopularBooks",
+            "SELECT b.id, b.title, s.total_borrows as borrow_count FROM book_stats s " +
+            "JOIN books b ON b.id = s.book_id ORDER BY s.total_borrows DESC LIMIT 20"},
+        {"DashboardUI.loadNotificationsData (low stock)",
+            "SELECT COUNT(*) FROM book_stats WHERE available_copies < 3"},
+        {"BookBrowser.browse (category)",
+            "SELECT " + BookBrowser.COLUMNS + " FROM books b WHERE 1=1 AND b.category = ? AND b.id > ? ORDER BY b.id LIMIT ?"},
+        {"BookBrowser.browse (text)",
+            "SELECT " + BookBrowser.COLUMNS + " FROM books_fts CROSS JOIN books b ON b.id = books_fts.rowid WHERE books_fts MATCH ? " +
+            "AND b.category = ? AND books_fts.rowid > ? ORDER BY books_fts.rowid LIMIT ?"},
+        {"DashboardStats.collect (overdue)",
+            "SELECT COUNT(*) FROM borrows WHERE " + BookStats.OPEN_LOAN +
+            " AND borrow_date < date('now', '-" + DashboardStats.OVERDUE_DAYS + " days')"},
+        {"DashboardStats.collect (top users)",
+            "SELECT u.id, u.username, s.total_borrows FROM user_borrow_stats s " +
+            "JOIN users u ON u.id = s.user_id WHERE u.role != 'admin' AND s.total_borrows > 0 " +
+            "ORDER BY s.total_borrows DESC LIMIT 5"},
+        {"DashboardStats.monthlyBorrows",
+            "SELECT month, borrows FROM borrow_monthly_stats WHERE month >= ? AND month <= ?"},
+        {"DashboardStats.dailyActivity",
+            "SELECT day, borrows, returns FROM borrow_daily_stats WHERE day >= ? AND day <= ?"},
+        {"ClientHandler.handleSearch",
+            "SELECT b.id, b.title, b.author, b.publisher, b.year, b.quantity FROM books_fts " +
+            "JOIN books b ON b.id = books_fts.rowid WHERE books_fts MATCH '{title author} : (\"book\"*)' " +
+            "ORDER BY " + AdvancedSearch.BM25_ORDER + " LIMIT 100"},
+        {"NotificationUI.unreadCount",
+            "SELECT COUNT(*) FROM notifications WHERE user_id = ? AND is_read = 0"},
+        {"NotificationUI.list",
+            "SELECT id, type, title, content, created_at, is_read FROM notifications WHERE user_id = ? ORDER BY created_at DESC"},
+        {"ClientUI.checkBorrowingLimit",
+            "SELECT COUNT(*) FROM borrows WHERE user_id = ? AND " + BookStats.OPEN_LOAN},
+        {"ClientUI.submitBorrowRequest",
+            "SELECT id FROM borrow_requests WHERE user_id = ? AND book_id = ? AND status = 'PENDING'"},
+        {"EnhancedBorrowDAO.getBorrowsByUserId",
+            "SELECT * FROM borrow_records WHERE user_id = ?"},
+        {"EnhancedBorrowDAO.getBorrowCountByBookId",
+            "SELECT COUNT(*) FROM borrow_records WHERE book_id = ?"},
+    };
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("\"((?:[^\"\\\\\\n]|\\\\.)*)\"");
+    private static final Pattern SQL_START = Pattern.compile("^\\s*(SELECT|UPDATE|DELETE|WITH)\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern TABLE_REF = Pattern.compile(
+            "\\b(?:FROM|JOIN|UPDATE)\\s+(\\w+)(?:\\s+(?:AS\\s+)?(\\w+))?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern EQUALITY = Pattern.compile(
+            "(?:(\\w+)\\.)?(\\w+)\\s*(?:=\\s*(?:\\?|'[^']*'|\\d+)|IS\\s+NULL)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern ORDER_BY = Pattern.compile(
+            "ORDER\\s+BY\\s+(.+?)(?:\\s+LIMIT\\b|\\)|$)", Pattern.CASE_INSENSITIVE);
+    private static final Set<String> SQL_KEYWORDS = new LinkedHashSet<>();
+
+    static {
+        for (String k : new String[] {"WHERE", "ON", "LEFT", "INNER", "JOIN", "ORDER", "GROUP", "LIMIT", "SET", "AND", "OR"}) {
+            SQL_KEYWORDS.add(k);
+        }
+    }
+
+    /**
+     * Analysis result for one statement
+     */
+    public static class PlanReport {
+        final String source;
+        final String sql;
+        final List<String> plan = new ArrayList<>();
+        final List<String> issues = new ArrayList<>();
+        final Set<String> suggestions = new LinkedHashSet<>();
+        String error;
+
+        PlanReport(String source, String sql) {
+            this.source = source;
+            this.sql = sql;
+        }
+
+        public boolean isClean() { return error == null && issues.isEmpty(); }
+        public List<String> getIssues() { return issues; }
+        public Set<String> getSuggestions() { return suggestions; }
+    }
+
+    public static void main(String[] args) {
+        File sourceDir = new File(args.length > 0 ? args[0] : "src");
+
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+            SchemaMigrator.migrate(conn);
+            seed(conn, 2000, 5000, 40000);
+
+            int hotFailures = 0;
+            System.out.println("=== HOT QUERIES ===");
+            for (String[] hot : HOT_QUERIES) {
+                PlanReport report = explain(conn, hot[0], hot[1]);
+                print(report);
+                if (!report.isClean()) {
+                    hotFailures++;
+                }
+            }
+
+            System.out.println("\n=== SOURCE SCAN (" + sourceDir.getPath() + ") ===");
+            Map<String, String> collected = collectSql(sourceDir);
+            int flagged = 0;
+            Set<String> allSuggestions = new LinkedHashSet<>();
+            for (Map.Entry<String, String> entry : collected.entrySet()) {
+                PlanReport report = explain(conn, entry.getValue(), entry.getKey());
+                if (!report.isClean()) {
+                    print(report);
+                    flagged++;
+                    allSuggestions.addAll(report.suggestions);
+                }
+            }
+
+            System.out.println("\n=== SUMMARY ===");
+            System.out.println("Hot queries: " + HOT_QUERIES.length + ", not index-backed: " + hotFailures);
+            System.out.println("Source statements: " + collected.size() + ", flagged: " + flagged);
+            if (!allSuggestions.isEmpty()) {
+                System.out.println("Suggested indexes:");
+                for (String s : allSuggestions) {
+                    System.out.println("  " + s + ";");
+                }
+            }
+
+            if (hotFailures > 0) {
+                System.exit(1);
+            }
+        } catch (Exception e) {
+            System.err.println("[ERROR] Query plan analysis failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Collect SQL string literals (joined across '+' concatenations) from every
+     * .java file under the given directory. Returns sql -> "File.java:line".
+     */
+    public static Map<String, String> collectSql(File dir) throws Exception {
+        Map<String, String> result = new java.util.LinkedHashMap<>();
+        List<File> files = new ArrayList<>();
+        listJavaFiles(dir, files);
+
+        for (File file : files) {
+            String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            Matcher m = STRING_LITERAL.matcher(text);
+            StringBuilder current = null;
+            int currentLine = 0;
+            int lastEnd = -1;
+
+            while (m.find()) {
+                boolean continues = current != null && text.substring(lastEnd, m.start()).trim().equals("+");
+                if (!continues) {
+                    addIfSql(result, current, file, currentLine);
+                    current = new StringBuilder();
+                    currentLine = lineOf(text, m.start());
+                }
+                current.append(unescape(m.group(1)));
+                lastEnd = m.end();
+            }
+            addIfSql(result, current, file, currentLine);
+        }
+        return result;
+    }
+
+    private static void addIfSql(Map<String, String> result, StringBuilder sql, File file, int line) {
+        if (sql == null) return;
+        String s = sql.toString().trim();
+        if (SQL_START.matcher(s).find() && !result.containsKey(s)) {
+            result.put(s, file.getName() + ":" + line);
+        }
+    }
+
+    private static void listJavaFiles(File dir, List<File> out) {
+        File[] children = dir.listFiles();
+        if (children == null) return;
+        for (File f : children) {
+            if (f.isDirectory()) {
+                listJavaFiles(f, out);
+            } else if (f.getName().endsWith(".java")
+                    // HOT_QUERIES are checked as built; their literals here are only fragments
+                    && !f.getName().equals(QueryPlanAnalyzer.class.getSimpleName() + ".java")) {
+                out.add(f);
+            }
+        }
+    }
+
+    private static int lineOf(String text, int offset) {
+        int line = 1;
+        for (int i = 0; i < offset; i++) {
+            if (text.charAt(i) == '\n') line++;
+        }
+        return line;
+    }
+
+    private static String unescape(String s) {
+        return s.replace("\\\"", "\"").replace("\\n", " ").replace("\\t", " ").replace("\\\\", "\\");
+    }
+
+    /**
+     * Run EXPLAIN QUERY PLAN and classify the plan
+     */
+    public static PlanReport explain(Connection conn, String source, String sql) {
+        PlanReport report = new PlanReport(source, sql);
+        Map<String, String> aliases = resolveAliases(sql);
+        boolean hasWhere = sql.toUpperCase(Locale.ROOT).contains(" WHERE ");
+        boolean rankedByRelevance = sql.toUpperCase(Locale.ROOT).contains("ORDER BY BM25(");
+
+        try (PreparedStatement ps = conn.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String detail = rs.getString("detail");
+                report.plan.add(detail);
+
+                String upper = detail.toUpperCase(Locale.ROOT);
+                if (upper.startsWith("SCAN ") && !upper.contains(" USING ") && !upper.contains("CONSTANT ROW")
+                        && !upper.contains("VIRTUAL TABLE INDEX")
+                        && !upper.startsWith("SCAN SUBQUERY")) {
+                    String table = resolveTable(scannedName(detail), aliases);
+                    // Materialized subqueries and CTEs are scanned by design; their inner plan is reported separately
+                    if (hasWhere && !columnsOf(conn, table).isEmpty()) {
+                        report.issues.add("Full table scan of " + table);
+                        String suggestion = suggestIndex(conn, table, sql);
+                        if (suggestion != null) {
+                            report.suggestions.add(suggestion);
+                        }
+                    }
+                } else if (upper.startsWith("USE TEMP B-TREE") && !rankedByRelevance) {
+                    // Relevance ordering sorts only the matched rows, which no index can avoid
+                    report.issues.add(detail);
+                }
+            }
+        } catch (SQLException e) {
+            report.error = e.getMessage();
+        }
+        return report;
+    }
+
+    private static String scannedName(String detail) {
+        String[] parts = detail.trim().split("\\s+");
+        // "SCAN borrows", "SCAN br", or the older "SCAN TABLE borrows AS br"
+        if (parts.length >= 5 && "TABLE".equalsIgnoreCase(parts[1]) && "AS".equalsIgnoreCase(parts[3])) {
+            return parts[4];
+        }
+        if (parts.length >= 3 && "TABLE".equalsIgnoreCase(parts[1])) {
+            return parts[2];
+        }
+        return parts.length >= 2 ? parts[1] : detail;
+    }
+
+    private static Map<String, String> resolveAliases(String sql) {
+        Map<String, String> aliases = new HashMap<>();
+        Matcher m = TABLE_REF.matcher(sql);
+        while (m.find()) {
+            String table = m.group(1);
+            String alias = m.group(2);
+            aliases.put(table.toLowerCase(Locale.ROOT), table);
+            if (alias != null && !SQL_KEYWORDS.contains(alias.toUpperCase(Locale.ROOT))) {
+                aliases.put(alias.toLowerCase(Locale.ROOT), table);
+            }
+        }
+        return aliases;
+    }
+
+    private static String resolveTable(String name, Map<String, String> aliases) {
+        String table = aliases.get(name.toLowerCase(Locale.ROOT));
+        return table != null ? table : name;
+    }
+
+    /**
+     * Propose an index: equality/IS NULL columns of the table first, then ORDER BY columns
+     */
+    static String suggestIndex(Connection conn, String table, String sql) {
+        Set<String> tableColumns = columnsOf(conn, table);
+        if (tableColumns.isEmpty()) return null;
+
+        Set<String> cols = new LinkedHashSet<>();
+        Matcher eq = EQUALITY.matcher(sql);
+        while (eq.find()) {
+            String col = eq.group(2).toLowerCase(Locale.ROOT);
+            if (tableColumns.contains(col) && !"id".equals(col)) {
+                cols.add(col);
+            }
+        }
+
+        Matcher order = ORDER_BY.matcher(sql);
+        if (order.find()) {
+            for (String term : order.group(1).split(",")) {
+                String col = term.trim().split("\\s+")[0];
+                int dot = col.indexOf('.');
+                if (dot >= 0) col = col.substring(dot + 1);
+                col = col.toLowerCase(Locale.ROOT);
+                if (tableColumns.contains(col)) {
+                    cols.add(col);
+                }
+            }
+        }
+
+        if (cols.isEmpty()) return null;
+        return "CREATE INDEX IF NOT EXISTS idx_" + table + "_" + String.join("_", cols) +
+               " ON " + table + "(" + String.join(", ", cols) + ")";
+    }
+
+    private static Set<String> columnsOf(Connection conn, String table) {
+        Set<String> cols = new LinkedHashSet<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                cols.add(rs.getString("name").toLowerCase(Locale.ROOT));
+            }
+        } catch (SQLException e) {
+            // Not a real table (subquery or CTE name)
+        }
+        return cols;
+    }
+
+    /**
+     * Fill the schema with enough synthetic rows that ANALYZE gives the planner
+     * realistic statistics
+     */
+    static void seed(Connection conn, int users, int books, int borrows) throws SQLException {
+        Random random = new Random(42);
+        conn.setAutoCommit(false);
+        try (PreparedStatement u = conn.prepareStatement(
+                 "INSERT INTO users(username, password, role, status) VALUES(?, 'x', 'user', 'active')");
+             PreparedStatement b = conn.prepareStatement(
+                 "INSERT INTO books(title, author, publisher, year, quantity, category) VALUES(?, ?, ?, ?, ?, ?)");
+             PreparedStatement br = conn.prepareStatement(
+                 "INSERT INTO borrows(user_id, book_id, borrow_date, return_date) VALUES(?, ?, ?, ?)");
+             PreparedStatement act = conn.prepareStatement(
+                 "INSERT INTO activities(user_id, book_id, action, action_time) VALUES(?, ?, 'borrow', ?)");
+             PreparedStatement fav = conn.prepareStatement(
+                 "INSERT OR IGNORE INTO favorites(user_id, book_id, added_date) VALUES(?, ?, ?)");
+             PreparedStatement rq = conn.prepareStatement(
+                 "INSERT INTO borrow_requests(user_id, book_id, request_date, status) VALUES(?, ?, ?, ?)");
+             PreparedStatement n = conn.prepareStatement(
+                 "INSERT INTO notifications(user_id, type, title, content, created_at, is_read) VALUES(?, 'info', 't', 'c', ?, ?)");
+             PreparedStatement rec = conn.prepareStatement(
+                 "INSERT INTO borrow_records(user_id, book_id, borrow_date, return_date) VALUES(?, ?, ?, ?)")) {
+
+            for (int i = 1; i <= users; i++) {
+                u.setString(1, "user" + i);
+                u.addBatch();
+            }
+            u.executeBatch();
+
+            for (int i = 1; i <= books; i++) {
+                b.setString(1, "Book " + i);
+                b.setString(2, "Author " + (i % 400));
+                b.setString(3, "Publisher " + (i % 50));
+                b.setString(4, String.valueOf(1990 + i % 35));
+                b.setInt(5, 1 + random.nextInt(5));
+                b.setString(6, "Category " + (i % 12));
+                b.addBatch();
+            }
+            b.executeBatch();
+
+            for (int i = 0; i < borrows; i++) {
+                int userId = 1 + random.nextInt(users);
+                int bookId = 1 + random.nextInt(books);
+                String date = "2024-" + String.format("%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28));
+                String returned = random.nextInt(10) < 8 ? date : null;
+
+                br.setInt(1, userId);
+                br.setInt(2, bookId);
+                br.setString(3, date);
+                br.setString(4, returned);
+                br.addBatch();
+
+                rec.setInt(1, userId);
+                rec.setInt(2, bookId);
+                rec.setString(3, date);
+                rec.setString(4, returned);
+                rec.addBatch();
+
+                act.setInt(1, userId);
+                act.setInt(2, bookId);
+                act.setString(3, date + " 10:00:00");
+                act.addBatch();
+
+                if (i % 4 == 0) {
+                    fav.setInt(1, userId);
+                    fav.setInt(2, bookId);
+                    fav.setString(3, date);
+                    fav.addBatch();
+
+                    rq.setInt(1, userId);
+                    rq.setInt(2, bookId);
+                    rq.setString(3, date);
+                    rq.setString(4, random.nextBoolean() ? "PENDING" : "APPROVED");
+                    rq.addBatch();
+
+                    n.setInt(1, userId);
+                    n.setString(2, date);
+                    n.setInt(3, random.nextInt(2));
+                    n.addBatch();
+                }
+            }
+            br.executeBatch();
+            rec.executeBatch();
+            act.executeBatch();
+            fav.executeBatch();
+            rq.executeBatch();
+            n.executeBatch();
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ANALYZE");
+        }
+    }
+
+    private static void print(PlanReport report) {
+        String status = report.error != null ? "ERROR" : (report.issues.isEmpty() ? "OK" : "FLAGGED");
+        System.out.println("[" + status + "] " + report.source);
+        System.out.println("    " + report.sql);
+        if (report.error != null) {
+            System.out.println("    error: " + report.error);
+        }
+        for (String step : report.plan) {
+            System.out.println("    plan: " + step);
+        }
+        for (String issue : report.issues) {
+            System.out.println("    issue: " + issue);
+        }
+        for (String suggestion : report.suggestions) {
+            System.out.println("    suggest: " + suggestion);
+        }
+    }
+}
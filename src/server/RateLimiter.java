@@ -1,80 +1,181 @@
 package server;
 
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Simple rate limiting implementation to prevent abuse
+ * Token-bucket rate limiting per client address and per signed-in user.
+ *
+ * Each bucket refills at rate.limit.requests.per.minute and holds up to
+ * rate.limit.requests.per.second tokens, so a client can burst that many
+ * requests and then keeps to the sustained rate. The desktop client's TCP
+ * connection is far chattier than the REST API and several clients often share
+ * one address, so TCP has its own buckets with the rate.limit.tcp.requests.*
+ * limits. A command costs rate.limit.cost.COMMAND tokens (1 when unset), so
+ * heavy reports drain the bucket faster than lookups. Settings are re-read from
+ * ConfigManager once a second, so a config reload takes effect without a restart.
+ *
+ * A bucket is a single AtomicLong holding the time at which it would be full
+ * again (the generic cell rate algorithm), updated by compare-and-set, so
+ * checking a request never takes a lock.
  */
 public class RateLimiter {
-    private static final int MAX_REQUESTS_PER_MINUTE = 60;
-    private static final int MAX_REQUESTS_PER_SECOND = 10;
-    private static final long MINUTE_IN_MILLIS = 60_000;
-    private static final long SECOND_IN_MILLIS = 1_000;
-    
-    private static final ConcurrentHashMap<String, ClientRateInfo> clientRates = new ConcurrentHashMap<>();
+    private static final long SETTINGS_REFRESH_NANOS = 1_000_000_000L;
+    private static final String COST_PREFIX = "rate.limit.cost.";
+
+    private static final Buckets[] buckets = {new Buckets(), new Buckets()};
+    private static volatile Settings settings = Settings.load(System.nanoTime());
     private static RateLimiter instance = new RateLimiter();
-    
+
     private RateLimiter() {
         // Private constructor for singleton
     }
-    
+
     public static RateLimiter getInstance() {
         return instance;
     }
-    
-    private static class ClientRateInfo {
-        private final AtomicInteger requestsThisMinute = new AtomicInteger(0);
-        private final AtomicInteger requestsThisSecond = new AtomicInteger(0);
-        private volatile long lastMinuteReset = System.currentTimeMillis();
-        private volatile long lastSecondReset = System.currentTimeMillis();
-        
-        public boolean isAllowed() {
-            long now = System.currentTimeMillis();
-            
-            // Reset second counter
-            if (now - lastSecondReset > SECOND_IN_MILLIS) {
-                requestsThisSecond.set(0);
-                lastSecondReset = now;
-            }
-            
-            // Reset minute counter
-            if (now - lastMinuteReset > MINUTE_IN_MILLIS) {
-                requestsThisMinute.set(0);
-                lastMinuteReset = now;
-            }
-            
-            // Check limits
-            if (requestsThisSecond.get() >= MAX_REQUESTS_PER_SECOND ||
-                requestsThisMinute.get() >= MAX_REQUESTS_PER_MINUTE) {
-                return false;
+
+    /**
+     * Where a request came in; each has its own limits and buckets
+     */
+    public enum Channel {
+        REST("rate.limit.requests."),
+        TCP("rate.limit.tcp.requests.");
+
+        private final String prefix;
+
+        Channel(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * Buckets of one channel, per client address and per user
+     */
+    private static final class Buckets {
+        final ConcurrentHashMap<String, AtomicLong> clients = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Integer, AtomicLong> users = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Limits in effect, as read from the configuration at one point in time
+     */
+    private static final class Settings {
+        final long loadedAt;
+        final long[] intervalNanos = new long[Channel.values().length];
+        final int[] burst = new int[Channel.values().length];
+        final Map<String, Integer> costs = new ConcurrentHashMap<>();
+
+        private Settings(long loadedAt) {
+            this.loadedAt = loadedAt;
+        }
+
+        static Settings load(long now) {
+            Settings loaded = new Settings(now);
+            for (Channel channel : Channel.values()) {
+                int perMinute = Math.max(1, ConfigManager.getInt(channel.prefix + "per.minute"));
+                loaded.intervalNanos[channel.ordinal()] = 60_000_000_000L / perMinute;
+                loaded.burst[channel.ordinal()] = Math.max(1, ConfigManager.getInt(channel.prefix + "per.second"));
             }
-            
-            // Increment counters
-            requestsThisSecond.incrementAndGet();
-            requestsThisMinute.incrementAndGet();
-            return true;
+            return loaded;
+        }
+
+        int cost(String command) {
+            if (command == null) return 1;
+            return costs.computeIfAbsent(command, k -> {
+                String value = ConfigManager.getString(COST_PREFIX + k);
+                if (value == null) return 1;
+                try {
+                    return Math.max(0, Integer.parseInt(value.trim()));
+                } catch (NumberFormatException e) {
+                    System.err.println("[CONFIG] Invalid integer value for " + COST_PREFIX + k + ": " + value);
+                    return 1;
+                }
+            });
         }
     }
-    
+
     /**
      * Check if client is allowed to make a request
      */
     public boolean isAllowed(String clientIdentifier) {
-        if (clientIdentifier == null) return false;
-        
-        ClientRateInfo rateInfo = clientRates.computeIfAbsent(clientIdentifier, k -> new ClientRateInfo());
-        return rateInfo.isAllowed();
+        return tryAcquire(Channel.REST, clientIdentifier, 0, null) == 0;
     }
-    
+
+    /**
+     * Charge a command to the client's bucket and, when signed in, the user's.
+     * Returns 0 when allowed, otherwise the milliseconds until it would be.
+     */
+    public long tryAcquire(Channel channel, String clientAddress, int userId, String command) {
+        if (clientAddress == null) return SETTINGS_REFRESH_NANOS / 1_000_000;
+        long now = System.nanoTime();
+        Settings current = settings(now);
+        int index = channel.ordinal();
+        long interval = current.intervalNanos[index];
+        // A command dearer than the whole bucket could never run
+        long cost = Math.min(current.burst[index], current.cost(command)) * interval;
+        if (cost == 0) return 0;
+        long limit = current.burst[index] * interval;
+
+        Buckets channelBuckets = buckets[index];
+        AtomicLong client = channelBuckets.clients.computeIfAbsent(clientAddress, k -> new AtomicLong(now));
+        long wait = charge(client, now, cost, limit);
+        if (wait == 0 && userId > 0) {
+            wait = charge(channelBuckets.users.computeIfAbsent(userId, k -> new AtomicLong(now)), now, cost, limit);
+            if (wait > 0) {
+                // The user's bucket refused, so hand the client's tokens back
+                client.addAndGet(-cost);
+            }
+        }
+        if (wait > 0) {
+            MetricsCollector.recordSecurityEvent("rate_limit");
+            // Round up so a client retrying after this long is let through
+            return (wait + 999_999) / 1_000_000;
+        }
+        return 0;
+    }
+
+    /**
+     * Tokens a command costs under the current settings
+     */
+    public static int getCost(String command) {
+        return settings(System.nanoTime()).cost(command);
+    }
+
+    /**
+     * Take cost from the bucket, or return how long until it holds enough
+     */
+    private static long charge(AtomicLong bucket, long now, long cost, long limit) {
+        while (true) {
+            long full = bucket.get();
+            long next = Math.max(full, now) + cost;
+            if (next - now > limit) {
+                return next - now - limit;
+            }
+            if (bucket.compareAndSet(full, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private static Settings settings(long now) {
+        Settings current = settings;
+        if (now - current.loadedAt >= SETTINGS_REFRESH_NANOS) {
+            current = Settings.load(now);
+            settings = current;
+        }
+        return current;
+    }
+
     /**
-     * Clean up old client rate information
+     * Drop buckets that have refilled completely; they are recreated full on next use
      */
     public static void cleanup() {
-        long now = System.currentTimeMillis();
-        clientRates.entrySet().removeIf(entry -> {
-            ClientRateInfo info = entry.getValue();
-            return (now - info.lastMinuteReset) > MINUTE_IN_MILLIS * 5; // Keep for 5 minutes
-        });
+        long now = System.nanoTime();
+        for (Buckets channelBuckets : buckets) {
+            channelBuckets.clients.values().removeIf(bucket -> bucket.get() <= now);
+            channelBuckets.users.values().removeIf(bucket -> bucket.get() <= now);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,83 @@
+package server;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of a rate limit check on the TCP path, per thread count.
+ * First with limits high enough that every check is allowed, then with the
+ * configured limits on a few hot clients so most checks are refused.
+ * Usage: RateLimiterBenchmark [maxThreads] [clients] [millis]
+ */
+public class RateLimiterBenchmark {
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long millis = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+
+        String perMinute = ConfigManager.getString("rate.limit.tcp.requests.per.minute");
+        ConfigManager.setProperty("rate.limit.tcp.requests.per.minute", String.valueOf(Integer.MAX_VALUE));
+        RateLimiter limiter = RateLimiter.getInstance();
+        run(limiter, "allowed", maxThreads, clients, millis);
+
+        // Settings are re-read once a second
+        ConfigManager.setProperty("rate.limit.tcp.requests.per.minute", perMinute);
+        Thread.sleep(1100);
+        run(limiter, "refused", maxThreads, Math.min(clients, 4), millis);
+        System.exit(0);
+    }
+
+    private static void run(RateLimiter limiter, String label, int maxThreads, int clients, long millis)
+            throws InterruptedException {
+        String[] addresses = new String[clients];
+        for (int i = 0; i < clients; i++) {
+            addresses[i] = "10.0." + (i >> 8 & 255) + "." + (i & 255);
+        }
+        // Warm up so the first row does not include compilation
+        measure(limiter, 1, addresses, millis / 2);
+        for (int threads = 1; threads <= maxThreads; threads = threads < maxThreads ? Math.min(maxThreads, threads * 2) : maxThreads + 1) {
+            long[] result = measure(limiter, threads, addresses, millis);
+            System.out.println(String.format("[BENCH] %s, %d thread(s), %d client(s): %.1f ns/check per thread, %.1fM checks/s, %d%% allowed",
+                    label, threads, addresses.length, (double) millis * 1_000_000 * threads / Math.max(1, result[0]),
+                    result[0] / (millis * 1000.0), result[1] * 100 / Math.max(1, result[0])));
+        }
+    }
+
+    /**
+     * Checks done and checks allowed by the given threads in the time given
+     */
+    private static long[] measure(RateLimiter limiter, int threads, String[] addresses, long millis)
+            throws InterruptedException {
+        AtomicLong checks = new AtomicLong();
+        AtomicLong allowed = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            workers[t] = new Thread(() -> {
+                long done = 0;
+                long passed = 0;
+                int next = offset;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while ((done & 1023) != 0 || System.nanoTime() < deadline) {
+                    String address = addresses[next];
+                    if (++next == addresses.length) next = 0;
+                    long wait = limiter.tryAcquire(RateLimiter.Channel.TCP, address, 1 + (next & 63), "SEARCH");
+                    if (wait == 0) passed++;
+                    done++;
+                }
+                checks.addAndGet(done);
+                allowed.addAndGet(passed);
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        return new long[] {checks.get(), allowed.get()};
+    }
+}
@@ -0,0 +1,364 @@
+package server;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds the recommendation training inputs from a synthetic library and
+ * reports time and heap use per stage.
+ * Usage: RecommendationBenchmark [users] [books] [borrowsPerUser] [dbFile]
+ *        RecommendationBenchmark similarity [rows...]
+ *        RecommendationBenchmark parallel [users] [books] [maxThreads]
+ *        RecommendationBenchmark lsh [books] [maxCandidates]
+ */
+public class RecommendationBenchmark {
+    // Keeps lookup results live so the timed loops are not optimised away
+    static long sink;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && "similarity".equals(args[0])) {
+            similarity(args);
+            return;
+        }
+        if (args.length > 0 && "parallel".equals(args[0])) {
+            parallel(args);
+            return;
+        }
+        if (args.length > 0 && "lsh".equals(args[0])) {
+            lsh(args);
+            return;
+        }
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int books = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int borrowsPerUser = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        File dbFile = args.length > 3 ? new File(args[3]) : File.createTempFile("recommendation-bench", ".db");
+
+        String url = "jdbc:sqlite:" + dbFile.getAbsolutePath();
+        try (Connection conn = DriverManager.getConnection(url)) {
+            if (dbFile.length() == 0) {
+                long start = System.currentTimeMillis();
+                generate(conn, users, books, borrowsPerUser);
+                System.out.println("[BENCH] Generated " + users + " users, " + books + " books, ~" +
+                        (long) users * borrowsPerUser + " borrows in " + (System.currentTimeMillis() - start) + "ms");
+            }
+
+            System.gc();
+            resetPeaks();
+            long baseline = usedHeap();
+
+            long start = System.nanoTime();
+            TrainingData data = TrainingData.load(conn);
+            long loaded = System.nanoTime();
+            report("load", start, loaded, baseline);
+
+            int profiles = RecommendationEngine.buildUserProfiles(data).size();
+            long profiled = System.nanoTime();
+            report("profiles (" + profiles + ")", loaded, profiled, baseline);
+
+            int features = RecommendationEngine.extractBookFeatures(data).size();
+            long featured = System.nanoTime();
+            report("features (" + features + ")", profiled, featured, baseline);
+
+            System.out.println("[BENCH] Total " + (featured - start) / 1000000 + "ms, peak heap " +
+                    mb(peakHeap()) + " (baseline " + mb(baseline) + ")");
+        } finally {
+            if (args.length <= 3) {
+                dbFile.delete();
+            }
+        }
+    }
+
+    private static void generate(Connection conn, int users, int books, int borrowsPerUser) throws Exception {
+        Random random = new Random(42);
+        String[] categories = {"Văn học", "Khoa học", "Lịch sử", "Thiếu nhi", "Kinh tế", "Tâm lý", "Công nghệ", "Nghệ thuật"};
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE users (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT)");
+        stmt.execute("CREATE TABLE books (id INTEGER PRIMARY KEY AUTOINCREMENT, title TEXT, author TEXT, " +
+                "category TEXT, description TEXT)");
+        stmt.execute("CREATE TABLE borrow_records (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER, " +
+                "book_id INTEGER, borrow_date TEXT, return_date TEXT)");
+
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO users(username) VALUES (?)")) {
+            for (int i = 0; i < users; i++) {
+                ps.setString(1, "user" + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO books(title, author, category, description) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < books; i++) {
+                ps.setString(1, "Book " + i + (i % 5 == 0 ? " history" : i % 7 == 0 ? " love story" : ""));
+                ps.setString(2, "Author " + random.nextInt(Math.max(1, books / 10)));
+                ps.setString(3, categories[random.nextInt(categories.length)]);
+                ps.setString(4, "A tale of science and magic number " + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        LocalDate today = LocalDate.now();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO borrow_records(user_id, book_id, borrow_date, return_date) VALUES (?, ?, ?, ?)")) {
+            for (int u = 1; u <= users; u++) {
+                int count = random.nextInt(borrowsPerUser * 2 + 1);
+                for (int i = 0; i < count; i++) {
+                    // Skewed towards popular titles
+                    int book = 1 + (int) (books * Math.pow(random.nextDouble(), 2));
+                    LocalDate borrowed = today.minusDays(random.nextInt(730));
+                    ps.setInt(1, u);
+                    ps.setInt(2, book);
+                    ps.setString(3, borrowed.toString());
+                    ps.setString(4, random.nextInt(10) == 0 ? null : borrowed.plusDays(1 + random.nextInt(30)).toString());
+                    ps.addBatch();
+                }
+                if (u % 10000 == 0) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    /**
+     * Compare the nested-map similarity layout with SimilarityIndex on random
+     * sparse rows: heap held and cost of a top-10 neighbour lookup
+     */
+    private static void similarity(String[] args) {
+        int[] sizes = args.length > 1 ? new int[args.length - 1] : new int[] {10000, 50000};
+        for (int i = 1; i < args.length; i++) sizes[i - 1] = Integer.parseInt(args[i]);
+        int candidatesPerRow = 100;
+        int k = 50;
+        float minScore = 0.1f;
+
+        for (int n : sizes) {
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) ids[i] = i + 1;
+
+            System.gc();
+            long before = usedHeap();
+            Map<Integer, Map<Integer, Double>> nested = new HashMap<>();
+            Random random = new Random(7);
+            for (int i = 0; i < n; i++) {
+                for (int c = 0; c < candidatesPerRow / 2; c++) {
+                    int j = random.nextInt(n);
+                    double score = Math.pow(random.nextDouble(), 3);
+                    if (j == i || score < minScore) continue;
+                    nested.computeIfAbsent(ids[i], x -> new HashMap<>()).put(ids[j], score);
+                    nested.computeIfAbsent(ids[j], x -> new HashMap<>()).put(ids[i], score);
+                }
+            }
+            System.gc();
+            long nestedBytes = usedHeap() - before;
+
+            long start = System.nanoTime();
+            SimilarityIndex.Builder builder = new SimilarityIndex.Builder(ids, k, minScore);
+            random = new Random(7);
+            for (int i = 0; i < n; i++) {
+                for (int c = 0; c < candidatesPerRow / 2; c++) {
+                    int j = random.nextInt(n);
+                    float score = (float) Math.pow(random.nextDouble(), 3);
+                    builder.add(i, j, score);
+                }
+            }
+            SimilarityIndex index = builder.build();
+            long buildMs = (System.nanoTime() - start) / 1000000;
+
+            int lookups = 200000;
+            long checksum = 0;
+            random = new Random(11);
+            start = System.nanoTime();
+            for (int q = 0; q < lookups; q++) {
+                Map<Integer, Double> row = nested.get(1 + random.nextInt(n));
+                if (row == null) continue;
+                List<Map.Entry<Integer, Double>> top = new ArrayList<>(row.entrySet());
+                top.sort(Map.Entry.<Integer, Double>comparingByValue().reversed());
+                for (int t = 0; t < Math.min(10, top.size()); t++) checksum += top.get(t).getKey();
+            }
+            long nestedNs = (System.nanoTime() - start) / lookups;
+
+            random = new Random(11);
+            start = System.nanoTime();
+            for (int q = 0; q < lookups; q++) {
+                int[] top = index.neighborIds(1 + random.nextInt(n));
+                for (int t = 0; t < Math.min(10, top.length); t++) checksum += top[t];
+            }
+            long indexNs = (System.nanoTime() - start) / lookups;
+
+            System.out.println("[BENCH] " + n + " rows: nested maps " + mb(nestedBytes) + ", top-10 lookup " +
+                    nestedNs + "ns | SimilarityIndex (K=" + k + ") " + mb(index.memoryBytes()) + ", top-10 lookup " +
+                    indexNs + "ns, built in " + buildMs + "ms (" + index.entries() + " entries)");
+            sink += checksum;
+        }
+    }
+
+    /**
+     * Time the similarity build at every parallelism from 1 to the core count
+     * and check that each result is identical to the single-threaded one
+     */
+    private static void parallel(String[] args) throws Exception {
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int books = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        File dbFile = File.createTempFile("recommendation-bench", ".db");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath())) {
+            generate(conn, users, books, 8);
+            TrainingData data = TrainingData.load(conn);
+            ParallelSimilarity.UserVectors userVectors = ParallelSimilarity.encodeUsers(data);
+            ParallelSimilarity.BookVectors bookVectors =
+                    RecommendationEngine.encodeBooks(data, RecommendationEngine.extractBookFeatures(data));
+
+            int cores = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            SimilarityIndex userBaseline = null;
+            SimilarityIndex bookBaseline = null;
+            long userSerialMs = 0;
+            long bookSerialMs = 0;
+            for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(cores, threads * 2) : cores + 1) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    long start = System.nanoTime();
+                    SimilarityIndex userIndex = ParallelSimilarity.users(data.userIds, userVectors, 50, 0.1f, pool);
+                    long userMs = (System.nanoTime() - start) / 1000000;
+                    start = System.nanoTime();
+                    SimilarityIndex bookIndex = ParallelSimilarity.books(data.bookIds, bookVectors, 50, 0.1f, pool);
+                    long bookMs = (System.nanoTime() - start) / 1000000;
+                    if (userBaseline == null) {
+                        userBaseline = userIndex;
+                        bookBaseline = bookIndex;
+                        userSerialMs = userMs;
+                        bookSerialMs = bookMs;
+                    }
+                    System.out.println(String.format("[BENCH] %d thread(s): users %dms (x%.2f), books %dms (x%.2f), identical=%b",
+                            threads, userMs, (double) userSerialMs / Math.max(1, userMs),
+                            bookMs, (double) bookSerialMs / Math.max(1, bookMs),
+                            userIndex.sameAs(userBaseline) && bookIndex.sameAs(bookBaseline)));
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        } finally {
+            dbFile.delete();
+        }
+    }
+
+    /**
+     * Recall@10 and query cost of MinHashIndex against the exact book matrix on a
+     * synthetic catalog with Zipf-distributed keywords. A hit is any returned book
+     * scoring at least the exact 10th best, so ties do not count as misses.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void lsh(String[] args) {
+        int books = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int maxCandidates = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int k = 10;
+        Random random = new Random(42);
+        int vocabulary = 5000;
+        double[] zipf = new double[vocabulary];
+        double total = 0;
+        for (int w = 0; w < vocabulary; w++) zipf[w] = total += 1.0 / (w + 1);
+
+        int[] ids = new int[books];
+        String[] categories = new String[books];
+        String[] authors = new String[books];
+        Set<String>[] keywords = new Set[books];
+        Set<String> noGenres = Collections.emptySet();
+        for (int b = 0; b < books; b++) {
+            ids[b] = b + 1;
+            categories[b] = "category" + random.nextInt(20);
+            authors[b] = "author" + random.nextInt(Math.max(1, books / 8));
+            keywords[b] = new HashSet<>();
+            int words = 4 + random.nextInt(9);
+            for (int i = 0; i < words; i++) {
+                int w = Arrays.binarySearch(zipf, random.nextDouble() * total);
+                keywords[b].add("word" + (w < 0 ? -w - 1 : w));
+            }
+        }
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        SimilarityIndex exact;
+        try {
+            exact = ParallelSimilarity.books(ids, ParallelSimilarity.encodeBooks(categories, authors, keywords),
+                    k, 0.1f, pool);
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("[BENCH] " + books + " books: exact matrix built in " + (System.nanoTime() - start) / 1000000 + "ms");
+
+        int queries = Math.min(books, 2000);
+        int[][] settings = {{16, 4}, {32, 3}, {16, 2}, {32, 2}, {64, 2}};
+        for (int[] setting : settings) {
+            start = System.nanoTime();
+            MinHashIndex index = new MinHashIndex(setting[0], setting[1], maxCandidates);
+            for (int b = 0; b < books; b++) index.add(ids[b], categories[b], authors[b], keywords[b], noGenres);
+            long buildMs = (System.nanoTime() - start) / 1000000;
+
+            // Warm up so the first setting is not timed cold
+            Random pick = new Random(7);
+            for (int q = 0; q < queries; q++) sink += index.neighborIds(ids[pick.nextInt(books)], k, 0.1f).length;
+
+            long hits = 0;
+            long expected = 0;
+            long queryNs = 0;
+            pick = new Random(7);
+            for (int q = 0; q < queries; q++) {
+                int id = ids[pick.nextInt(books)];
+                float[] truth = exact.neighborScores(id);
+                if (truth.length == 0) continue;
+                float threshold = truth[truth.length - 1];
+                long t = System.nanoTime();
+                int[] found = index.neighborIds(id, k, 0.1f);
+                queryNs += System.nanoTime() - t;
+                expected += truth.length;
+                for (int other : found) {
+                    if (index.score(id, other) >= threshold) hits++;
+                }
+                sink += found.length;
+            }
+            System.out.println(String.format("[BENCH] bands=%d rows=%d: recall@%d %.3f, %dus/query, built in %dms",
+                    setting[0], setting[1], k, (double) hits / Math.max(1, expected), queryNs / queries / 1000, buildMs));
+        }
+    }
+
+    private static void report(String stage, long from, long to, long baseline) {
+        System.out.println("[BENCH] " + stage + ": " + (to - from) / 1000000 + "ms, heap +" + mb(usedHeap() - baseline));
+    }
+
+    static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    static String mb(long bytes) {
+        return String.format("%.1fMB", bytes / (1024.0 * 1024.0));
+    }
+}
@@ -4,12 +4,21 @@ import dao.BookDAO;
 import dao.BorrowDAO;
 import dao.UserDAO;
 import model.Book;
-import model.Borrow;
 import model.User;
 
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.text.Normalizer;
+import java.time.LocalDate;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * AI-powered recommendation system for personalized book recommendations
@@ -19,46 +28,217 @@ public class RecommendationEngine {
     private final BorrowDAO borrowDAO;
     private final UserDAO userDAO;
     
-    // Cache for user preferences and book features
-    private final Map<Integer, UserProfile> userProfiles = new ConcurrentHashMap<>();
-    private final Map<Integer, BookFeatures> bookFeatures = new ConcurrentHashMap<>();
+    // Similarity matrices keep the top-K neighbours per row, pairs below MIN_SIMILARITY dropped
+    private static final float MIN_SIMILARITY = 0.1f;
+    private final int neighborsPerRow = Math.max(1, ConfigManager.getInt("recommendation.similarity.topk"));
     
-    // Similarity matrices
-    private final Map<Integer, Map<Integer, Double>> userSimilarity = new ConcurrentHashMap<>();
-    private final Map<Integer, Map<Integer, Double>> bookSimilarity = new ConcurrentHashMap<>();
+    // Recommendations kept per user, and how many users are cached per model
+    private final int cachedPerUser = Math.max(1, ConfigManager.getInt("recommendation.cache.size"));
+    private final int maxCachedUsers = Math.max(1, ConfigManager.getInt("recommendation.cache.users"));
     
-    // Last update timestamps
-    private long lastModelUpdate = 0;
+    // Above this many books the exact book matrix is skipped and MinHash/LSH answers alone
+    private final int exactMaxBooks = ConfigManager.getInt("recommendation.lsh.exact.max.books");
+    
+    // Similarity matrices saved after each build and mapped back in on restart; empty disables
+    private final String snapshotFile = ConfigManager.getString("recommendation.snapshot.file");
+    
+    // Feature kinds hashed into content vectors
+    private static final String CATEGORY_FEATURE = "category";
+    private static final String AUTHOR_FEATURE = "author";
+    
+    // Models are built off-thread and published whole; requests never see a partial build
+    private final AtomicReference<Model> model = new AtomicReference<>();
+    
+    // Full rebuilds only correct drift; borrows and returns are applied as they happen
     private static final long MODEL_UPDATE_INTERVAL = 24 * 60 * 60 * 1000; // 24 hours
     
+    // Events and rebuilds run in order on one thread, off the request path
+    private final ScheduledExecutorService updater = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "recommendation-updates");
+        t.setDaemon(true);
+        return t;
+    });
+    private static volatile RecommendationEngine active;
+    
     public RecommendationEngine(BookDAO bookDAO, BorrowDAO borrowDAO, UserDAO userDAO) {
         this.bookDAO = bookDAO;
         this.borrowDAO = borrowDAO;
         this.userDAO = userDAO;
         
-        // Initialize recommendation models
-        initializeModels();
+        // Initialize recommendation models in the background, from the saved snapshot if there is one
+        updater.execute(() -> initializeModels(true));
+        updater.scheduleWithFixedDelay(() -> {
+            System.out.println("[AI] Updating recommendation models...");
+            initializeModels(false);
+        }, MODEL_UPDATE_INTERVAL, MODEL_UPDATE_INTERVAL, TimeUnit.MILLISECONDS);
+        active = this;
+    }
+    
+    /**
+     * An engine trained once on the given data, without snapshots, scheduled
+     * rebuilds or event updates; used by the offline evaluation
+     */
+    RecommendationEngine(TrainingData data) {
+        this.bookDAO = null;
+        this.borrowDAO = null;
+        this.userDAO = null;
+        model.set(buildModel(data, System.currentTimeMillis(), LocalDate.now().toEpochDay(), null));
+    }
+    
+    /**
+     * Everything one build produced. The structure is fixed once published; the
+     * update thread changes profiles, book stats and the overlays in place.
+     */
+    private static final class Model {
+        final TrainingData data;
+        final long snapshotTime;
+        final long snapshotDay;
+        final Map<Integer, UserProfile> userProfiles;
+        final Map<Integer, BookFeatures> bookFeatures;
+        final ParallelSimilarity.UserVectors userVectors;
+        final SimilarityIndex userSimilarity;
+        final SimilarityIndex bookSimilarity;
+        // Approximate book neighbours; also covers books added after the build
+        final MinHashIndex bookLsh;
+        // Book ids by popularity at build time, most borrowed first
+        final int[] popularBooks;
+        
+        // Content scoring in TrainingData book order: hashed category and author slots
+        // (-1 when missing) and the popularity/rating part of the score. Priors are
+        // rewritten by the update thread; a request may see the value before or after.
+        final FeatureHasher hasher;
+        final int[] categorySlots;
+        final int[] authorSlots;
+        final float[] bookPriors;
+        
+        // Changes since the snapshot: borrows per user and recomputed neighbour rows.
+        // Overridden rows shadow userSimilarity until the next full rebuild.
+        final Map<Integer, Set<Integer>> recentBorrows = new ConcurrentHashMap<>();
+        final Map<Integer, Neighbors> userNeighborOverrides = new ConcurrentHashMap<>();
+        
+        // Top-N book ids per user, best first
+        final Map<Integer, int[]> recommendations = new ConcurrentHashMap<>();
+        
+        Model(TrainingData data, long snapshotTime, long snapshotDay, Map<Integer, UserProfile> userProfiles,
+              Map<Integer, BookFeatures> bookFeatures, ParallelSimilarity.UserVectors userVectors,
+              SimilarityIndex userSimilarity, SimilarityIndex bookSimilarity, MinHashIndex bookLsh,
+              int[] popularBooks) {
+            this.data = data;
+            this.snapshotTime = snapshotTime;
+            this.snapshotDay = snapshotDay;
+            this.userProfiles = userProfiles;
+            this.bookFeatures = bookFeatures;
+            this.userVectors = userVectors;
+            this.userSimilarity = userSimilarity;
+            this.bookSimilarity = bookSimilarity;
+            this.bookLsh = bookLsh;
+            this.popularBooks = popularBooks;
+            
+            hasher = FeatureHasher.fromConfig();
+            categorySlots = new int[data.bookCount()];
+            authorSlots = new int[data.bookCount()];
+            bookPriors = new float[data.bookCount()];
+            for (int b = 0; b < data.bookCount(); b++) {
+                categorySlots[b] = hasher.slot(CATEGORY_FEATURE, data.categories[b]);
+                authorSlots[b] = hasher.slot(AUTHOR_FEATURE, data.authors[b]);
+                BookFeatures book = bookFeatures.get(data.bookIds[b]);
+                bookPriors[b] = book != null ? contentPrior(book) : 0f;
+            }
+        }
+    }
+    
+    /**
+     * Report a committed borrow to the running engine, if there is one.
+     * Returns at once; the models are updated in the background.
+     */
+    public static void borrowed(int userId, int bookId) {
+        RecommendationEngine engine = active;
+        if (engine != null) engine.submit(userId, bookId, true);
+    }
+    
+    /**
+     * Report a committed return to the running engine, if there is one
+     */
+    public static void returned(int userId, int bookId) {
+        RecommendationEngine engine = active;
+        if (engine != null) engine.submit(userId, bookId, false);
     }
     
     /**
-     * Initialize recommendation models
+     * Report a book added to the catalog so it gets similar-book neighbours
+     * before the next rebuild
      */
-    private void initializeModels() {
+    public static void bookAdded(int bookId, String title, String author, String category, String description) {
+        RecommendationEngine engine = active;
+        if (engine == null) return;
+        long at = System.currentTimeMillis();
+        engine.updater.execute(() -> {
+            Model m = engine.model.get();
+            if (m == null || at < m.snapshotTime) return;
+            String text = title + " " + (description != null ? description : "");
+            Set<String> genres = new HashSet<>();
+            extractGenres(text, genres);
+            m.bookLsh.add(bookId, category, author, extractKeywords(text), genres);
+        });
+    }
+    
+    private void submit(int userId, int bookId, boolean borrow) {
+        long at = System.currentTimeMillis();
+        updater.execute(() -> {
+            Model m = model.get();
+            // Already part of a snapshot read after the event
+            if (m == null || at < m.snapshotTime) return;
+            try {
+                if (borrow) {
+                    applyBorrow(m, userId, bookId);
+                } else {
+                    applyReturn(m, userId, bookId);
+                }
+                if (m.recommendations.containsKey(userId)) {
+                    m.recommendations.put(userId, recommend(m, userId, cachedPerUser));
+                }
+            } catch (Exception e) {
+                System.err.println("[AI] Error applying " + (borrow ? "borrow" : "return") + " of book " +
+                        bookId + " by user " + userId + ": " + e.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * Build a new model and swap it in; on failure the current one stays in service.
+     * With useSnapshot the similarity matrices come from the saved snapshot when it
+     * matches the settings; a stale one is served while a full rebuild is queued.
+     */
+    private void initializeModels(boolean useSnapshot) {
         try {
             System.out.println("[AI] Initializing recommendation models...");
             
-            // Build user profiles
-            buildUserProfiles();
-            
-            // Extract book features
-            extractBookFeatures();
+            // Load users, books and borrow history in one pass per table. The counter is
+            // read first, so writes during the load make the saved snapshot look stale.
+            long start = System.currentTimeMillis();
+            long snapshotDay = LocalDate.now().toEpochDay();
+            long changeCounter;
+            TrainingData data;
+            try (Connection conn = DatabasePool.getInstance().getConnection()) {
+                changeCounter = ModelSnapshot.readChangeCounter(conn);
+                data = TrainingData.load(conn);
+            }
+            System.out.println("[AI] Loaded " + data.userCount() + " users, " + data.bookCount() + " books, " +
+                    data.borrowCount() + " borrows in " + (System.currentTimeMillis() - start) + "ms");
             
-            // Calculate similarity matrices
-            calculateUserSimilarity();
-            calculateBookSimilarity();
+            ModelSnapshot snapshot = useSnapshot
+                    ? loadSnapshot(data.bookCount() <= exactMaxBooks && data.bookCount() > 0) : null;
+            Model built = buildModel(data, start, snapshotDay, snapshot);
+            model.set(built);
+            System.out.println("[AI] Recommendation models initialized successfully in " +
+                    (System.currentTimeMillis() - start) + "ms");
             
-            lastModelUpdate = System.currentTimeMillis();
-            System.out.println("[AI] Recommendation models initialized successfully");
+            if (snapshot == null) {
+                saveSnapshot(changeCounter, built.userSimilarity, built.bookSimilarity);
+            } else if (changeCounter < 0 || snapshot.changeCounter != changeCounter) {
+                System.out.println("[AI] Model snapshot is stale, rebuilding in the background");
+                updater.execute(() -> initializeModels(false));
+            }
             
         } catch (Exception e) {
             System.err.println("[AI] Error initializing models: " + e.getMessage());
@@ -67,331 +247,447 @@ public class RecommendationEngine {
     }
     
     /**
-     * Build user reading profiles based on borrowing history
+     * Profiles, features and similarity matrices for one snapshot of the data,
+     * taking the matrices from a saved snapshot when one is given
      */
-    private void buildUserProfiles() {
+    private Model buildModel(TrainingData data, long start, long snapshotDay, ModelSnapshot snapshot) {
+        // Build user profiles
+        Map<Integer, UserProfile> userProfiles = new ConcurrentHashMap<>(buildUserProfiles(data));
+        System.out.println("[AI] Built profiles for " + userProfiles.size() + " users");
+        
+        // Extract book features
+        Map<Integer, BookFeatures> bookFeatures = extractBookFeatures(data);
+        System.out.println("[AI] Extracted features for " + bookFeatures.size() + " books");
+        
+        ParallelSimilarity.UserVectors userVectors = ParallelSimilarity.encodeUsers(data);
+        
+        // Calculate similarity matrices, unless the snapshot has them
+        SimilarityIndex userSimilarity;
+        SimilarityIndex bookSimilarity;
+        if (snapshot != null) {
+            userSimilarity = snapshot.userSimilarity;
+            bookSimilarity = snapshot.bookSimilarity;
+            System.out.println("[AI] Mapped similarity matrices from snapshot (" + userSimilarity.entries() +
+                    " user, " + bookSimilarity.entries() + " book entries)");
+        } else {
+            userSimilarity = calculateUserSimilarity(data, userVectors);
+            bookSimilarity = data.bookCount() <= exactMaxBooks
+                    ? calculateBookSimilarity(data, bookFeatures) : SimilarityIndex.empty();
+        }
+        MinHashIndex bookLsh = buildBookLsh(data, bookFeatures);
+        
+        return new Model(data, start, snapshotDay, userProfiles, bookFeatures, userVectors,
+                userSimilarity, bookSimilarity, bookLsh, rankByPopularity(bookFeatures));
+    }
+    
+    /**
+     * The saved snapshot, or null when there is none usable. A snapshot whose book
+     * matrix does not match the exact-matrix setting is not used either.
+     */
+    private ModelSnapshot loadSnapshot(boolean exactBooks) {
+        if (snapshotFile == null || snapshotFile.trim().isEmpty()) return null;
+        ModelSnapshot snapshot = ModelSnapshot.load(new File(snapshotFile), neighborsPerRow, MIN_SIMILARITY);
+        if (snapshot != null && exactBooks != (snapshot.bookSimilarity.size() > 0)) {
+            System.out.println("[AI] Ignoring model snapshot built with another book matrix setting");
+            return null;
+        }
+        return snapshot;
+    }
+    
+    private void saveSnapshot(long changeCounter, SimilarityIndex userSimilarity, SimilarityIndex bookSimilarity) {
+        if (snapshotFile == null || snapshotFile.trim().isEmpty()) return;
         try {
-            List<User> users = userDAO.getAllUsers();
+            long start = System.currentTimeMillis();
+            File file = ModelSnapshot.save(new File(snapshotFile), changeCounter, neighborsPerRow, MIN_SIMILARITY,
+                    userSimilarity, bookSimilarity);
+            System.out.println("[AI] Saved model snapshot " + file + " (" + file.length() / 1024 + "KB) in " +
+                    (System.currentTimeMillis() - start) + "ms");
+        } catch (Exception e) {
+            // The models are already in service; the next restart just rebuilds
+            System.err.println("[AI] Could not save model snapshot: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Build user reading profiles based on borrowing history
+     */
+    static Map<Integer, UserProfile> buildUserProfiles(TrainingData data) {
+        Map<Integer, UserProfile> profiles = new HashMap<>(data.userCount() * 2);
+        Set<String>[] bookGenres = genresByBook(data);
+        
+        for (int u = 0; u < data.userCount(); u++) {
+            UserProfile profile = new UserProfile(data.userIds[u]);
+            Map<String, Integer> categoryCount = new HashMap<>();
+            Map<String, Integer> authorCount = new HashMap<>();
+            Set<String> genres = new HashSet<>();
+            double totalRating = 0;
             
-            for (User user : users) {
-                UserProfile profile = new UserProfile(user.getId());
-                List<Borrow> borrowHistory = borrowDAO.getBorrowsByUserId(user.getId());
+            int from = data.userBorrowStart[u];
+            int to = data.userBorrowStart[u + 1];
+            for (int i = from; i < to; i++) {
+                int b = data.borrowBooks[i];
                 
-                // Analyze borrowing patterns
-                Map<String, Integer> categoryCount = new HashMap<>();
-                Map<String, Integer> authorCount = new HashMap<>();
-                Set<String> genres = new HashSet<>();
-                
-                double totalRating = 0;
-                int ratingCount = 0;
-                
-                for (Borrow borrow : borrowHistory) {
-                    Book book = bookDAO.getBookById(borrow.getBookId());
-                    if (book != null) {
-                        // Category preferences
-                        String category = book.getCategory();
-                        if (category != null && !category.isEmpty()) {
-                            categoryCount.put(category, categoryCount.getOrDefault(category, 0) + 1);
-                        }
-                        
-                        // Author preferences
-                        String author = book.getAuthor();
-                        if (author != null && !author.isEmpty()) {
-                            authorCount.put(author, authorCount.getOrDefault(author, 0) + 1);
-                        }
-                        
-                        // Genre extraction (simplified - from title/description keywords)
-                        extractGenres(book, genres);
-                        
-                        // Simulate rating based on borrowing frequency and return time
-                        double implicitRating = calculateImplicitRating(borrow);
-                        totalRating += implicitRating;
-                        ratingCount++;
-                    }
+                // Category preferences
+                String category = data.categories[b];
+                if (category != null && !category.isEmpty()) {
+                    categoryCount.merge(category, 1, Integer::sum);
                 }
                 
-                // Set profile preferences
-                profile.setCategoryPreferences(categoryCount);
-                profile.setAuthorPreferences(authorCount);
-                profile.setGenres(genres);
-                profile.setAverageRating(ratingCount > 0 ? totalRating / ratingCount : 3.0);
-                profile.setTotalBorrows(borrowHistory.size());
+                // Author preferences
+                String author = data.authors[b];
+                if (author != null && !author.isEmpty()) {
+                    authorCount.merge(author, 1, Integer::sum);
+                }
                 
-                userProfiles.put(user.getId(), profile);
+                genres.addAll(bookGenres[b]);
+                totalRating += data.borrowRatings[i];
             }
             
-            System.out.println("[AI] Built profiles for " + userProfiles.size() + " users");
+            // Set profile preferences
+            int borrowed = to - from;
+            profile.setCategoryPreferences(categoryCount);
+            profile.setAuthorPreferences(authorCount);
+            profile.setGenres(genres);
+            profile.setAverageRating(borrowed > 0 ? totalRating / borrowed : 3.0);
+            profile.setTotalBorrows(borrowed);
             
-        } catch (Exception e) {
-            System.err.println("[AI] Error building user profiles: " + e.getMessage());
+            profiles.put(data.userIds[u], profile);
         }
+        return profiles;
+    }
+    
+    /**
+     * Genre tags per book, computed once rather than per borrow
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Set<String>[] genresByBook(TrainingData data) {
+        Set<String>[] genres = new Set[data.bookCount()];
+        Map<Set<String>, Set<String>> shared = new HashMap<>();
+        for (int b = 0; b < data.bookCount(); b++) {
+            Set<String> found = new HashSet<>();
+            extractGenres(bookText(data, b), found);
+            genres[b] = shared.computeIfAbsent(found, k -> k);
+        }
+        return genres;
+    }
+    
+    private static String bookText(TrainingData data, int b) {
+        return data.titles[b] + " " + (data.descriptions[b] != null ? data.descriptions[b] : "");
     }
     
     /**
      * Extract book features for content-based filtering
      */
-    private void extractBookFeatures() {
-        try {
-            List<Book> books = bookDAO.getAllBooks();
+    static Map<Integer, BookFeatures> extractBookFeatures(TrainingData data) {
+        Map<Integer, BookFeatures> features = new HashMap<>(data.bookCount() * 2);
+        
+        for (int b = 0; b < data.bookCount(); b++) {
+            BookFeatures book = new BookFeatures(data.bookIds[b]);
             
-            for (Book book : books) {
-                BookFeatures features = new BookFeatures(book.getId());
-                
-                // Basic features
-                features.setCategory(book.getCategory());
-                features.setAuthor(book.getAuthor());
-                features.setTitle(book.getTitle());
-                
-                // Extract keywords from title and description
-                Set<String> keywords = extractKeywords(book.getTitle() + " " + 
-                    (book.getDescription() != null ? book.getDescription() : ""));
-                features.setKeywords(keywords);
-                
-                // Calculate popularity score based on borrowing frequency
-                int borrowCount = borrowDAO.getBorrowCountByBookId(book.getId());
-                features.setPopularityScore(Math.log(borrowCount + 1)); // Log to reduce skew
-                
-                // Calculate average rating (simulated)
-                double avgRating = calculateBookRating(book.getId());
-                features.setAverageRating(avgRating);
-                
-                bookFeatures.put(book.getId(), features);
-            }
+            // Basic features
+            book.setCategory(data.categories[b]);
+            book.setAuthor(data.authors[b]);
+            book.setTitle(data.titles[b]);
             
-            System.out.println("[AI] Extracted features for " + bookFeatures.size() + " books");
+            // Extract keywords from title and description
+            book.setKeywords(extractKeywords(bookText(data, b)));
             
-        } catch (Exception e) {
-            System.err.println("[AI] Error extracting book features: " + e.getMessage());
+            // Popularity from borrowing frequency, plus the average implicit rating
+            book.setBorrowStats(data.bookBorrowCounts[b], data.bookRatingSums[b]);
+            
+            features.put(data.bookIds[b], book);
         }
+        return features;
+    }
+    
+    /**
+     * Book ids ordered by popularity, ties by id
+     */
+    private static int[] rankByPopularity(Map<Integer, BookFeatures> bookFeatures) {
+        List<BookFeatures> books = new ArrayList<>(bookFeatures.values());
+        books.sort((a, b) -> {
+            int byPopularity = Double.compare(b.getPopularityScore(), a.getPopularityScore());
+            return byPopularity != 0 ? byPopularity : Integer.compare(a.getBookId(), b.getBookId());
+        });
+        int[] ranked = new int[books.size()];
+        for (int i = 0; i < ranked.length; i++) ranked[i] = books.get(i).getBookId();
+        return ranked;
     }
     
     /**
      * Calculate user-user similarity for collaborative filtering
      */
-    private void calculateUserSimilarity() {
+    private SimilarityIndex calculateUserSimilarity(TrainingData data, ParallelSimilarity.UserVectors vectors) {
+        ForkJoinPool pool = newBuildPool();
         try {
-            List<Integer> userIds = new ArrayList<>(userProfiles.keySet());
+            long start = System.currentTimeMillis();
+            SimilarityIndex userSimilarity = ParallelSimilarity.users(data.userIds, vectors, neighborsPerRow,
+                    MIN_SIMILARITY, pool);
             
-            for (int i = 0; i < userIds.size(); i++) {
-                Integer userId1 = userIds.get(i);
-                Map<Integer, Double> similarities = new HashMap<>();
-                
-                for (int j = i + 1; j < userIds.size(); j++) {
-                    Integer userId2 = userIds.get(j);
-                    
-                    double similarity = calculateCosineSimilarity(
-                        userProfiles.get(userId1), 
-                        userProfiles.get(userId2)
-                    );
-                    
-                    similarities.put(userId2, similarity);
-                    
-                    // Add symmetric relationship
-                    userSimilarity.computeIfAbsent(userId2, k -> new HashMap<>())
-                               .put(userId1, similarity);
-                }
-                
-                userSimilarity.put(userId1, similarities);
-            }
-            
-            System.out.println("[AI] Calculated user similarity matrix");
+            System.out.println("[AI] Calculated user similarity matrix (" + userSimilarity.entries() + " entries, " +
+                    userSimilarity.memoryBytes() / 1024 + "KB) in " + (System.currentTimeMillis() - start) +
+                    "ms on " + pool.getParallelism() + " threads");
+            return userSimilarity;
             
         } catch (Exception e) {
             System.err.println("[AI] Error calculating user similarity: " + e.getMessage());
+            return SimilarityIndex.empty();
+        } finally {
+            pool.shutdown();
         }
     }
     
     /**
      * Calculate book-book similarity for content-based filtering
      */
-    private void calculateBookSimilarity() {
+    private SimilarityIndex calculateBookSimilarity(TrainingData data, Map<Integer, BookFeatures> bookFeatures) {
+        ForkJoinPool pool = newBuildPool();
         try {
-            List<Integer> bookIds = new ArrayList<>(bookFeatures.keySet());
-            
-            for (int i = 0; i < bookIds.size(); i++) {
-                Integer bookId1 = bookIds.get(i);
-                Map<Integer, Double> similarities = new HashMap<>();
-                
-                for (int j = i + 1; j < bookIds.size(); j++) {
-                    Integer bookId2 = bookIds.get(j);
-                    
-                    double similarity = calculateBookSimilarity(
-                        bookFeatures.get(bookId1), 
-                        bookFeatures.get(bookId2)
-                    );
-                    
-                    if (similarity > 0.1) { // Only store significant similarities
-                        similarities.put(bookId2, similarity);
-                        
-                        // Add symmetric relationship
-                        bookSimilarity.computeIfAbsent(bookId2, k -> new HashMap<>())
-                                     .put(bookId1, similarity);
-                    }
-                }
-                
-                if (!similarities.isEmpty()) {
-                    bookSimilarity.put(bookId1, similarities);
-                }
-            }
+            long start = System.currentTimeMillis();
+            SimilarityIndex bookSimilarity = ParallelSimilarity.books(data.bookIds, encodeBooks(data, bookFeatures),
+                    neighborsPerRow, MIN_SIMILARITY, pool);
             
-            System.out.println("[AI] Calculated book similarity matrix");
+            System.out.println("[AI] Calculated book similarity matrix (" + bookSimilarity.entries() + " entries, " +
+                    bookSimilarity.memoryBytes() / 1024 + "KB) in " + (System.currentTimeMillis() - start) +
+                    "ms on " + pool.getParallelism() + " threads");
+            return bookSimilarity;
             
         } catch (Exception e) {
             System.err.println("[AI] Error calculating book similarity: " + e.getMessage());
+            return SimilarityIndex.empty();
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * MinHash signatures for every book in the snapshot
+     */
+    static MinHashIndex buildBookLsh(TrainingData data, Map<Integer, BookFeatures> bookFeatures) {
+        long start = System.currentTimeMillis();
+        MinHashIndex index = MinHashIndex.fromConfig();
+        Set<String>[] genres = genresByBook(data);
+        for (int b = 0; b < data.bookCount(); b++) {
+            BookFeatures book = bookFeatures.get(data.bookIds[b]);
+            index.add(data.bookIds[b], data.categories[b], data.authors[b],
+                    book != null ? book.getKeywords() : Collections.<String>emptySet(), genres[b]);
+        }
+        System.out.println("[AI] Built MinHash index for " + index.size() + " books in " +
+                (System.currentTimeMillis() - start) + "ms");
+        return index;
+    }
+    
+    /**
+     * Book vectors in TrainingData order, keywords taken from the extracted features
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static ParallelSimilarity.BookVectors encodeBooks(TrainingData data, Map<Integer, BookFeatures> features) {
+        Collection<String>[] keywords = new Collection[data.bookCount()];
+        for (int b = 0; b < keywords.length; b++) {
+            BookFeatures book = features.get(data.bookIds[b]);
+            keywords[b] = book != null ? book.getKeywords() : Collections.<String>emptySet();
         }
+        return ParallelSimilarity.encodeBooks(data.categories, data.authors, keywords);
+    }
+    
+    private static ForkJoinPool newBuildPool() {
+        int threads = ConfigManager.getInt("recommendation.build.threads");
+        return new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
     }
     
     /**
-     * Get personalized book recommendations for a user
+     * True once the first build has been published
+     */
+    public boolean isReady() {
+        return model.get() != null;
+    }
+    
+    /**
+     * Get personalized book recommendations for a user.
+     * Served from the per-user cache; empty until the first build completes.
      */
     public List<Book> getRecommendations(int userId, int count) {
-        updateModelsIfNeeded();
-        
-        Set<Integer> recommendedBookIds = new HashSet<>();
+        Model m = model.get();
+        if (m == null || count <= 0) {
+            return new ArrayList<>();
+        }
+        return toBooks(m, recommendedIds(m, userId, count), count);
+    }
+    
+    /**
+     * Book ids getRecommendations would return, best first
+     */
+    int[] getRecommendationIds(int userId, int count) {
+        Model m = model.get();
+        if (m == null || count <= 0) {
+            return new int[0];
+        }
+        int[] recommended = recommendedIds(m, userId, count);
+        return recommended.length > count ? Arrays.copyOf(recommended, count) : recommended;
+    }
+    
+    private int[] recommendedIds(Model m, int userId, int count) {
+        int[] recommended;
+        if (count > cachedPerUser) {
+            recommended = recommend(m, userId, count);
+        } else {
+            recommended = m.recommendations.get(userId);
+            if (recommended == null) {
+                recommended = recommend(m, userId, cachedPerUser);
+                if (m.recommendations.size() >= maxCachedUsers) {
+                    m.recommendations.clear();
+                }
+                m.recommendations.put(userId, recommended);
+            }
+        }
+        return recommended;
+    }
+    
+    /**
+     * Top count book ids for a user: collaborative picks first, then content-based,
+     * then popular titles for new users or cold start
+     */
+    private int[] recommend(Model m, int userId, int count) {
+        Set<Integer> borrowedBooks = getBorrowedBookIds(m, userId);
+        Set<Integer> recommendedBookIds = new LinkedHashSet<>();
         
         // Collaborative filtering recommendations (60% weight)
-        List<Integer> collaborativeRecs = getCollaborativeRecommendations(userId, count * 2);
-        recommendedBookIds.addAll(collaborativeRecs);
+        for (int bookId : getCollaborativeRecommendations(m, userId, borrowedBooks, count * 2)) {
+            recommendedBookIds.add(bookId);
+        }
         
         // Content-based recommendations (40% weight)
-        List<Integer> contentRecs = getContentBasedRecommendations(userId, count * 2);
-        recommendedBookIds.addAll(contentRecs);
-        
-        // Popularity-based recommendations (for new users or cold start)
-        if (recommendedBookIds.size() < count) {
-            List<Integer> popularRecs = getPopularityRecommendations(count);
-            recommendedBookIds.addAll(popularRecs);
+        for (int bookId : getContentBasedRecommendations(m, userId, borrowedBooks, count * 2)) {
+            recommendedBookIds.add(bookId);
         }
         
-        // Remove books already borrowed by user
-        Set<Integer> borrowedBooks = getBorrowedBookIds(userId);
-        recommendedBookIds.removeAll(borrowedBooks);
+        // Popularity-based recommendations, skipping books already borrowed by user
+        for (int i = 0; i < m.popularBooks.length && recommendedBookIds.size() < count; i++) {
+            if (!borrowedBooks.contains(m.popularBooks[i])) {
+                recommendedBookIds.add(m.popularBooks[i]);
+            }
+        }
         
-        // Convert to Book objects and limit results
-        return recommendedBookIds.stream()
-            .limit(count)
-            .map(id -> bookDAO.getBookById(id))
-            .filter(Objects::nonNull)
-            .collect(Collectors.toList());
+        int[] result = new int[Math.min(count, recommendedBookIds.size())];
+        Iterator<Integer> it = recommendedBookIds.iterator();
+        for (int i = 0; i < result.length; i++) result[i] = it.next();
+        return result;
     }
     
     /**
      * Get similar books based on content
      */
     public List<Book> getSimilarBooks(int bookId, int count) {
-        updateModelsIfNeeded();
-        
-        Map<Integer, Double> similarities = bookSimilarity.get(bookId);
-        if (similarities == null || similarities.isEmpty()) {
-            return getPopularityRecommendations(count).stream()
-                .map(id -> bookDAO.getBookById(id))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        Model m = model.get();
+        if (m == null) {
+            return new ArrayList<>();
         }
         
-        return similarities.entrySet().stream()
-            .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
-            .limit(count)
-            .map(entry -> bookDAO.getBookById(entry.getKey()))
-            .filter(Objects::nonNull)
-            .collect(Collectors.toList());
+        // Neighbours are stored best first. Books added since the build, and catalogs
+        // too large for the exact matrix, are answered by the MinHash index.
+        int[] similar = m.bookSimilarity.neighborIds(bookId);
+        if (similar.length == 0) {
+            similar = m.bookLsh.neighborIds(bookId, count, MIN_SIMILARITY);
+        }
+        if (similar.length == 0) {
+            return toBooks(m, m.popularBooks, count);
+        }
+        return toBooks(m, similar, count);
     }
     
     /**
-     * Get collaborative filtering recommendations
+     * Book objects for the first count ids: text from the model snapshot, stock from
+     * the catalog index, and the database only for books the model has not seen
      */
-    private List<Integer> getCollaborativeRecommendations(int userId, int count) {
-        Map<Integer, Double> userSims = userSimilarity.get(userId);
-        if (userSims == null || userSims.isEmpty()) {
-            return new ArrayList<>();
+    private List<Book> toBooks(Model m, int[] bookIds, int count) {
+        List<Book> books = new ArrayList<>(Math.min(count, bookIds.length));
+        CatalogIndex catalog = CatalogIndex.getInstance();
+        for (int i = 0; i < bookIds.length && books.size() < count; i++) {
+            int bookId = bookIds[i];
+            int b = m.data.bookIndex(bookId);
+            CatalogIndex.BookEntry entry = catalog.get(bookId);
+            Book book = entry != null && b >= 0
+                    ? new Book(bookId, entry.getTitle(), entry.getAuthor(), m.data.categories[b],
+                               m.data.descriptions[b], entry.getQuantity())
+                    : bookDAO.getBookById(bookId);
+            if (book != null) {
+                books.add(book);
+            }
         }
+        return books;
+    }
+    
+    /**
+     * Get collaborative filtering recommendations
+     */
+    private int[] getCollaborativeRecommendations(Model m, int userId, Set<Integer> userBooks, int count) {
+        Neighbors row = userNeighbors(m, userId);
         
-        // Find top similar users
-        List<Integer> similarUsers = userSims.entrySet().stream()
-            .filter(entry -> entry.getValue() > 0.3) // Minimum similarity threshold
-            .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
-            .limit(10)
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toList());
-        
-        // Aggregate recommendations from similar users
+        // Aggregate recommendations from the top similar users; neighbours are stored best first
         Map<Integer, Double> bookScores = new HashMap<>();
-        Set<Integer> userBooks = getBorrowedBookIds(userId);
-        
-        for (Integer similarUserId : similarUsers) {
-            Set<Integer> similarUserBooks = getBorrowedBookIds(similarUserId);
-            double userWeight = userSims.get(similarUserId);
+        for (int i = 0; i < row.ids.length && i < 10; i++) {
+            if (row.scores[i] <= 0.3) break; // Minimum similarity threshold
+            double userWeight = row.scores[i];
             
-            for (Integer bookId : similarUserBooks) {
+            for (Integer bookId : getBorrowedBookIds(m, row.ids[i])) {
                 if (!userBooks.contains(bookId)) {
-                    bookScores.put(bookId, bookScores.getOrDefault(bookId, 0.0) + userWeight);
+                    bookScores.merge(bookId, userWeight, Double::sum);
                 }
             }
         }
         
-        return bookScores.entrySet().stream()
-            .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
-            .limit(count)
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toList());
+        TopScores top = new TopScores(count, Double.MIN_VALUE);
+        for (Map.Entry<Integer, Double> entry : bookScores.entrySet()) {
+            top.offer(entry.getKey(), entry.getValue());
+        }
+        return top.ids();
     }
     
     /**
      * Get content-based recommendations
      */
-    private List<Integer> getContentBasedRecommendations(int userId, int count) {
-        UserProfile profile = userProfiles.get(userId);
+    private int[] getContentBasedRecommendations(Model m, int userId, Set<Integer> userBooks, int count) {
+        UserProfile profile = m.userProfiles.get(userId);
         if (profile == null) {
-            return new ArrayList<>();
+            return new int[0];
         }
         
-        Map<Integer, Double> bookScores = new HashMap<>();
-        Set<Integer> userBooks = getBorrowedBookIds(userId);
-        
-        for (Map.Entry<Integer, BookFeatures> entry : bookFeatures.entrySet()) {
-            Integer bookId = entry.getKey();
-            if (userBooks.contains(bookId)) continue;
-            
-            BookFeatures features = entry.getValue();
-            double score = calculateContentScore(profile, features);
-            
-            if (score > 0) {
-                bookScores.put(bookId, score);
-            }
+        // Preferences hashed into one vector: category share weighted 0.4, author share 0.3.
+        // A book scores the entries at its two slots plus its popularity/rating prior.
+        float[] query = new float[m.hasher.dimensions()];
+        int totalBorrows = profile.getTotalBorrows();
+        for (Map.Entry<String, Integer> entry : profile.getCategoryPreferences().entrySet()) {
+            int slot = m.hasher.slot(CATEGORY_FEATURE, entry.getKey());
+            if (slot >= 0) query[slot] += (float) (0.4 * entry.getValue() / totalBorrows);
+        }
+        for (Map.Entry<String, Integer> entry : profile.getAuthorPreferences().entrySet()) {
+            int slot = m.hasher.slot(AUTHOR_FEATURE, entry.getKey());
+            if (slot >= 0) query[slot] += (float) (0.3 * entry.getValue() / totalBorrows);
         }
         
-        return bookScores.entrySet().stream()
-            .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
-            .limit(count)
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toList());
-    }
-    
-    /**
-     * Get popularity-based recommendations
-     */
-    private List<Integer> getPopularityRecommendations(int count) {
-        return bookFeatures.entrySet().stream()
-            .sorted((e1, e2) -> Double.compare(e2.getValue().getPopularityScore(), 
-                                             e1.getValue().getPopularityScore()))
-            .limit(count)
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toList());
-    }
-    
-    /**
-     * Update models if needed
-     */
-    private void updateModelsIfNeeded() {
-        if (System.currentTimeMillis() - lastModelUpdate > MODEL_UPDATE_INTERVAL) {
-            System.out.println("[AI] Updating recommendation models...");
-            initializeModels();
+        TrainingData data = m.data;
+        boolean[] skip = new boolean[data.bookCount()];
+        for (int bookId : userBooks) {
+            int b = data.bookIndex(bookId);
+            if (b >= 0) skip[b] = true;
+        }
+        int[] categorySlots = m.categorySlots;
+        int[] authorSlots = m.authorSlots;
+        float[] priors = m.bookPriors;
+        TopScores top = new TopScores(count, Double.MIN_VALUE);
+        for (int b = 0; b < skip.length; b++) {
+            if (skip[b]) continue;
+            float score = priors[b];
+            if (categorySlots[b] >= 0) score += query[categorySlots[b]];
+            if (authorSlots[b] >= 0) score += query[authorSlots[b]];
+            if (top.accepts(data.bookIds[b], score)) top.offer(data.bookIds[b], score);
         }
+        return top.ids();
     }
     
     // Helper methods
-    private void extractGenres(Book book, Set<String> genres) {
-        String text = (book.getTitle() + " " + (book.getDescription() != null ? book.getDescription() : "")).toLowerCase();
+    private static void extractGenres(String bookText, Set<String> genres) {
+        String text = bookText.toLowerCase();
         
         // Simple genre detection based on keywords
         if (text.contains("romance") || text.contains("love")) genres.add("romance");
@@ -404,18 +700,27 @@ public class RecommendationEngine {
         if (text.contains("business") || text.contains("management")) genres.add("business");
     }
     
-    private Set<String> extractKeywords(String text) {
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "the", "and", "or", "but", "in", "on", "at", "to", "for", "of", "with", "by", "a", "an",
+            // Vietnamese function words
+            "và", "của", "là", "các", "những", "một", "với", "được", "này", "trong", "cho", "về", "để"));
+    
+    /**
+     * Words of a title or description, lowercased in composed (NFC) form. Letters of
+     * any script count, so Vietnamese titles keep their words; English words need
+     * more than 3 letters, accented syllables at least 2.
+     */
+    static Set<String> extractKeywords(String text) {
         Set<String> keywords = new HashSet<>();
-        String[] words = text.toLowerCase().replaceAll("[^a-zA-Z\\s]", "").split("\\s+");
-        
-        Set<String> stopWords = new HashSet<>();
-        stopWords.add("the"); stopWords.add("and"); stopWords.add("or"); stopWords.add("but");
-        stopWords.add("in"); stopWords.add("on"); stopWords.add("at"); stopWords.add("to");
-        stopWords.add("for"); stopWords.add("of"); stopWords.add("with"); stopWords.add("by");
-        stopWords.add("a"); stopWords.add("an");
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        String[] words = normalized.replaceAll("[^\\p{L}\\p{M}\\s]", "").split("\\s+");
         
         for (String word : words) {
-            if (word.length() > 3 && !stopWords.contains(word)) {
+            boolean accented = false;
+            for (int i = 0; i < word.length() && !accented; i++) {
+                accented = word.charAt(i) > 0x7f;
+            }
+            if ((word.length() > 3 || (accented && word.length() > 1)) && !STOP_WORDS.contains(word)) {
                 keywords.add(word);
             }
         }
@@ -423,111 +728,269 @@ public class RecommendationEngine {
         return keywords;
     }
     
-    private double calculateImplicitRating(Borrow borrow) {
-        // Simulate rating based on borrowing patterns
-        long borrowTime = borrow.getBorrowDate().getTime();
-        long returnTime = borrow.getReturnDate() != null ? borrow.getReturnDate().getTime() : System.currentTimeMillis();
-        long duration = returnTime - borrowTime;
-        
-        // Longer borrowing time suggests higher interest
-        double durationScore = Math.min(5.0, 1.0 + (duration / (7 * 24 * 60 * 60 * 1000.0)) * 2); // Max 5 stars
-        return Math.max(1.0, durationScore);
+    /**
+     * Popularity and rating part of the content score
+     */
+    private static float contentPrior(BookFeatures features) {
+        return (float) (features.getPopularityScore() * 0.2 + features.getAverageRating() * 0.1);
     }
     
-    private double calculateBookRating(int bookId) {
-        List<Borrow> borrows = borrowDAO.getBorrowsByBookId(bookId);
-        if (borrows.isEmpty()) return 3.0;
-        
-        double totalRating = 0;
-        for (Borrow borrow : borrows) {
-            totalRating += calculateImplicitRating(borrow);
+    private Set<Integer> getBorrowedBookIds(Model m, int userId) {
+        Set<Integer> books = new HashSet<>();
+        TrainingData data = m.data;
+        int u = data.userIndex(userId);
+        if (u >= 0) {
+            for (int i = data.userBorrowStart[u]; i < data.userBorrowStart[u + 1]; i++) {
+                books.add(data.bookIds[data.borrowBooks[i]]);
+            }
         }
-        
-        return totalRating / borrows.size();
+        Set<Integer> recent = m.recentBorrows.get(userId);
+        if (recent != null) books.addAll(recent);
+        return books;
     }
     
-    private double calculateCosineSimilarity(UserProfile profile1, UserProfile profile2) {
-        // Calculate similarity based on category preferences
-        Set<String> allCategories = new HashSet<>(profile1.getCategoryPreferences().keySet());
-        allCategories.addAll(profile2.getCategoryPreferences().keySet());
+    /**
+     * Apply one borrow: the reader's profile and borrowed set, the book's
+     * popularity, and the neighbour rows touching the reader
+     */
+    private void applyBorrow(Model m, int userId, int bookId) {
+        TrainingData data = m.data;
+        BookFeatures book = m.bookFeatures.get(bookId);
+        int b = data.bookIndex(bookId);
+        if (book == null || b < 0) return; // added after the snapshot; the next rebuild picks it up
         
-        double dotProduct = 0;
-        double norm1 = 0;
-        double norm2 = 0;
+        // A new loan rates 1 star until it is returned
+        book.setBorrowStats(book.getBorrowCount() + 1, book.getRatingSum() + 1.0);
+        m.bookPriors[b] = contentPrior(book);
         
-        for (String category : allCategories) {
-            double pref1 = profile1.getCategoryPreferences().getOrDefault(category, 0);
-            double pref2 = profile2.getCategoryPreferences().getOrDefault(category, 0);
-            
-            dotProduct += pref1 * pref2;
-            norm1 += pref1 * pref1;
-            norm2 += pref2 * pref2;
+        // Profiles are replaced rather than mutated so readers never see a half update
+        UserProfile old = m.userProfiles.get(userId);
+        UserProfile profile = new UserProfile(userId);
+        Map<String, Integer> categoryCount = old != null ? new HashMap<>(old.getCategoryPreferences()) : new HashMap<>();
+        Map<String, Integer> authorCount = old != null ? new HashMap<>(old.getAuthorPreferences()) : new HashMap<>();
+        Set<String> genres = old != null ? new HashSet<>(old.getGenres()) : new HashSet<>();
+        String category = data.categories[b];
+        if (category != null && !category.isEmpty()) {
+            categoryCount.merge(category, 1, Integer::sum);
+        }
+        String author = data.authors[b];
+        if (author != null && !author.isEmpty()) {
+            authorCount.merge(author, 1, Integer::sum);
         }
+        extractGenres(bookText(data, b), genres);
+        int borrowed = old != null ? old.getTotalBorrows() : 0;
+        double totalRating = borrowed > 0 ? old.getAverageRating() * borrowed : 0;
+        profile.setCategoryPreferences(categoryCount);
+        profile.setAuthorPreferences(authorCount);
+        profile.setGenres(genres);
+        profile.setAverageRating((totalRating + 1.0) / (borrowed + 1));
+        profile.setTotalBorrows(borrowed + 1);
+        m.userProfiles.put(userId, profile);
         
-        if (norm1 == 0 || norm2 == 0) return 0;
-        return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
+        Set<Integer> recent = new HashSet<>(m.recentBorrows.getOrDefault(userId, Collections.<Integer>emptySet()));
+        recent.add(bookId);
+        m.recentBorrows.put(userId, Collections.unmodifiableSet(recent));
+        
+        // Only category counts feed user similarity
+        if (category != null && !category.isEmpty()) {
+            refreshUserNeighbors(m, userId);
+        }
     }
     
-    private double calculateBookSimilarity(BookFeatures features1, BookFeatures features2) {
-        double similarity = 0;
-        
-        // Category similarity
-        if (features1.getCategory() != null && features1.getCategory().equals(features2.getCategory())) {
-            similarity += 0.4;
+    /**
+     * Apply one return: the loan's implicit rating now covers its full length.
+     * Categories are unchanged, so no neighbour row moves.
+     */
+    private void applyReturn(Model m, int userId, int bookId) throws Exception {
+        String borrowDate;
+        String returnDate;
+        try (Connection conn = DatabasePool.getInstance().getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT borrow_date, return_date FROM borrow_records WHERE user_id = ? AND book_id = ? " +
+                     "ORDER BY id DESC LIMIT 1")) {
+            ps.setInt(1, userId);
+            ps.setInt(2, bookId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) return;
+                borrowDate = rs.getString(1);
+                returnDate = rs.getString(2);
+            }
         }
+        long today = LocalDate.now().toEpochDay();
+        // The open loan was counted up to the snapshot day, or at 1 star if borrowed since
+        double delta = TrainingData.implicitRating(borrowDate, returnDate, today)
+                - TrainingData.implicitRating(borrowDate, null, m.snapshotDay);
+        if (delta == 0) return;
         
-        // Author similarity
-        if (features1.getAuthor() != null && features1.getAuthor().equals(features2.getAuthor())) {
-            similarity += 0.3;
+        BookFeatures book = m.bookFeatures.get(bookId);
+        int b = m.data.bookIndex(bookId);
+        if (book != null) {
+            book.setBorrowStats(book.getBorrowCount(), book.getRatingSum() + delta);
+            if (b >= 0) m.bookPriors[b] = contentPrior(book);
+        }
+        UserProfile old = m.userProfiles.get(userId);
+        if (old != null && old.getTotalBorrows() > 0) {
+            UserProfile profile = new UserProfile(userId);
+            profile.setCategoryPreferences(old.getCategoryPreferences());
+            profile.setAuthorPreferences(old.getAuthorPreferences());
+            profile.setGenres(old.getGenres());
+            profile.setTotalBorrows(old.getTotalBorrows());
+            profile.setAverageRating(old.getAverageRating() + delta / old.getTotalBorrows());
+            m.userProfiles.put(userId, profile);
         }
+    }
+    
+    /**
+     * Recompute one user's neighbour row against every user, then patch the rows
+     * of the users it leaves or enters. Rows that lose the user keep K-1 entries
+     * until the next rebuild refills them.
+     */
+    private void refreshUserNeighbors(Model m, int userId) {
+        TrainingData data = m.data;
+        ParallelSimilarity.UserVectors vectors = m.userVectors;
+        UserProfile profile = m.userProfiles.get(userId);
+        if (profile == null) return;
         
-        // Keyword similarity
-        Set<String> common = new HashSet<>(features1.getKeywords());
-        common.retainAll(features2.getKeywords());
+        int[] query = new int[vectors.dimensions];
+        long normSq = 0;
+        for (Map.Entry<String, Integer> entry : profile.getCategoryPreferences().entrySet()) {
+            int count = entry.getValue();
+            Integer dimension = vectors.categoryIds.get(entry.getKey());
+            if (dimension != null) query[dimension] = count;
+            normSq += (long) count * count;
+        }
+        double norm = Math.sqrt(normSq);
         
-        Set<String> union = new HashSet<>(features1.getKeywords());
-        union.addAll(features2.getKeywords());
+        // Users changed since the snapshot are scored from their current profiles
+        TopScores top = new TopScores(neighborsPerRow, MIN_SIMILARITY);
+        for (int r = 0; r < data.userCount(); r++) {
+            int otherId = data.userIds[r];
+            if (otherId == userId || m.recentBorrows.containsKey(otherId)) continue;
+            top.offer(otherId, ParallelSimilarity.userScore(vectors, query, norm, r));
+        }
+        for (Integer otherId : m.recentBorrows.keySet()) {
+            UserProfile other = m.userProfiles.get(otherId);
+            if (otherId != userId && other != null) {
+                top.offer(otherId, cosine(profile.getCategoryPreferences(), other.getCategoryPreferences()));
+            }
+        }
+        Neighbors previous = userNeighbors(m, userId);
+        Neighbors updated = top.toNeighbors();
+        m.userNeighborOverrides.put(userId, updated);
         
-        if (!union.isEmpty()) {
-            similarity += 0.3 * (double) common.size() / union.size();
+        Set<Integer> touched = new LinkedHashSet<>();
+        for (int otherId : previous.ids) touched.add(otherId);
+        for (int otherId : updated.ids) touched.add(otherId);
+        for (int otherId : touched) {
+            patchNeighbor(m, otherId, userId, updated);
         }
+    }
+    
+    /**
+     * Move userId to its new score in otherId's row, or drop it when it no longer qualifies
+     */
+    private void patchNeighbor(Model m, int otherId, int userId, Neighbors updated) {
+        float score = 0f;
+        for (int i = 0; i < updated.ids.length; i++) {
+            if (updated.ids[i] == otherId) score = updated.scores[i];
+        }
+        Neighbors row = userNeighbors(m, otherId);
+        TopScores top = new TopScores(neighborsPerRow, MIN_SIMILARITY);
+        boolean present = false;
+        for (int i = 0; i < row.ids.length; i++) {
+            if (row.ids[i] == userId) {
+                present = true;
+            } else {
+                top.offer(row.ids[i], row.scores[i]);
+            }
+        }
+        // A row the user was not in only changes if it now qualifies
+        if (!present && !top.accepts(userId, score)) return;
+        top.offer(userId, score);
+        m.userNeighborOverrides.put(otherId, top.toNeighbors());
+    }
+    
+    private static Neighbors userNeighbors(Model m, int userId) {
+        Neighbors row = m.userNeighborOverrides.get(userId);
+        if (row != null) return row;
+        return new Neighbors(m.userSimilarity.neighborIds(userId), m.userSimilarity.neighborScores(userId));
+    }
+    
+    /**
+     * Cosine similarity of two category count maps, as in ParallelSimilarity.userScore
+     */
+    private static float cosine(Map<String, Integer> a, Map<String, Integer> b) {
+        long dot = 0;
+        long normA = 0;
+        long normB = 0;
+        for (Map.Entry<String, Integer> entry : a.entrySet()) {
+            int count = entry.getValue();
+            normA += (long) count * count;
+            Integer other = b.get(entry.getKey());
+            if (other != null) dot += (long) count * other;
+        }
+        for (int count : b.values()) {
+            normB += (long) count * count;
+        }
+        if (normA == 0 || normB == 0) return 0f;
+        return (float) (dot / (Math.sqrt(normA) * Math.sqrt(normB)));
+    }
+    
+    /**
+     * One neighbour row, best first
+     */
+    private static final class Neighbors {
+        final int[] ids;
+        final float[] scores;
         
-        return similarity;
+        Neighbors(int[] ids, float[] scores) {
+            this.ids = ids;
+            this.scores = scores;
+        }
     }
     
-    private double calculateContentScore(UserProfile profile, BookFeatures features) {
-        double score = 0;
+    /**
+     * Bounded top-N by sorted insertion; ties keep the lower id like SimilarityIndex
+     */
+    private static final class TopScores {
+        private final int[] ids;
+        private final double[] scores;
+        private final double minScore;
+        private int size;
         
-        // Category preference score
-        String category = features.getCategory();
-        if (category != null && profile.getCategoryPreferences().containsKey(category)) {
-            double categoryPref = (double) profile.getCategoryPreferences().get(category) / profile.getTotalBorrows();
-            score += categoryPref * 0.4;
+        TopScores(int n, double minScore) {
+            ids = new int[n];
+            scores = new double[n];
+            this.minScore = minScore;
         }
         
-        // Author preference score
-        String author = features.getAuthor();
-        if (author != null && profile.getAuthorPreferences().containsKey(author)) {
-            double authorPref = (double) profile.getAuthorPreferences().get(author) / profile.getTotalBorrows();
-            score += authorPref * 0.3;
+        boolean accepts(int id, double score) {
+            if (score < minScore || ids.length == 0) return false;
+            if (size < ids.length) return true;
+            double worst = scores[size - 1];
+            return score > worst || (score == worst && id < ids[size - 1]);
         }
         
-        // Popularity boost
-        score += features.getPopularityScore() * 0.2;
+        void offer(int id, double score) {
+            if (!accepts(id, score)) return;
+            int pos = size < ids.length ? size++ : size - 1;
+            while (pos > 0 && (scores[pos - 1] < score || (scores[pos - 1] == score && ids[pos - 1] > id))) {
+                ids[pos] = ids[pos - 1];
+                scores[pos] = scores[pos - 1];
+                pos--;
+            }
+            ids[pos] = id;
+            scores[pos] = score;
+        }
         
-        // Rating boost
-        score += features.getAverageRating() * 0.1;
+        int[] ids() {
+            return Arrays.copyOf(ids, size);
+        }
         
-        return score;
-    }
-    
-    private Set<Integer> getBorrowedBookIds(int userId) {
-        try {
-            return borrowDAO.getBorrowsByUserId(userId).stream()
-                .map(borrow -> borrow.getBookId())
-                .collect(Collectors.toSet());
-        } catch (Exception e) {
-            return new HashSet<>();
+        Neighbors toNeighbors() {
+            float[] rowScores = new float[size];
+            for (int i = 0; i < size; i++) rowScores[i] = (float) scores[i];
+            return new Neighbors(ids(), rowScores);
         }
     }
     
@@ -564,8 +1027,11 @@ public class RecommendationEngine {
         private String author;
         private String title;
         private Set<String> keywords = new HashSet<>();
-        private double popularityScore;
-        private double averageRating;
+        // Written by the update thread while requests read them
+        private volatile int borrowCount;
+        private volatile double ratingSum;
+        private volatile double popularityScore;
+        private volatile double averageRating;
         
         public BookFeatures(int bookId) {
             this.bookId = bookId;
@@ -585,5 +1051,17 @@ public class RecommendationEngine {
         public void setPopularityScore(double popularityScore) { this.popularityScore = popularityScore; }
         public double getAverageRating() { return averageRating; }
         public void setAverageRating(double averageRating) { this.averageRating = averageRating; }
+        public int getBorrowCount() { return borrowCount; }
+        public double getRatingSum() { return ratingSum; }
+        
+        /**
+         * Borrow totals and the popularity and average rating derived from them
+         */
+        public void setBorrowStats(int borrowCount, double ratingSum) {
+            this.borrowCount = borrowCount;
+            this.ratingSum = ratingSum;
+            this.popularityScore = Math.log(borrowCount + 1); // Log to reduce skew
+            this.averageRating = borrowCount > 0 ? ratingSum / borrowCount : 3.0; // Neutral when never borrowed
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,362 @@
+package server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Offline quality and latency check for RecommendationEngine on a synthetic
+ * library. Book popularity is Zipfian, readers favour one or two categories and
+ * return to authors they have read. Borrows from the last HOLDOUT_DAYS are held
+ * out; the engine trains on the rest and is scored on how many held-out books
+ * its top-k recommendations contain.
+ *
+ * Prints a summary and one JSON object with the metrics, also written to
+ * outFile when given, so runs can be compared or gated by a script.
+ * Usage: RecommendationEvaluation [users] [books] [k] [outFile]
+ */
+public class RecommendationEvaluation {
+    private static final String[] CATEGORIES = {"Văn học", "Khoa học", "Lịch sử", "Thiếu nhi", "Kinh tế",
+            "Tâm lý", "Công nghệ", "Nghệ thuật"};
+    private static final String[][] VOCABULARY = {
+            {"love", "poem", "novel", "river", "village", "memoir"},
+            {"science", "physics", "universe", "biology", "experiment", "technology"},
+            {"history", "historical", "dynasty", "empire", "battle", "revolution"},
+            {"fairy", "magic", "adventure", "animal", "school", "friends"},
+            {"business", "management", "market", "finance", "startup", "economy"},
+            {"mind", "habit", "emotion", "behavior", "memory", "happiness"},
+            {"software", "computer", "network", "algorithm", "data", "technology"},
+            {"painting", "music", "design", "cinema", "theatre", "sculpture"}};
+
+    private static final double ZIPF_EXPONENT = 1.0;
+    private static final int HISTORY_DAYS = 365;
+    private static final int HOLDOUT_DAYS = 30;
+    // Share of borrows from a favourite category, and of repeat authors among those
+    private static final double CATEGORY_AFFINITY = 0.8;
+    private static final double AUTHOR_AFFINITY = 0.25;
+    private static final int MAX_EVALUATED_USERS = 5000;
+
+    /**
+     * Synthetic library split at the holdout date: training rows are in the
+     * database, held-out books per user are kept here
+     */
+    private static final class Library {
+        final int books;
+        final Map<Integer, Set<Integer>> training = new LinkedHashMap<>();
+        final Map<Integer, Set<Integer>> holdout = new LinkedHashMap<>();
+        int trainingBorrows;
+        int holdoutBorrows;
+
+        Library(int books) {
+            this.books = books;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int books = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        File outFile = args.length > 3 ? new File(args[3]) : null;
+
+        File dbFile = File.createTempFile("recommendation-eval", ".db");
+        Map<String, Object> result = new LinkedHashMap<>();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath())) {
+            long start = System.currentTimeMillis();
+            Library library = generate(conn, users, books);
+            System.out.println("[EVAL] Generated " + users + " users, " + books + " books, " +
+                    library.trainingBorrows + " training and " + library.holdoutBorrows + " held-out borrows in " +
+                    (System.currentTimeMillis() - start) + "ms");
+
+            TrainingData data = TrainingData.load(conn);
+            System.gc();
+            RecommendationBenchmark.resetPeaks();
+            long baseline = RecommendationBenchmark.usedHeap();
+            long buildStart = System.nanoTime();
+            RecommendationEngine engine = new RecommendationEngine(data);
+            long buildMs = (System.nanoTime() - buildStart) / 1000000;
+            long peak = RecommendationBenchmark.peakHeap();
+            System.gc();
+            long retained = RecommendationBenchmark.usedHeap() - baseline;
+
+            result.put("users", users);
+            result.put("books", books);
+            result.put("k", k);
+            result.put("training_borrows", library.trainingBorrows);
+            result.put("holdout_borrows", library.holdoutBorrows);
+            result.put("build_ms", buildMs);
+            result.put("heap_retained_bytes", retained);
+            result.put("heap_peak_bytes", peak);
+            evaluate(engine, library, k, result);
+        } finally {
+            dbFile.delete();
+        }
+
+        System.out.println(String.format("[EVAL] precision@%d %.4f (popularity %.4f), recall@%d %.4f, coverage %.4f",
+                k, result.get("precision"), result.get("popularity_precision"), k, result.get("recall"),
+                result.get("coverage")));
+        System.out.println("[EVAL] build " + result.get("build_ms") + "ms, heap retained " +
+                RecommendationBenchmark.mb((Long) result.get("heap_retained_bytes")) + ", peak " +
+                RecommendationBenchmark.mb((Long) result.get("heap_peak_bytes")) + "; latency p50/p99 " +
+                result.get("latency_p50_us") + "/" + result.get("latency_p99_us") + "us, cached " +
+                result.get("cached_latency_p50_us") + "/" + result.get("cached_latency_p99_us") + "us");
+
+        String json = JsonParser.toJson(result);
+        System.out.println(json);
+        if (outFile != null) {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(outFile), StandardCharsets.UTF_8)) {
+                out.write(json);
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Score top-k recommendations against the holdout for users with held-out
+     * borrows, timing the first (uncached) and a repeated request for each
+     */
+    private static void evaluate(RecommendationEngine engine, Library library, int k, Map<String, Object> result) {
+        List<Integer> candidates = new ArrayList<>();
+        for (Map.Entry<Integer, Set<Integer>> entry : library.holdout.entrySet()) {
+            if (!entry.getValue().isEmpty()) candidates.add(entry.getKey());
+        }
+        int evaluated = Math.min(MAX_EVALUATED_USERS, candidates.size());
+        int stride = Math.max(1, candidates.size() / Math.max(1, evaluated));
+        int[] popular = popularity(library);
+
+        long[] latencies = new long[evaluated];
+        long[] cachedLatencies = new long[evaluated];
+        Set<Integer> recommended = new HashSet<>();
+        double precision = 0;
+        double recall = 0;
+        double popularityPrecision = 0;
+        int n = 0;
+        for (int i = 0; i < candidates.size() && n < evaluated; i += stride) {
+            int userId = candidates.get(i);
+            Set<Integer> heldOut = library.holdout.get(userId);
+
+            long start = System.nanoTime();
+            int[] ids = engine.getRecommendationIds(userId, k);
+            long mid = System.nanoTime();
+            RecommendationBenchmark.sink += engine.getRecommendationIds(userId, k).length;
+            cachedLatencies[n] = System.nanoTime() - mid;
+            latencies[n] = mid - start;
+
+            int hits = 0;
+            for (int id : ids) {
+                recommended.add(id);
+                if (heldOut.contains(id)) hits++;
+            }
+            precision += (double) hits / k;
+            recall += (double) hits / heldOut.size();
+
+            // Most borrowed titles the reader has not borrowed, as the baseline to beat
+            Set<Integer> seen = library.training.get(userId);
+            int popularHits = 0;
+            for (int j = 0, taken = 0; j < popular.length && taken < k; j++) {
+                if (seen != null && seen.contains(popular[j])) continue;
+                taken++;
+                if (heldOut.contains(popular[j])) popularHits++;
+            }
+            popularityPrecision += (double) popularHits / k;
+            n++;
+        }
+
+        result.put("evaluated_users", n);
+        result.put("precision", n > 0 ? precision / n : 0.0);
+        result.put("recall", n > 0 ? recall / n : 0.0);
+        result.put("coverage", (double) recommended.size() / library.books);
+        result.put("popularity_precision", n > 0 ? popularityPrecision / n : 0.0);
+        Arrays.sort(latencies, 0, n);
+        Arrays.sort(cachedLatencies, 0, n);
+        result.put("latency_p50_us", micros(percentile(latencies, n, 0.50)));
+        result.put("latency_p99_us", micros(percentile(latencies, n, 0.99)));
+        result.put("latency_max_us", micros(n > 0 ? latencies[n - 1] : 0));
+        result.put("cached_latency_p50_us", micros(percentile(cachedLatencies, n, 0.50)));
+        result.put("cached_latency_p99_us", micros(percentile(cachedLatencies, n, 0.99)));
+    }
+
+    private static long percentile(long[] sorted, int n, double p) {
+        if (n == 0) return 0;
+        return sorted[Math.min(n - 1, (int) Math.ceil(p * n) - 1)];
+    }
+
+    // Nanoseconds to microseconds, one decimal
+    private static double micros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+
+    /**
+     * Book ids by training borrow count, most borrowed first
+     */
+    private static int[] popularity(Library library) {
+        int[] counts = new int[library.books + 1];
+        for (Set<Integer> borrowed : library.training.values()) {
+            for (int bookId : borrowed) counts[bookId]++;
+        }
+        Integer[] order = new Integer[library.books];
+        for (int i = 0; i < order.length; i++) order[i] = i + 1;
+        Arrays.sort(order, (a, b) -> counts[b] != counts[a] ? Integer.compare(counts[b], counts[a]) : Integer.compare(a, b));
+        int[] ranked = new int[order.length];
+        for (int i = 0; i < ranked.length; i++) ranked[i] = order[i];
+        return ranked;
+    }
+
+    private static Library generate(Connection conn, int users, int books) throws Exception {
+        Random random = new Random(42);
+        Statement stmt = conn.createStatement();
+        stmt.execute("CREATE TABLE users (id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT)");
+        stmt.execute("CREATE TABLE books (id INTEGER PRIMARY KEY AUTOINCREMENT, title TEXT, author TEXT, " +
+                "category TEXT, description TEXT)");
+        stmt.execute("CREATE TABLE borrow_records (id INTEGER PRIMARY KEY AUTOINCREMENT, user_id INTEGER, " +
+                "book_id INTEGER, borrow_date TEXT, return_date TEXT)");
+
+        // Each book gets a popularity rank; within a category, and overall, a book is
+        // drawn with probability proportional to 1 / rank^s
+        int[] rankOf = new int[books + 1];
+        List<Integer> ranks = new ArrayList<>();
+        for (int i = 1; i <= books; i++) ranks.add(i);
+        Collections.shuffle(ranks, random);
+        for (int i = 1; i <= books; i++) rankOf[i] = ranks.get(i - 1);
+
+        int[] categoryOf = new int[books + 1];
+        int[] authorOf = new int[books + 1];
+        int authorsPerCategory = Math.max(1, books / CATEGORIES.length / 8);
+        List<List<Integer>> byCategory = new ArrayList<>();
+        for (int c = 0; c < CATEGORIES.length; c++) byCategory.add(new ArrayList<>());
+        Map<Integer, List<Integer>> byAuthor = new LinkedHashMap<>();
+
+        Library library = new Library(books);
+        conn.setAutoCommit(false);
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO users(username) VALUES (?)")) {
+            for (int i = 0; i < users; i++) {
+                ps.setString(1, "user" + i);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO books(title, author, category, description) VALUES (?, ?, ?, ?)")) {
+            for (int b = 1; b <= books; b++) {
+                int category = zipf(random, CATEGORIES.length);
+                int author = category * authorsPerCategory + random.nextInt(authorsPerCategory);
+                String[] words = VOCABULARY[category];
+                categoryOf[b] = category;
+                authorOf[b] = author;
+                byCategory.get(category).add(b);
+                byAuthor.computeIfAbsent(author, a -> new ArrayList<>()).add(b);
+
+                ps.setString(1, "Book " + b + " " + words[random.nextInt(words.length)]);
+                ps.setString(2, "Author " + author);
+                ps.setString(3, CATEGORIES[category]);
+                ps.setString(4, "A story of " + words[random.nextInt(words.length)] + " and " +
+                        words[random.nextInt(words.length)]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+
+        double[][] categoryCdf = new double[CATEGORIES.length][];
+        for (int c = 0; c < CATEGORIES.length; c++) {
+            byCategory.get(c).sort((a, b) -> Integer.compare(rankOf[a], rankOf[b]));
+            categoryCdf[c] = zipfCdf(byCategory.get(c), rankOf);
+        }
+        List<Integer> all = new ArrayList<>();
+        for (int b = 1; b <= books; b++) all.add(b);
+        all.sort((a, b) -> Integer.compare(rankOf[a], rankOf[b]));
+        double[] globalCdf = zipfCdf(all, rankOf);
+
+        LocalDate today = LocalDate.now();
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO borrow_records(user_id, book_id, borrow_date, return_date) VALUES (?, ?, ?, ?)")) {
+            for (int u = 1; u <= users; u++) {
+                int[] favourites = {zipf(random, CATEGORIES.length), zipf(random, CATEGORIES.length)};
+                // Activity is skewed too: most readers borrow a few books, some borrow many
+                int count = Math.min(books / 2, 1 + (int) (-8 * Math.log(1 - random.nextDouble())));
+                Set<Integer> training = new HashSet<>();
+                Set<Integer> holdout = new HashSet<>();
+                List<Integer> history = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    int book;
+                    if (!history.isEmpty() && random.nextDouble() < AUTHOR_AFFINITY) {
+                        List<Integer> sameAuthor = byAuthor.get(authorOf[history.get(random.nextInt(history.size()))]);
+                        book = sameAuthor.get(random.nextInt(sameAuthor.size()));
+                    } else if (random.nextDouble() < CATEGORY_AFFINITY) {
+                        int category = favourites[random.nextInt(favourites.length)];
+                        if (byCategory.get(category).isEmpty()) continue;
+                        book = byCategory.get(category).get(sample(random, categoryCdf[category]));
+                    } else {
+                        book = all.get(sample(random, globalCdf));
+                    }
+                    if (training.contains(book) || holdout.contains(book)) continue;
+                    history.add(book);
+
+                    LocalDate borrowed = today.minusDays(random.nextInt(HISTORY_DAYS));
+                    if (borrowed.isAfter(today.minusDays(HOLDOUT_DAYS))) {
+                        holdout.add(book);
+                        continue;
+                    }
+                    training.add(book);
+                    ps.setInt(1, u);
+                    ps.setInt(2, book);
+                    ps.setString(3, borrowed.toString());
+                    ps.setString(4, borrowed.plusDays(1 + random.nextInt(30)).toString());
+                    ps.addBatch();
+                }
+                library.training.put(u, training);
+                library.holdout.put(u, holdout);
+                library.trainingBorrows += training.size();
+                library.holdoutBorrows += holdout.size();
+                if (u % 10000 == 0) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+        return library;
+    }
+
+    /**
+     * Index in [0, n) with probability proportional to 1 / (index + 1)^s
+     */
+    private static int zipf(Random random, int n) {
+        double total = 0;
+        for (int i = 1; i <= n; i++) total += 1 / Math.pow(i, ZIPF_EXPONENT);
+        double target = random.nextDouble() * total;
+        for (int i = 1; i <= n; i++) {
+            target -= 1 / Math.pow(i, ZIPF_EXPONENT);
+            if (target <= 0) return i - 1;
+        }
+        return n - 1;
+    }
+
+    private static double[] zipfCdf(List<Integer> booksByRank, int[] rankOf) {
+        double[] cdf = new double[booksByRank.size()];
+        double total = 0;
+        for (int i = 0; i < cdf.length; i++) {
+            total += 1 / Math.pow(rankOf[booksByRank.get(i)], ZIPF_EXPONENT);
+            cdf[i] = total;
+        }
+        return cdf;
+    }
+
+    private static int sample(Random random, double[] cdf) {
+        int pos = Arrays.binarySearch(cdf, random.nextDouble() * cdf[cdf.length - 1]);
+        return Math.min(cdf.length - 1, pos >= 0 ? pos : -pos - 1);
+    }
+}
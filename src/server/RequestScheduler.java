@@ -0,0 +1,279 @@
+package server;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs TCP commands on a fixed set of workers, shared fairly between kinds of
+ * work and between users.
+ *
+ * Every command belongs to a WorkClass. Within a class each user (or, before
+ * login, each client address) has its own FIFO flow, so one client flooding
+ * SEARCH only queues behind itself. Classes and flows are served by stride
+ * scheduling, a form of weighted fair queuing: each carries a virtual pass that
+ * advances by cost / weight whenever it is served, and the lowest pass goes
+ * next. Costs are the rate limiter's per-command costs, so one LIST_BORROWS
+ * counts for several lookups. A class also has a concurrency cap, which keeps
+ * reports from occupying every worker while borrows wait.
+ *
+ * Weights and caps come from scheduler.CLASS.weight and
+ * scheduler.CLASS.max.concurrent (0 for no cap beyond the worker count). LOGIN
+ * and REGISTER have their own AUTH class whose cap defaults to the credential
+ * pool's thread count, so a login burst waits here without holding workers
+ * while passwords are hashed.
+ */
+public class RequestScheduler {
+    // Pass advanced per unit of cost at weight 1; large so integer division keeps precision
+    private static final long STRIDE = 1L << 20;
+
+    public enum WorkClass {
+        INTERACTIVE_READ("read"),
+        INTERACTIVE_WRITE("write"),
+        AUTH("auth"),
+        REPORTING("reporting"),
+        BACKGROUND("background");
+
+        private final String key;
+
+        WorkClass(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private static final RequestScheduler instance = new RequestScheduler(ConfigManager.getInt("server.thread.pool.size"));
+
+    private final Lane[] lanes = new Lane[WorkClass.values().length];
+    private final Thread[] workers;
+    private long virtualTime;
+    private long sequence;
+    private volatile boolean running = true;
+
+    /**
+     * One command waiting for or holding a worker
+     */
+    private static final class Task extends FutureTask<Object> {
+        final Lane lane;
+        final long cost;
+        final long enqueuedAt = System.nanoTime();
+
+        Task(Callable<Object> work, Lane lane, long cost) {
+            super(work);
+            this.lane = lane;
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * Queued commands of one user within one class
+     */
+    private static final class Flow {
+        final Object key;
+        final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        long pass;
+        long order;
+
+        Flow(Object key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A work class: its flows ordered by pass, and how much of it is running
+     */
+    private static final class Lane {
+        final WorkClass workClass;
+        final int weight;
+        final int maxConcurrent;
+        final Map<Object, Flow> flows = new HashMap<>();
+        final PriorityQueue<Flow> ready = new PriorityQueue<>((a, b) ->
+                a.pass != b.pass ? Long.compare(a.pass, b.pass) : Long.compare(a.order, b.order));
+        long pass;
+        long flowTime;
+        int queued;
+        int active;
+
+        Lane(WorkClass workClass, int weight, int maxConcurrent) {
+            this.workClass = workClass;
+            this.weight = weight;
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        boolean eligible() {
+            return queued > 0 && active < maxConcurrent;
+        }
+    }
+
+    private RequestScheduler(int workerCount) {
+        int count = Math.max(1, workerCount);
+        for (WorkClass workClass : WorkClass.values()) {
+            String prefix = "scheduler." + workClass.getKey();
+            int weight = Math.max(1, ConfigManager.getInt(prefix + ".weight"));
+            int cap = ConfigManager.getInt(prefix + ".max.concurrent");
+            if (workClass == WorkClass.AUTH && cap <= 0) {
+                cap = CredentialService.getThreadCount();
+            }
+            lanes[workClass.ordinal()] = new Lane(workClass, weight, cap <= 0 ? count : Math.min(cap, count));
+        }
+        workers = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            workers[i] = new Thread(this::work, "request-worker-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    public static RequestScheduler getInstance() {
+        return instance;
+    }
+
+    /**
+     * Class a TCP command is scheduled in
+     */
+    public static WorkClass classify(String command) {
+        switch (command) {
+            case "LOGIN":
+            case "REGISTER":
+                return WorkClass.AUTH;
+            case "BORROW":
+            case "RETURN":
+            case "FAVORITE":
+            case "ADD_BOOK":
+            case "DELETE_BOOK":
+                return WorkClass.INTERACTIVE_WRITE;
+            case "LIST_BORROWS":
+            case "DASHBOARD_STATS":
+                return WorkClass.REPORTING;
+            default:
+                return WorkClass.INTERACTIVE_READ;
+        }
+    }
+
+    /**
+     * Run a command on a worker and wait for it. Exceptions thrown by the
+     * command are rethrown here, unchecked ones as they are.
+     */
+    public void execute(WorkClass workClass, Object flowKey, int cost, Runnable command) throws InterruptedException {
+        Task task = new Task(() -> {
+            command.run();
+            return null;
+        }, lanes[workClass.ordinal()], Math.max(1, cost));
+        enqueue(flowKey, task);
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            task.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Commands of a class waiting for a worker
+     */
+    public synchronized int getQueued(WorkClass workClass) {
+        return lanes[workClass.ordinal()].queued;
+    }
+
+    /**
+     * Commands of a class running now
+     */
+    public synchronized int getActive(WorkClass workClass) {
+        return lanes[workClass.ordinal()].active;
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers) worker.interrupt();
+    }
+
+    private synchronized void enqueue(Object flowKey, Task task) {
+        Lane lane = task.lane;
+        if (lane.queued == 0) {
+            // An idle class rejoins at the current virtual time rather than with saved-up credit
+            lane.pass = Math.max(lane.pass, virtualTime);
+        }
+        Flow flow = lane.flows.get(flowKey);
+        if (flow == null) {
+            flow = new Flow(flowKey);
+            flow.pass = lane.flowTime;
+            lane.flows.put(flowKey, flow);
+        }
+        if (flow.tasks.isEmpty()) {
+            flow.pass = Math.max(flow.pass, lane.flowTime);
+            flow.order = sequence++;
+            lane.ready.add(flow);
+        }
+        flow.tasks.add(task);
+        lane.queued++;
+        notify();
+    }
+
+    /**
+     * Lowest-pass class that may start another command, and its lowest-pass flow's next command
+     */
+    private Task next() {
+        Lane chosen = null;
+        for (Lane lane : lanes) {
+            if (lane.eligible() && (chosen == null || lane.pass < chosen.pass)) chosen = lane;
+        }
+        if (chosen == null) return null;
+
+        Flow flow = chosen.ready.poll();
+        Task task = flow.tasks.poll();
+        chosen.queued--;
+        chosen.active++;
+        virtualTime = chosen.pass;
+        chosen.pass += task.cost * STRIDE / chosen.weight;
+        chosen.flowTime = flow.pass;
+        flow.pass += task.cost * STRIDE;
+        if (!flow.tasks.isEmpty()) {
+            flow.order = sequence++;
+            chosen.ready.add(flow);
+        } else {
+            chosen.flows.remove(flow.key);
+        }
+        MetricsCollector.recordSchedulerWait(chosen.workClass.getKey(), System.nanoTime() - task.enqueuedAt);
+        return task;
+    }
+
+    private synchronized void finished(Task task) {
+        task.lane.active--;
+        // A capped class may have been holding back queued work
+        notifyAll();
+    }
+
+    private void work() {
+        while (running) {
+            Task task;
+            synchronized (this) {
+                while ((task = next()) == null) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        if (!running) return;
+                    }
+                }
+            }
+            try {
+                task.run();
+            } finally {
+                // Drop an interrupt left by a cancelled wait so it cannot hit the next command
+                Thread.interrupted();
+                finished(task);
+            }
+        }
+    }
+}
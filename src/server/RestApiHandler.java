@@ -6,10 +6,12 @@ import model.User;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * REST API handler for modern web/mobile client integration
@@ -102,13 +104,6 @@ public class RestApiHandler {
                 in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
                 out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
                 
-                // Check rate limiting
-                if (!rateLimiter.isAllowed(clientIp)) {
-                    sendResponse(429, "application/json", 
-                        JsonParser.createErrorResponse(I18nManager.getMessage("rate.limit.exceeded")));
-                    return;
-                }
-                
                 // Parse HTTP request
                 HttpRequest request = parseHttpRequest();
                 if (request == null) {
@@ -127,6 +122,16 @@ public class RestApiHandler {
                     return;
                 }
                 
+                // Check rate limiting
+                long retryAfterMs = rateLimiter.tryAcquire(RateLimiter.Channel.REST, socket.getInetAddress().getHostAddress(),
+                    requestUserId(request), commandName(request.path));
+                if (retryAfterMs > 0) {
+                    sendResponse(429, "application/json", 
+                        JsonParser.createErrorResponse(I18nManager.getMessage("rate.limit.exceeded")),
+                        "Retry-After: " + ((retryAfterMs + 999) / 1000));
+                    return;
+                }
+                
                 // Route request
                 handleRequest(request);
                 
@@ -191,6 +196,24 @@ public class RestApiHandler {
             return request;
         }
         
+        /**
+         * Rate limit command for a path: /api/search is charged as SEARCH
+         */
+        private String commandName(String path) {
+            String[] segments = path.split("[/?]");
+            return segments.length > 2 ? segments[2].toUpperCase(Locale.ROOT) : "ROOT";
+        }
+        
+        /**
+         * User behind the request's bearer token, or 0 when anonymous
+         */
+        private int requestUserId(HttpRequest request) {
+            String token = request.headers.get("Authorization");
+            if (token == null || !token.startsWith("Bearer ")) return 0;
+            SessionManager.ClientSession session = SessionManager.getSessionByToken(token.substring("Bearer ".length()));
+            return session != null ? session.getUserId() : 0;
+        }
+        
         /**
          * Handle HTTP request routing
          */
@@ -223,9 +246,11 @@ public class RestApiHandler {
                     int bookId = Integer.parseInt(path.substring("/api/books/".length()));
                     handleDeleteBook(request, bookId);
                 }
-                // Search endpoint
+                // Search endpoints
                 else if (path.startsWith("/api/search") && "GET".equals(method)) {
                     handleSearch(request);
+                } else if (path.startsWith("/api/suggest") && "GET".equals(method)) {
+                    handleSuggest(request);
                 }
                 // Recommendation endpoints
                 else if (path.equals("/api/recommendations") && "GET".equals(method)) {
@@ -279,7 +304,15 @@ public class RestApiHandler {
             
             try {
                 User user = userDAO.getUserByUsername(username);
-                if (user != null && PasswordHasher.verifyPassword(password, user.getPasswordHash())) {
+                CredentialService.Verification verification = user == null ? null
+                    : CredentialService.verify(password, user.getPasswordHash());
+                if (verification != null && verification.isBusy()) {
+                    sendResponse(503, "application/json",
+                        JsonParser.createErrorResponse("Server busy, please try again"));
+                } else if (verification != null && verification.isValid()) {
+                    if (verification.getUpgradedHash() != null) {
+                        CredentialService.saveUpgradedHash(user.getId(), user.getPasswordHash(), verification.getUpgradedHash());
+                    }
                     String token = SessionManager.createSession(clientIp, user.getId()).getToken();
                     
                     Map<String, Object> response = new HashMap<>();
@@ -323,7 +356,7 @@ public class RestApiHandler {
                     return;
                 }
                 
-                String hashedPassword = PasswordHasher.hashPassword(password);
+                String hashedPassword = CredentialService.hash(password);
                 User newUser = new User(0, username, hashedPassword, email, fullName, false, new Date());
                 
                 if (userDAO.addUser(newUser)) {
@@ -336,6 +369,9 @@ public class RestApiHandler {
                     sendResponse(500, "application/json", 
                         JsonParser.createErrorResponse(I18nManager.getMessage("register.failed")));
                 }
+            } catch (RejectedExecutionException e) {
+                sendResponse(503, "application/json",
+                    JsonParser.createErrorResponse("Server busy, please try again"));
             } catch (Exception e) {
                 sendResponse(500, "application/json", 
                     JsonParser.createErrorResponse(I18nManager.getMessage("error.general")));
@@ -395,7 +431,7 @@ public class RestApiHandler {
             }
             
             token = token.substring("Bearer ".length());
-            SessionManager.ClientSession session = SessionManager.getSession(token);
+            SessionManager.ClientSession session = SessionManager.getSessionByToken(token);
             if (session == null) {
                 sendResponse(401, "application/json", 
                     JsonParser.createErrorResponse(I18nManager.getMessage("session.expired")));
@@ -432,6 +468,7 @@ public class RestApiHandler {
         private void handleGetSimilarBooks(HttpRequest request, int bookId) throws IOException {
             try {
                 int count = 10; // Default count
+                TrendingIndex.getInstance().viewed(bookId);
                 List<Book> similarBooks = recommendationEngine.getSimilarBooks(bookId, count);
                 List<Map<String, Object>> bookList = new ArrayList<>();
                 
@@ -478,7 +515,17 @@ public class RestApiHandler {
          * Send HTTP response
          */
         private void sendResponse(int statusCode, String contentType, String body) throws IOException {
+            sendResponse(statusCode, contentType, body, null);
+        }
+        
+        /**
+         * Send HTTP response with one extra header line
+         */
+        private void sendResponse(int statusCode, String contentType, String body, String header) throws IOException {
             out.println("HTTP/1.1 " + statusCode + " " + getStatusMessage(statusCode));
+            if (header != null) {
+                out.println(header);
+            }
             out.println("Content-Type: " + contentType + "; charset=UTF-8");
             out.println("Content-Length: " + body.getBytes(StandardCharsets.UTF_8).length);
             out.println("Access-Control-Allow-Origin: *");
@@ -523,9 +570,88 @@ public class RestApiHandler {
                 JsonParser.createErrorResponse("Not implemented yet"));
         }
         
+        /**
+         * Handle catalog search against the in-memory index
+         */
         private void handleSearch(HttpRequest request) throws IOException {
-            sendResponse(501, "application/json", 
-                JsonParser.createErrorResponse("Not implemented yet"));
+            CatalogIndex index = CatalogIndex.getInstance();
+            if (!index.isLoaded()) {
+                sendResponse(503, "application/json", 
+                    JsonParser.createErrorResponse("Search index is not available"));
+                return;
+            }
+            
+            String query = getQueryParam(request, "q");
+            int maxLimit = ConfigManager.getInt("search.results.max.limit");
+            int limit = maxLimit;
+            try {
+                String limitParam = getQueryParam(request, "limit");
+                if (limitParam != null) {
+                    limit = Math.max(1, Math.min(maxLimit, Integer.parseInt(limitParam)));
+                }
+            } catch (NumberFormatException e) {
+                sendResponse(400, "application/json", 
+                    JsonParser.createErrorResponse("Invalid limit parameter"));
+                return;
+            }
+            
+            long start = System.nanoTime();
+            List<CatalogIndex.BookEntry> results = index.search(query, limit);
+            long tookMicros = (System.nanoTime() - start) / 1000;
+            
+            List<Map<String, Object>> bookList = new ArrayList<>();
+            for (CatalogIndex.BookEntry book : results) {
+                Map<String, Object> json = new LinkedHashMap<>();
+                json.put("id", book.getId());
+                json.put("title", book.getTitle());
+                json.put("author", book.getAuthor());
+                json.put("publisher", book.getPublisher());
+                json.put("year", book.getYear());
+                json.put("quantity", book.getQuantity());
+                bookList.add(json);
+            }
+            
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("success", true);
+            response.put("query", query == null ? "" : query);
+            response.put("books", bookList);
+            response.put("total", results.size());
+            response.put("took_us", tookMicros);
+            
+            sendResponse(200, "application/json", JsonParser.toJson(response));
+        }
+        
+        /**
+         * Handle autocomplete for the search box
+         */
+        private void handleSuggest(HttpRequest request) throws IOException {
+            String prefix = getQueryParam(request, "q");
+            int limit = 8;
+            try {
+                String limitParam = getQueryParam(request, "limit");
+                if (limitParam != null) {
+                    limit = Integer.parseInt(limitParam);
+                }
+            } catch (NumberFormatException e) {
+                sendResponse(400, "application/json", 
+                    JsonParser.createErrorResponse("Invalid limit parameter"));
+                return;
+            }
+            
+            List<Map<String, Object>> suggestionList = new ArrayList<>();
+            for (SuggestIndex.Suggestion suggestion : SuggestIndex.getInstance().suggest(prefix, limit)) {
+                Map<String, Object> json = new LinkedHashMap<>();
+                json.put("text", suggestion.getText());
+                json.put("type", suggestion.getType());
+                json.put("popularity", suggestion.getPopularity());
+                suggestionList.add(json);
+            }
+            
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("success", true);
+            response.put("suggestions", suggestionList);
+            
+            sendResponse(200, "application/json", JsonParser.toJson(response));
         }
         
         private void handleGetBorrows(HttpRequest request) throws IOException {
@@ -554,6 +680,23 @@ public class RestApiHandler {
         }
         
         // Utility methods
+        private String getQueryParam(HttpRequest request, String name) {
+            int queryStart = request.path.indexOf('?');
+            if (queryStart < 0) return null;
+            for (String pair : request.path.substring(queryStart + 1).split("&")) {
+                int eq = pair.indexOf('=');
+                String key = eq >= 0 ? pair.substring(0, eq) : pair;
+                if (key.equals(name)) {
+                    try {
+                        return URLDecoder.decode(eq >= 0 ? pair.substring(eq + 1) : "", "UTF-8");
+                    } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                        return null;
+                    }
+                }
+            }
+            return null;
+        }
+        
         private String getStatusMessage(int code) {
             switch (code) {
                 case 200: return "OK";
@@ -564,6 +707,7 @@ public class RestApiHandler {
                 case 429: return "Too Many Requests";
                 case 500: return "Internal Server Error";
                 case 501: return "Not Implemented";
+                case 503: return "Service Unavailable";
                 default: return "Unknown";
             }
         }
@@ -598,6 +742,8 @@ public class RestApiHandler {
                    "<li>POST /api/login - User login</li>" +
                    "<li>POST /api/register - User registration</li>" +
                    "<li>GET /api/books - Get all books</li>" +
+                   "<li>GET /api/search?q={text}&amp;limit={n} - Search the catalog</li>" +
+                   "<li>GET /api/suggest?q={prefix}&amp;limit={n} - Title and author autocomplete</li>" +
                    "<li>GET /api/recommendations - Get personalized AI recommendations</li>" +
                    "<li>GET /api/books/{id}/similar - Get similar books</li>" +
                    "<li>POST /api/language - Set interface language (en/vi/zh/ja/ko)</li>" +
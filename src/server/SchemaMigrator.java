@@ -0,0 +1,576 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Versioned schema migrations. Every DDL statement the system needs lives here
+ * and is applied exactly once, at server startup, before any traffic is accepted.
+ * Applied versions are recorded in the schema_version table.
+ */
+public class SchemaMigrator {
+
+    private static final List<Migration> MIGRATIONS = new ArrayList<>();
+
+    private static final String SEED_BORROW_RECORDS =
+            "INSERT INTO borrow_records (user_id, book_id, borrow_date, return_date) " +
+            "SELECT b.user_id, b.book_id, b.borrow_date, b.return_date FROM borrows b " +
+            "WHERE NOT EXISTS (SELECT 1 FROM borrow_records r WHERE r.user_id = b.user_id " +
+            "AND r.book_id = b.book_id AND r.borrow_date IS b.borrow_date)";
+
+    static {
+        register(1, "Baseline tables", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS users (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "username TEXT UNIQUE," +
+                        "password TEXT," +
+                        "role TEXT," +
+                        "phone TEXT," +
+                        "email TEXT," +
+                        "avatar TEXT," +
+                        "created_at TEXT DEFAULT (datetime('now'))" +
+                        ")");
+                stmt.execute("CREATE TABLE IF NOT EXISTS books (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "title TEXT," +
+                        "author TEXT," +
+                        "publisher TEXT," +
+                        "year TEXT," +
+                        "quantity INTEGER," +
+                        "category TEXT," +
+                        "favorite INTEGER DEFAULT 0" +
+                        ")");
+                stmt.execute("CREATE TABLE IF NOT EXISTS ratings (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "user_id INTEGER," +
+                        "book_id INTEGER," +
+                        "rating INTEGER," +
+                        "review TEXT," +
+                        "created_at TEXT DEFAULT (datetime('now'))," +
+                        "FOREIGN KEY(user_id) REFERENCES users(id)," +
+                        "FOREIGN KEY(book_id) REFERENCES books(id)," +
+                        "UNIQUE(user_id, book_id)" +
+                        ")");
+                stmt.execute("CREATE TABLE IF NOT EXISTS favorites (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "user_id INTEGER," +
+                        "book_id INTEGER," +
+                        "added_date TEXT DEFAULT (datetime('now'))," +
+                        "FOREIGN KEY(user_id) REFERENCES users(id)," +
+                        "FOREIGN KEY(book_id) REFERENCES books(id)," +
+                        "UNIQUE(user_id, book_id)" +
+                        ")");
+                stmt.execute("CREATE TABLE IF NOT EXISTS borrows (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "user_id INTEGER," +
+                        "book_id INTEGER," +
+                        "borrow_date TEXT," +
+                        "return_date TEXT," +
+                        "FOREIGN KEY(user_id) REFERENCES users(id)," +
+                        "FOREIGN KEY(book_id) REFERENCES books(id))");
+                stmt.execute("CREATE TABLE IF NOT EXISTS borrow_records (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "user_id INTEGER," +
+                        "book_id INTEGER," +
+                        "borrow_date TEXT," +
+                        "return_date TEXT," +
+                        "status TEXT DEFAULT 'ACTIVE'," +
+                        "rating INTEGER DEFAULT 0," +
+                        "FOREIGN KEY(user_id) REFERENCES users(id)," +
+                        "FOREIGN KEY(book_id) REFERENCES books(id))");
+                stmt.execute("CREATE TABLE IF NOT EXISTS activities (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "user_id INTEGER," +
+                        "book_id INTEGER," +
+                        "action TEXT," +
+                        "action_time TEXT," +
+                        "FOREIGN KEY(user_id) REFERENCES users(id)," +
+                        "FOREIGN KEY(book_id) REFERENCES books(id))");
+                stmt.execute("CREATE TABLE IF NOT EXISTS borrow_requests (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "user_id INTEGER NOT NULL," +
+                        "book_id INTEGER NOT NULL," +
+                        "request_date TEXT NOT NULL," +
+                        "expected_return_date TEXT," +
+                        "notes TEXT," +
+                        "status TEXT DEFAULT 'PENDING'," +
+                        "admin_notes TEXT," +
+                        "approved_date TEXT," +
+                        "FOREIGN KEY (user_id) REFERENCES users(id)," +
+                        "FOREIGN KEY (book_id) REFERENCES books(id)" +
+                        ")");
+                stmt.execute("CREATE TABLE IF NOT EXISTS notifications (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                        "user_id INTEGER NOT NULL," +
+                        "type TEXT NOT NULL," +
+                        "title TEXT NOT NULL," +
+                        "content TEXT NOT NULL," +
+                        "created_at TEXT NOT NULL," +
+                        "is_read INTEGER DEFAULT 0," +
+                        "FOREIGN KEY (user_id) REFERENCES users(id)" +
+                        ")");
+                stmt.execute("CREATE TABLE IF NOT EXISTS password_reset_otp (" +
+                        "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                        "email TEXT NOT NULL, " +
+                        "otp_code TEXT NOT NULL, " +
+                        "created_at INTEGER NOT NULL, " +
+                        "expires_at INTEGER NOT NULL)");
+            }
+        });
+
+        register(2, "Book catalog columns", conn -> {
+            addColumnIfMissing(conn, "books", "favorite", "INTEGER DEFAULT 0");
+            addColumnIfMissing(conn, "books", "cover_image", "TEXT DEFAULT ''");
+            addColumnIfMissing(conn, "books", "description", "TEXT DEFAULT ''");
+            addColumnIfMissing(conn, "books", "rating", "REAL DEFAULT 0.0");
+            addColumnIfMissing(conn, "books", "status", "TEXT DEFAULT 'approved'");
+            execute(conn, "UPDATE books SET status = 'approved' WHERE status IS NULL OR status = 'pending'");
+        });
+
+        register(3, "User account status", conn ->
+            addColumnIfMissing(conn, "users", "status", "TEXT DEFAULT 'active'"));
+
+        register(4, "Borrow request and due date columns", conn -> {
+            addColumnIfMissing(conn, "borrow_requests", "expected_return_date", "TEXT");
+            addColumnIfMissing(conn, "borrow_requests", "notes", "TEXT");
+            addColumnIfMissing(conn, "borrows", "expected_return_date", "TEXT");
+        });
+
+        register(5, "Seed borrow_records from borrows", conn ->
+            execute(conn, SEED_BORROW_RECORDS));
+
+        // Indexes proposed by QueryPlanAnalyzer for the hot request-path queries
+        register(6, "Secondary indexes for hot queries", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_borrows_user_book_return ON borrows(user_id, book_id, return_date)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_borrows_book_return ON borrows(book_id, return_date)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_activities_user_time ON activities(user_id, action_time)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_notifications_user_read ON notifications(user_id, is_read)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_notifications_user_created ON notifications(user_id, created_at)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_favorites_user_added ON favorites(user_id, added_date, book_id)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_borrow_requests_user_book_date ON borrow_requests(user_id, book_id, request_date)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_borrow_records_user ON borrow_records(user_id)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_borrow_records_book ON borrow_records(book_id)");
+                stmt.execute("ANALYZE");
+            }
+        });
+
+        // Full-text catalog search. Text is stored folded (đ -> d) because unicode61
+        // does not decompose the Vietnamese stroke letter; the other diacritics are
+        // removed by the tokenizer itself.
+        register(7, "FTS5 catalog index", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS books_fts USING fts5(" +
+                        "title, author, publisher, description, " +
+                        "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')");
+                stmt.execute("DELETE FROM books_fts");
+                stmt.execute("INSERT INTO books_fts(rowid, title, author, publisher, description) " +
+                        "SELECT id, " + fold("title") + ", " + fold("author") + ", " +
+                        fold("publisher") + ", " + fold("description") + " FROM books");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS books_fts_ai AFTER INSERT ON books BEGIN " +
+                        ftsInsert() + " END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS books_fts_ad AFTER DELETE ON books BEGIN " +
+                        "DELETE FROM books_fts WHERE rowid = old.id; END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS books_fts_au " +
+                        "AFTER UPDATE OF title, author, publisher, description ON books BEGIN " +
+                        "DELETE FROM books_fts WHERE rowid = old.id; " + ftsInsert() + " END");
+            }
+        });
+
+        // Materialized per-book aggregates, kept current by triggers so direct
+        // JDBC writes from the desktop client are covered too
+        register(8, "Per-book statistics", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS book_stats (" +
+                        "book_id INTEGER PRIMARY KEY," +
+                        "available_copies INTEGER NOT NULL DEFAULT 0," +
+                        "active_loans INTEGER NOT NULL DEFAULT 0," +
+                        "total_borrows INTEGER NOT NULL DEFAULT 0," +
+                        "rating_sum INTEGER NOT NULL DEFAULT 0," +
+                        "rating_count INTEGER NOT NULL DEFAULT 0)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_book_stats_available ON book_stats(available_copies)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_book_stats_total_borrows ON book_stats(total_borrows)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_ratings_book ON ratings(book_id)");
+
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS book_stats_books_ai AFTER INSERT ON books BEGIN " +
+                        "INSERT OR IGNORE INTO book_stats(book_id, available_copies) VALUES (new.id, COALESCE(new.quantity, 0)); END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS book_stats_books_au AFTER UPDATE OF quantity ON books BEGIN " +
+                        "UPDATE book_stats SET available_copies = COALESCE(new.quantity, 0) WHERE book_id = new.id; END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS book_stats_books_ad AFTER DELETE ON books BEGIN " +
+                        "DELETE FROM book_stats WHERE book_id = old.id; END");
+
+                createLoanStatsTriggers(stmt);
+
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS book_stats_ratings_ai AFTER INSERT ON ratings BEGIN " +
+                        "UPDATE book_stats SET rating_sum = rating_sum + COALESCE(new.rating, 0), " +
+                        "rating_count = rating_count + (new.rating IS NOT NULL) WHERE book_id = new.book_id; END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS book_stats_ratings_au AFTER UPDATE OF rating, book_id ON ratings BEGIN " +
+                        "UPDATE book_stats SET rating_sum = rating_sum - COALESCE(old.rating, 0), " +
+                        "rating_count = rating_count - (old.rating IS NOT NULL) WHERE book_id = old.book_id; " +
+                        "UPDATE book_stats SET rating_sum = rating_sum + COALESCE(new.rating, 0), " +
+                        "rating_count = rating_count + (new.rating IS NOT NULL) WHERE book_id = new.book_id; END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS book_stats_ratings_ad AFTER DELETE ON ratings BEGIN " +
+                        "UPDATE book_stats SET rating_sum = rating_sum - COALESCE(old.rating, 0), " +
+                        "rating_count = rating_count - (old.rating IS NOT NULL) WHERE book_id = old.book_id; END");
+
+                BookStats.reconcile(conn);
+            }
+        });
+
+        // Dashboard rollups: per day, per month, per reader and per category
+        register(9, "Dashboard rollups", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS borrow_daily_stats (" +
+                        "day TEXT PRIMARY KEY," +
+                        "borrows INTEGER NOT NULL DEFAULT 0," +
+                        "returns INTEGER NOT NULL DEFAULT 0)");
+                stmt.execute("CREATE TABLE IF NOT EXISTS borrow_monthly_stats (" +
+                        "month TEXT PRIMARY KEY," +
+                        "borrows INTEGER NOT NULL DEFAULT 0," +
+                        "returns INTEGER NOT NULL DEFAULT 0)");
+                stmt.execute("CREATE TABLE IF NOT EXISTS user_borrow_stats (" +
+                        "user_id INTEGER PRIMARY KEY," +
+                        "total_borrows INTEGER NOT NULL DEFAULT 0," +
+                        "active_loans INTEGER NOT NULL DEFAULT 0)");
+                stmt.execute("CREATE TABLE IF NOT EXISTS category_stats (" +
+                        "category TEXT PRIMARY KEY," +
+                        "books INTEGER NOT NULL DEFAULT 0)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_user_borrow_stats_total ON user_borrow_stats(total_borrows)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_borrows_open_date ON borrows(borrow_date) " +
+                        "WHERE " + BookStats.OPEN_LOAN);
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_borrow_requests_status ON borrow_requests(status)");
+
+                createLoanRollupTriggers(stmt);
+
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS rollups_books_ai AFTER INSERT ON books BEGIN " +
+                        "INSERT INTO category_stats(category, books) VALUES (COALESCE(new.category, ''), 1) " +
+                        "ON CONFLICT(category) DO UPDATE SET books = books + 1; END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS rollups_books_au AFTER UPDATE OF category ON books BEGIN " +
+                        "UPDATE category_stats SET books = books - 1 WHERE category = COALESCE(old.category, ''); " +
+                        "INSERT INTO category_stats(category, books) VALUES (COALESCE(new.category, ''), 1) " +
+                        "ON CONFLICT(category) DO UPDATE SET books = books + 1; END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS rollups_books_ad AFTER DELETE ON books BEGIN " +
+                        "UPDATE category_stats SET books = books - 1 WHERE category = COALESCE(old.category, ''); END");
+
+                DashboardStats.rebuild(conn);
+            }
+        });
+
+        // Keyset browsing: category filter seeks by (category, rowid)
+        register(10, "Book browse index", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_books_category ON books(category)");
+            }
+        });
+
+        // Recommendations train on borrow_records; keep it in step with every writer of borrows
+        register(11, "Mirror borrows into borrow_records", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(SEED_BORROW_RECORDS);
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS borrow_records_borrows_ai AFTER INSERT ON borrows BEGIN " +
+                        "INSERT INTO borrow_records(user_id, book_id, borrow_date, return_date) " +
+                        "VALUES (new.user_id, new.book_id, new.borrow_date, new.return_date); END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS borrow_records_borrows_au " +
+                        "AFTER UPDATE OF borrow_date, return_date, user_id, book_id ON borrows BEGIN " +
+                        "UPDATE borrow_records SET user_id = new.user_id, book_id = new.book_id, " +
+                        "borrow_date = new.borrow_date, return_date = new.return_date WHERE id = " +
+                        mirroredRecord("old") + "; END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS borrow_records_borrows_ad AFTER DELETE ON borrows BEGIN " +
+                        "DELETE FROM borrow_records WHERE id = " + mirroredRecord("old") + "; END");
+            }
+        });
+
+        // Bumped by every write the recommendation models train on, so a saved model
+        // snapshot can tell whether it is stale
+        register(12, "Recommendation change counter", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS change_counters (" +
+                        "name TEXT PRIMARY KEY," +
+                        "value INTEGER NOT NULL DEFAULT 0)");
+                stmt.execute("INSERT OR IGNORE INTO change_counters(name, value) VALUES ('" +
+                        ChangeCounters.RECOMMENDATIONS + "', 0)");
+                String bump = "UPDATE change_counters SET value = value + 1 WHERE name = '" +
+                        ChangeCounters.RECOMMENDATIONS + "'; END";
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS change_counters_users_ai AFTER INSERT ON users BEGIN " + bump);
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS change_counters_users_ad AFTER DELETE ON users BEGIN " + bump);
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS change_counters_books_ai AFTER INSERT ON books BEGIN " + bump);
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS change_counters_books_au " +
+                        "AFTER UPDATE OF title, author, category, description ON books BEGIN " + bump);
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS change_counters_books_ad AFTER DELETE ON books BEGIN " + bump);
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS change_counters_borrow_records_ai " +
+                        "AFTER INSERT ON borrow_records BEGIN " + bump);
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS change_counters_borrow_records_au " +
+                        "AFTER UPDATE ON borrow_records BEGIN " + bump);
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS change_counters_borrow_records_ad " +
+                        "AFTER DELETE ON borrow_records BEGIN " + bump);
+            }
+        });
+
+        // Bumped by every write that can change a catalog search result: the books
+        // themselves and their stock and borrow counts
+        register(13, "Catalog change counter", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("INSERT OR IGNORE INTO change_counters(name, value) VALUES ('" +
+                        ChangeCounters.CATALOG + "', 0)");
+                String bump = "UPDATE change_counters SET value = value + 1 WHERE name = '" +
+                        ChangeCounters.CATALOG + "'; END";
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS catalog_counter_books_ai AFTER INSERT ON books BEGIN " + bump);
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS catalog_counter_books_au AFTER UPDATE ON books BEGIN " + bump);
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS catalog_counter_books_ad AFTER DELETE ON books BEGIN " + bump);
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS catalog_counter_book_stats_au " +
+                        "AFTER UPDATE OF available_copies, total_borrows ON book_stats BEGIN " + bump);
+            }
+        });
+
+        // Older clients stored the text 'null' for an unreturned loan; count those as
+        // open everywhere, as the client screens always have
+        register(14, "Treat 'null' return dates as open loans", conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                for (String trigger : new String[] {"book_stats_borrows_ai", "book_stats_borrows_au",
+                        "book_stats_borrows_ad", "rollups_borrows_ai", "rollups_borrows_au", "rollups_borrows_ad"}) {
+                    stmt.execute("DROP TRIGGER IF EXISTS " + trigger);
+                }
+                createLoanStatsTriggers(stmt);
+                createLoanRollupTriggers(stmt);
+                stmt.execute("DROP INDEX IF EXISTS idx_borrows_open_date");
+                stmt.execute("CREATE INDEX idx_borrows_open_date ON borrows(borrow_date) WHERE " + BookStats.OPEN_LOAN);
+            }
+            BookStats.reconcile(conn);
+            DashboardStats.rebuild(conn);
+        });
+    }
+
+    /**
+     * book_stats loan counters, maintained from borrows
+     */
+    private static void createLoanStatsTriggers(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS book_stats_borrows_ai AFTER INSERT ON borrows BEGIN " +
+                "UPDATE book_stats SET total_borrows = total_borrows + 1, " +
+                "active_loans = active_loans + " + openLoan("new") + " WHERE book_id = new.book_id; END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS book_stats_borrows_au AFTER UPDATE OF return_date, book_id ON borrows BEGIN " +
+                "UPDATE book_stats SET total_borrows = total_borrows - 1, " +
+                "active_loans = active_loans - " + openLoan("old") + " WHERE book_id = old.book_id; " +
+                "UPDATE book_stats SET total_borrows = total_borrows + 1, " +
+                "active_loans = active_loans + " + openLoan("new") + " WHERE book_id = new.book_id; END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS book_stats_borrows_ad AFTER DELETE ON borrows BEGIN " +
+                "UPDATE book_stats SET total_borrows = total_borrows - 1, " +
+                "active_loans = active_loans - " + openLoan("old") + " WHERE book_id = old.book_id; END");
+    }
+
+    /**
+     * Dashboard rollups maintained from borrows
+     */
+    private static void createLoanRollupTriggers(Statement stmt) throws SQLException {
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS rollups_borrows_ai AFTER INSERT ON borrows BEGIN " +
+                addBorrowRollups("new") + " END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS rollups_borrows_au " +
+                "AFTER UPDATE OF borrow_date, return_date, user_id ON borrows BEGIN " +
+                removeBorrowRollups("old") + " " + addBorrowRollups("new") + " END");
+        stmt.execute("CREATE TRIGGER IF NOT EXISTS rollups_borrows_ad AFTER DELETE ON borrows BEGIN " +
+                removeBorrowRollups("old") + " END");
+    }
+
+    /**
+     * Subquery for the borrow_records row mirroring a borrows row
+     */
+    private static String mirroredRecord(String row) {
+        return "(SELECT id FROM borrow_records WHERE user_id = " + row + ".user_id AND book_id = " + row + ".book_id " +
+               "AND borrow_date IS " + row + ".borrow_date ORDER BY id LIMIT 1)";
+    }
+
+    /**
+     * Trigger body adding one borrows row to the rollups
+     */
+    private static String addBorrowRollups(String row) {
+        String borrowed = row + ".borrow_date IS NOT NULL AND " + row + ".borrow_date != ''";
+        String returned = "NOT " + openLoan(row);
+        return "INSERT INTO borrow_daily_stats(day, borrows) SELECT substr(" + row + ".borrow_date, 1, 10), 1 " +
+               "WHERE " + borrowed + " ON CONFLICT(day) DO UPDATE SET borrows = borrows + 1; " +
+               "INSERT INTO borrow_monthly_stats(month, borrows) SELECT substr(" + row + ".borrow_date, 1, 7), 1 " +
+               "WHERE " + borrowed + " ON CONFLICT(month) DO UPDATE SET borrows = borrows + 1; " +
+               "INSERT INTO borrow_daily_stats(day, returns) SELECT substr(" + row + ".return_date, 1, 10), 1 " +
+               "WHERE " + returned + " ON CONFLICT(day) DO UPDATE SET returns = returns + 1; " +
+               "INSERT INTO borrow_monthly_stats(month, returns) SELECT substr(" + row + ".return_date, 1, 7), 1 " +
+               "WHERE " + returned + " ON CONFLICT(month) DO UPDATE SET returns = returns + 1; " +
+               "INSERT INTO user_borrow_stats(user_id, total_borrows, active_loans) " +
+               "SELECT " + row + ".user_id, 1, " + openLoan(row) + " WHERE " + row + ".user_id IS NOT NULL " +
+               "ON CONFLICT(user_id) DO UPDATE SET total_borrows = total_borrows + 1, " +
+               "active_loans = active_loans + excluded.active_loans;";
+    }
+
+    /**
+     * Trigger body taking one borrows row back out of the rollups
+     */
+    private static String removeBorrowRollups(String row) {
+        return "UPDATE borrow_daily_stats SET borrows = borrows - 1 " +
+               "WHERE day = substr(" + row + ".borrow_date, 1, 10); " +
+               "UPDATE borrow_monthly_stats SET borrows = borrows - 1 " +
+               "WHERE month = substr(" + row + ".borrow_date, 1, 7); " +
+               "UPDATE borrow_daily_stats SET returns = returns - 1 " +
+               "WHERE day = substr(" + row + ".return_date, 1, 10) AND NOT " + openLoan(row) + "; " +
+               "UPDATE borrow_monthly_stats SET returns = returns - 1 " +
+               "WHERE month = substr(" + row + ".return_date, 1, 7) AND NOT " + openLoan(row) + "; " +
+               "UPDATE user_borrow_stats SET total_borrows = total_borrows - 1, " +
+               "active_loans = active_loans - " + openLoan(row) + " WHERE user_id = " + row + ".user_id;";
+    }
+
+    private static String openLoan(String row) {
+        return "(" + row + ".return_date IS NULL OR " + row + ".return_date = '' OR " + row + ".return_date = 'null')";
+    }
+
+    private static String fold(String column) {
+        return "replace(replace(COALESCE(" + column + ", ''), 'đ', 'd'), 'Đ', 'D')";
+    }
+
+    private static String ftsInsert() {
+        return "INSERT INTO books_fts(rowid, title, author, publisher, description) VALUES (new.id, " +
+               fold("new.title") + ", " + fold("new.author") + ", " +
+               fold("new.publisher") + ", " + fold("new.description") + ");";
+    }
+
+    /**
+     * A single schema change step
+     */
+    @FunctionalInterface
+    interface MigrationStep {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static class Migration {
+        final int version;
+        final String description;
+        final MigrationStep step;
+
+        Migration(int version, String description, MigrationStep step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    /**
+     * Register a migration. Versions must be unique and are applied in ascending order.
+     */
+    static void register(int version, String description, MigrationStep step) {
+        for (Migration m : MIGRATIONS) {
+            if (m.version == version) {
+                throw new IllegalStateException("Duplicate schema migration version: " + version);
+            }
+        }
+        MIGRATIONS.add(new Migration(version, description, step));
+        Collections.sort(MIGRATIONS, (a, b) -> Integer.compare(a.version, b.version));
+    }
+
+    /**
+     * Apply all pending migrations using a pooled connection
+     */
+    public static void migrate() throws SQLException {
+        try (Connection conn = DatabasePool.getInstance().getConnection()) {
+            migrate(conn);
+        }
+    }
+
+    /**
+     * Apply all pending migrations on the given connection. Each migration runs in
+     * its own transaction together with its schema_version row.
+     */
+    public static synchronized int migrate(Connection conn) throws SQLException {
+        execute(conn, "CREATE TABLE IF NOT EXISTS schema_version (" +
+                "version INTEGER PRIMARY KEY," +
+                "description TEXT," +
+                "applied_at TEXT DEFAULT (datetime('now'))" +
+                ")");
+
+        int current = getCurrentVersion(conn);
+        int applied = 0;
+        boolean autoCommit = conn.getAutoCommit();
+
+        try {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current) {
+                    continue;
+                }
+
+                conn.setAutoCommit(false);
+                try {
+                    migration.step.apply(conn);
+
+                    try (PreparedStatement ps = conn.prepareStatement(
+                            "INSERT INTO schema_version(version, description) VALUES(?, ?)")) {
+                        ps.setInt(1, migration.version);
+                        ps.setString(2, migration.description);
+                        ps.executeUpdate();
+                    }
+
+                    conn.commit();
+                    applied++;
+                    System.out.println("[MIGRATION] Applied v" + migration.version + ": " + migration.description);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw new SQLException("Migration v" + migration.version + " failed: " + e.getMessage(), e);
+                }
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        if (applied == 0) {
+            System.out.println("[MIGRATION] Schema is up to date at v" + current);
+        }
+        return applied;
+    }
+
+    /**
+     * Highest applied schema version, or 0 for a fresh database
+     */
+    public static int getCurrentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Latest version known to this build
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.isEmpty() ? 0 : MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * Add a column unless an older ad-hoc setup already created it
+     */
+    static void addColumnIfMissing(Connection conn, String table, String column, String definition) throws SQLException {
+        if (!columnExists(conn, table, column)) {
+            execute(conn, "ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+    }
+
+    /**
+     * Run one statement, closing it afterwards
+     */
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
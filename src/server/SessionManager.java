@@ -1,26 +1,64 @@
 package server;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Session management for tracking client sessions and timeouts
+ * Session management for tracking client sessions and timeouts.
+ *
+ * Sessions are indexed by session ID, by the SHA-256 of their token and by user,
+ * so every lookup is a hash probe. Only the token's hash is kept once it has
+ * been handed out, which is also all the session store writes to disk. Expiry runs on a timing wheel: each session is due one timeout
+ * after it was last seen, and activity only stamps the session. When its slot
+ * comes round a session that was used since is rescheduled, so the cleanup tick
+ * costs what expires rather than what is live.
  */
 public class SessionManager {
-    private static final long SESSION_TIMEOUT_MINUTES = 30;
-    private static final long CLEANUP_INTERVAL_MINUTES = 5;
+    private static final long SESSION_TIMEOUT_MS =
+            Math.max(1, ConfigManager.getInt("session.timeout.minutes")) * 60L * 1000;
+    private static final long WHEEL_TICK_MS = 1000;
+    private static final long RATE_LIMITER_CLEANUP_MS = 5 * 60 * 1000;
+    // Activity is written to the session store at most this often per session
+    private static final long STORE_TOUCH_MS = 1000;
+    
+    private static final SecureRandom random = new SecureRandom();
+    private static final Base64.Encoder ids = Base64.getUrlEncoder().withoutPadding();
     
     private static final ConcurrentHashMap<String, ClientSession> sessions = new ConcurrentHashMap<>();
-    private static final ScheduledExecutorService cleanupService = Executors.newSingleThreadScheduledExecutor();
+    private static final ConcurrentHashMap<String, ClientSession> sessionsByToken = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<Integer, Set<ClientSession>> sessionsByUser = new ConcurrentHashMap<>();
+    private static final TimingWheel<ClientSession> expiry =
+            new TimingWheel<>(WHEEL_TICK_MS, System.currentTimeMillis());
+    private static volatile long lastRateLimiterCleanup = System.currentTimeMillis();
+    private static final List<SessionStore.Record> restored = new ArrayList<>();
+    private static final SessionStore store = openStore();
+    
+    private static final ScheduledExecutorService cleanupService = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "session-expiry");
+        t.setDaemon(true);
+        return t;
+    });
     
     static {
+        restoreSessions();
+        
         // Start cleanup task
         cleanupService.scheduleAtFixedRate(() -> cleanupExpiredSessions(), 
-                                         CLEANUP_INTERVAL_MINUTES, 
-                                         CLEANUP_INTERVAL_MINUTES, 
-                                         TimeUnit.MINUTES);
+                                         WHEEL_TICK_MS, 
+                                         WHEEL_TICK_MS, 
+                                         TimeUnit.MILLISECONDS);
     }
     
     public static class ClientSession {
@@ -32,7 +70,12 @@ public class SessionManager {
         private volatile String role;
         private volatile boolean authenticated;
         private volatile int userId;
+        // The bearer token itself is only known until it has been handed out; restored sessions lack it
         private volatile String token;
+        private volatile String tokenHash;
+        // Kept in the session store; REST sessions are, socket-bound TCP ones are not
+        private volatile boolean persistent;
+        private volatile long storedActivity;
         
         public ClientSession(String sessionId, String clientAddress) {
             this.sessionId = sessionId;
@@ -41,6 +84,7 @@ public class SessionManager {
             this.lastActivity = createdTime;
             this.authenticated = false;
             this.token = generateToken();
+            this.tokenHash = hashToken(token);
         }
         
         public ClientSession(String clientAddress, int userId) {
@@ -51,18 +95,33 @@ public class SessionManager {
             this.lastActivity = createdTime;
             this.authenticated = true;
             this.token = generateToken();
+            this.tokenHash = hashToken(token);
         }
         
-        private String generateToken() {
-            return java.util.UUID.randomUUID().toString();
-        }
-        
-        private String generateSessionId() {
-            return "session_" + System.currentTimeMillis() + "_" + Math.random();
+        /**
+         * Session read back from the store
+         */
+        ClientSession(SessionStore.Record record) {
+            this.sessionId = record.sessionId;
+            this.clientAddress = record.clientAddress;
+            this.createdTime = record.createdTime;
+            this.lastActivity = record.lastActivity;
+            this.storedActivity = record.lastActivity;
+            this.username = record.username;
+            this.role = record.role;
+            this.userId = record.userId;
+            this.authenticated = true;
+            this.tokenHash = record.tokenHash;
+            this.persistent = true;
         }
         
         public void updateActivity() {
-            this.lastActivity = System.currentTimeMillis();
+            long now = System.currentTimeMillis();
+            this.lastActivity = now;
+            if (persistent && store != null && now - storedActivity >= STORE_TOUCH_MS) {
+                storedActivity = now;
+                store.touch(sessionId, now);
+            }
         }
         
         public void authenticate(String username, String role) {
@@ -70,10 +129,11 @@ public class SessionManager {
             this.role = role;
             this.authenticated = true;
             updateActivity();
+            persist(this);
         }
         
         public boolean isExpired() {
-            return (System.currentTimeMillis() - lastActivity) > (SESSION_TIMEOUT_MINUTES * 60 * 1000);
+            return (System.currentTimeMillis() - lastActivity) > SESSION_TIMEOUT_MS;
         }
         
         public boolean isAuthenticated() { return authenticated; }
@@ -84,16 +144,30 @@ public class SessionManager {
         public long getLastActivity() { return lastActivity; }
         public String getToken() { return token; }
         public int getUserId() { return userId; }
-        public void setUserId(int userId) { this.userId = userId; }
+        
+        public void setUserId(int userId) {
+            if (this.userId == userId) return;
+            unindexUser(this);
+            this.userId = userId;
+            if (sessions.get(sessionId) == this) {
+                indexUser(this);
+                persist(this);
+            }
+        }
+        
+        SessionStore.Record toRecord() {
+            return new SessionStore.Record(sessionId, tokenHash, username, role, clientAddress, userId,
+                    createdTime, lastActivity);
+        }
     }
     
     /**
      * Create new session for client
      */
     public static ClientSession createSession(String clientAddress) {
-        String sessionId = generateSessionId(clientAddress);
+        String sessionId = generateSessionId();
         ClientSession session = new ClientSession(sessionId, clientAddress);
-        sessions.put(sessionId, session);
+        register(session);
         System.out.println("[INFO] Session created: " + sessionId + " for " + clientAddress);
         return session;
     }
@@ -103,7 +177,9 @@ public class SessionManager {
      */
     public static ClientSession createSession(String clientAddress, int userId) {
         ClientSession session = new ClientSession(clientAddress, userId);
-        sessions.put(session.getSessionId(), session);
+        // Bearer tokens outlive connections, so these sessions are worth keeping across restarts
+        session.persistent = true;
+        register(session);
         System.out.println("[INFO] Session created with userId: " + session.getSessionId() + " for " + clientAddress);
         return session;
     }
@@ -112,23 +188,35 @@ public class SessionManager {
      * Get session by ID
      */
     public static ClientSession getSession(String sessionId) {
-        ClientSession session = sessions.get(sessionId);
-        if (session != null && !session.isExpired()) {
-            session.updateActivity();
-            return session;
-        } else if (session != null && session.isExpired()) {
-            sessions.remove(sessionId);
-            System.out.println("[INFO] Session expired and removed: " + sessionId);
+        return validate(sessions.get(sessionId));
+    }
+    
+    /**
+     * Get session by the bearer token handed out at login
+     */
+    public static ClientSession getSessionByToken(String token) {
+        return token == null ? null : validate(sessionsByToken.get(hashToken(token)));
+    }
+    
+    /**
+     * Live sessions of a user
+     */
+    public static List<ClientSession> getUserSessions(int userId) {
+        Set<ClientSession> userSessions = sessionsByUser.get(userId);
+        if (userSessions == null) return Collections.emptyList();
+        List<ClientSession> live = new ArrayList<>();
+        for (ClientSession session : userSessions) {
+            if (!session.isExpired()) live.add(session);
         }
-        return null;
+        return live;
     }
     
     /**
      * Remove session
      */
     public static void removeSession(String sessionId) {
-        ClientSession removed = sessions.remove(sessionId);
-        if (removed != null) {
+        ClientSession removed = sessions.get(sessionId);
+        if (removed != null && unregister(removed)) {
             System.out.println("[INFO] Session removed: " + sessionId);
         }
     }
@@ -137,42 +225,179 @@ public class SessionManager {
      * Invalidate session by token
      */
     public static void invalidateSession(String token) {
-        // Find session by token
-        for (ClientSession session : sessions.values()) {
-            if (token.equals(session.getToken())) {
-                sessions.remove(session.getSessionId());
-                System.out.println("[INFO] Session invalidated: " + session.getSessionId());
-                return;
-            }
+        ClientSession session = token == null ? null : sessionsByToken.get(hashToken(token));
+        if (session != null && unregister(session)) {
+            System.out.println("[INFO] Session invalidated: " + session.getSessionId());
+        }
+    }
+    
+    /**
+     * Log a user out everywhere, e.g. after their account is locked
+     */
+    public static int invalidateUserSessions(int userId) {
+        Set<ClientSession> userSessions = sessionsByUser.get(userId);
+        if (userSessions == null) return 0;
+        int removed = 0;
+        for (ClientSession session : new ArrayList<>(userSessions)) {
+            if (unregister(session)) removed++;
         }
+        return removed;
     }
     
     /**
-     * Clean up expired sessions
+     * Clean up expired sessions: fire the wheel slots that came due since the last tick
      */
     public static void cleanupExpiredSessions() {
-        int removedCount = 0;
-        for (ConcurrentHashMap.Entry<String, ClientSession> entry : sessions.entrySet()) {
-            if (entry.getValue().isExpired()) {
-                sessions.remove(entry.getKey());
-                removedCount++;
+        long now = System.currentTimeMillis();
+        int[] removedCount = new int[1];
+        List<ClientSession> active = new ArrayList<>();
+        synchronized (expiry) {
+            expiry.advance(now, session -> {
+                if (sessions.get(session.getSessionId()) != session) return; // removed already
+                if (session.isExpired()) {
+                    if (unregister(session)) removedCount[0]++;
+                } else {
+                    active.add(session);
+                }
+            });
+            // Used since it was scheduled: due one timeout after its last activity
+            for (ClientSession session : active) {
+                expiry.schedule(session, session.getLastActivity() + SESSION_TIMEOUT_MS + 1);
             }
         }
-        if (removedCount > 0) {
-            System.out.println("[INFO] Cleaned up " + removedCount + " expired sessions");
+        if (removedCount[0] > 0) {
+            System.out.println("[INFO] Cleaned up " + removedCount[0] + " expired sessions");
         }
         
         // Also cleanup rate limiter
-        RateLimiter.cleanup();
+        if (now - lastRateLimiterCleanup >= RATE_LIMITER_CLEANUP_MS) {
+            lastRateLimiterCleanup = now;
+            RateLimiter.cleanup();
+        }
     }
     
     /**
-     * Generate unique session ID
+     * The session if still live, stamped as used; expired sessions are dropped on sight
      */
-    private static String generateSessionId(String clientAddress) {
-        return "SESSION_" + System.currentTimeMillis() + "_" + 
-               clientAddress.hashCode() + "_" + 
-               (int)(Math.random() * 10000);
+    private static ClientSession validate(ClientSession session) {
+        if (session == null) return null;
+        if (session.isExpired()) {
+            if (unregister(session)) {
+                System.out.println("[INFO] Session expired and removed: " + session.getSessionId());
+            }
+            return null;
+        }
+        session.updateActivity();
+        return session;
+    }
+    
+    private static void register(ClientSession session) {
+        sessions.put(session.getSessionId(), session);
+        sessionsByToken.put(session.tokenHash, session);
+        indexUser(session);
+        synchronized (expiry) {
+            expiry.schedule(session, session.getLastActivity() + SESSION_TIMEOUT_MS + 1);
+        }
+        persist(session);
+    }
+    
+    /**
+     * Drop a session from every index; its wheel entry is skipped when it fires.
+     * Returns false when it was already gone.
+     */
+    private static boolean unregister(ClientSession session) {
+        if (!sessions.remove(session.getSessionId(), session)) return false;
+        sessionsByToken.remove(session.tokenHash, session);
+        unindexUser(session);
+        if (session.persistent && store != null) {
+            store.remove(session.getSessionId());
+        }
+        return true;
+    }
+    
+    private static void persist(ClientSession session) {
+        if (!session.persistent || store == null || sessions.get(session.getSessionId()) != session) return;
+        if (store.save(session.toRecord())) {
+            session.storedActivity = session.getLastActivity();
+        }
+    }
+    
+    /**
+     * Session store from session.store.file, or null when disabled or unusable
+     */
+    private static SessionStore openStore() {
+        if (!ConfigManager.getBoolean("session.store.enabled")) return null;
+        try {
+            return SessionStore.open(new File(ConfigManager.getString("session.store.file")), restored);
+        } catch (Exception e) {
+            System.err.println("[SESSION] Session store unavailable, sessions will not survive a restart: " +
+                    e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Bring back the stored sessions that have not timed out meanwhile
+     */
+    private static void restoreSessions() {
+        if (store == null) return;
+        int expired = 0;
+        for (SessionStore.Record record : restored) {
+            ClientSession session = new ClientSession(record);
+            if (session.isExpired()) {
+                store.remove(record.sessionId);
+                expired++;
+                continue;
+            }
+            register(session);
+        }
+        restored.clear();
+        System.out.println("[SESSION] Restored " + sessions.size() + " sessions (" + expired + " expired)");
+    }
+    
+    private static void indexUser(ClientSession session) {
+        if (session.getUserId() <= 0) return;
+        sessionsByUser.computeIfAbsent(session.getUserId(), k -> ConcurrentHashMap.newKeySet()).add(session);
+    }
+    
+    private static void unindexUser(ClientSession session) {
+        if (session.getUserId() <= 0) return;
+        sessionsByUser.computeIfPresent(session.getUserId(), (k, set) -> {
+            set.remove(session);
+            return set.isEmpty() ? null : set;
+        });
+    }
+    
+    /**
+     * Generate unique session ID: 96 random bits, URL-safe
+     */
+    private static String generateSessionId() {
+        return randomId(12);
+    }
+    
+    /**
+     * Bearer token: 192 random bits, URL-safe
+     */
+    private static String generateToken() {
+        return randomId(24);
+    }
+    
+    /**
+     * SHA-256 of a token, URL-safe; what sessions are looked up and stored by
+     */
+    private static String hashToken(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return ids.encodeToString(md.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+    
+    private static String randomId(int bytes) {
+        byte[] value = new byte[bytes];
+        random.nextBytes(value);
+        return ids.encodeToString(value);
     }
     
     /**
@@ -187,7 +412,13 @@ public class SessionManager {
      */
     public static void shutdown() {
         cleanupService.shutdown();
+        // Stored sessions stay on disk for the next start
+        if (store != null) {
+            store.close();
+        }
         sessions.clear();
+        sessionsByToken.clear();
+        sessionsByUser.clear();
         System.out.println("[INFO] Session manager shut down");
     }
 }
\ No newline at end of file
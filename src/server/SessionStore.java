@@ -0,0 +1,335 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Authenticated sessions kept in a memory-mapped file so they survive a restart.
+ *
+ * Layout, little-endian: a 16-byte header (magic, format version, record size)
+ * then fixed 256-byte records. New sessions are appended; a removed one is
+ * marked dead in place, and dead records are squeezed out once they outnumber
+ * the live ones. Every write goes to the mapping only, leaving the flush to the
+ * OS, so nothing on the request path waits for the disk. A crash in the middle
+ * of a compaction can leave a record twice; loading keeps the later copy.
+ *
+ * Bearer tokens are never written, only their SHA-256, so reading the file does
+ * not let anyone use a session. The file is also made readable by its owner only.
+ */
+final class SessionStore {
+    private static final int MAGIC = 0x4C535353; // "LSSS"
+    // Version 1 held tokens in clear; such files are discarded rather than read
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 256;
+    private static final int MIN_RECORDS = 1024;
+
+    private static final byte EMPTY = 0;
+    private static final byte LIVE = 1;
+    private static final byte DEAD = 2;
+
+    // Record fields: state, user id, created and last activity, then length-prefixed strings
+    private static final int STATE = 0;
+    private static final int USER_ID = 4;
+    private static final int CREATED = 8;
+    private static final int LAST_ACTIVITY = 16;
+    private static final int[] STRING_WIDTHS = {32, 48, 96, 16, 32}; // session id, token hash, username, role, address
+    private static final int STRINGS = 24;
+
+    /**
+     * Persisted fields of one session
+     */
+    static final class Record {
+        final String sessionId;
+        final String tokenHash;
+        final String username;
+        final String role;
+        final String clientAddress;
+        final int userId;
+        final long createdTime;
+        final long lastActivity;
+
+        Record(String sessionId, String tokenHash, String username, String role, String clientAddress,
+               int userId, long createdTime, long lastActivity) {
+            this.sessionId = sessionId;
+            this.tokenHash = tokenHash;
+            this.username = username;
+            this.role = role;
+            this.clientAddress = clientAddress;
+            this.userId = userId;
+            this.createdTime = createdTime;
+            this.lastActivity = lastActivity;
+        }
+
+        String[] strings() {
+            return new String[] {sessionId, tokenHash, username, role, clientAddress};
+        }
+    }
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int end;
+    private int dead;
+
+    private SessionStore(File file, RandomAccessFile raf) {
+        this.file = file;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+    }
+
+    /**
+     * Open or create the store, adding every live record to loaded
+     */
+    static SessionStore open(File file, List<Record> loaded) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        SessionStore store = new SessionStore(file, new RandomAccessFile(file, "rw"));
+        restrictToOwner(file);
+        try {
+            store.load(loaded);
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private static void restrictToOwner(File file) {
+        boolean restricted = file.setReadable(false, false) && file.setReadable(true, true)
+                && file.setWritable(false, false) && file.setWritable(true, true);
+        if (!restricted) {
+            System.err.println("[SESSION] Could not restrict access to " + file);
+        }
+    }
+
+    private void load(List<Record> loaded) throws IOException {
+        long size = channel.size();
+        int records = size > HEADER_BYTES ? (int) ((size - HEADER_BYTES) / RECORD_BYTES) : 0;
+        map(Math.max(records, MIN_RECORDS));
+
+        boolean valid = size >= HEADER_BYTES && buffer.getInt(0) == MAGIC
+                && buffer.getInt(4) == FORMAT_VERSION && buffer.getInt(8) == RECORD_BYTES;
+        if (!valid) {
+            if (size > 0) {
+                System.err.println("[SESSION] Ignoring " + file + ": not a session store of this version");
+            }
+            for (int i = 0; i < HEADER_BYTES + capacity * RECORD_BYTES; i++) buffer.put(i, (byte) 0);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putInt(8, RECORD_BYTES);
+            return;
+        }
+
+        // Newest copy of each session wins; a crash mid-compaction may leave two
+        end = 0;
+        dead = 0;
+        slots.clear();
+        for (int slot = 0; slot < capacity; slot++) {
+            byte state = buffer.get(offset(slot) + STATE);
+            if (state == EMPTY) break;
+            end = slot + 1;
+            if (state != LIVE) {
+                dead++;
+                continue;
+            }
+            String sessionId = readString(slot, 0);
+            Integer previous = slots.get(sessionId);
+            if (previous == null) {
+                slots.put(sessionId, slot);
+                continue;
+            }
+            int stale = slot;
+            if (buffer.getLong(offset(previous) + LAST_ACTIVITY) <= buffer.getLong(offset(slot) + LAST_ACTIVITY)) {
+                stale = previous;
+                slots.put(sessionId, slot);
+            }
+            buffer.put(offset(stale) + STATE, DEAD);
+            dead++;
+        }
+        compact();
+        for (int slot : slots.values()) loaded.add(read(slot));
+    }
+
+    /**
+     * Add a session, or rewrite it where it is
+     */
+    boolean save(Record record) {
+        if (!fits(record)) return false;
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(record.sessionId);
+            if (slot == null) {
+                if (end == capacity) makeRoom();
+                slot = end++;
+                slots.put(record.sessionId, slot);
+            }
+            write(slot, record);
+            return true;
+        } catch (IOException e) {
+            System.err.println("[SESSION] Could not persist session: " + e.getMessage());
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Record activity in place: one long written into the mapping
+     */
+    void touch(String sessionId, long lastActivity) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slots.get(sessionId);
+            if (slot != null) buffer.putLong(offset(slot) + LAST_ACTIVITY, lastActivity);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void remove(String sessionId) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(sessionId);
+            if (slot == null) return;
+            buffer.put(offset(slot) + STATE, DEAD);
+            dead++;
+            if (dead >= MIN_RECORDS && dead > slots.size()) compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    /**
+     * Flush the mapping to disk and release the file
+     */
+    void close() {
+        lock.writeLock().lock();
+        try {
+            if (buffer != null) buffer.force();
+            channel.close();
+            raf.close();
+        } catch (IOException e) {
+            System.err.println("[SESSION] Error closing session store: " + e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reclaim dead records when they make up half the file, else grow it
+     */
+    private void makeRoom() throws IOException {
+        if (dead * 2 >= capacity) {
+            compact();
+        } else {
+            int previous = capacity;
+            map(capacity * 2);
+            clear(previous, capacity);
+        }
+    }
+
+    /**
+     * Slide live records down over the dead ones, keeping their order
+     */
+    private void compact() {
+        int target = 0;
+        byte[] copy = new byte[RECORD_BYTES];
+        for (int slot = 0; slot < end; slot++) {
+            if (buffer.get(offset(slot) + STATE) != LIVE) continue;
+            if (slot != target) {
+                ByteBuffer source = buffer.duplicate();
+                source.position(offset(slot));
+                source.get(copy);
+                ByteBuffer destination = buffer.duplicate();
+                destination.position(offset(target));
+                destination.put(copy);
+                slots.put(readString(target, 0), target);
+            }
+            target++;
+        }
+        clear(target, end);
+        end = target;
+        dead = 0;
+    }
+
+    private void map(int records) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) records * RECORD_BYTES);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        capacity = records;
+    }
+
+    private void clear(int from, int to) {
+        for (int slot = from; slot < to; slot++) buffer.put(offset(slot) + STATE, EMPTY);
+    }
+
+    private static int offset(int slot) {
+        return HEADER_BYTES + slot * RECORD_BYTES;
+    }
+
+    private static boolean fits(Record record) {
+        String[] strings = record.strings();
+        for (int i = 0; i < strings.length; i++) {
+            if (strings[i] != null && strings[i].getBytes(StandardCharsets.UTF_8).length > STRING_WIDTHS[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(int slot, Record record) {
+        int base = offset(slot);
+        // State last, so a record is never live with half its fields
+        buffer.put(base + STATE, EMPTY);
+        buffer.putInt(base + USER_ID, record.userId);
+        buffer.putLong(base + CREATED, record.createdTime);
+        buffer.putLong(base + LAST_ACTIVITY, record.lastActivity);
+        String[] strings = record.strings();
+        int position = base + STRINGS;
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = strings[i] == null ? new byte[0] : strings[i].getBytes(StandardCharsets.UTF_8);
+            // Length 255 marks null
+            buffer.put(position, strings[i] == null ? (byte) 0xFF : (byte) bytes.length);
+            for (int b = 0; b < bytes.length; b++) buffer.put(position + 1 + b, bytes[b]);
+            position += 1 + STRING_WIDTHS[i];
+        }
+        buffer.put(base + STATE, LIVE);
+    }
+
+    private Record read(int slot) {
+        int base = offset(slot);
+        return new Record(readString(slot, 0), readString(slot, 1), readString(slot, 2), readString(slot, 3),
+                readString(slot, 4), buffer.getInt(base + USER_ID), buffer.getLong(base + CREATED),
+                buffer.getLong(base + LAST_ACTIVITY));
+    }
+
+    private String readString(int slot, int field) {
+        int position = offset(slot) + STRINGS;
+        for (int i = 0; i < field; i++) position += 1 + STRING_WIDTHS[i];
+        int length = buffer.get(position) & 0xFF;
+        if (length == 0xFF) return null;
+        byte[] bytes = new byte[Math.min(length, STRING_WIDTHS[field])];
+        for (int b = 0; b < bytes.length; b++) bytes[b] = buffer.get(position + 1 + b);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
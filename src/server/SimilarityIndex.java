@@ -0,0 +1,271 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Sparse similarity matrix holding the top-K neighbours of every row.
+ * Rows are stored in CSR form: the neighbours of row r are
+ * neighbors[start[r] .. start[r + 1]) with matching scores, best first.
+ * Entries below the pruning threshold are never stored. The arrays are held as
+ * buffers so an index can also be read in place from a mapped snapshot file.
+ */
+public class SimilarityIndex {
+    private static final int[] NO_IDS = new int[0];
+    private static final float[] NO_SCORES = new float[0];
+
+    private final IntBuffer ids;
+    private final TrainingData.IntIndex rows;
+    private final IntBuffer start;
+    private final IntBuffer neighbors;
+    private final FloatBuffer scores;
+
+    private SimilarityIndex(IntBuffer ids, TrainingData.IntIndex rows, IntBuffer start, IntBuffer neighbors,
+                            FloatBuffer scores) {
+        this.ids = ids;
+        this.rows = rows;
+        this.start = start;
+        this.neighbors = neighbors;
+        this.scores = scores;
+    }
+
+    public static SimilarityIndex empty() {
+        return new Builder(new int[0], 1, 0f).build();
+    }
+
+    /** Number of rows */
+    public int size() { return ids.capacity(); }
+
+    /** Number of stored entries across all rows */
+    public int entries() { return neighbors.capacity(); }
+
+    /** Neighbour ids of id, best first; empty when the id is unknown */
+    public int[] neighborIds(int id) {
+        int row = rows.get(id);
+        if (row < 0) return NO_IDS;
+        int from = start.get(row);
+        int[] result = new int[start.get(row + 1) - from];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.get(neighbors.get(from + i));
+        }
+        return result;
+    }
+
+    /** Scores matching neighborIds(id) */
+    public float[] neighborScores(int id) {
+        int row = rows.get(id);
+        if (row < 0) return NO_SCORES;
+        int from = start.get(row);
+        float[] result = new float[start.get(row + 1) - from];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = scores.get(from + i);
+        }
+        return result;
+    }
+
+    /** Stored similarity of a pair, or 0 when it was pruned */
+    public float score(int id, int otherId) {
+        int row = rows.get(id);
+        int other = rows.get(otherId);
+        if (row < 0 || other < 0) return 0f;
+        for (int i = start.get(row), end = start.get(row + 1); i < end; i++) {
+            if (neighbors.get(i) == other) return scores.get(i);
+        }
+        return 0f;
+    }
+
+    /** True when both indexes hold exactly the same rows, neighbours and scores */
+    boolean sameAs(SimilarityIndex other) {
+        return ids.equals(other.ids) && start.equals(other.start)
+                && neighbors.equals(other.neighbors) && scores.equals(other.scores);
+    }
+
+    /** Approximate memory held by the index arrays, mapped or on the heap */
+    public long memoryBytes() {
+        return serializedSize() + rows.memoryBytes();
+    }
+
+    /** Bytes written by writeTo */
+    long serializedSize() {
+        return 8L + 4L * (ids.capacity() + start.capacity() + neighbors.capacity() + scores.capacity());
+    }
+
+    /**
+     * Append the index as row count, entry count, then the ids, start, neighbor
+     * and score arrays, in the buffer's byte order
+     */
+    void writeTo(ByteBuffer out) {
+        out.putInt(ids.capacity());
+        out.putInt(neighbors.capacity());
+        out.asIntBuffer().put(ids.duplicate());
+        out.position(out.position() + 4 * ids.capacity());
+        out.asIntBuffer().put(start.duplicate());
+        out.position(out.position() + 4 * start.capacity());
+        out.asIntBuffer().put(neighbors.duplicate());
+        out.position(out.position() + 4 * neighbors.capacity());
+        out.asFloatBuffer().put(scores.duplicate());
+        out.position(out.position() + 4 * scores.capacity());
+    }
+
+    /**
+     * An index laid out by writeTo, read in place: the arrays are views of the
+     * buffer and only the id lookup is built on the heap. Advances the buffer
+     * past the index.
+     *
+     * @throws IllegalArgumentException if the counts do not fit the buffer or the rows are malformed
+     */
+    static SimilarityIndex readFrom(ByteBuffer in) {
+        int rowCount = in.getInt();
+        int entryCount = in.getInt();
+        if (rowCount < 0 || entryCount < 0
+                || 4L * (2L * rowCount + 1 + 2L * entryCount) > in.remaining()) {
+            throw new IllegalArgumentException("Similarity index does not fit the snapshot");
+        }
+        IntBuffer ids = slice(in, rowCount).asIntBuffer();
+        IntBuffer start = slice(in, rowCount + 1).asIntBuffer();
+        IntBuffer neighbors = slice(in, entryCount).asIntBuffer();
+        FloatBuffer scores = slice(in, entryCount).asFloatBuffer();
+        if (start.get(0) != 0 || start.get(rowCount) != entryCount) {
+            throw new IllegalArgumentException("Similarity index rows do not match its entries");
+        }
+
+        TrainingData.IntIndex rows = new TrainingData.IntIndex(rowCount);
+        for (int r = 0; r < rowCount; r++) rows.put(ids.get(r), r);
+        return new SimilarityIndex(ids, rows, start, neighbors, scores);
+    }
+
+    private static ByteBuffer slice(ByteBuffer in, int ints) {
+        ByteBuffer view = in.slice().order(in.order());
+        view.limit(4 * ints);
+        in.position(in.position() + 4 * ints);
+        return view;
+    }
+
+    /**
+     * Collects candidate pairs and keeps the K best per row.
+     * Rows are addressed by position in the ids array. Ties keep the lower row
+     * so the result does not depend on the order pairs are offered in.
+     */
+    public static class Builder {
+        private final int[] ids;
+        private final int k;
+        private final float minScore;
+        private final int[] heapRows;
+        private final float[] heapScores;
+        private final int[] sizes;
+        private final float[] floors;
+
+        public Builder(int[] ids, int k, float minScore) {
+            this.ids = ids;
+            this.k = k;
+            this.minScore = minScore;
+            this.heapRows = new int[ids.length * k];
+            this.heapScores = new float[ids.length * k];
+            this.sizes = new int[ids.length];
+            this.floors = new float[ids.length];
+            Arrays.fill(floors, minScore);
+        }
+
+        public int rows() { return ids.length; }
+
+        public float minScore() { return minScore; }
+
+        /**
+         * Cheap pre-check that needs no lock: false only when the row is full and
+         * score is below its current K-th best. The floor only rises, so a stale
+         * read errs towards true.
+         */
+        public boolean mayAccept(int row, float score) {
+            return score >= floors[row];
+        }
+
+        /** Record a symmetric similarity for both rows */
+        public void add(int rowA, int rowB, float score) {
+            offer(rowA, rowB, score);
+            offer(rowB, rowA, score);
+        }
+
+        /** Record that neighbour is similar to row; only row's heap is touched */
+        public void offer(int row, int neighbor, float score) {
+            if (score < minScore || row == neighbor) return;
+            int base = row * k;
+            int size = sizes[row];
+            if (size < k) {
+                heapRows[base + size] = neighbor;
+                heapScores[base + size] = score;
+                sizes[row] = size + 1;
+                siftUp(base, size);
+                if (size + 1 == k) floors[row] = heapScores[base];
+            } else if (better(score, neighbor, heapScores[base], heapRows[base])) {
+                heapRows[base] = neighbor;
+                heapScores[base] = score;
+                siftDown(base, size);
+                floors[row] = heapScores[base];
+            }
+        }
+
+        // Min-heap on (score, -row): the root is the entry to evict next
+        private static boolean better(float score, int row, float otherScore, int otherRow) {
+            return score > otherScore || (score == otherScore && row < otherRow);
+        }
+
+        private void siftUp(int base, int pos) {
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (!better(heapScores[base + parent], heapRows[base + parent],
+                        heapScores[base + pos], heapRows[base + pos])) break;
+                swap(base + parent, base + pos);
+                pos = parent;
+            }
+        }
+
+        private void siftDown(int base, int size) {
+            int pos = 0;
+            while (true) {
+                int child = 2 * pos + 1;
+                if (child >= size) break;
+                if (child + 1 < size && better(heapScores[base + child], heapRows[base + child],
+                        heapScores[base + child + 1], heapRows[base + child + 1])) child++;
+                if (!better(heapScores[base + pos], heapRows[base + pos],
+                        heapScores[base + child], heapRows[base + child])) break;
+                swap(base + pos, base + child);
+                pos = child;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = heapRows[a]; heapRows[a] = heapRows[b]; heapRows[b] = row;
+            float score = heapScores[a]; heapScores[a] = heapScores[b]; heapScores[b] = score;
+        }
+
+        public SimilarityIndex build() {
+            int[] start = new int[ids.length + 1];
+            for (int r = 0; r < ids.length; r++) start[r + 1] = start[r] + sizes[r];
+            int[] neighbors = new int[start[ids.length]];
+            float[] scores = new float[start[ids.length]];
+
+            for (int r = 0; r < ids.length; r++) {
+                // Drain the heap worst-first into the row, filling it from the back
+                int base = r * k;
+                int size = sizes[r];
+                for (int pos = start[r] + size - 1; size > 0; pos--) {
+                    neighbors[pos] = heapRows[base];
+                    scores[pos] = heapScores[base];
+                    size--;
+                    if (size > 0) {
+                        heapRows[base] = heapRows[base + size];
+                        heapScores[base] = heapScores[base + size];
+                        siftDown(base, size);
+                    }
+                }
+            }
+
+            TrainingData.IntIndex rows = new TrainingData.IntIndex(ids.length);
+            for (int r = 0; r < ids.length; r++) rows.put(ids[r], r);
+            return new SimilarityIndex(IntBuffer.wrap(ids), rows, IntBuffer.wrap(start), IntBuffer.wrap(neighbors),
+                    FloatBuffer.wrap(scores));
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Autocomplete over book titles and authors.
+ * A radix trie of diacritic-folded phrases (and the suffixes that start at
+ * each word) where every node caches its most popular completions, so a
+ * lookup is a walk down the typed prefix. Prefixes with no exact match fall
+ * back to completions within one edit.
+ */
+public class SuggestIndex {
+    public static final int MAX_SUGGESTIONS = 10;
+    private static final int MIN_FUZZY_LENGTH = 3;
+    private static final int MAX_WORD_STARTS = 6;
+    private static final int MAX_KEY_LENGTH = 48;
+
+    private static final SuggestIndex instance = new SuggestIndex();
+
+    private volatile Trie trie = Trie.EMPTY;
+    private volatile Map<Integer, Integer> borrowCounts = Collections.emptyMap();
+    private final AtomicBoolean rebuildPending = new AtomicBoolean(false);
+    private final ExecutorService rebuildService = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "suggest-index-rebuild");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private SuggestIndex() {
+        // Private constructor for singleton
+    }
+
+    public static SuggestIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * A completion: the original text plus what it is
+     */
+    public static class Suggestion {
+        private final String text;
+        private final String type;
+        private final int popularity;
+
+        Suggestion(String text, String type, int popularity) {
+            this.text = text;
+            this.type = type;
+            this.popularity = popularity;
+        }
+
+        public String getText() { return text; }
+        public String getType() { return type; }
+        public int getPopularity() { return popularity; }
+    }
+
+    /**
+     * Immutable trie plus the entries its nodes point at
+     */
+    private static final class Trie {
+        static final Trie EMPTY = new Trie(new Node(""), new Suggestion[0]);
+
+        final Node root;
+        final Suggestion[] entries;
+
+        Trie(Node root, Suggestion[] entries) {
+            this.root = root;
+            this.entries = entries;
+        }
+    }
+
+    private static final class Node {
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final char[] NO_CHARS = new char[0];
+        private static final int[] NO_ENTRIES = new int[0];
+
+        String label;
+        Node[] children = NO_CHILDREN;
+        char[] firstChars = NO_CHARS;
+        // Best completions in this subtree, best first
+        int[] top = NO_ENTRIES;
+
+        // Build-time only
+        List<Node> childList;
+        List<Integer> terminal;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node childFor(char c) {
+            if (childList == null) return null;
+            for (Node child : childList) {
+                if (child.label.charAt(0) == c) return child;
+            }
+            return null;
+        }
+
+        void addChild(Node child) {
+            if (childList == null) childList = new ArrayList<>();
+            childList.add(child);
+        }
+
+        void addTerminal(int entry) {
+            if (terminal == null) terminal = new ArrayList<>(1);
+            terminal.add(entry);
+        }
+
+        Node child(char c) {
+            int idx = Arrays.binarySearch(firstChars, c);
+            return idx >= 0 ? children[idx] : null;
+        }
+    }
+
+    /**
+     * Load borrow counts as popularity, then rebuild from the catalog index
+     */
+    public void reload(Connection conn) throws Exception {
+        Map<Integer, Integer> counts = new HashMap<>();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT book_id, COUNT(*) FROM borrows GROUP BY book_id")) {
+            while (rs.next()) {
+                counts.put(rs.getInt(1), rs.getInt(2));
+            }
+        }
+        borrowCounts = counts;
+        rebuild();
+    }
+
+    /**
+     * Schedule a rebuild after a catalog edit; bursts of edits share one rebuild
+     */
+    public void refresh() {
+        if (rebuildPending.compareAndSet(false, true)) {
+            rebuildService.submit(() -> {
+                rebuildPending.set(false);
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    System.err.println("[SEARCH] Failed to rebuild suggestion index: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        Map<Integer, Integer> counts = borrowCounts;
+
+        // One entry per distinct folded title or author; editions share popularity
+        Map<String, Integer> entryIds = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        List<Suggestion> entries = new ArrayList<>();
+        List<int[]> popularity = new ArrayList<>();
+        for (CatalogIndex.BookEntry book : CatalogIndex.getInstance().books()) {
+            int borrows = counts.getOrDefault(book.getId(), 0);
+            addEntry(book.getTitle(), "title", borrows, entryIds, keys, entries, popularity);
+            addEntry(book.getAuthor(), "author", borrows, entryIds, keys, entries, popularity);
+        }
+
+        Suggestion[] frozen = new Suggestion[entries.size()];
+        for (int i = 0; i < frozen.length; i++) {
+            Suggestion s = entries.get(i);
+            frozen[i] = new Suggestion(s.text, s.type, popularity.get(i)[0]);
+        }
+
+        Node root = new Node("");
+        for (int i = 0; i < frozen.length; i++) {
+            for (String key : wordStarts(keys.get(i))) {
+                insert(root, key, i);
+            }
+        }
+        freeze(root, frozen);
+
+        trie = new Trie(root, frozen);
+        System.out.println("[SEARCH] Suggestion index built: " + frozen.length + " entries in "
+                + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    private static void addEntry(String text, String type, int borrows, Map<String, Integer> entryIds,
+                                 List<String> keys, List<Suggestion> entries, List<int[]> popularity) {
+        String key = normalize(text).trim();
+        if (key.isEmpty()) return;
+
+        Integer id = entryIds.get(type + ':' + key);
+        if (id == null) {
+            id = entries.size();
+            entryIds.put(type + ':' + key, id);
+            keys.add(key);
+            entries.add(new Suggestion(text.trim(), type, 0));
+            popularity.add(new int[1]);
+        }
+        popularity.get(id)[0] += borrows;
+    }
+
+    /**
+     * Folded words joined by single spaces; a trailing separator is kept as
+     * one space so "java " only completes past the whole word
+     */
+    private static String normalize(String text) {
+        if (text == null) return "";
+        String key = String.join(" ", CatalogIndex.tokenize(text));
+        if (!key.isEmpty() && !Character.isLetterOrDigit(text.charAt(text.length() - 1))) {
+            key += " ";
+        }
+        return key;
+    }
+
+    /**
+     * The phrase itself and the suffixes starting at its next few words
+     */
+    private static List<String> wordStarts(String key) {
+        List<String> starts = new ArrayList<>();
+        int pos = 0;
+        while (pos >= 0 && starts.size() < MAX_WORD_STARTS) {
+            String suffix = key.substring(pos);
+            starts.add(suffix.length() > MAX_KEY_LENGTH ? suffix.substring(0, MAX_KEY_LENGTH) : suffix);
+            int space = key.indexOf(' ', pos);
+            pos = space < 0 ? -1 : space + 1;
+        }
+        return starts;
+    }
+
+    private static void insert(Node root, String key, int entry) {
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            Node child = node.childFor(key.charAt(i));
+            if (child == null) {
+                Node leaf = new Node(key.substring(i));
+                leaf.addTerminal(entry);
+                node.addChild(leaf);
+                return;
+            }
+
+            int common = 0;
+            int max = Math.min(child.label.length(), key.length() - i);
+            while (common < max && child.label.charAt(common) == key.charAt(i + common)) {
+                common++;
+            }
+            if (common < child.label.length()) {
+                // Split the edge at the point where the key diverges
+                Node mid = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                mid.addChild(child);
+                node.childList.set(node.childList.indexOf(child), mid);
+                child = mid;
+            }
+            node = child;
+            i += common;
+        }
+        node.addTerminal(entry);
+    }
+
+    /**
+     * Turn build lists into sorted arrays and cache each subtree's top entries
+     */
+    private static void freeze(Node node, Suggestion[] entries) {
+        Set<Integer> candidates = new LinkedHashSet<>();
+        if (node.terminal != null) {
+            candidates.addAll(node.terminal);
+            node.terminal = null;
+        }
+
+        if (node.childList != null) {
+            node.childList.sort((a, b) -> Character.compare(a.label.charAt(0), b.label.charAt(0)));
+            node.children = node.childList.toArray(new Node[0]);
+            node.firstChars = new char[node.children.length];
+            for (int i = 0; i < node.children.length; i++) {
+                Node child = node.children[i];
+                node.firstChars[i] = child.label.charAt(0);
+                freeze(child, entries);
+                for (int entry : child.top) {
+                    candidates.add(entry);
+                }
+            }
+            node.childList = null;
+        }
+
+        List<Integer> ranked = new ArrayList<>(candidates);
+        ranked.sort((a, b) -> compare(entries, a, b));
+        int size = Math.min(MAX_SUGGESTIONS, ranked.size());
+        node.top = new int[size];
+        for (int i = 0; i < size; i++) {
+            node.top[i] = ranked.get(i);
+        }
+    }
+
+    private static int compare(Suggestion[] entries, int a, int b) {
+        int cmp = Integer.compare(entries[b].popularity, entries[a].popularity);
+        if (cmp != 0) return cmp;
+        cmp = Integer.compare(entries[a].text.length(), entries[b].text.length());
+        return cmp != 0 ? cmp : Integer.compare(a, b);
+    }
+
+    /**
+     * Most popular titles and authors completing the prefix. Exact prefix
+     * matches come first; when there are too few, completions of prefixes
+     * one edit away fill the rest.
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        Trie current = trie;
+        String key = normalize(prefix);
+        limit = Math.min(limit, MAX_SUGGESTIONS);
+        if (key.isEmpty() || limit <= 0) return Collections.emptyList();
+
+        Set<Integer> picked = new LinkedHashSet<>();
+        Node exact = locate(current.root, key);
+        if (exact != null) {
+            for (int entry : exact.top) {
+                if (picked.size() >= limit) break;
+                picked.add(entry);
+            }
+        }
+
+        if (picked.size() < limit && key.length() >= MIN_FUZZY_LENGTH) {
+            Map<Node, Boolean> nearby = new IdentityHashMap<>();
+            fuzzy(current.root, current.root.label.length(), key, 0, false, nearby);
+            nearby.remove(exact);
+
+            List<Integer> candidates = new ArrayList<>();
+            for (Node node : nearby.keySet()) {
+                for (int entry : node.top) {
+                    if (!picked.contains(entry)) candidates.add(entry);
+                }
+            }
+            candidates.sort((a, b) -> compare(current.entries, a, b));
+            for (int entry : candidates) {
+                if (picked.size() >= limit) break;
+                picked.add(entry);
+            }
+        }
+
+        List<Suggestion> result = new ArrayList<>(picked.size());
+        for (int entry : picked) {
+            result.add(current.entries[entry]);
+        }
+        return result;
+    }
+
+    /**
+     * Node whose subtree holds every key starting with the prefix
+     */
+    private static Node locate(Node root, String prefix) {
+        Node node = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            Node child = node.child(prefix.charAt(i));
+            if (child == null) return null;
+            int n = Math.min(child.label.length(), prefix.length() - i);
+            if (!child.label.regionMatches(0, prefix, i, n)) return null;
+            i += n;
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * Collect subtrees whose path matches the query within one insertion,
+     * deletion or substitution. Position is (node, offset into its label).
+     */
+    private static void fuzzy(Node node, int offset, String query, int qi, boolean edited, Map<Node, Boolean> hits) {
+        if (qi == query.length()) {
+            hits.put(node, Boolean.TRUE);
+            return;
+        }
+        if (!edited) {
+            // Extra character typed
+            fuzzy(node, offset, query, qi + 1, true, hits);
+        }
+
+        if (offset < node.label.length()) {
+            step(node, offset + 1, node.label.charAt(offset), query, qi, edited, hits);
+        } else {
+            for (Node child : node.children) {
+                step(child, 1, child.label.charAt(0), query, qi, edited, hits);
+            }
+        }
+    }
+
+    private static void step(Node next, int offset, char c, String query, int qi, boolean edited,
+                             Map<Node, Boolean> hits) {
+        if (c == query.charAt(qi)) {
+            fuzzy(next, offset, query, qi + 1, edited, hits);
+        } else if (!edited) {
+            // Wrong character typed, or one left out
+            fuzzy(next, offset, query, qi + 1, true, hits);
+            fuzzy(next, offset, query, qi, true, hits);
+        }
+    }
+
+    public int size() {
+        return trie.entries.length;
+    }
+}
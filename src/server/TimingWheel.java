@@ -0,0 +1,93 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: four levels of 64 slots, each slot of a level
+ * spanning a whole turn of the level below. Scheduling and firing are O(1);
+ * entries in a higher level are cascaded down once, when the lower level wraps
+ * around to them. Not thread-safe; callers synchronize.
+ */
+final class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final List<List<Node<T>>> slots = new ArrayList<>(LEVELS * SLOTS);
+    private long currentTick;
+    private int size;
+
+    private static final class Node<T> {
+        final T item;
+        final long tick;
+
+        Node(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+
+    TimingWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.currentTick = now / tickMillis;
+        for (int i = 0; i < LEVELS * SLOTS; i++) slots.add(new ArrayList<Node<T>>());
+    }
+
+    /**
+     * Fire the item on the first advance at or after the deadline
+     */
+    void schedule(T item, long deadline) {
+        // Round up so an item never fires before its deadline
+        place(new Node<>(item, Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1)));
+        size++;
+    }
+
+    /**
+     * Move time forward to now, handing every item that came due to the consumer
+     */
+    void advance(long now, Consumer<T> expired) {
+        long target = now / tickMillis;
+        while (currentTick < target) {
+            currentTick++;
+            // Refill the lower levels from the slots they have just wrapped onto
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) break;
+                List<Node<T>> slot = slot(level, currentTick >>> (SLOT_BITS * level));
+                if (slot.isEmpty()) continue;
+                List<Node<T>> cascading = new ArrayList<>(slot);
+                slot.clear();
+                for (Node<T> node : cascading) place(node);
+            }
+            List<Node<T>> due = slot(0, currentTick);
+            if (due.isEmpty()) continue;
+            List<Node<T>> firing = new ArrayList<>(due);
+            due.clear();
+            size -= firing.size();
+            for (Node<T> node : firing) expired.accept(node.item);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void place(Node<T> node) {
+        long delta = Math.max(node.tick - currentTick, 0);
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < (1L << (SLOT_BITS * (level + 1))) || level == LEVELS - 1) {
+                // Beyond the top level's reach, park in its furthest slot and cascade from there
+                long tick = Math.min(node.tick, currentTick + (1L << (SLOT_BITS * LEVELS)) - 1);
+                slot(level, Math.max(tick, currentTick) >>> (SLOT_BITS * level)).add(node);
+                return;
+            }
+        }
+    }
+
+    private List<Node<T>> slot(int level, long index) {
+        return slots.get(level * SLOTS + (int) (index & MASK));
+    }
+}
@@ -0,0 +1,246 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Snapshot of everything the recommendation models train on.
+ * users, books and borrow_records are each streamed once; ids are mapped to
+ * dense indexes and borrows are grouped per user in CSR form
+ * (userBorrowStart[u] .. userBorrowStart[u + 1] into borrowBooks/borrowRatings).
+ */
+public class TrainingData {
+    static final long NO_DATE = Long.MIN_VALUE;
+
+    final int[] userIds;
+    final int[] bookIds;
+    final String[] titles;
+    final String[] authors;
+    final String[] categories;
+    final String[] descriptions;
+
+    final int[] userBorrowStart;
+    final int[] borrowBooks;
+    final float[] borrowRatings;
+
+    final int[] bookBorrowCounts;
+    final double[] bookRatingSums;
+
+    private final IntIndex userIndex;
+    private final IntIndex bookIndex;
+
+    private TrainingData(int[] userIds, int[] bookIds, String[] titles, String[] authors, String[] categories,
+                         String[] descriptions, int[] userBorrowStart, int[] borrowBooks, float[] borrowRatings,
+                         int[] bookBorrowCounts, double[] bookRatingSums, IntIndex userIndex, IntIndex bookIndex) {
+        this.userIds = userIds;
+        this.bookIds = bookIds;
+        this.titles = titles;
+        this.authors = authors;
+        this.categories = categories;
+        this.descriptions = descriptions;
+        this.userBorrowStart = userBorrowStart;
+        this.borrowBooks = borrowBooks;
+        this.borrowRatings = borrowRatings;
+        this.bookBorrowCounts = bookBorrowCounts;
+        this.bookRatingSums = bookRatingSums;
+        this.userIndex = userIndex;
+        this.bookIndex = bookIndex;
+    }
+
+    /**
+     * Load the snapshot with one query per table
+     */
+    public static TrainingData load(Connection conn) throws SQLException {
+        long today = LocalDate.now().toEpochDay();
+
+        try (Statement stmt = conn.createStatement()) {
+            int[] userIds = new int[1024];
+            int users = 0;
+            try (ResultSet rs = stmt.executeQuery("SELECT id FROM users ORDER BY id")) {
+                while (rs.next()) {
+                    if (users == userIds.length) userIds = Arrays.copyOf(userIds, users * 2);
+                    userIds[users++] = rs.getInt(1);
+                }
+            }
+            userIds = Arrays.copyOf(userIds, users);
+            IntIndex userIndex = new IntIndex(users);
+            for (int i = 0; i < users; i++) userIndex.put(userIds[i], i);
+
+            int[] bookIds = new int[1024];
+            String[] titles = new String[1024];
+            String[] authors = new String[1024];
+            String[] categories = new String[1024];
+            String[] descriptions = new String[1024];
+            int books = 0;
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT id, title, author, category, description FROM books ORDER BY id")) {
+                while (rs.next()) {
+                    if (books == bookIds.length) {
+                        int capacity = books * 2;
+                        bookIds = Arrays.copyOf(bookIds, capacity);
+                        titles = Arrays.copyOf(titles, capacity);
+                        authors = Arrays.copyOf(authors, capacity);
+                        categories = Arrays.copyOf(categories, capacity);
+                        descriptions = Arrays.copyOf(descriptions, capacity);
+                    }
+                    bookIds[books] = rs.getInt(1);
+                    titles[books] = rs.getString(2);
+                    authors[books] = rs.getString(3);
+                    categories[books] = rs.getString(4);
+                    descriptions[books] = rs.getString(5);
+                    books++;
+                }
+            }
+            bookIds = Arrays.copyOf(bookIds, books);
+            titles = Arrays.copyOf(titles, books);
+            authors = Arrays.copyOf(authors, books);
+            categories = Arrays.copyOf(categories, books);
+            descriptions = Arrays.copyOf(descriptions, books);
+            IntIndex bookIndex = new IntIndex(books);
+            for (int i = 0; i < books; i++) bookIndex.put(bookIds[i], i);
+
+            // Borrows arrive in table order; keep them flat, then group by user
+            int[] borrowUser = new int[4096];
+            int[] borrowBook = new int[4096];
+            float[] borrowRating = new float[4096];
+            int[] perUser = new int[users + 1];
+            int[] bookBorrowCounts = new int[books];
+            double[] bookRatingSums = new double[books];
+            int borrows = 0;
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT user_id, book_id, borrow_date, return_date FROM borrow_records")) {
+                while (rs.next()) {
+                    int u = userIndex.get(rs.getInt(1));
+                    int b = bookIndex.get(rs.getInt(2));
+                    if (u < 0 || b < 0) continue;
+                    if (borrows == borrowUser.length) {
+                        int capacity = borrows * 2;
+                        borrowUser = Arrays.copyOf(borrowUser, capacity);
+                        borrowBook = Arrays.copyOf(borrowBook, capacity);
+                        borrowRating = Arrays.copyOf(borrowRating, capacity);
+                    }
+                    float rating = implicitRating(rs.getString(3), rs.getString(4), today);
+                    borrowUser[borrows] = u;
+                    borrowBook[borrows] = b;
+                    borrowRating[borrows] = rating;
+                    borrows++;
+                    perUser[u + 1]++;
+                    bookBorrowCounts[b]++;
+                    bookRatingSums[b] += rating;
+                }
+            }
+
+            int[] userBorrowStart = perUser;
+            for (int i = 0; i < users; i++) userBorrowStart[i + 1] += userBorrowStart[i];
+            int[] fill = Arrays.copyOf(userBorrowStart, users);
+            int[] borrowBooks = new int[borrows];
+            float[] borrowRatings = new float[borrows];
+            for (int i = 0; i < borrows; i++) {
+                int slot = fill[borrowUser[i]]++;
+                borrowBooks[slot] = borrowBook[i];
+                borrowRatings[slot] = borrowRating[i];
+            }
+
+            return new TrainingData(userIds, bookIds, titles, authors, categories, descriptions,
+                    userBorrowStart, borrowBooks, borrowRatings, bookBorrowCounts, bookRatingSums,
+                    userIndex, bookIndex);
+        }
+    }
+
+    /**
+     * Longer loans suggest more interest: 1 star plus 2 per week, capped at 5.
+     * Open loans count up to today; unparseable dates get the neutral 1 star.
+     */
+    static float implicitRating(String borrowDate, String returnDate, long today) {
+        long from = epochDay(borrowDate);
+        if (from == NO_DATE) return 1.0f;
+        long to = epochDay(returnDate);
+        if (to == NO_DATE) to = today;
+        double score = Math.min(5.0, 1.0 + (to - from) / 7.0 * 2);
+        return (float) Math.max(1.0, score);
+    }
+
+    /**
+     * Epoch day of a YYYY-MM-DD prefix (plain dates and ISO timestamps), or NO_DATE
+     */
+    static long epochDay(String date) {
+        if (date == null || date.length() < 10 || date.charAt(4) != '-' || date.charAt(7) != '-') return NO_DATE;
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) return NO_DATE;
+        try {
+            return LocalDate.of(year, month, day).toEpochDay();
+        } catch (RuntimeException e) {
+            return NO_DATE;
+        }
+    }
+
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    public int userCount() { return userIds.length; }
+    public int bookCount() { return bookIds.length; }
+    public int borrowCount() { return borrowBooks.length; }
+
+    /** Dense index of a user id, or -1 */
+    int userIndex(int userId) { return userIndex.get(userId); }
+
+    /** Dense index of a book id, or -1 */
+    int bookIndex(int bookId) { return bookIndex.get(bookId); }
+
+    /**
+     * Open-addressing int to int map for id lookups without boxing
+     */
+    static final class IntIndex {
+        private final int[] keys;
+        private final int[] values;
+        private final boolean[] used;
+        private final int mask;
+
+        IntIndex(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            used = new boolean[capacity];
+            mask = capacity - 1;
+        }
+
+        void put(int key, int value) {
+            int slot = mix(key) & mask;
+            while (used[slot] && keys[slot] != key) slot = (slot + 1) & mask;
+            used[slot] = true;
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        int get(int key) {
+            int slot = mix(key) & mask;
+            while (used[slot]) {
+                if (keys[slot] == key) return values[slot];
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        long memoryBytes() {
+            return 9L * keys.length;
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
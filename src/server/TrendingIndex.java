@@ -0,0 +1,351 @@
+package server;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trending books over a day, a week and a month, kept in memory.
+ *
+ * Every borrow, favorite and view adds a weight to the book's score in each
+ * window, decaying exponentially with the window's half-life. Scores are stored
+ * relative to a fixed origin time (weight * 2^((t - origin) / halfLife)), so the
+ * passage of time scales every book alike and never reorders them; only events
+ * do. That keeps an exact top-K per window current at O(log K) per event.
+ *
+ * Borrows and favorites written straight to the database by the desktop client
+ * are picked up by a periodic catch-up over new rows.
+ */
+public class TrendingIndex {
+    /**
+     * Decay windows; half-lives come from trending.halflife.*.hours
+     */
+    public enum Window {
+        DAY("trending.halflife.day.hours"),
+        WEEK("trending.halflife.week.hours"),
+        MONTH("trending.halflife.month.hours");
+
+        private final String configKey;
+
+        Window(String configKey) {
+            this.configKey = configKey;
+        }
+
+        /**
+         * Window by name, case-insensitive; null when unknown
+         */
+        public static Window parse(String name) {
+            for (Window window : values()) {
+                if (window.name().equalsIgnoreCase(name)) return window;
+            }
+            return null;
+        }
+    }
+
+    private static final double BORROW_WEIGHT = 1.0;
+    private static final double FAVORITE_WEIGHT = 0.5;
+    private static final double VIEW_WEIGHT = 0.1;
+    // Origin moves forward before stored scores grow past 2^this
+    private static final double MAX_EXPONENT = 512;
+    private static final long HOUR_MS = 60L * 60 * 1000;
+
+    private static final TrendingIndex instance = new TrendingIndex();
+
+    private final int topK = Math.max(1, ConfigManager.getInt("trending.topk"));
+    private final double[] halfLifeMs = new double[Window.values().length];
+
+    private long origin = System.currentTimeMillis();
+    private final Map<Integer, double[]> scores = new HashMap<>();
+    private final List<TreeSet<Ranked>> tops = new ArrayList<>();
+    private final List<Map<Integer, Ranked>> members = new ArrayList<>();
+
+    // Newest borrows and favorites rows seen, and server borrows applied ahead of the catch-up
+    private long lastBorrowId;
+    private long lastFavoriteId;
+    private final Set<Long> appliedBorrows = new HashSet<>();
+
+    private ScheduledExecutorService refreshService;
+
+    private TrendingIndex() {
+        for (Window window : Window.values()) {
+            halfLifeMs[window.ordinal()] = Math.max(1, ConfigManager.getInt(window.configKey)) * (double) HOUR_MS;
+            tops.add(new TreeSet<Ranked>());
+            members.add(new HashMap<Integer, Ranked>());
+        }
+    }
+
+    public static TrendingIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * A book and its current decayed score
+     */
+    public static class Trend {
+        private final int bookId;
+        private final double score;
+
+        Trend(int bookId, double score) {
+            this.bookId = bookId;
+            this.score = score;
+        }
+
+        public int getBookId() { return bookId; }
+        public double getScore() { return score; }
+    }
+
+    /**
+     * Top-K member; ordered best first, ties by lower id
+     */
+    private static final class Ranked implements Comparable<Ranked> {
+        final int bookId;
+        double score;
+
+        Ranked(int bookId, double score) {
+            this.bookId = bookId;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Ranked other) {
+            int byScore = Double.compare(other.score, score);
+            return byScore != 0 ? byScore : Integer.compare(bookId, other.bookId);
+        }
+    }
+
+    /**
+     * Rebuild every score from the borrows and favorites tables
+     */
+    public void reload() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            origin = start;
+            scores.clear();
+            for (int w = 0; w < tops.size(); w++) {
+                tops.get(w).clear();
+                members.get(w).clear();
+            }
+            lastBorrowId = 0;
+            lastFavoriteId = 0;
+            appliedBorrows.clear();
+        }
+        int events = catchUp();
+        System.out.println("[TRENDING] Loaded " + events + " events for " + trackedBooks() + " books in " +
+                (System.currentTimeMillis() - start) + "ms");
+    }
+
+    public synchronized void startAutoRefresh(long intervalSeconds) {
+        if (refreshService != null || intervalSeconds <= 0) return;
+        refreshService = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "trending-catch-up");
+            t.setDaemon(true);
+            return t;
+        });
+        refreshService.scheduleWithFixedDelay(this::catchUp, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A borrow committed by this server, applied at once; borrowId keeps the
+     * catch-up from counting the row again
+     */
+    public synchronized void borrowed(long borrowId, int bookId) {
+        if (borrowId <= lastBorrowId) return; // the catch-up got there first
+        appliedBorrows.add(borrowId);
+        record(bookId, BORROW_WEIGHT, System.currentTimeMillis());
+    }
+
+    /**
+     * A favorite made through the server, which does not write the favorites table
+     */
+    public synchronized void favorited(int bookId) {
+        record(bookId, FAVORITE_WEIGHT, System.currentTimeMillis());
+    }
+
+    public synchronized void viewed(int bookId) {
+        record(bookId, VIEW_WEIGHT, System.currentTimeMillis());
+    }
+
+    /**
+     * Up to k books with the highest decayed score in the window, best first.
+     * k is capped at trending.topk.
+     */
+    public synchronized List<Trend> top(Window window, int k) {
+        double decay = Math.pow(2, -(System.currentTimeMillis() - origin) / halfLifeMs[window.ordinal()]);
+        List<Trend> result = new ArrayList<>(Math.min(k, topK));
+        for (Ranked ranked : tops.get(window.ordinal())) {
+            if (result.size() >= k) break;
+            result.add(new Trend(ranked.bookId, ranked.score * decay));
+        }
+        return result;
+    }
+
+    public synchronized int trackedBooks() {
+        return scores.size();
+    }
+
+    /**
+     * Apply borrows and favorites rows added since the last pass
+     *
+     * @return number of rows applied
+     */
+    int catchUp() {
+        int applied = 0;
+        try (Connection conn = DatabasePool.getInstance().getConnection()) {
+            applied += catchUp(conn, "SELECT id, book_id, borrow_date FROM borrows WHERE id > ? ORDER BY id", true);
+            applied += catchUp(conn, "SELECT id, book_id, added_date FROM favorites WHERE id > ? ORDER BY id", false);
+        } catch (SQLException e) {
+            System.err.println("[TRENDING] Catch-up failed: " + e.getMessage());
+        }
+        return applied;
+    }
+
+    private int catchUp(Connection conn, String sql, boolean borrows) throws SQLException {
+        long after;
+        synchronized (this) {
+            after = borrows ? lastBorrowId : lastFavoriteId;
+        }
+        int applied = 0;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, after);
+            try (ResultSet rs = ps.executeQuery()) {
+                long now = System.currentTimeMillis();
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    int bookId = rs.getInt(2);
+                    long at = timestamp(rs.getString(3), now);
+                    synchronized (this) {
+                        if (borrows) {
+                            lastBorrowId = Math.max(lastBorrowId, id);
+                            if (appliedBorrows.remove(id)) continue;
+                            record(bookId, BORROW_WEIGHT, at);
+                        } else {
+                            lastFavoriteId = Math.max(lastFavoriteId, id);
+                            record(bookId, FAVORITE_WEIGHT, at);
+                        }
+                    }
+                    applied++;
+                }
+            }
+        }
+        if (borrows) {
+            synchronized (this) {
+                appliedBorrows.removeIf(id -> id <= lastBorrowId);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Add one event to the book's score in every window and re-rank it: O(log K)
+     */
+    private void record(int bookId, double weight, long at) {
+        if (maxExponent(at) > MAX_EXPONENT) {
+            rebase(at);
+        }
+        double[] bookScores = scores.get(bookId);
+        if (bookScores == null) {
+            bookScores = new double[halfLifeMs.length];
+            scores.put(bookId, bookScores);
+        }
+        for (int w = 0; w < halfLifeMs.length; w++) {
+            bookScores[w] += weight * Math.pow(2, (at - origin) / halfLifeMs[w]);
+            rank(w, bookId, bookScores[w]);
+        }
+    }
+
+    /**
+     * Scores only grow between rebases, so a book outside the top-K can only
+     * enter it on one of its own events
+     */
+    private void rank(int window, int bookId, double score) {
+        TreeSet<Ranked> top = tops.get(window);
+        Map<Integer, Ranked> inTop = members.get(window);
+        Ranked ranked = inTop.get(bookId);
+        if (ranked != null) {
+            top.remove(ranked);
+            ranked.score = score;
+            top.add(ranked);
+            return;
+        }
+        // Events too old to register in this window
+        if (score <= 0) return;
+        if (top.size() >= topK) {
+            Ranked last = top.last();
+            if (score < last.score || (score == last.score && bookId > last.bookId)) return;
+            top.pollLast();
+            inTop.remove(last.bookId);
+        }
+        ranked = new Ranked(bookId, score);
+        top.add(ranked);
+        inTop.put(bookId, ranked);
+    }
+
+    private double maxExponent(long at) {
+        double shortest = Double.MAX_VALUE;
+        for (double halfLife : halfLifeMs) shortest = Math.min(shortest, halfLife);
+        return (at - origin) / shortest;
+    }
+
+    /**
+     * Move the origin to the given time, scaling every stored score alike; the
+     * top-K sets are rebuilt since rounding may create new ties
+     */
+    private void rebase(long newOrigin) {
+        double[] factors = new double[halfLifeMs.length];
+        for (int w = 0; w < factors.length; w++) {
+            factors[w] = Math.pow(2, -(newOrigin - origin) / halfLifeMs[w]);
+        }
+        for (Iterator<double[]> it = scores.values().iterator(); it.hasNext(); ) {
+            double[] bookScores = it.next();
+            boolean live = false;
+            for (int w = 0; w < factors.length; w++) {
+                bookScores[w] *= factors[w];
+                live |= bookScores[w] > 0;
+            }
+            // Decayed to nothing: forget the book until its next event
+            if (!live) it.remove();
+        }
+        origin = newOrigin;
+        for (int w = 0; w < tops.size(); w++) {
+            List<Ranked> kept = new ArrayList<>(tops.get(w));
+            tops.get(w).clear();
+            members.get(w).clear();
+            for (Ranked ranked : kept) {
+                double[] bookScores = scores.get(ranked.bookId);
+                if (bookScores != null) rank(w, ranked.bookId, bookScores[w]);
+            }
+        }
+    }
+
+    /**
+     * Epoch millis of a "YYYY-MM-DD[ HH:MM:SS]" value (SQLite dates are UTC), or
+     * fallback when it does not parse
+     */
+    private static long timestamp(String value, long fallback) {
+        long day = TrainingData.epochDay(value);
+        if (day == TrainingData.NO_DATE) return fallback;
+        long millis = day * 24 * HOUR_MS;
+        if (value.length() >= 19 && value.charAt(13) == ':' && value.charAt(16) == ':') {
+            try {
+                millis += Integer.parseInt(value.substring(11, 13)) * HOUR_MS
+                        + Integer.parseInt(value.substring(14, 16)) * 60000L
+                        + Integer.parseInt(value.substring(17, 19)) * 1000L;
+            } catch (NumberFormatException e) {
+                // Date part alone
+            }
+        }
+        return millis;
+    }
+}
@@ -9,16 +9,8 @@ public class UpdateDatabase {
         try (Connection conn = DriverManager.getConnection("jdbc:sqlite:C:/data/library.db")) {
             Statement stmt = conn.createStatement();
 
-            try {
-                stmt.execute("ALTER TABLE books ADD COLUMN description TEXT DEFAULT ''");
-                System.out.println("Added description column to books table.");
-            } catch (Exception e) {
-                if (e.getMessage().contains("duplicate column name")) {
-                    System.out.println("Description column already exists.");
-                } else {
-                    System.out.println("Error adding description column: " + e.getMessage());
-                }
-            }
+            // Ensures books.description exists along with the rest of the schema
+            SchemaMigrator.migrate(conn);
 
             String[] updates = {
                 "UPDATE books SET description = 'Một tác phẩm kinh điển của văn học thế giới, khám phá những vấn đề sâu sắc về cuộc sống và con người.' WHERE title LIKE '%Dế mèn%'",